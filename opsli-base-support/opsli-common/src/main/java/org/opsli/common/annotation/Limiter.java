@@ -17,6 +17,7 @@ package org.opsli.common.annotation;
 
 
 import org.opsli.common.enums.AlertType;
+import org.opsli.common.enums.LimiterType;
 import org.opsli.common.utils.RateLimiterUtil;
 
 import java.lang.annotation.*;
@@ -24,6 +25,9 @@ import java.lang.annotation.*;
 /**
  * Java 限流器
  *
+ * 超出限制时 立即拒绝 并返回 Retry-After，不阻塞请求线程
+ * 可通过配置 opsli.limiter.policies 按接口、租户 覆盖注解上的限制
+ *
  * @author Parker
  * @date 2020-12-31
  */
@@ -35,6 +39,12 @@ public @interface Limiter {
     /** QPS */
     double qps() default RateLimiterUtil.DEFAULT_QPS;
 
+    /** 突发容量 0 则与 QPS 一致 */
+    int burst() default 0;
+
+    /** 限流维度 */
+    LimiterType type() default LimiterType.IP;
+
     /** 提醒方式 */
     AlertType alertType() default AlertType.JSON;
 
@@ -47,6 +47,15 @@ public final class RedisConstants {
 	/** 用户ID 和 菜单 */
 	public static final String PREFIX_USER_ID_MENUS = "kv#{}:user_id:menus:";
 
+	/** 用户ID 和 授权快照 */
+	public static final String PREFIX_USER_ID_AUTH_SNAPSHOT = "kv#{}:user_id:auth_snapshot:";
+
+	/** 缓存世代号 */
+	public static final String PREFIX_GENERATION = "kv#{}:generation:";
+
+	/** 树快照 版本号 */
+	public static final String PREFIX_TREE_VERSION = "kv#{}:tree:version:";
+
 	/** 用户名 + 用户ID */
 	public static final String PREFIX_USER_USERNAME = "kv#{}:user:username_id:";
 	/** 手机号 + 用户ID */
@@ -31,5 +31,13 @@ public final class TreeConstants {
     public static final String IS_LEAF = "isLeaf";
 
 
+    /** 树快照 地域 */
+    public static final String SNAPSHOT_AREA = "area";
+
+
+    /** 树快照 菜单 */
+    public static final String SNAPSHOT_MENU = "menu";
+
+
     private TreeConstants(){}
 }
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.common.enums;
+
+
+/**
+ * 限流维度
+ *
+ * @author Parker
+ * @date 2020-12-31
+ */
+public enum LimiterType {
+
+    /** 按 IP 限流 */
+    IP,
+
+    /** 按 用户 限流 (未登录时按 IP) */
+    USER,
+
+    /** 按 租户 限流 (未登录时按 IP) */
+    TENANT,
+
+    /** 接口全局限流 */
+    GLOBAL,
+
+    ;
+}
@@ -0,0 +1,417 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.common.outbox;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson.JSON;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 外发消息 调度器 (邮件、短信)
+ *
+ * 请求线程 只负责入队 (先写入本地暂存文件 再进入延迟队列)，立即返回
+ * 固定数量的发送线程 每次取出一批到期消息 交给发送器，发送器可在一批内复用连接、合并请求
+ *
+ * 1. 失败重试：按指数退避 (带抖动) 重新入队，超过最大次数后丢弃
+ * 2. 接收方限流：同一接收方 两次发送间隔 不小于 throttleMillis，未到间隔的消息 延后发送
+ * 3. 持久化：每条消息一个暂存文件，发送成功或最终失败后删除，启动时 重新载入未完成的消息
+ *    暂存目录 由调用方按实例配置 (同一主机多实例 不可共用)，目录与文件 仅属主可读写；
+ *    目录不属于当前用户 或无法收紧权限时 不再写入暂存文件 (消息仅在内存中)
+ *
+ * @author Parker
+ * @date 2021-12-27 10:20
+ */
+@Slf4j
+public class OutboxDispatcher<T extends OutboxMessage> {
+
+    /** 最大尝试次数 */
+    private static final int MAX_ATTEMPTS = 5;
+    /** 退避 初始间隔 (毫秒) */
+    private static final long BASE_BACKOFF_MILLIS = 2000L;
+    /** 退避 最大间隔 (毫秒) */
+    private static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000L;
+    /** 取消息 等待时间 (毫秒) */
+    private static final long POLL_MILLIS = 1000L;
+    /** 停止时 最长等待 (毫秒) */
+    private static final long STOP_WAIT_MILLIS = 5000L;
+    /** 暂存文件后缀 */
+    private static final String SPOOL_SUFFIX = ".json";
+    /** 默认暂存根目录 (未配置时) */
+    private static final String DEFAULT_SPOOL_PATH = System.getProperty("user.home")
+            + File.separator + ".opsli" + File.separator + "outbox";
+    /** 暂存目录权限 仅属主 */
+    private static final Set<PosixFilePermission> DIR_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+    /** 暂存文件权限 仅属主 */
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+    /** 是否支持 POSIX 权限 */
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    /** 名称 */
+    private final String name;
+    /** 类型 */
+    private final Class<T> type;
+    /** 发送线程数 */
+    private final int workers;
+    /** 每批数量 */
+    private final int batchSize;
+    /** 同一接收方 最小发送间隔 (毫秒) */
+    private final long throttleMillis;
+    /** 发送器 */
+    private final OutboxSender<T> sender;
+    /** 暂存目录 */
+    private final File spoolDir;
+    /** 延迟队列 */
+    private final DelayQueue<Entry<T>> queue = new DelayQueue<>();
+    /** 接收方 最近发送时间 */
+    private final Cache<String, Long> throttleCache;
+
+    /** 暂存目录 是否可用 */
+    private volatile boolean spoolReady;
+    private volatile boolean running;
+    private ExecutorService executor;
+
+    /**
+     * 构造函数
+     * @param name 名称 (暂存子目录)
+     * @param type 类型
+     * @param spoolPath 暂存根目录 为空时 使用 ~/.opsli/outbox
+     * @param workers 发送线程数
+     * @param batchSize 每批数量
+     * @param throttleMillis 同一接收方 最小发送间隔 (毫秒)
+     * @param sender 发送器
+     */
+    public OutboxDispatcher(String name, Class<T> type, String spoolPath, int workers, int batchSize,
+                            long throttleMillis, OutboxSender<T> sender) {
+        this.name = name;
+        this.type = type;
+        this.workers = Math.max(1, workers);
+        this.batchSize = Math.max(1, batchSize);
+        this.throttleMillis = throttleMillis;
+        this.sender = sender;
+        this.spoolDir = new File(StrUtil.blankToDefault(spoolPath, DEFAULT_SPOOL_PATH), name);
+        this.throttleCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(Math.max(1L, throttleMillis), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 入队 不等待发送
+     * @param message 消息
+     * @return String 消息编号
+     */
+    public String enqueue(T message) {
+        if(StrUtil.isEmpty(message.getId())){
+            message.setId(IdUtil.simpleUUID());
+        }
+        this.spool(message);
+        queue.offer(new Entry<>(message, System.currentTimeMillis()));
+        return message.getId();
+    }
+
+    /**
+     * 启动 载入未完成的消息
+     */
+    public synchronized void start() {
+        if(running){
+            return;
+        }
+        this.prepareSpoolDir();
+        this.recover();
+        running = true;
+        executor = Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder()
+                .setNameFormat("Outbox-" + name + "-%d")
+                .setDaemon(true).build());
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::run);
+        }
+    }
+
+    /**
+     * 停止 未发送的消息 保留在暂存文件中 下次启动时发送
+     */
+    public synchronized void stop() {
+        if(!running){
+            return;
+        }
+        running = false;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(STOP_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Entry<T>> entries = new ArrayList<>(batchSize);
+        while (running){
+            try {
+                Entry<T> entry = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if(entry == null){
+                    continue;
+                }
+                entries.add(entry);
+                while (entries.size() < batchSize && null != (entry = queue.poll())){
+                    entries.add(entry);
+                }
+                this.dispatch(entries);
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                break;
+            }catch (Exception e){
+                log.error(e.getMessage(), e);
+            }finally {
+                entries.clear();
+            }
+        }
+    }
+
+    /**
+     * 发送一批
+     * @param entries 批次
+     */
+    private void dispatch(List<Entry<T>> entries) {
+        long now = System.currentTimeMillis();
+        List<T> batch = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries) {
+            long wait = this.acquireThrottle(entry.message, now);
+            if(wait > 0){
+                queue.offer(new Entry<>(entry.message, now + wait));
+                continue;
+            }
+            batch.add(entry.message);
+        }
+        if(batch.isEmpty()){
+            return;
+        }
+
+        List<T> failed;
+        try {
+            failed = sender.send(batch);
+        }catch (Exception e){
+            log.error("外发消息 发送失败 - " + name, e);
+            failed = batch;
+        }
+
+        Set<T> failedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        if(failed != null){
+            failedSet.addAll(failed);
+        }
+        for (T message : batch) {
+            if(failedSet.contains(message)){
+                this.retry(message);
+            }else {
+                this.deleteSpool(message);
+            }
+        }
+    }
+
+    /**
+     * 接收方限流 未到间隔时 返回需等待的时间，否则记录本次发送时间
+     * @param message 消息
+     * @param now 当前时间
+     * @return long 需等待时间 (毫秒)
+     */
+    private long acquireThrottle(T message, long now) {
+        Collection<String> recipients = message.recipients();
+        if(throttleMillis <= 0 || recipients == null || recipients.isEmpty()){
+            return 0L;
+        }
+        Map<String, Long> throttleMap = throttleCache.asMap();
+        synchronized (throttleCache){
+            long wait = 0L;
+            for (String recipient : recipients) {
+                Long last = throttleMap.get(recipient);
+                if(last != null){
+                    wait = Math.max(wait, last + throttleMillis - now);
+                }
+            }
+            if(wait > 0){
+                return wait;
+            }
+            for (String recipient : recipients) {
+                throttleMap.put(recipient, now);
+            }
+            return 0L;
+        }
+    }
+
+    /**
+     * 重试 超过最大次数后丢弃
+     * @param message 消息
+     */
+    private void retry(T message) {
+        message.setAttempts(message.getAttempts() + 1);
+        if(message.getAttempts() >= MAX_ATTEMPTS){
+            log.error("外发消息 已重试 {} 次 仍失败 丢弃 - {}: {}", message.getAttempts(), name, message.getId());
+            this.deleteSpool(message);
+            return;
+        }
+
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (message.getAttempts() - 1));
+        // 抖动 ±20% 防止同时失败的消息 同时重试
+        backoff = (long) (backoff * (0.8D + RandomUtil.randomDouble(0.4D)));
+        this.spool(message);
+        queue.offer(new Entry<>(message, System.currentTimeMillis() + backoff));
+    }
+
+    /**
+     * 写入暂存文件 (先写临时文件 再替换，防止写入一半)
+     * 写入失败时 消息仍在内存队列中 只是不再可恢复
+     * @param message 消息
+     */
+    private void spool(T message) {
+        if(!spoolReady && !this.prepareSpoolDir()){
+            return;
+        }
+        try {
+            Path tmp = new File(spoolDir, message.getId() + SPOOL_SUFFIX + ".tmp").toPath();
+            Files.deleteIfExists(tmp);
+            if(POSIX){
+                Files.createFile(tmp, PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS));
+            }
+            Files.write(tmp, JSON.toJSONBytes(message));
+            Files.move(tmp, new File(spoolDir, message.getId() + SPOOL_SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }catch (IOException e){
+            log.error("外发消息 暂存本地文件失败 - " + name, e);
+        }
+    }
+
+    /**
+     * 准备暂存目录 创建时即为仅属主可读写，已存在时 校验属主并收紧权限
+     * @return boolean 是否可用
+     */
+    private synchronized boolean prepareSpoolDir() {
+        if(spoolReady){
+            return true;
+        }
+        try {
+            Path dir = spoolDir.toPath().toAbsolutePath();
+            if(POSIX){
+                Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(DIR_PERMISSIONS));
+                UserPrincipal user = FileSystems.getDefault().getUserPrincipalLookupService()
+                        .lookupPrincipalByName(System.getProperty("user.name"));
+                // 根目录 与 子目录 均需校验
+                for (Path path : new Path[]{dir.getParent(), dir}) {
+                    if(!user.equals(Files.getOwner(path, LinkOption.NOFOLLOW_LINKS))){
+                        throw new IOException("暂存目录属主不是当前用户: " + path);
+                    }
+                    Files.setPosixFilePermissions(path, DIR_PERMISSIONS);
+                }
+            }else {
+                Files.createDirectories(dir);
+            }
+            spoolReady = true;
+        }catch (IOException | UnsupportedOperationException e){
+            log.error("外发消息 暂存目录不可用 消息不再持久化 - " + name, e);
+        }
+        return spoolReady;
+    }
+
+    private void deleteSpool(T message) {
+        try {
+            Files.deleteIfExists(new File(spoolDir, message.getId() + SPOOL_SUFFIX).toPath());
+        }catch (IOException e){
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 载入未完成的消息
+     */
+    private void recover() {
+        if(!spoolReady){
+            return;
+        }
+        File[] files = spoolDir.listFiles((dir, fileName) -> fileName.endsWith(SPOOL_SUFFIX));
+        if(files == null || files.length == 0){
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (File file : files) {
+            try {
+                String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                T message = JSON.parseObject(json, type);
+                queue.offer(new Entry<>(message, now));
+                count++;
+            }catch (Exception e){
+                log.error("外发消息 暂存文件解析失败 已跳过 - {}: {}", name, file.getName());
+                // 改名 不再重复载入
+                if(!file.renameTo(new File(spoolDir, file.getName() + ".bad"))){
+                    log.error("外发消息 暂存文件改名失败 - {}: {}", name, file.getName());
+                }
+            }
+        }
+        log.info("外发消息 载入未完成消息 {} 条 - {}", count, name);
+    }
+
+    /**
+     * 延迟队列 条目
+     */
+    private static final class Entry<T> implements Delayed {
+
+        private final T message;
+        /** 可发送时间 */
+        private final long time;
+
+        private Entry(T message, long time) {
+            this.message = message;
+            this.time = time;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(time, ((Entry<?>) o).time);
+        }
+    }
+
+}
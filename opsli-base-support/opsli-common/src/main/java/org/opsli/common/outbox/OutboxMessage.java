@@ -0,0 +1,48 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.common.outbox;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * 外发消息
+ *
+ * 会以 JSON 形式暂存到本地文件，凭证等敏感字段 需标注 @JSONField(serialize = false)
+ *
+ * @author Parker
+ * @date 2021-12-27 10:20
+ */
+@Data
+public abstract class OutboxMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 消息编号 */
+    private String id;
+
+    /** 已尝试次数 */
+    private int attempts;
+
+    /**
+     * 接收方 用于按接收方限流
+     * @return Collection
+     */
+    public abstract Collection<String> recipients();
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.common.outbox;
+
+import java.util.List;
+
+/**
+ * 外发消息 发送器
+ *
+ * @author Parker
+ * @date 2021-12-27 10:20
+ */
+@FunctionalInterface
+public interface OutboxSender<T extends OutboxMessage> {
+
+    /**
+     * 批量发送
+     * 可合并的消息 由发送器自行合并；参数错误等 重试无意义的消息 由发送器记录后直接丢弃
+     *
+     * @param batch 批次
+     * @return List 需要重试的消息
+     */
+    List<T> send(List<T> batch);
+
+}
@@ -4,7 +4,11 @@ package org.opsli.common.thread;
 import com.alibaba.ttl.threadpool.TtlExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
 
 /**
  * 线程池工厂
@@ -34,6 +38,12 @@ public final class ThreadPoolFactory {
 	 */
 	private static final String DEFAULT_THREAD_POOL_NAME = "ProcessPool-{}-%d";
 
+	/**
+	 * 已创建的线程池 供监控采集，弱引用 不影响线程池回收
+	 */
+	private static final Map<ThreadPoolExecutor, String> POOL_MAP =
+			Collections.synchronizedMap(new WeakHashMap<>());
+
 
 	/**
 	 * 创建默认的线程池
@@ -87,11 +97,25 @@ public final class ThreadPoolFactory {
 														  final String poolName,
 														  final RejectedExecutionHandler handler
 														  ){
-		return TtlExecutors.getTtlExecutorService(new ThreadPoolExecutor(coreConcurrent, maxConcurrent, keepAlive, timeUnit,
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(coreConcurrent, maxConcurrent, keepAlive, timeUnit,
 				new LinkedBlockingDeque<>(queueSize),
 				new ThreadFactoryBuilder().setNameFormat(poolName).build(),
 				handler
-		));
+		);
+		POOL_MAP.put(executor, poolName);
+		return TtlExecutors.getTtlExecutorService(executor);
+	}
+
+	/**
+	 * 获得当前存活的线程池 (已终止的除外)
+	 * @return Map key: 线程池 value: 线程池名称
+	 */
+	public static Map<ThreadPoolExecutor, String> getThreadPools(){
+		synchronized (POOL_MAP){
+			return POOL_MAP.entrySet().stream()
+					.filter(entry -> !entry.getKey().isTerminated())
+					.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+		}
 	}
 
 	private ThreadPoolFactory(){}
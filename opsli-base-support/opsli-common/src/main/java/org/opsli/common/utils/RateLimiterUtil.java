@@ -15,25 +15,24 @@
  */
 package org.opsli.common.utils;
 
-import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.core.util.StrUtil;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Maps;
-import com.google.common.util.concurrent.RateLimiter;
-import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.opsli.common.thread.AsyncProcessExecutor;
-import org.opsli.common.thread.AsyncProcessExecutorFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 单机限流
  *
+ * 采用 GCRA 令牌桶 (只记录理论到达时间 TAT)，不阻塞等待，超出限制时 返回需等待的毫秒数
+ * 集群限流见 core 中 LimiterUtil，本类同时作为其本地预检桶
+ *
  * @author Parker
  * @date 2021-01-05 16:06
  */
@@ -48,15 +47,13 @@ public final class RateLimiterUtil {
     private static final int DEFAULT_CACHE_COUNT = 10_0000;
     /** 默认缓存时效 超出后自动清理 */
     private static final int DEFAULT_CACHE_TIME = 5;
-    /** 默认等待时长 */
-    private static final int DEFAULT_WAIT = 500;
     /** 限流器单机缓存 */
-    private static final Cache<String, Map<String, RateLimiterUtil.RateLimiterInner> > LFU_CACHE;
+    private static final Cache<String, Map<String, TokenBucket>> LFU_CACHE;
 
     static{
         LFU_CACHE = CacheBuilder
                         .newBuilder().maximumSize(DEFAULT_CACHE_COUNT)
-                        .expireAfterWrite(DEFAULT_CACHE_TIME, TimeUnit.MINUTES).build();
+                        .expireAfterAccess(DEFAULT_CACHE_TIME, TimeUnit.MINUTES).build();
     }
 
 
@@ -74,11 +71,7 @@ public final class RateLimiterUtil {
      * @return boolean
      */
     public static boolean enter(HttpServletRequest request) {
-        // 获得IP
-        String clientIpAddress = IPUtil.getClientIdBySingle(request);
-        // 获得URI
-        String clientUri = request.getRequestURI();
-        return RateLimiterUtil.enter(clientIpAddress, clientUri);
+        return RateLimiterUtil.enter(request, null);
     }
 
     /**
@@ -109,125 +102,156 @@ public final class RateLimiterUtil {
      * @param dfQps 手动指派QPS
      * @return boolean
      */
-    @SuppressWarnings("UnstableApiUsage")
     public static boolean enter(String clientIpAddress, String resource, Double dfQps) {
-        // IP 为空补偿器
-        if(StrUtil.isBlank(clientIpAddress)){
-            clientIpAddress = DEFAULT_IP;
-        }
-
-        // 计时器
-        long t1 = System.currentTimeMillis();
-
-        Map<String, RateLimiterUtil.RateLimiterInner> rateLimiterInnerMap;
-        try {
-            rateLimiterInnerMap = LFU_CACHE.get(clientIpAddress, ()->{
-                // 当缓存取不到时 重新加载缓存
-                Map<String, RateLimiterUtil.RateLimiterInner> tmpMap = Maps.newConcurrentMap();
-                // 设置限流器
-                RateLimiterUtil.RateLimiterInner rateLimiterInner = new RateLimiterUtil.RateLimiterInner();
-                rateLimiterInner.setQps(dfQps);
-                rateLimiterInner.setRateLimiter(RateLimiter.create(dfQps));
-                tmpMap.put(resource, rateLimiterInner);
-                return tmpMap;
-            });
-        }catch (ExecutionException e){
-            log.error(e.getMessage(), e);
+        long waitMillis = RateLimiterUtil.tryAcquire(clientIpAddress, resource,
+                null == dfQps ? DEFAULT_QPS : dfQps, 0);
+        if(waitMillis > 0){
+            //限速中，提示用户
+            log.error("限流器 - 访问频繁 需等待: "+ waitMillis + "ms, IP地址: " + clientIpAddress + ", URI: " + resource);
             return false;
         }
+        // 正常访问
+        return true;
+    }
 
-        RateLimiterUtil.RateLimiterInner rateLimiterObj;
-
-        Double qps = dfQps;
-        // 初始化过程
-        RateLimiterUtil.RateLimiterInner rateLimiterInner = rateLimiterInnerMap.get(resource);
-        // 如果为空 则创建一个新的限流器
-        if(rateLimiterInner == null){
-            rateLimiterInner = new RateLimiterUtil.RateLimiterInner();
-            rateLimiterInner.setQps(dfQps);
-            rateLimiterInner.setRateLimiter(RateLimiter.create(dfQps));
-            rateLimiterInnerMap.put(resource, rateLimiterInner);
-        }else{
-            qps = rateLimiterInner.getQps();
+    /**
+     * 尝试获取令牌 不阻塞
+     * @param clientId 客户端标识 (IP、用户、租户)
+     * @param resource 资源
+     * @param qps QPS 小于等于0 则不限流
+     * @param burst 突发容量 小于等于0 则与 QPS 一致
+     * @return long 需等待毫秒数 0 为放行
+     */
+    public static long tryAcquire(String clientId, String resource, double qps, int burst) {
+        //不限流
+        if (qps <= 0) {
+            return 0;
         }
-        rateLimiterObj = rateLimiterInner;
+        TokenBucket bucket = getBucket(clientId, resource, qps, burst);
+        if(null == bucket){
+            return 0;
+        }
+        return bucket.tryAcquire();
+    }
 
-        //不限流
-        if (qps == null || qps == 0.0) {
-            return true;
+    /**
+     * 获得令牌桶 限制变化时重建
+     * @param clientId 客户端标识 (IP、用户、租户)
+     * @param resource 资源
+     * @param qps QPS
+     * @param burst 突发容量 小于等于0 则与 QPS 一致
+     * @return TokenBucket
+     */
+    public static TokenBucket getBucket(String clientId, String resource, double qps, int burst) {
+        // IP 为空补偿器
+        if(StrUtil.isBlank(clientId)){
+            clientId = DEFAULT_IP;
         }
 
-        RateLimiter rateLimiter = rateLimiterObj.getRateLimiter();
+        Map<String, TokenBucket> bucketMap;
+        try {
+            bucketMap = LFU_CACHE.get(clientId, Maps::newConcurrentMap);
+        }catch (ExecutionException e){
+            log.error(e.getMessage(), e);
+            return null;
+        }
 
-        //非阻塞
-        if (!rateLimiter.tryAcquire(DEFAULT_WAIT, TimeUnit.MILLISECONDS)) {
-            //限速中，提示用户
-            log.error("限流器 - 访问频繁 耗时: "+ (System.currentTimeMillis() - t1) + "ms, IP地址: " + clientIpAddress + ", URI: " + resource);
-            return false;
-        } else {
-            // 正常访问
-            return true;
+        TokenBucket bucket = bucketMap.get(resource);
+        if(null == bucket || !bucket.isSame(qps, burst)){
+            bucket = new TokenBucket(qps, burst);
+            bucketMap.put(resource, bucket);
         }
+        return bucket;
     }
 
 
     /**
-     * 限流器
+     * GCRA 令牌桶
+     *
+     * 每个令牌间隔 interval，可透支 burst 个令牌
+     * 只记录理论到达时间 TAT，CAS 更新 无锁
      */
-    @Data
-    @SuppressWarnings("UnstableApiUsage")
-    public static class RateLimiterInner {
+    public static final class TokenBucket {
 
         /** qps */
-        private Double qps;
-
-        /** 限流器 */
-        private RateLimiter rateLimiter;
-
-    }
+        private final double qps;
+        /** 突发容量 */
+        private final int burst;
+        /** 令牌间隔 (纳秒) */
+        private final long interval;
+        /** 容忍度 (纳秒) */
+        private final long tolerance;
+        /** 理论到达时间 (纳秒) */
+        private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+
+        public TokenBucket(double qps, int burst) {
+            this.qps = qps;
+            this.burst = burst > 0 ? burst : Math.max(1, (int) Math.ceil(qps));
+            this.interval = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / qps));
+            this.tolerance = this.interval * this.burst;
+        }
 
-    // ==============
-
-
-
-    public static void main(String[] args) {
-//        int count = 500;
-//        RateLimiterUtil.removeIp("127.0.0.1");
-//        AsyncProcessExecutor normalExecutor = AsyncProcessExecutorFactory.createNormalExecutor();
-//        for (int i = 0; i < count; i++) {
-//            normalExecutor.put(()->{
-//                RateLimiter rateLimiter = RateLimiter.create(1);
-//
-//
-//                boolean enter = RateLimiterUtil.enter("127.0.0.1","/api/v1", 2d);
-//                System.out.println(enter);
-//            });
-//        }
-//        normalExecutor.execute();
-
-
-        int count = 3;
-        RateLimiter rateLimiter = RateLimiter.create(count);
-        AsyncProcessExecutor normalExecutor = AsyncProcessExecutorFactory.createWaitExecutor();
-
-        int num = 0;
-        while (true){
-            System.out.println("------------"+ (++num) +"------------");
-            for (int i = 0; i < count+1; i++) {
-                normalExecutor.put(()->{
-                    boolean tryAcquire = rateLimiter.tryAcquire(500, TimeUnit.MILLISECONDS);
-                    System.out.println(tryAcquire);
-                });
+        /**
+         * 尝试获取令牌
+         * @return long 需等待毫秒数 0 为放行
+         */
+        public long tryAcquire() {
+            long now = System.nanoTime();
+            for (;;) {
+                long curr = tat.get();
+                long newTat = Math.max(curr, now) + interval;
+                long allowAt = newTat - tolerance;
+                if(now < allowAt){
+                    return toMillis(allowAt - now);
+                }
+                if(tat.compareAndSet(curr, newTat)){
+                    return 0;
+                }
             }
-            normalExecutor.execute();
-            ThreadUtil.sleep(1100);
         }
-    }
 
+        /**
+         * 预检 不消耗令牌
+         * @return long 需等待毫秒数 0 为可放行
+         */
+        public long peek() {
+            long now = System.nanoTime();
+            long allowAt = Math.max(tat.get(), now) + interval - tolerance;
+            return now < allowAt ? toMillis(allowAt - now) : 0;
+        }
 
-}
+        /**
+         * 记录一次放行 (由集群限流放行后 同步本地)
+         */
+        public void record() {
+            long now = System.nanoTime();
+            tat.updateAndGet((curr) -> Math.max(curr, now) + interval);
+        }
 
+        /**
+         * 获得突发容量
+         * @return int
+         */
+        public int getBurst() {
+            return burst;
+        }
 
+        /**
+         * 获得令牌间隔 (纳秒)
+         * @return long
+         */
+        public long getInterval() {
+            return interval;
+        }
 
+        private boolean isSame(double qps, int burst) {
+            return Double.compare(this.qps, qps) == 0
+                    && (burst <= 0 || this.burst == burst);
+        }
 
+        private static long toMillis(long nanos) {
+            return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(nanos + 999_999L));
+        }
+    }
 
+}
@@ -61,6 +61,22 @@ public class ZipUtils {
     }
 
 
+    /**
+     * 写入单个文件 供边生成边输出
+     * 调用方持有 ZipOutputStream，多线程生成时 需由同一线程写入
+     *
+     * @param zos zip输出流
+     * @param path 路径
+     * @param name 文件名
+     * @param data 具体文本内容
+     * @throws IOException 写入异常
+     */
+    public static void putEntry(ZipOutputStream zos, String path, String name, String data) throws IOException {
+        zos.putNextEntry(new ZipEntry(path + name));
+        zos.write(data.getBytes(StandardCharsets.UTF_8));
+        zos.closeEntry();
+    }
+
     /**
      * 文本直接转zip压缩成文件
      *
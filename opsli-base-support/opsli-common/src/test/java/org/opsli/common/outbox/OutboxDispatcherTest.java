@@ -0,0 +1,187 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.common.outbox;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 外发消息调度器 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 19:00
+ */
+public class OutboxDispatcherTest {
+
+    private static final String NAME = "test";
+
+    private final List<OutboxDispatcher<TestMessage>> dispatchers = new ArrayList<>();
+
+    @AfterEach
+    public void destroy(){
+        for (OutboxDispatcher<TestMessage> dispatcher : dispatchers) {
+            dispatcher.stop();
+        }
+    }
+
+    /**
+     * 暂存目录 与 暂存文件 仅属主可读写
+     */
+    @Test
+    public void spoolIsOwnerOnly(@TempDir Path root) throws Exception {
+        Path spoolPath = root.resolve("instance-a");
+        OutboxDispatcher<TestMessage> dispatcher = create(spoolPath, new ArrayList<>());
+        String id = dispatcher.enqueue(new TestMessage("a@opsli.com"));
+
+        Path dir = spoolPath.resolve(NAME);
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(spoolPath)));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+        assertEquals("rw-------", PosixFilePermissions.toString(
+                Files.getPosixFilePermissions(dir.resolve(id + ".json"))));
+    }
+
+    /**
+     * 已存在的目录 权限过宽时 启动时收紧
+     */
+    @Test
+    public void existingDirTightened(@TempDir Path root) throws Exception {
+        Path dir = root.resolve(NAME);
+        Files.createDirectories(dir);
+        Files.setPosixFilePermissions(root, PosixFilePermissions.fromString("rwxrwxrwx"));
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxrwxrwx"));
+
+        OutboxDispatcher<TestMessage> dispatcher = create(root, new ArrayList<>());
+        dispatcher.start();
+
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(root)));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+    }
+
+    /**
+     * 重启后 载入未完成的消息 发送成功后删除暂存文件；其他实例的暂存目录 不受影响
+     */
+    @Test
+    public void recoverPerInstance(@TempDir Path root) throws Exception {
+        Path instanceA = root.resolve("a");
+        Path instanceB = root.resolve("b");
+        OutboxDispatcher<TestMessage> before = create(instanceA, new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            before.enqueue(new TestMessage(i + "@opsli.com"));
+        }
+        assertEquals(3, count(instanceA));
+
+        // 实例 B 启动 不载入实例 A 的消息
+        List<TestMessage> sentB = new CopyOnWriteArrayList<>();
+        create(instanceB, sentB).start();
+
+        // 实例 A 重启
+        List<TestMessage> sentA = new CopyOnWriteArrayList<>();
+        create(instanceA, sentA).start();
+        long end = System.currentTimeMillis() + 5000;
+        while ((sentA.size() < 3 || count(instanceA) > 0) && System.currentTimeMillis() < end){
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+
+        assertEquals(3, sentA.size());
+        assertEquals(0, count(instanceA));
+        assertTrue(sentB.isEmpty());
+    }
+
+    /**
+     * 目录不属于当前用户 等无法使用时 不写入暂存文件，消息仍在内存中发送
+     */
+    @Test
+    public void unusableSpoolKeepsInMemory(@TempDir Path root) throws Exception {
+        // 同名文件占用 无法创建目录
+        Path spoolPath = root.resolve("file");
+        Files.createFile(spoolPath);
+
+        List<TestMessage> sent = new CopyOnWriteArrayList<>();
+        OutboxDispatcher<TestMessage> dispatcher = create(spoolPath, sent);
+        dispatcher.start();
+        dispatcher.enqueue(new TestMessage("a@opsli.com"));
+
+        long end = System.currentTimeMillis() + 5000;
+        while (sent.isEmpty() && System.currentTimeMillis() < end){
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertEquals(1, sent.size());
+        assertFalse(Files.isDirectory(spoolPath));
+    }
+
+    // ========================
+
+    private OutboxDispatcher<TestMessage> create(Path spoolPath, List<TestMessage> sent){
+        OutboxDispatcher<TestMessage> dispatcher = new OutboxDispatcher<>(NAME, TestMessage.class,
+                spoolPath.toString(), 1, 10, 0L, (batch) -> {
+            sent.addAll(batch);
+            return Collections.emptyList();
+        });
+        dispatchers.add(dispatcher);
+        return dispatcher;
+    }
+
+    private static int count(Path spoolPath){
+        File[] files = spoolPath.resolve(NAME).toFile().listFiles((dir, name) -> name.endsWith(".json"));
+        return files == null ? 0 : files.length;
+    }
+
+    /**
+     * 测试消息
+     */
+    public static class TestMessage extends OutboxMessage {
+
+        private static final long serialVersionUID = 1L;
+
+        private String to;
+
+        public TestMessage() {
+        }
+
+        public TestMessage(String to) {
+            this.to = to;
+        }
+
+        public String getTo() {
+            return to;
+        }
+
+        public void setTo(String to) {
+            this.to = to;
+        }
+
+        @Override
+        public Collection<String> recipients() {
+            return Collections.singletonList(to);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 单机限流 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 15:20
+ */
+public class RateLimiterUtilTest {
+
+    /**
+     * 突发容量内全部放行，超出后立即拒绝 并返回需等待的毫秒数
+     */
+    @Test
+    public void burstThenReject(){
+        // 10 秒一个令牌 测试期间不会补充
+        RateLimiterUtil.TokenBucket bucket = new RateLimiterUtil.TokenBucket(0.1d, 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryAcquire());
+        }
+
+        long waitMillis = bucket.tryAcquire();
+        assertTrue(waitMillis > 0);
+        assertTrue(waitMillis <= TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * 预检 不消耗令牌
+     */
+    @Test
+    public void peekDoesNotConsume(){
+        RateLimiterUtil.TokenBucket bucket = new RateLimiterUtil.TokenBucket(0.1d, 1);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, bucket.peek());
+        }
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.peek() > 0);
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    /**
+     * 拒绝不阻塞 也不消耗令牌，令牌补充后恢复放行
+     */
+    @Test
+    public void rejectDoesNotConsume() throws InterruptedException {
+        // 100ms 一个令牌
+        RateLimiterUtil.TokenBucket bucket = new RateLimiterUtil.TokenBucket(10d, 1);
+        assertEquals(0, bucket.tryAcquire());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(bucket.tryAcquire() > 0);
+        }
+        // 1000 次拒绝 远小于一个令牌间隔
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+
+        TimeUnit.MILLISECONDS.sleep(bucket.tryAcquire() + 5);
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    /**
+     * 并发获取 放行数严格等于突发容量
+     */
+    @Test
+    public void concurrentAcquire() throws Exception {
+        int burst = 100;
+        int threads = 16;
+        int perThread = 50;
+        RateLimiterUtil.TokenBucket bucket = new RateLimiterUtil.TokenBucket(0.1d, burst);
+
+        AtomicInteger passed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < perThread; j++) {
+                        if(bucket.tryAcquire() == 0){
+                            passed.incrementAndGet();
+                        }else {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        }finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(burst, passed.get());
+        assertEquals(threads * perThread - burst, rejected.get());
+    }
+
+    /**
+     * 同一客户端、资源 复用令牌桶，限制变化时重建
+     */
+    @Test
+    public void bucketRebuiltOnLimitChange(){
+        RateLimiterUtil.TokenBucket bucket =
+                RateLimiterUtil.getBucket("10.0.0.1", "/bucketRebuilt", 5d, 0);
+        assertSame(bucket, RateLimiterUtil.getBucket("10.0.0.1", "/bucketRebuilt", 5d, 0));
+        assertEquals(5, bucket.getBurst());
+
+        RateLimiterUtil.TokenBucket changed =
+                RateLimiterUtil.getBucket("10.0.0.1", "/bucketRebuilt", 5d, 8);
+        assertNotSame(bucket, changed);
+        assertEquals(8, changed.getBurst());
+    }
+
+    /**
+     * 不同客户端 互不影响
+     */
+    @Test
+    public void clientsAreIsolated(){
+        assertEquals(0, RateLimiterUtil.tryAcquire("10.0.0.2", "/isolated", 0.1d, 1));
+        assertTrue(RateLimiterUtil.tryAcquire("10.0.0.2", "/isolated", 0.1d, 1) > 0);
+        assertEquals(0, RateLimiterUtil.tryAcquire("10.0.0.3", "/isolated", 0.1d, 1));
+    }
+
+}
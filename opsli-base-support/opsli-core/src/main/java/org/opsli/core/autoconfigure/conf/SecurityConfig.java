@@ -18,6 +18,7 @@ package org.opsli.core.autoconfigure.conf;
 import cn.hutool.extra.spring.SpringUtil;
 import com.google.common.collect.Lists;
 import lombok.AllArgsConstructor;
+import org.opsli.core.security.expression.SnapshotMethodSecurityExpressionHandler;
 import org.opsli.core.security.filter.JwtAuthenticationTokenFilter;
 import org.opsli.core.security.service.UidUserDetailDetailServiceImpl;
 import org.opsli.plugins.security.exception.handler.AccessDeniedHandlerImpl;
@@ -25,6 +26,7 @@ import org.opsli.plugins.security.exception.handler.AuthenticationEntryPointImpl
 import org.opsli.plugins.security.properties.AuthProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.ProviderManager;
@@ -108,6 +110,14 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .authenticationEntryPoint(authenticationEntryPoint);
     }
 
+    /**
+     * 方法鉴权表达式处理器 (@PreAuthorize 权限判断走授权快照)
+     */
+    @Bean
+    public static MethodSecurityExpressionHandler methodSecurityExpressionHandler() {
+        return new SnapshotMethodSecurityExpressionHandler();
+    }
+
     /**
      * 认证管理器
      */
@@ -21,6 +21,9 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 接口路径前缀配置
  *
@@ -38,4 +41,73 @@ public class CacheProperties {
     /** 缓存前缀 */
     private String prefix;
 
+    /** 本地一级缓存 */
+    private Local local = new Local();
+
+    /** 空缓存过滤器 */
+    private NullFilter nullFilter = new NullFilter();
+
+    // ============== 内部类 =============
+
+    /**
+     * 本地一级缓存
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = false)
+    public static class Local {
+
+        /** 是否开启 */
+        private boolean enable = true;
+
+        /** 默认最大条数 */
+        private long maxSize = 10000;
+
+        /** 默认存活时间 (秒) 兜底集群广播丢失的情况 */
+        private int ttl = 60;
+
+        /** 按 Key 前缀单独设置 (不包含 kv#/hash# 和 缓存前缀) */
+        private List<Spec> specs = new ArrayList<>();
+
+
+        /**
+         * 单个前缀配置
+         */
+        @Data
+        @EqualsAndHashCode(callSuper = false)
+        public static class Spec {
+
+            /** Key 前缀 例如 user_id: */
+            private String prefix;
+
+            /** 最大条数 */
+            private Long maxSize;
+
+            /** 存活时间 (秒) */
+            private Integer ttl;
+
+        }
+
+    }
+
+    /**
+     * 空缓存过滤器 (计数布隆过滤器)
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = false)
+    public static class NullFilter {
+
+        /** 预期数量 (单个命名空间) */
+        private long expectedInsertions = 50000;
+
+        /** 误判率 */
+        private double fpp = 0.001D;
+
+        /** 轮换周期 (秒) 空记录最多存活两个周期 */
+        private int rotateTime = 150;
+
+        /** 最大命名空间数量 */
+        private int maxNamespaces = 32;
+
+    }
+
 }
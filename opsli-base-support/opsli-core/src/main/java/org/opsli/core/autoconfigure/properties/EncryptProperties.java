@@ -22,4 +22,7 @@ public class EncryptProperties {
     /** 秘钥 */
     private String key;
 
+    /** 查询结果条数 达到该值时 并行解密 (小于等于0 不开启) */
+    private int parallelThreshold = 1000;
+
 }
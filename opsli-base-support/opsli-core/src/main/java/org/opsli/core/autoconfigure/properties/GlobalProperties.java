@@ -43,6 +43,9 @@ public class GlobalProperties {
     /** 代码生成器 */
     private Generator generator;
 
+    /** 分片上传 */
+    private Chunk chunk;
+
     // ============== 内部类 =============
 
     /**
@@ -131,6 +134,18 @@ public class GlobalProperties {
         /** 最大导出操作数 */
         private Integer exportMaxCount;
 
+        /** 导入 每批行数 */
+        private Integer importBatchSize = 2000;
+
+        /** 导入 入库并行数 */
+        private Integer importParallelism = 2;
+
+        /** 导入 阶段间队列容量 (批) */
+        private Integer importQueueCapacity = 4;
+
+        /** 导入 失败明细最大记录数 */
+        private Integer importMaxErrors = 500;
+
     }
 
     /**
@@ -145,5 +160,22 @@ public class GlobalProperties {
 
     }
 
-}
+    /**
+     * 分片上传
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = false)
+    public static class Chunk {
+
+        /** 分片暂存目录 仅属主可读写，为空则默认 用户目录下 .opsli/chunk */
+        private String path;
+
+        /** 每个用户 进行中的上传任务上限 */
+        private Integer maxSessionsPerUser = 8;
 
+        /** 每个用户 进行中的上传任务 文件大小合计上限 (字节) */
+        private Long maxBytesPerUser = 10L * 1024 * 1024 * 1024;
+
+    }
+
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.autoconfigure.properties;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.opsli.common.enums.LimiterType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 限流器配置
+ *
+ * @author Parker
+ * @date 2020-12-31
+ */
+@Configuration
+@ConfigurationProperties(prefix = LimiterProperties.PROP_PREFIX)
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class LimiterProperties {
+
+    public static final String PROP_PREFIX = "opsli.limiter";
+
+    /** 是否开启 */
+    private boolean enable = true;
+
+    /** 是否开启集群限流 (关闭后 只做单机限流) */
+    private boolean cluster = true;
+
+    /** 批量预取令牌 占突发容量的比例 (0 为不预取 每次请求都经过 Redis) */
+    private double leaseRatio = 0.1d;
+
+    /** 限流策略 优先于注解 (租户策略 优先于 接口策略) */
+    private List<Policy> policies = new ArrayList<>();
+
+    // ============== 内部类 =============
+
+    /**
+     * 限流策略
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = false)
+    public static class Policy {
+
+        /** 接口路径 (Ant 风格) */
+        private String path;
+
+        /** 租户ID 为空则对所有租户生效 */
+        private String tenantId;
+
+        /** 限流维度 为空则沿用注解 */
+        private LimiterType type;
+
+        /** QPS 小于等于0 则不限流 */
+        private Double qps;
+
+        /** 突发容量 为空则沿用注解 */
+        private Integer burst;
+
+    }
+
+}
@@ -42,22 +42,22 @@ import org.opsli.api.base.warpper.ApiWrapper;
 import org.opsli.api.wrapper.system.user.UserModel;
 import org.opsli.common.constants.RedisConstants;
 import org.opsli.common.constants.TreeConstants;
-import org.opsli.common.enums.ExcelOperate;
 import org.opsli.common.exception.ServiceException;
 import org.opsli.common.utils.UniqueStrGeneratorUtils;
-import org.opsli.common.utils.WrapperUtil;
 import org.opsli.core.autoconfigure.properties.GlobalProperties;
 import org.opsli.core.base.entity.BaseEntity;
 import org.opsli.core.base.entity.HasChildren;
 import org.opsli.core.base.service.interfaces.CrudServiceInterface;
 import org.opsli.core.cache.CacheUtil;
 import org.opsli.core.msg.CoreMsg;
+import org.opsli.core.persistence.Page;
 import org.opsli.core.persistence.querybuilder.QueryBuilder;
 import org.opsli.core.persistence.querybuilder.WebQueryBuilder;
 import org.opsli.core.utils.ExcelUtil;
 import org.opsli.core.utils.UserUtil;
 import org.opsli.plugins.excel.exception.ExcelPluginException;
-import org.opsli.plugins.excel.listener.BatchExcelListener;
+import org.opsli.plugins.excel.pipeline.ExcelImportPipeline;
+import org.opsli.plugins.excel.pipeline.ExcelImportReport;
 import org.opsli.plugins.redis.RedisPlugin;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.ModelAttribute;
@@ -71,6 +71,7 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -85,6 +86,8 @@ public abstract class BaseRestController <T extends BaseEntity, E extends ApiWra
 
     /** 凭证 10分钟失效 */
     private static final int CERTIFICATE_EXPIRED_MINUTE = 10;
+    /** Excel 导出 每批条数 */
+    private static final int EXCEL_EXPORT_CHUNK_SIZE = 1000;
 
     /** 配置类 */
     @Autowired
@@ -133,33 +136,51 @@ public abstract class BaseRestController <T extends BaseEntity, E extends ApiWra
         try {
             UserModel user = UserUtil.getUser();
             Date currDate = DateUtil.date();
-
-            // 导入优化为 监听器 模式 超过一定阈值直接释放资源 防止导入数据导致系统 OOM
-            ExcelUtil.getInstance().readExcelByListener(files.get(0), IService.getModelClass(), new BatchExcelListener<E>() {
-                @Override
-                public void saveData(List<E> dataList) {
-                    // 处理字典数据
-                    List<E> disposeData = ExcelUtil.getInstance().handleDatas(dataList, IService.getModelClass(), ExcelOperate.READ);
-                    // 手动赋值 必要数据 防止频繁开启Redis网络IO
-                    for (E model : disposeData) {
+            GlobalProperties.Excel excelProperties = globalProperties.getExcel();
+
+            // 字典只取一次 逐行翻译
+            Consumer<E> translator = ExcelUtil.getInstance().getImportTranslator(IService.getModelClass());
+
+            // 流水线导入 解析、校验/翻译、入库 三阶段重叠执行，有界队列背压 防止导入数据导致系统 OOM
+            ExcelImportPipeline<E> pipeline = ExcelImportPipeline.<E>builder()
+                    .batchSize(excelProperties.getImportBatchSize())
+                    .parallelism(excelProperties.getImportParallelism())
+                    .queueCapacity(excelProperties.getImportQueueCapacity())
+                    .maxErrors(excelProperties.getImportMaxErrors())
+                    .rowHandler(model -> {
+                        // 处理字典数据
+                        translator.accept(model);
+                        // 手动赋值 必要数据 防止频繁开启Redis网络IO
                         model.setIzManual(true);
                         model.setCreateBy(user.getId());
                         model.setUpdateBy(user.getId());
                         model.setCreateTime(currDate);
                         model.setUpdateTime(currDate);
-                    }
-                    // 数据库插入数据
-                    IService.insertBatch(disposeData);
-                }
-            });
+                    })
+                    // 数据库插入数据 整批失败时 逐行插入定位失败行
+                    .batchInserter(IService::insertBatch)
+                    .rowInserter(IService::insert)
+                    .build();
+
+            ExcelImportReport report = ExcelUtil.getInstance().importExcel(
+                    files.get(0), IService.getModelClass(), pipeline);
 
             // 花费毫秒数
             long timerCount = timer.interval();
-            // 提示信息
-            msgInfo = StrUtil.format(CoreMsg.EXCEL_IMPORT_SUCCESS.getMessage(), DateUtil.formatBetween(timerCount));
-            // 导出成功
-            resultVo = ResultWrapper.getSuccessResultWrapper(msgInfo);
-            resultVo.setCode(CoreMsg.EXCEL_IMPORT_SUCCESS.getCode());
+            if(report.hasError()){
+                // 提示信息
+                msgInfo = StrUtil.format(CoreMsg.EXCEL_IMPORT_PART.getMessage(),
+                        report.getSuccessCount(), report.getFailedCount(), DateUtil.formatBetween(timerCount));
+                // 部分导入失败 返回失败明细
+                resultVo = ResultWrapper.getCustomResultWrapper(report,
+                        CoreMsg.EXCEL_IMPORT_PART.getCode(), msgInfo);
+            }else{
+                // 提示信息
+                msgInfo = StrUtil.format(CoreMsg.EXCEL_IMPORT_SUCCESS.getMessage(), DateUtil.formatBetween(timerCount));
+                // 导入成功
+                resultVo = ResultWrapper.getCustomResultWrapper(report,
+                        CoreMsg.EXCEL_IMPORT_SUCCESS.getCode(), msgInfo);
+            }
 
         } catch (ExcelPluginException e) {
             // 花费毫秒数
@@ -253,8 +274,6 @@ public abstract class BaseRestController <T extends BaseEntity, E extends ApiWra
         // 主题名称
         String subName = cache.getSubName();
 
-        List<E> modelList = null;
-
         // 如果导出Excel 需要查询数据
         if(ExcelExportCache.EXCEL_EXPORT.equals(cache.getType())){
             // 参数Map
@@ -266,19 +285,29 @@ public abstract class BaseRestController <T extends BaseEntity, E extends ApiWra
                 parameterMap.put(k, parameters);
             });
 
-            QueryBuilder<T> queryBuilder = new WebQueryBuilder<>(IService.getEntityClass(), parameterMap);
-            QueryWrapper<T> queryWrapper = queryBuilder.build();
-
-            List<T> entityList = IService.findList(queryWrapper);
-            // 转化类型
-            modelList = WrapperUtil.transformInstance(entityList, IService.getModelClass());
-
+            // 导出Excel 按游标分批查询、分批写入 内存占用与导出条数无关
+            WebQueryBuilder<T> queryBuilder = new WebQueryBuilder<>(IService.getEntityClass(), parameterMap);
+            ExcelUtil.getInstance().writeExcel(
+                    response, subName,"sheet", IService.getModelClass(), ExcelTypeEnum.XLSX, writer -> {
+                        String cursor = "";
+                        while (cursor != null){
+                            Page<T, E> page = new Page<>(1, EXCEL_EXPORT_CHUNK_SIZE);
+                            page.setQueryWrapper(queryBuilder.build());
+                            page.setKeysetOrders(queryBuilder.getOrders());
+                            page.setSearchCount(false);
+                            page.setCursor(cursor);
+                            page = IService.findPageByKeyset(page);
+
+                            writer.accept(page.getList());
+                            cursor = page.getNextCursor();
+                        }
+                    });
+        }else {
+            // 导出Excel
+            ExcelUtil.getInstance().writeExcel(
+                    response, null, subName,"sheet", IService.getModelClass() ,ExcelTypeEnum.XLSX);
         }
 
-        // 导出Excel
-        ExcelUtil.getInstance().writeExcel(
-                response, modelList, subName,"sheet", IService.getModelClass() ,ExcelTypeEnum.XLSX);
-
         // 删除凭证
         redisPlugin.del(certificateCacheKeyTmp);
     }
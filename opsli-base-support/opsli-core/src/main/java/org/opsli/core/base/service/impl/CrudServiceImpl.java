@@ -24,7 +24,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.baomidou.mybatisplus.core.toolkit.ReflectionKit;
 import com.baomidou.mybatisplus.core.toolkit.reflect.SpringReflectionHelper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.baomidou.mybatisplus.extension.toolkit.SqlHelper;
 import com.github.pagehelper.PageInfo;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -33,6 +36,7 @@ import org.opsli.common.utils.WrapperUtil;
 import org.opsli.core.base.entity.BaseEntity;
 import org.opsli.core.base.service.base.BaseService;
 import org.opsli.core.base.service.interfaces.CrudServiceInterface;
+import org.opsli.core.persistence.Keyset;
 import org.opsli.core.persistence.Page;
 import org.opsli.core.persistence.querybuilder.GenQueryBuilder;
 import org.opsli.core.persistence.querybuilder.QueryBuilder;
@@ -43,10 +47,16 @@ import org.springframework.core.GenericTypeResolver;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
 import java.lang.reflect.Type;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * CurdServiceImpl 基类 - 实现类
@@ -69,6 +79,16 @@ import java.util.Map;
 public abstract class CrudServiceImpl<M extends BaseMapper<T>, T extends BaseEntity, E extends ApiWrapper>
         extends BaseService<M, T> implements CrudServiceInterface<T,E> {
 
+    /** 游标分页 总数缓存时效 (秒) */
+    private static final int KEYSET_COUNT_CACHE_TIME = 60;
+    /** 游标分页 总数缓存 翻页时不再重复 COUNT */
+    private static final Cache<String, Long> KEYSET_COUNT_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(KEYSET_COUNT_CACHE_TIME, TimeUnit.SECONDS)
+            .build();
+    /** 游标分页 数据库空值是否视为最小值 */
+    private static volatile Boolean NULLS_SORTED_LOW;
+
     /** Model Clazz 类 */
     protected Class<E> modelClazz = getInnerModelClazz();
 
@@ -259,6 +279,83 @@ public abstract class CrudServiceImpl<M extends BaseMapper<T>, T extends BaseEnt
         return page;
     }
 
+    @Override
+    public Page<T,E> findPageByKeyset(Page<T,E> page) {
+        // 数据处理责任链
+        QueryWrapper<T> qWrapper = this.addHandler(this.getEntityClass(), page.getQueryWrapper());
+        List<Keyset.Order> orders = Keyset.withTieBreaker(page.getKeysetOrders());
+
+        // 总数 (在定位条件之前统计)
+        long total = -1L;
+        if(page.isSearchCount()){
+            total = this.getKeysetCount(qWrapper);
+        }
+
+        // 定位条件
+        if(StringUtils.isNotEmpty(page.getCursor())){
+            Object[] values = Keyset.decode(page.getCursor(), this.getEntityClass(), orders);
+            qWrapper.apply(Keyset.getSeekSql(orders, values, this.isNullsSortedLow()), values);
+        }
+
+        // 追加主键排序 多取一条 判断是否有下一页
+        Keyset.Order tieBreaker = orders.get(orders.size() - 1);
+        if(page.getKeysetOrders() == null || !page.getKeysetOrders().contains(tieBreaker)){
+            qWrapper.orderBy(true, tieBreaker.isAsc(), tieBreaker.getColumn());
+        }
+        qWrapper.last("LIMIT " + (page.getPageSize() + 1));
+
+        List<T> list = super.list(qWrapper);
+        String nextCursor = null;
+        if(list.size() > page.getPageSize()){
+            list = list.subList(0, page.getPageSize());
+            nextCursor = Keyset.encode(list.get(list.size() - 1), orders);
+        }
+
+        page.setList(transformTs2Ms(list));
+        page.setTotal(total);
+        page.setNextCursor(nextCursor);
+        return page;
+    }
+
+    /**
+     * 游标分页 数据库空值排序位置 首次使用时读取
+     * @return boolean 空值是否视为最小值
+     */
+    private boolean isNullsSortedLow() {
+        Boolean nullsSortedLow = NULLS_SORTED_LOW;
+        if(null != nullsSortedLow){
+            return nullsSortedLow;
+        }
+        DataSource dataSource = SqlHelper.sqlSessionFactory(this.getEntityClass())
+                .getConfiguration().getEnvironment().getDataSource();
+        try (Connection connection = dataSource.getConnection()){
+            nullsSortedLow = !connection.getMetaData().nullsAreSortedHigh();
+        }catch (SQLException e){
+            log.error(e.getMessage(), e);
+            // 读取失败 按 MySQL 处理 且不缓存
+            return true;
+        }
+        NULLS_SORTED_LOW = nullsSortedLow;
+        return nullsSortedLow;
+    }
+
+    /**
+     * 游标分页 统计总数 短时缓存
+     * 缓存Key 包含完整查询条件 (含租户、数据权限条件)
+     * @param qWrapper 查询条件
+     * @return long
+     */
+    private long getKeysetCount(QueryWrapper<T> qWrapper) {
+        String cacheKey = this.getEntityClass().getName() + ":" + qWrapper.getCustomSqlSegment()
+                + ":" + new TreeMap<>(qWrapper.getParamNameValuePairs());
+        try {
+            return KEYSET_COUNT_CACHE.get(cacheKey, () -> super.count(qWrapper));
+        }catch (ExecutionException e){
+            log.error(e.getMessage(), e);
+            return super.count(qWrapper);
+        }
+    }
+
     // ======================== 对象转化 ========================
 
     /**
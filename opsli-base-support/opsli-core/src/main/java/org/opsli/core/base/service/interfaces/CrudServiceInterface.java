@@ -208,6 +208,14 @@ public interface CrudServiceInterface<T extends BaseEntity, E extends ApiWrapper
      * @return  Page<T>
      */
     Page<T,E> findPageNotCount(Page<T,E> page);
+
+    /**
+     * 查询分页数据 游标分页
+     * 按 page.cursor 定位 不使用 OFFSET，返回 page.nextCursor
+     * @param page 分页
+     * @return  Page<T>
+     */
+    Page<T,E> findPageByKeyset(Page<T,E> page);
     
 
 }
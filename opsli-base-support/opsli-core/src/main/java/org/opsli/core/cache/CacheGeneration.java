@@ -0,0 +1,259 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache;
+
+import cn.hutool.core.convert.Convert;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.common.constants.RedisConstants;
+import org.opsli.plugins.redis.pushsub.entity.BaseSubMessage;
+import org.opsli.plugins.redis.pushsub.receiver.BaseReceiver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
+
+/**
+ * 缓存世代号
+ *
+ * 用户派生缓存 (角色、权限、菜单、组织、授权快照) 的 Key 中带上所依赖维度的世代号
+ * 角色、菜单、组织、租户 变更时 只需递增对应世代号，所有依赖该维度的用户缓存 Key 随之变化
+ * 无需逐个用户删除缓存，旧 Key 不再被访问 由 Redis 存活时间自然淘汰
+ *
+ * 世代号存储在 Redis 中，本地保留副本 短时间内直接使用
+ * 递增后通过 Redis 发布订阅 通知其余节点，消息丢失时 由本地副本过期兜底
+ *
+ * @author Parker
+ * @date 2021/12/10 12:39
+ */
+@Slf4j
+@Order(UTIL_ORDER)
+@Component
+@Lazy(false)
+public class CacheGeneration {
+
+	/** 广播信道 */
+	public static final String CHANNEL = "cache:generation";
+	/** 广播 维度 */
+	public static final String MSG_SCOPE = "scope";
+	/** 广播 世代号 */
+	public static final String MSG_GENERATION = "generation";
+
+	/** 本地副本 存活时间 (毫秒) */
+	private static final long LOCAL_TTL = 1000L;
+
+	/** 本地副本 */
+	private static final Map<Scope, Generation> LOCAL_MAP = new EnumMap<>(Scope.class);
+
+	private static RedisTemplate<String, Object> redisTemplate;
+
+	static {
+		for (Scope scope : Scope.values()) {
+			LOCAL_MAP.put(scope, new Generation());
+		}
+	}
+
+
+	/**
+	 * 获得世代号
+	 * @param scope 维度
+	 * @return long
+	 */
+	public static long get(final Scope scope){
+		Generation generation = LOCAL_MAP.get(scope);
+		long now = System.currentTimeMillis();
+		// 启动阶段 其余工具类可能先于本类初始化 直接使用本地副本
+		if(null == redisTemplate || now - generation.loadTime < LOCAL_TTL){
+			return generation.value();
+		}
+
+		try {
+			Object cache = redisTemplate.opsForValue().get(getKey(scope));
+			generation.update(Convert.toLong(cache, 0L));
+			generation.loadTime = now;
+		}catch (Exception e){
+			// Redis 异常时 继续使用本地副本
+			log.error(e.getMessage(), e);
+		}
+		return generation.value();
+	}
+
+	/**
+	 * 获得世代标识 拼接在缓存Key后
+	 * 不含 ':' 不影响缓存 Key 的命名空间划分
+	 *
+	 * @param scopes 维度
+	 * @return String 例: @r3m1
+	 */
+	public static String tag(final Scope... scopes){
+		StringBuilder sb = new StringBuilder("@");
+		for (Scope scope : scopes) {
+			sb.append(scope.code).append(get(scope));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 递增世代号 使依赖该维度的用户缓存全部失效
+	 *
+	 * 处于事务中时 提交后再递增一次，防止事务提交前 其余请求按旧数据重建缓存
+	 *
+	 * @param scopes 维度
+	 */
+	public static void increment(final Scope... scopes){
+		if(null == scopes){
+			return;
+		}
+		doIncrement(scopes);
+
+		if(TransactionSynchronizationManager.isSynchronizationActive()){
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					doIncrement(scopes);
+				}
+			});
+		}
+	}
+
+	/**
+	 * 更新本地副本 (订阅消息)
+	 * @param scope 维度
+	 * @param value 世代号
+	 */
+	public static void update(final Scope scope, final long value){
+		if(null == scope){
+			return;
+		}
+		LOCAL_MAP.get(scope).update(value);
+	}
+
+	/**
+	 * 递增世代号
+	 * @param scopes 维度
+	 */
+	private static void doIncrement(final Scope... scopes){
+		for (Scope scope : scopes) {
+			Long value = redisTemplate.opsForValue().increment(getKey(scope));
+			if(null == value){
+				continue;
+			}
+			update(scope, value);
+			publish(scope, value);
+		}
+	}
+
+	/**
+	 * 广播世代号
+	 * 广播失败不影响主流程 由本地副本过期兜底
+	 * @param scope 维度
+	 * @param value 世代号
+	 */
+	private static void publish(final Scope scope, final long value){
+		try {
+			JSONObject jsonObj = new JSONObject();
+			jsonObj.put(MSG_SCOPE, scope.name());
+			jsonObj.put(MSG_GENERATION, value);
+
+			BaseSubMessage msg = new BaseSubMessage();
+			msg.build(BaseReceiver.BASE_CHANNEL + CHANNEL, scope.name(), jsonObj);
+			redisTemplate.convertAndSend(msg.getChannel(), msg.getJson());
+		}catch (Exception e){
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 获得世代号 Key
+	 * @param scope 维度
+	 * @return String
+	 */
+	private static String getKey(final Scope scope){
+		return CacheUtil.formatKey(RedisConstants.PREFIX_GENERATION + scope.name().toLowerCase());
+	}
+
+
+	/**
+	 * 维度
+	 */
+	public enum Scope {
+
+		/** 角色 */
+		ROLE("r"),
+		/** 菜单 */
+		MENU("m"),
+		/** 组织 */
+		ORG("o"),
+		/** 租户 */
+		TENANT("t"),
+		/** 字典 (本地字典快照) */
+		DICT("d"),
+		/** 参数 (本地参数、配置对象快照) */
+		OPTIONS("p"),
+
+		;
+
+		private final String code;
+
+		Scope(String code){
+			this.code = code;
+		}
+	}
+
+	/**
+	 * 世代号本地副本
+	 *
+	 * Redis 中世代号只增不减，本地副本同样只前进不后退
+	 * 延迟到达的广播消息、事务内与提交后两次递增的竞争 都不会使副本回退 (回退会让旧缓存重新生效)
+	 */
+	private static final class Generation {
+
+		private final AtomicLong value = new AtomicLong();
+		private volatile long loadTime;
+
+		private long value(){
+			return value.get();
+		}
+
+		private void update(long newValue){
+			long current;
+			do {
+				current = value.get();
+				if(newValue <= current){
+					return;
+				}
+			}while (!value.compareAndSet(current, newValue));
+		}
+	}
+
+	/**
+	 * 初始化
+	 */
+	@Autowired
+	public void init(RedisTemplate<String, Object> redisTemplate){
+		CacheGeneration.redisTemplate = redisTemplate;
+	}
+
+}
@@ -0,0 +1,515 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+import org.opsli.plugins.redis.pushsub.entity.BaseSubMessage;
+import org.opsli.plugins.redis.pushsub.receiver.BaseReceiver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
+
+/**
+ * 本地一级缓存 (L1)
+ *
+ * 位于 SecurityCache 的 Redis 二级缓存之前，按 Key 前缀划分区域，每个区域独立设置 最大条数 和 存活时间
+ * 任意节点 put/hPut/hDel/remove 后 通过 Redis 发布订阅 广播失效消息，其余节点清除本地记录 和 空缓存记录
+ * 存活时间尽量短，兜底广播消息丢失的情况
+ *
+ * 1. 本地记录 保存与 Redis 相同的序列化结果，每次读取 反序列化出独立副本，调用方修改返回值 不影响其余调用方
+ * 2. 每次清除 递增该 Key 所在分段的版本号，回源前取得版本号 写入时版本号已变化 则放弃写入，
+ *    防止 清除前已开始的回源 在清除后写回旧数据
+ *
+ * @author Parker
+ * @date 2021/12/10 12:39
+ */
+@Slf4j
+@Order(UTIL_ORDER)
+@Component
+public class LocalCache {
+
+	/** 广播信道 */
+	public static final String CHANNEL = "cache:local";
+	/** 广播类型 - 清除整个Key */
+	public static final String TYPE_KEY = "KEY";
+	/** 广播类型 - 清除Hash字段 */
+	public static final String TYPE_FIELD = "FIELD";
+	/** 广播 Key集合 */
+	public static final String MSG_KEYS = "keys";
+	/** 广播 Hash字段集合 */
+	public static final String MSG_FIELDS = "fields";
+
+	/** 缓存前缀 KV */
+	private static final String CACHE_PREFIX_KV = "kv#";
+	/** 缓存前缀 HASH */
+	private static final String CACHE_PREFIX_HASH = "hash#";
+	/** 版本号 分段数 (2的幂) */
+	private static final int VERSION_STRIPES = 4096;
+
+	/** 清除版本号 按 Key 分段，不同 Key 落在同一分段 只会多放弃几次写入 */
+	private static final AtomicLongArray VERSIONS = new AtomicLongArray(VERSION_STRIPES);
+
+	/** 是否开启 */
+	private static volatile boolean ENABLE = false;
+	/** 项目缓存前缀 */
+	private static String PREFIX_NAME = "";
+	/** 区域 (按前缀长度倒序 优先匹配最长前缀) */
+	private static volatile List<Region> REGIONS = Collections.emptyList();
+	/** 默认区域 */
+	private static volatile Region DEFAULT_REGION;
+	/** 序列化 与 Redis 值序列化一致 */
+	private static volatile RedisSerializer<Object> SERIALIZER;
+
+
+	/**
+	 * 获得缓存
+	 * @param key 主键
+	 * @return Object
+	 */
+	public static Object get(final String key){
+		if(!ENABLE || null == key){
+			return null;
+		}
+		String localKey = formatKey(key);
+		return deserialize(getRegion(localKey).kv.getIfPresent(localKey));
+	}
+
+	/**
+	 * 获得版本号 回源 (查询 Redis) 前调用，写入时传入
+	 * @param key 主键
+	 * @return long
+	 */
+	public static long version(final String key){
+		if(!ENABLE || null == key){
+			return 0L;
+		}
+		return VERSIONS.get(stripe(formatKey(key)));
+	}
+
+	/**
+	 * 存储缓存
+	 * @param key 主键
+	 * @param val 值
+	 * @param version 回源前取得的版本号
+	 */
+	public static void put(final String key, final Object val, final long version){
+		if(!ENABLE || null == key || null == val){
+			return;
+		}
+		byte[] bytes = serialize(val);
+		if(null == bytes){
+			return;
+		}
+		String localKey = formatKey(key);
+		Region region = getRegion(localKey);
+		region.kv.put(localKey, bytes);
+		// 写入期间 发生了清除 撤销本次写入
+		if(isStale(localKey, version)){
+			region.kv.invalidate(localKey);
+		}
+	}
+
+	/**
+	 * 获得缓存 Hash
+	 * @param key 主键
+	 * @param field 字段
+	 * @return Object
+	 */
+	public static Object hGet(final String key, final String field){
+		if(!ENABLE || null == key || null == field){
+			return null;
+		}
+		String localKey = formatKey(key);
+		ConcurrentMap<String, byte[]> fieldMap = getRegion(localKey).hash.getIfPresent(localKey);
+		if(null == fieldMap){
+			return null;
+		}
+		return deserialize(fieldMap.get(field));
+	}
+
+	/**
+	 * 存储缓存 Hash
+	 * @param key 主键
+	 * @param field 字段
+	 * @param val 值
+	 * @param version 回源前取得的版本号
+	 */
+	public static void hPut(final String key, final String field, final Object val, final long version){
+		if(!ENABLE || null == key || null == field || null == val){
+			return;
+		}
+		byte[] bytes = serialize(val);
+		if(null == bytes){
+			return;
+		}
+		String localKey = formatKey(key);
+		try {
+			ConcurrentMap<String, byte[]> fieldMap = getRegion(localKey).hash.get(localKey, ConcurrentHashMap::new);
+			fieldMap.put(field, bytes);
+			// 写入期间 发生了清除 撤销本次写入
+			if(isStale(localKey, version)){
+				fieldMap.remove(field, bytes);
+			}
+		}catch (Exception e){
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 获得全部缓存 Hash
+	 * @param key 主键
+	 * @return Map 副本
+	 */
+	public static Map<String, Object> hGetAll(final String key){
+		if(!ENABLE || null == key){
+			return null;
+		}
+		String localKey = formatKey(key);
+		Map<String, byte[]> cache = getRegion(localKey).hashAll.getIfPresent(localKey);
+		if(null == cache){
+			return null;
+		}
+		Map<String, Object> cacheMap = new HashMap<>(cache.size());
+		for (Map.Entry<String, byte[]> entry : cache.entrySet()) {
+			cacheMap.put(entry.getKey(), deserialize(entry.getValue()));
+		}
+		return cacheMap;
+	}
+
+	/**
+	 * 存储全部缓存 Hash
+	 * @param key 主键
+	 * @param cacheMap 缓存Map
+	 * @param version 回源前取得的版本号
+	 */
+	public static void hPutAll(final String key, final Map<String, Object> cacheMap, final long version){
+		if(!ENABLE || null == key || null == cacheMap){
+			return;
+		}
+		Map<String, byte[]> bytesMap = new HashMap<>(cacheMap.size());
+		for (Map.Entry<String, Object> entry : cacheMap.entrySet()) {
+			byte[] bytes = serialize(entry.getValue());
+			if(null == bytes){
+				return;
+			}
+			bytesMap.put(entry.getKey(), bytes);
+		}
+		String localKey = formatKey(key);
+		Region region = getRegion(localKey);
+		region.hashAll.put(localKey, Collections.unmodifiableMap(bytesMap));
+		// 写入期间 发生了清除 撤销本次写入
+		if(isStale(localKey, version)){
+			region.hashAll.invalidate(localKey);
+		}
+	}
+
+
+	// =================================================================================================================
+
+	/**
+	 * 清除本地 Key (KV 和 Hash)
+	 * @param keys 主键
+	 */
+	public static void evict(final String... keys){
+		if(!ENABLE || null == keys){
+			return;
+		}
+		for (String key : keys) {
+			if(null == key){
+				continue;
+			}
+			String localKey = formatKey(key);
+			// 先递增版本号 再清除，正在进行的写入 能感知到本次清除
+			VERSIONS.incrementAndGet(stripe(localKey));
+			Region region = getRegion(localKey);
+			region.kv.invalidate(localKey);
+			region.hash.invalidate(localKey);
+			region.hashAll.invalidate(localKey);
+		}
+	}
+
+	/**
+	 * 清除本地 Hash字段
+	 * @param key 主键
+	 * @param fields 字段
+	 */
+	public static void evictFields(final String key, final String... fields){
+		if(!ENABLE || null == key || null == fields){
+			return;
+		}
+		String localKey = formatKey(key);
+		VERSIONS.incrementAndGet(stripe(localKey));
+		Region region = getRegion(localKey);
+		// 全量 Hash 与字段不一致 直接清除
+		region.hashAll.invalidate(localKey);
+		ConcurrentMap<String, byte[]> fieldMap = region.hash.getIfPresent(localKey);
+		if(null == fieldMap){
+			return;
+		}
+		for (String field : fields) {
+			if(null != field){
+				fieldMap.remove(field);
+			}
+		}
+	}
+
+	/**
+	 * 清除本地 Key 并广播给其余节点
+	 * @param redisTemplate redisTemplate
+	 * @param keys 主键
+	 */
+	public static void evictAndPublish(final RedisTemplate<String, Object> redisTemplate,
+									   final String... keys){
+		if(null == keys){
+			return;
+		}
+		evict(keys);
+
+		JSONObject jsonObj = new JSONObject();
+		jsonObj.put(MSG_KEYS, Arrays.asList(keys));
+		publish(redisTemplate, TYPE_KEY, jsonObj);
+	}
+
+	/**
+	 * 清除本地 Hash字段 并广播给其余节点
+	 * @param redisTemplate redisTemplate
+	 * @param key 主键
+	 * @param fields 字段
+	 */
+	public static void evictFieldsAndPublish(final RedisTemplate<String, Object> redisTemplate,
+											 final String key, final String... fields){
+		if(null == key || null == fields){
+			return;
+		}
+		evictFields(key, fields);
+
+		JSONObject jsonObj = new JSONObject();
+		jsonObj.put(MSG_KEYS, Collections.singletonList(key));
+		jsonObj.put(MSG_FIELDS, Arrays.asList(fields));
+		publish(redisTemplate, TYPE_FIELD, jsonObj);
+	}
+
+	/**
+	 * 清空全部本地缓存
+	 */
+	public static void clear(){
+		for (int i = 0; i < VERSION_STRIPES; i++) {
+			VERSIONS.incrementAndGet(i);
+		}
+		for (Region region : REGIONS) {
+			region.invalidateAll();
+		}
+		if(null != DEFAULT_REGION){
+			DEFAULT_REGION.invalidateAll();
+		}
+	}
+
+	/**
+	 * 广播失效消息
+	 * 广播失败不影响主流程 由本地存活时间兜底
+	 * @param redisTemplate redisTemplate
+	 * @param type 类型
+	 * @param jsonObj 数据
+	 */
+	private static void publish(final RedisTemplate<String, Object> redisTemplate,
+								final String type, final JSONObject jsonObj){
+		if(null == redisTemplate){
+			return;
+		}
+		try {
+			BaseSubMessage msg = new BaseSubMessage();
+			msg.build(BaseReceiver.BASE_CHANNEL + CHANNEL, type, jsonObj);
+			redisTemplate.convertAndSend(msg.getChannel(), msg.getJson());
+		}catch (Exception e){
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 格式化本地Key 去掉 kv# 和 hash# 前缀 使 KV 与 Hash 共用同一逻辑Key
+	 * @param key 主键
+	 * @return String
+	 */
+	private static String formatKey(final String key){
+		if(key.startsWith(CACHE_PREFIX_KV)){
+			return key.substring(CACHE_PREFIX_KV.length());
+		}
+		if(key.startsWith(CACHE_PREFIX_HASH)){
+			return key.substring(CACHE_PREFIX_HASH.length());
+		}
+		return key;
+	}
+
+	/**
+	 * 写入后 版本号是否已变化
+	 * @param localKey 本地Key
+	 * @param version 回源前取得的版本号
+	 * @return boolean
+	 */
+	private static boolean isStale(final String localKey, final long version){
+		return VERSIONS.get(stripe(localKey)) != version;
+	}
+
+	/**
+	 * 版本号 分段
+	 * @param localKey 本地Key
+	 * @return int
+	 */
+	private static int stripe(final String localKey){
+		int h = localKey.hashCode();
+		return (h ^ (h >>> 16)) & (VERSION_STRIPES - 1);
+	}
+
+	/**
+	 * 序列化 失败时不写入本地缓存
+	 * @param val 值
+	 * @return byte[]
+	 */
+	private static byte[] serialize(final Object val){
+		try {
+			byte[] bytes = SERIALIZER.serialize(val);
+			return null == bytes || bytes.length == 0 ? null : bytes;
+		}catch (Exception e){
+			log.error(e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * 反序列化 每次返回独立副本
+	 * @param bytes 序列化结果
+	 * @return Object
+	 */
+	private static Object deserialize(final byte[] bytes){
+		if(null == bytes){
+			return null;
+		}
+		try {
+			return SERIALIZER.deserialize(bytes);
+		}catch (Exception e){
+			log.error(e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * 根据 Key 获得区域
+	 * @param localKey 本地Key
+	 * @return Region
+	 */
+	private static Region getRegion(final String localKey){
+		String bizKey = StrUtil.removePrefix(localKey, PREFIX_NAME);
+		for (Region region : REGIONS) {
+			if(bizKey.startsWith(region.prefix)){
+				return region;
+			}
+		}
+		return DEFAULT_REGION;
+	}
+
+
+	/**
+	 * 缓存区域
+	 */
+	private static final class Region {
+
+		/** Key 前缀 */
+		private final String prefix;
+		/** KV */
+		private final Cache<String, byte[]> kv;
+		/** Hash 单字段 */
+		private final Cache<String, ConcurrentMap<String, byte[]>> hash;
+		/** Hash 全量 */
+		private final Cache<String, Map<String, byte[]>> hashAll;
+
+		private Region(String prefix, long maxSize, int ttl){
+			this.prefix = prefix;
+			this.kv = build(maxSize, ttl);
+			this.hash = build(maxSize, ttl);
+			this.hashAll = build(maxSize, ttl);
+		}
+
+		private static <V> Cache<String, V> build(long maxSize, int ttl){
+			return CacheBuilder.newBuilder()
+					.maximumSize(maxSize)
+					.expireAfterWrite(ttl, TimeUnit.SECONDS)
+					.build();
+		}
+
+		private void invalidateAll(){
+			kv.invalidateAll();
+			hash.invalidateAll();
+			hashAll.invalidateAll();
+		}
+	}
+
+	/**
+	 * 初始化
+	 */
+	@Autowired
+	@SuppressWarnings("unchecked")
+	public void init(CacheProperties cacheProperties, RedisTemplate<String, Object> redisTemplate){
+		CacheProperties.Local local = cacheProperties.getLocal();
+		LocalCache.PREFIX_NAME = Convert.toStr(cacheProperties.getPrefix(), "opsli") + ":";
+		LocalCache.SERIALIZER = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+		if(null == local || !local.isEnable() || null == SERIALIZER){
+			ENABLE = false;
+			return;
+		}
+
+		List<Region> regions = new ArrayList<>();
+		if(CollUtil.isNotEmpty(local.getSpecs())){
+			for (CacheProperties.Local.Spec spec : local.getSpecs()) {
+				if(null == spec || StrUtil.isEmpty(spec.getPrefix())){
+					continue;
+				}
+				regions.add(new Region(spec.getPrefix(),
+						Convert.toLong(spec.getMaxSize(), local.getMaxSize()),
+						Convert.toInt(spec.getTtl(), local.getTtl())
+				));
+			}
+		}
+		regions.sort(Comparator.comparingInt((Region r) -> r.prefix.length()).reversed());
+
+		LocalCache.DEFAULT_REGION = new Region("", local.getMaxSize(), local.getTtl());
+		LocalCache.REGIONS = Collections.unmodifiableList(regions);
+		ENABLE = true;
+	}
+
+}
@@ -19,10 +19,9 @@ import cn.hutool.core.convert.Convert;
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.RandomUtil;
 import cn.hutool.core.util.StrUtil;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.Striped;
 import lombok.extern.slf4j.Slf4j;
+import org.opsli.core.cache.filter.NullCacheFilter;
 import org.springframework.data.redis.core.RedisTemplate;
 
 import java.util.ArrayList;
@@ -40,7 +39,12 @@ import java.util.function.Function;
  *
  * 目前只支持 Redis 的 String 和 Hash
  * 实际业务的话 这两种一般也是足够了
- * 依赖于 RedisTemplate 和 LRU cache，多套业务部署 最大穿透次数为 业务服务N次
+ * 依赖于 RedisTemplate 和 计数布隆过滤器，多套业务部署 最大穿透次数为 业务服务N次
+ * 计数布隆过滤器 只在缓存未命中时 拦截回源查询，存在误判 不能用来跳过缓存读取
+ *
+ * 在 Redis(L2) 之前增加本地一级缓存 LocalCache(L1)
+ * put/hPut/hDel/remove 时清除本地记录 并通过 Redis 发布订阅 通知其余节点
+ * 一级缓存 每次返回独立副本，回源期间发生清除时 不写入一级缓存
  *
  * @author Parker
  * @date 2021/12/10 12:39
@@ -50,10 +54,6 @@ public final class SecurityCache {
 
 	/** 热点数据缓存时间 秒 (6小时)*/
 	private static final int TTL_HOT_DATA_TIME = 21600;
-	/** 默认缓存时效 超出后自动清理 (分钟) */
-	private static final int DEFAULT_CACHE_TIME = 5;
-	/** 创建缓存对象 用于存储 空缓存 */
-	private static final Cache<String, CacheStatus> LFU_NULL_CACHE;
 	/** 缓存前缀 KV */
 	private static final String CACHE_PREFIX_KV = "kv#";
 	/** 缓存前缀 HASH */
@@ -65,14 +65,6 @@ public final class SecurityCache {
 	@SuppressWarnings("UnstableApiUsage")
 	private static final Striped<Lock> STRIPED = Striped.lock(1024);
 
-
-	static {
-		// 超时自动清理
-		LFU_NULL_CACHE = CacheBuilder
-				.newBuilder()
-				.expireAfterWrite(DEFAULT_CACHE_TIME, TimeUnit.MINUTES).build();
-	}
-
 	/**
 	 * 获得缓存
 	 * @param redisTemplate redisTemplate
@@ -99,18 +91,27 @@ public final class SecurityCache {
 			throw new RuntimeException("入参[redisTemplate,key,callbackSource]必填");
 		}
 
-		// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-		if(isNonExist(key)){
-			return null;
+		// 先查询本地一级缓存
+		Object cache = LocalCache.get(key);
+		if(null != cache){
+			return cache;
 		}
 
+		// 回源前取得一级缓存版本号 期间发生清除 则不写入一级缓存
+		long version = LocalCache.version(key);
 		// 缓存 Object 对象
-		Object cache = getCacheObject(redisTemplate, key);
+		cache = getCacheObject(redisTemplate, key);
 		// 如果缓存不为空 则直接返回
 		if(null != cache){
+			LocalCache.put(key, cache, version);
 			return cache;
 		}
 
+		// 空缓存过滤器 只拦截回源，误判时 已缓存的数据仍可正常读取
+		if(isNonExist(key)){
+			return null;
+		}
+
 		// 如果还没查到缓存 则需要 穿透到 源数据查询
 		// 开启本地锁
 		@SuppressWarnings("UnstableApiUsage")
@@ -118,23 +119,23 @@ public final class SecurityCache {
 		try {
 			// 尝试获得锁
 			if(lock.tryLock(DEFAULT_LOCK_TIME, TimeUnit.SECONDS)){
-				// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-				if(isNonExist(key)){
-					return null;
-				}
-
 				// 梅开二度 如果查到后 直接返回
 				cache = getCacheObject(redisTemplate, key);
 				// 如果缓存不为空 则直接返回
 				if(null != cache){
+					LocalCache.put(key, cache, version);
 					return cache;
 				}
 
+				if(isNonExist(key)){
+					return null;
+				}
+
 				// 如果这时候还没有 则查询源数据
 				cache = callbackSource.apply(key);
 				if(null == cache){
 					// 存储缓存状态
-					LFU_NULL_CACHE.put(key, CacheStatus.NOT_EXIST);
+					NullCacheFilter.put(key);
 					return null;
 				}
 
@@ -153,6 +154,7 @@ public final class SecurityCache {
 
 	/**
 	 * 获得缓存 （自定义 TTL）
+	 * 自定义 TTL 一般为短时数据 不经过本地一级缓存
 	 * @param redisTemplate redisTemplate
 	 * @param key 主键
 	 * @param callbackSource 原数据回调
@@ -165,10 +167,6 @@ public final class SecurityCache {
 			throw new RuntimeException("入参[redisTemplate,key,callbackSource]必填");
 		}
 
-		// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-		if(isNonExist(key)){
-			return null;
-		}
 		// 缓存 Object 对象
 		Object cache = getCacheObject(redisTemplate, key);
 		// 如果缓存不为空 则直接返回
@@ -176,6 +174,11 @@ public final class SecurityCache {
 			return cache;
 		}
 
+		// 空缓存过滤器 只拦截回源，误判时 已缓存的数据仍可正常读取
+		if(isNonExist(key)){
+			return null;
+		}
+
 		// 如果还没查到缓存 则需要 穿透到 源数据查询
 		// 开启本地锁
 		@SuppressWarnings("UnstableApiUsage")
@@ -183,10 +186,6 @@ public final class SecurityCache {
 		try {
 			// 尝试获得锁
 			if(lock.tryLock(DEFAULT_LOCK_TIME, TimeUnit.SECONDS)){
-				// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-				if(isNonExist(key)){
-					return null;
-				}
 				// 梅开二度 如果查到后 直接返回
 				cache = getCacheObject(redisTemplate, key);
 				// 如果缓存不为空 则直接返回
@@ -194,11 +193,15 @@ public final class SecurityCache {
 					return cache;
 				}
 
+				if(isNonExist(key)){
+					return null;
+				}
+
 				// 如果这时候还没有 则查询源数据
 				cache = callbackSource.apply(key);
 				if(null == cache){
 					// 存储缓存状态
-					LFU_NULL_CACHE.put(key, CacheStatus.NOT_EXIST);
+					NullCacheFilter.put(key);
 					return null;
 				}
 
@@ -266,7 +269,9 @@ public final class SecurityCache {
 		}
 
 		// 清除本地记录
-		LFU_NULL_CACHE.invalidate(key);
+		NullCacheFilter.remove(key);
+		// 清除一级缓存 并通知其余节点
+		LocalCache.evictAndPublish(redisTemplate, key);
 	}
 
 	/**
@@ -294,7 +299,9 @@ public final class SecurityCache {
 				);
 
 		// 清除本地记录
-		LFU_NULL_CACHE.invalidate(key);
+		NullCacheFilter.remove(key);
+		// 清除一级缓存 并通知其余节点
+		LocalCache.evictAndPublish(redisTemplate, key);
 	}
 
 	/**
@@ -314,17 +321,27 @@ public final class SecurityCache {
 
 		final String tempKey = key + "_" + field;
 
-		// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-		if(isNonExist(tempKey)){
-			return null;
+		// 先查询本地一级缓存
+		Object cache = LocalCache.hGet(key, field);
+		if(null != cache){
+			return cache;
 		}
+
+		// 回源前取得一级缓存版本号 期间发生清除 则不写入一级缓存
+		long version = LocalCache.version(key);
 		// 缓存 Object 对象
-		Object cache = getHashCacheObject(redisTemplate, key, field);
+		cache = getHashCacheObject(redisTemplate, key, field);
 		// 如果缓存不为空 则直接返回
 		if(null != cache){
+			LocalCache.hPut(key, field, cache, version);
 			return cache;
 		}
 
+		// 空缓存过滤器 只拦截回源，误判时 已缓存的数据仍可正常读取
+		if(isNonExist(tempKey)){
+			return null;
+		}
+
 		// 如果还没查到缓存 则需要 穿透到 源数据查询
 		// 开启本地锁
 		@SuppressWarnings("UnstableApiUsage")
@@ -332,23 +349,23 @@ public final class SecurityCache {
 		try {
 			// 尝试获得锁
 			if(lock.tryLock(DEFAULT_LOCK_TIME, TimeUnit.SECONDS)){
-				// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-				if(isNonExist(tempKey)){
-					return null;
-				}
-
 				// 梅开二度 如果查到后 直接返回
 				cache = getHashCacheObject(redisTemplate, key, field);
 				// 如果缓存不为空 则直接返回
 				if(null != cache){
+					LocalCache.hPut(key, field, cache, version);
 					return cache;
 				}
 
+				if(isNonExist(tempKey)){
+					return null;
+				}
+
 				// 如果这时候还没有 则查询源数据
 				cache = callbackSource.apply(null);
 				if(null == cache){
 					// 存储缓存状态
-					LFU_NULL_CACHE.put(tempKey, CacheStatus.NOT_EXIST);
+					NullCacheFilter.put(tempKey);
 					return null;
 				}
 
@@ -383,17 +400,27 @@ public final class SecurityCache {
 			throw new RuntimeException("入参[redisTemplate,key,callbackSource]必填");
 		}
 
-		// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-		if(isNonExist(key)){
-			return null;
+		// 先查询本地一级缓存
+		Map<String, Object> cache = LocalCache.hGetAll(key);
+		if(null != cache){
+			return cache;
 		}
+
+		// 回源前取得一级缓存版本号 期间发生清除 则不写入一级缓存
+		long version = LocalCache.version(key);
 		// 缓存 Object 对象
-		Map<String, Object> cache = getAllHashCacheObject(redisTemplate, key, null);
+		cache = getAllHashCacheObject(redisTemplate, key, null);
 		// 如果缓存不为空 则直接返回
 		if(null != cache){
+			LocalCache.hPutAll(key, cache, version);
 			return cache;
 		}
 
+		// 空缓存过滤器 只拦截回源，误判时 已缓存的数据仍可正常读取
+		if(isNonExist(key)){
+			return null;
+		}
+
 		// 如果还没查到缓存 则需要 穿透到 源数据查询
 		// 开启本地锁
 		@SuppressWarnings("UnstableApiUsage")
@@ -401,23 +428,23 @@ public final class SecurityCache {
 		try {
 			// 尝试获得锁
 			if(lock.tryLock(DEFAULT_LOCK_TIME, TimeUnit.SECONDS)){
-				// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-				if(isNonExist(key)){
-					return null;
-				}
-
 				// 梅开二度 如果查到后 直接返回
 				cache = getAllHashCacheObject(redisTemplate, key, null);
 				// 如果缓存不为空 则直接返回
 				if(null != cache){
+					LocalCache.hPutAll(key, cache, version);
 					return cache;
 				}
 
+				if(isNonExist(key)){
+					return null;
+				}
+
 				// 如果这时候还没有 则查询源数据
 				cache = callbackSource.apply(null);
 				if(null == cache){
 					// 存储缓存状态
-					LFU_NULL_CACHE.put(key, CacheStatus.NOT_EXIST);
+					NullCacheFilter.put(key);
 					return null;
 				}
 
@@ -437,6 +464,7 @@ public final class SecurityCache {
 
 	/**
 	 * 获得全部缓存 Hash
+	 * 需要与源数据数量做补偿比对 不经过本地一级缓存
 	 *
 	 * @param redisTemplate redisTemplate
 	 * @param key 主键
@@ -452,10 +480,6 @@ public final class SecurityCache {
 			throw new RuntimeException("入参[redisTemplate,key,callbackSourceCount,callbackSource]必填");
 		}
 
-		// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-		if(isNonExist(key)){
-			return null;
-		}
 		// 缓存 Object 对象
 		Map<String, Object> cache = getAllHashCacheObject(redisTemplate, key, callbackSourceCount);
 		// 如果缓存不为空 则直接返回
@@ -463,6 +487,11 @@ public final class SecurityCache {
 			return cache;
 		}
 
+		// 空缓存过滤器 只拦截回源，误判时 已缓存的数据仍可正常读取
+		if(isNonExist(key)){
+			return null;
+		}
+
 		// 如果还没查到缓存 则需要 穿透到 源数据查询
 		// 开启本地锁
 		@SuppressWarnings("UnstableApiUsage")
@@ -470,11 +499,6 @@ public final class SecurityCache {
 		try {
 			// 尝试获得锁
 			if(lock.tryLock(DEFAULT_LOCK_TIME, TimeUnit.SECONDS)){
-				// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-				if(isNonExist(key)){
-					return null;
-				}
-
 				// 梅开二度 如果查到后 直接返回
 				cache = getAllHashCacheObject(redisTemplate, key, callbackSourceCount);
 				// 如果缓存不为空 则直接返回
@@ -482,11 +506,15 @@ public final class SecurityCache {
 					return cache;
 				}
 
+				if(isNonExist(key)){
+					return null;
+				}
+
 				// 如果这时候还没有 则查询源数据
 				cache = callbackSource.apply(null);
 				if(null == cache){
 					// 存储缓存状态
-					LFU_NULL_CACHE.put(key, CacheStatus.NOT_EXIST);
+					NullCacheFilter.put(key);
 					return null;
 				}
 
@@ -524,7 +552,9 @@ public final class SecurityCache {
 				.putAll(cacheKeyByHash, cacheMap);
 
 		// 清除本地记录
-		LFU_NULL_CACHE.invalidate(key);
+		NullCacheFilter.remove(key);
+		// 清除一级缓存 并通知其余节点
+		LocalCache.evictAndPublish(redisTemplate, key);
 	}
 
 	/**
@@ -549,7 +579,9 @@ public final class SecurityCache {
 
 		final String tempKey = key + "_" + field;
 		// 清除本地记录
-		LFU_NULL_CACHE.invalidate(tempKey);
+		NullCacheFilter.remove(tempKey);
+		// 清除一级缓存 并通知其余节点
+		LocalCache.evictFieldsAndPublish(redisTemplate, key, field);
 	}
 
 
@@ -594,19 +626,27 @@ public final class SecurityCache {
 		}
 
 		final String tempKey = key + "_" + field;
+		String cacheKeyByHash = StrUtil.addPrefixIfNot(key, CACHE_PREFIX_HASH);
 
-		// 清除本地记录
-		LFU_NULL_CACHE.invalidate(tempKey);
+		try {
+			// 判断是否存在
+			boolean isExist = Boolean.TRUE.equals(
+					redisTemplate.opsForHash().hasKey(cacheKeyByHash, field));
+			if(!isExist){
+				// 如果不存在 直接返回删除成功
+				return true;
+			}
 
-		// 判断是否存在
-		boolean isExist = Boolean.TRUE.equals(redisTemplate.opsForHash().hasKey(key, field));
-		if(!isExist){
-			// 如果不存在 直接返回删除成功
-			return true;
+			// 清除缓存
+			Long count = redisTemplate.opsForHash().delete(cacheKeyByHash, field);
+			return null != count && 0 != count;
+		}finally {
+			// 先删 Redis 再清一级缓存 避免并发读取把旧值重新载入一级缓存
+			// 清除本地记录
+			NullCacheFilter.remove(tempKey);
+			// 清除一级缓存 并通知其余节点
+			LocalCache.evictFieldsAndPublish(redisTemplate, key, field);
 		}
-
-		// 清除缓存
-		return 0 != redisTemplate.opsForHash().delete(key, field);
 	}
 
 
@@ -625,7 +665,7 @@ public final class SecurityCache {
 		List<String> removeKeyList = new ArrayList<>();
 		for (String key : keys) {
 			// 清除本地记录
-			LFU_NULL_CACHE.invalidate(key);
+			NullCacheFilter.remove(key);
 
 			removeKeyList.add(StrUtil.addPrefixIfNot(key, CACHE_PREFIX_KV));
 			removeKeyList.add(StrUtil.addPrefixIfNot(key, CACHE_PREFIX_HASH));
@@ -633,6 +673,9 @@ public final class SecurityCache {
 
 		// 清除缓存
 		redisTemplate.delete(removeKeyList);
+
+		// 清除一级缓存 并通知其余节点
+		LocalCache.evictAndPublish(redisTemplate, keys);
 		return true;
 	}
 
@@ -722,29 +765,14 @@ public final class SecurityCache {
 	 */
 	private static boolean isNonExist(String key){
 		try {
-			// 先判断本地缓存是否存在 默认为存在（类似于伪布隆过滤）
-			CacheStatus cacheStatus = LFU_NULL_CACHE.get(key, () -> CacheStatus.EXIST);
-			// 如果不存在 则直接返回空
-			return CacheStatus.NOT_EXIST.equals(cacheStatus);
+			// 先判断空缓存过滤器 (计数布隆过滤器)
+			return NullCacheFilter.mightContain(key);
 		}catch (Exception e){
 			log.error(e.getMessage(), e);
 		}
 		return false;
 	}
 
-	/**
-	 * 状态
-	 */
-	private enum CacheStatus{
-
-		/** 存在(默认) */
-		EXIST,
-
-		/** 不存在 */
-		NOT_EXIST
-
-	}
-
 	/**
 	 * 私有化构造函数
 	 */
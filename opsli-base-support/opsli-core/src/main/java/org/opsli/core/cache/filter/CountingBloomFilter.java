@@ -0,0 +1,205 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache.filter;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数布隆过滤器
+ *
+ * 每个槽位 4bit 计数器，一个 int 存储 8 个计数器，支持删除
+ * 计数器达到 15 后不再增减（饱和），避免溢出导致误删
+ * 内存占用只与 预期数量 和 误判率 有关，与实际写入的 Key 数量无关
+ *
+ * @author Parker
+ * @date 2021/12/10 12:39
+ */
+public final class CountingBloomFilter {
+
+	/** 哈希函数 */
+	@SuppressWarnings("UnstableApiUsage")
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+	/** 每个 int 存储的计数器个数 */
+	private static final int COUNTERS_PER_SLOT = 8;
+	/** 计数器位数 */
+	private static final int COUNTER_BITS = 4;
+	/** 计数器最大值 */
+	private static final int COUNTER_MAX = 0xF;
+
+	/** 计数器 */
+	private final AtomicIntegerArray slots;
+	/** 计数器总数 */
+	private final long counterSize;
+	/** 哈希次数 */
+	private final int hashCount;
+	/** 预期数量 */
+	private final long expectedInsertions;
+	/** 已写入数量 */
+	private final LongAdder insertions = new LongAdder();
+
+	/**
+	 * 构造函数
+	 * @param expectedInsertions 预期数量
+	 * @param fpp 误判率
+	 */
+	public CountingBloomFilter(long expectedInsertions, double fpp){
+		if(expectedInsertions <= 0){
+			expectedInsertions = 1;
+		}
+		if(fpp <= 0.0D || fpp >= 1.0D){
+			throw new IllegalArgumentException("误判率必须在 (0, 1) 之间");
+		}
+		long size = optimalNumOfCounters(expectedInsertions, fpp);
+		int slotSize = (int) Math.min(Integer.MAX_VALUE - 8,
+				(size + COUNTERS_PER_SLOT - 1) / COUNTERS_PER_SLOT);
+		this.slots = new AtomicIntegerArray(slotSize);
+		this.counterSize = (long) slotSize * COUNTERS_PER_SLOT;
+		this.hashCount = optimalNumOfHashFunctions(expectedInsertions, counterSize);
+		this.expectedInsertions = expectedInsertions;
+	}
+
+	/**
+	 * 是否可能存在
+	 * @param key Key
+	 * @return boolean
+	 */
+	public boolean mightContain(String key){
+		long[] hashes = hash(key);
+		long combinedHash = hashes[0];
+		for (int i = 0; i < hashCount; i++) {
+			if(0 == getCounter(index(combinedHash))){
+				return false;
+			}
+			combinedHash += hashes[1];
+		}
+		return true;
+	}
+
+	/**
+	 * 写入
+	 * @param key Key
+	 */
+	public void put(String key){
+		long[] hashes = hash(key);
+		long combinedHash = hashes[0];
+		for (int i = 0; i < hashCount; i++) {
+			updateCounter(index(combinedHash), 1);
+			combinedHash += hashes[1];
+		}
+		insertions.increment();
+	}
+
+	/**
+	 * 删除
+	 * 只有可能存在时才会删除，防止误减其他 Key 的计数器
+	 * @param key Key
+	 */
+	public void remove(String key){
+		if(!mightContain(key)){
+			return;
+		}
+		long[] hashes = hash(key);
+		long combinedHash = hashes[0];
+		for (int i = 0; i < hashCount; i++) {
+			updateCounter(index(combinedHash), -1);
+			combinedHash += hashes[1];
+		}
+		insertions.decrement();
+	}
+
+	/**
+	 * 是否已写满 (超出后误判率会升高)
+	 * @return boolean
+	 */
+	public boolean isFull(){
+		return insertions.sum() >= expectedInsertions;
+	}
+
+	/**
+	 * 占用内存 (字节)
+	 * @return long
+	 */
+	public long memoryBytes(){
+		return (long) slots.length() * Integer.BYTES;
+	}
+
+	// =================================================================================================================
+
+	/**
+	 * 获得计数器
+	 * @param index 下标
+	 * @return int
+	 */
+	private int getCounter(long index){
+		int slot = (int) (index / COUNTERS_PER_SLOT);
+		int shift = (int) (index % COUNTERS_PER_SLOT) * COUNTER_BITS;
+		return (slots.get(slot) >>> shift) & COUNTER_MAX;
+	}
+
+	/**
+	 * 更新计数器 CAS
+	 * @param index 下标
+	 * @param delta 增量
+	 */
+	private void updateCounter(long index, int delta){
+		int slot = (int) (index / COUNTERS_PER_SLOT);
+		int shift = (int) (index % COUNTERS_PER_SLOT) * COUNTER_BITS;
+		for (;;) {
+			int current = slots.get(slot);
+			int counter = (current >>> shift) & COUNTER_MAX;
+			// 饱和 或 已为0 则不再处理
+			if(COUNTER_MAX == counter || (0 == counter && delta < 0)){
+				return;
+			}
+			int next = (current & ~(COUNTER_MAX << shift)) | ((counter + delta) << shift);
+			if(slots.compareAndSet(slot, current, next)){
+				return;
+			}
+		}
+	}
+
+	private long index(long combinedHash){
+		return (combinedHash & Long.MAX_VALUE) % counterSize;
+	}
+
+	private static long[] hash(String key){
+		HashCode hashCode = HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8);
+		byte[] bytes = hashCode.asBytes();
+		long hash1 = 0;
+		long hash2 = 0;
+		for (int i = 7; i >= 0; i--) {
+			hash1 = (hash1 << 8) | (bytes[i] & 0xFF);
+			hash2 = (hash2 << 8) | (bytes[i + 8] & 0xFF);
+		}
+		return new long[]{hash1, hash2};
+	}
+
+	private static long optimalNumOfCounters(long n, double p){
+		return Math.max(COUNTERS_PER_SLOT,
+				(long) (-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+	}
+
+	private static int optimalNumOfHashFunctions(long n, long m){
+		return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+	}
+
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache.filter;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
+
+/**
+ * 空缓存过滤器 (防止缓存穿透)
+ *
+ * 记录源数据中不存在的 Key，按命名空间（Key 去掉最后一段）划分计数布隆过滤器
+ * 每个命名空间分 当前/上一代 两个过滤器，定时或写满后轮换，旧记录最多存活两个轮换周期
+ * 命名空间数量有上限，超出后统一归入默认命名空间，内存上限固定 不随 Key 数量增长
+ *
+ * 空记录只需在运行时积累，启动时为空即可（为空是安全状态，最多多穿透一次）
+ *
+ * @author Parker
+ * @date 2021/12/10 12:39
+ */
+@Slf4j
+@Order(UTIL_ORDER)
+@Component
+public class NullCacheFilter {
+
+	/** Key 分隔符 */
+	private static final String KEY_SPLIT = ":";
+	/** 默认命名空间 */
+	private static final String DEFAULT_NAMESPACE = "default";
+
+	/** 预期数量 (单个命名空间 单代) */
+	private static volatile long EXPECTED_INSERTIONS = 50000;
+	/** 误判率 */
+	private static volatile double FPP = 0.001D;
+	/** 轮换周期 (毫秒) */
+	private static volatile long ROTATE_MILLIS = TimeUnit.SECONDS.toMillis(150);
+	/** 最大命名空间数量 */
+	private static volatile int MAX_NAMESPACES = 32;
+
+	/** 命名空间 */
+	private static final Map<String, Generations> NAMESPACES = new ConcurrentHashMap<>();
+
+
+	/**
+	 * 是否不存在
+	 * @param key Key
+	 * @return boolean
+	 */
+	public static boolean mightContain(final String key){
+		if(null == key){
+			return false;
+		}
+		Generations generations = NAMESPACES.get(getNamespace(key));
+		return null != generations && generations.mightContain(key);
+	}
+
+	/**
+	 * 记录不存在
+	 * @param key Key
+	 */
+	public static void put(final String key){
+		if(null == key){
+			return;
+		}
+		NAMESPACES.computeIfAbsent(getNamespace(key), (k) -> new Generations())
+				.put(key);
+	}
+
+	/**
+	 * 清除不存在记录 (Key 已写入缓存)
+	 * @param key Key
+	 */
+	public static void remove(final String key){
+		if(null == key){
+			return;
+		}
+		Generations generations = NAMESPACES.get(getNamespace(key));
+		if(null != generations){
+			generations.remove(key);
+		}
+	}
+
+	/**
+	 * 占用内存 (字节)
+	 * @return long
+	 */
+	public static long memoryBytes(){
+		long bytes = 0;
+		for (Generations generations : NAMESPACES.values()) {
+			bytes += generations.memoryBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * 获得命名空间
+	 * 超出上限的命名空间 不会被创建，直接查默认命名空间
+	 * @param key Key
+	 * @return String
+	 */
+	private static String getNamespace(final String key){
+		String namespace = StrUtil.subBefore(key, KEY_SPLIT, true);
+		if(StrUtil.isEmpty(namespace)){
+			return DEFAULT_NAMESPACE;
+		}
+		if(!NAMESPACES.containsKey(namespace) && NAMESPACES.size() >= MAX_NAMESPACES){
+			return DEFAULT_NAMESPACE;
+		}
+		return namespace;
+	}
+
+
+	/**
+	 * 当前代 + 上一代
+	 */
+	private static final class Generations {
+
+		private volatile CountingBloomFilter current;
+		private volatile CountingBloomFilter previous;
+		private volatile long nextRotateTime;
+
+		private Generations(){
+			this.current = new CountingBloomFilter(EXPECTED_INSERTIONS, FPP);
+			this.nextRotateTime = System.currentTimeMillis() + ROTATE_MILLIS;
+		}
+
+		private boolean mightContain(String key){
+			rotateIfNecessary();
+			CountingBloomFilter prev = previous;
+			return current.mightContain(key) || (null != prev && prev.mightContain(key));
+		}
+
+		private void put(String key){
+			rotateIfNecessary();
+			current.put(key);
+		}
+
+		private void remove(String key){
+			current.remove(key);
+			CountingBloomFilter prev = previous;
+			if(null != prev){
+				prev.remove(key);
+			}
+		}
+
+		private long memoryBytes(){
+			CountingBloomFilter prev = previous;
+			return current.memoryBytes() + (null == prev ? 0 : prev.memoryBytes());
+		}
+
+		/**
+		 * 到期 或 写满 则轮换
+		 */
+		private void rotateIfNecessary(){
+			if(System.currentTimeMillis() < nextRotateTime && !current.isFull()){
+				return;
+			}
+			synchronized (this){
+				if(System.currentTimeMillis() < nextRotateTime && !current.isFull()){
+					return;
+				}
+				previous = current;
+				current = new CountingBloomFilter(EXPECTED_INSERTIONS, FPP);
+				nextRotateTime = System.currentTimeMillis() + ROTATE_MILLIS;
+			}
+		}
+	}
+
+	/**
+	 * 初始化
+	 */
+	@Autowired
+	public void init(CacheProperties cacheProperties){
+		CacheProperties.NullFilter nullFilter = cacheProperties.getNullFilter();
+		if(null == nullFilter){
+			return;
+		}
+		NullCacheFilter.EXPECTED_INSERTIONS = nullFilter.getExpectedInsertions();
+		NullCacheFilter.FPP = nullFilter.getFpp();
+		NullCacheFilter.ROTATE_MILLIS = TimeUnit.SECONDS.toMillis(nullFilter.getRotateTime());
+		NullCacheFilter.MAX_NAMESPACES = nullFilter.getMaxNamespaces();
+		NAMESPACES.clear();
+	}
+
+}
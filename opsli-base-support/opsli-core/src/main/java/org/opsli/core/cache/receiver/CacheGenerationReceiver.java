@@ -0,0 +1,64 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache.receiver;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.common.enums.SystemInfo;
+import org.opsli.core.cache.CacheGeneration;
+import org.opsli.plugins.redis.pushsub.entity.BaseSubMessage;
+import org.opsli.plugins.redis.pushsub.receiver.BaseReceiver;
+import org.springframework.stereotype.Component;
+
+/**
+ * 缓存世代号 变更消息订阅
+ *
+ * 自身发出的消息已在发送前处理 这里直接跳过
+ *
+ * @author Parker
+ * @date 2021/12/10 12:39
+ */
+@Slf4j
+@Component
+public class CacheGenerationReceiver extends BaseReceiver {
+
+    public CacheGenerationReceiver() {
+        super(CacheGeneration.CHANNEL);
+    }
+
+    @Override
+    public void receiveMessage(String msg) {
+        if(null == msg){
+            return;
+        }
+        try {
+            JSONObject msgJson = JSONObject.parseObject(msg);
+            // 自身消息 不处理
+            if(SystemInfo.INSTANCE.getSystemID().equals(msgJson.getString(BaseSubMessage.BASE_ID))){
+                return;
+            }
+
+            CacheGeneration.Scope scope = CacheGeneration.Scope.valueOf(
+                    msgJson.getString(CacheGeneration.MSG_SCOPE));
+            Long value = msgJson.getLong(CacheGeneration.MSG_GENERATION);
+            if(null != value){
+                CacheGeneration.update(scope, value);
+            }
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }
+    }
+}
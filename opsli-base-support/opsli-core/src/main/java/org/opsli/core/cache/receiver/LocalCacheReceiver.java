@@ -0,0 +1,84 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache.receiver;
+
+import cn.hutool.core.collection.CollUtil;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.common.enums.SystemInfo;
+import org.opsli.core.cache.LocalCache;
+import org.opsli.core.cache.filter.NullCacheFilter;
+import org.opsli.plugins.redis.pushsub.entity.BaseSubMessage;
+import org.opsli.plugins.redis.pushsub.receiver.BaseReceiver;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 本地一级缓存 失效消息订阅
+ * 同时清除 空缓存过滤器 中的记录，防止其余节点写入后 本节点仍认为不存在
+ *
+ * 自身发出的消息已在发送前处理 这里直接跳过
+ *
+ * @author Parker
+ * @date 2021/12/10 12:39
+ */
+@Slf4j
+@Component
+public class LocalCacheReceiver extends BaseReceiver {
+
+    public LocalCacheReceiver() {
+        super(LocalCache.CHANNEL);
+    }
+
+    @Override
+    public void receiveMessage(String msg) {
+        if(null == msg){
+            return;
+        }
+        try {
+            JSONObject msgJson = JSONObject.parseObject(msg);
+            // 自身消息 不处理
+            if(SystemInfo.INSTANCE.getSystemID().equals(msgJson.getString(BaseSubMessage.BASE_ID))){
+                return;
+            }
+
+            List<String> keys = msgJson.getJSONArray(LocalCache.MSG_KEYS).toJavaList(String.class);
+            if(CollUtil.isEmpty(keys)){
+                return;
+            }
+
+            String type = msgJson.getString(BaseSubMessage.BASE_TYPE);
+            if(LocalCache.TYPE_FIELD.equals(type)){
+                List<String> fields = msgJson.getJSONArray(LocalCache.MSG_FIELDS).toJavaList(String.class);
+                for (String key : keys) {
+                    LocalCache.evictFields(key, fields.toArray(new String[0]));
+                    for (String field : fields) {
+                        NullCacheFilter.remove(key + "_" + field);
+                    }
+                }
+            }else {
+                LocalCache.evict(keys.toArray(new String[0]));
+                for (String key : keys) {
+                    NullCacheFilter.remove(key);
+                }
+            }
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }
+    }
+
+}
@@ -26,8 +26,8 @@ import org.opsli.common.annotation.Limiter;
 import org.opsli.common.enums.AlertType;
 import org.opsli.common.exception.ServiceException;
 import org.opsli.common.utils.OutputStreamUtil;
-import org.opsli.common.utils.RateLimiterUtil;
 import org.opsli.core.msg.CoreMsg;
+import org.opsli.core.utils.LimiterUtil;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestAttributes;
@@ -43,6 +43,8 @@ import static org.opsli.common.constants.OrderConstants.LIMITER_AOP_SORT;
 /**
  * 限流器
  *
+ * 超出限制 立即拒绝并返回 Retry-After 头，不阻塞请求线程
+ *
  * @author Parker
  * @date 2020-09-16
  */
@@ -52,6 +54,8 @@ import static org.opsli.common.constants.OrderConstants.LIMITER_AOP_SORT;
 @Component
 public class LimiterAop {
 
+    /** 重试等待 响应头 */
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
 
     @Pointcut("@annotation(org.opsli.common.annotation.Limiter)")
     public void requestMapping() {
@@ -74,11 +78,16 @@ public class LimiterAop {
                 Limiter limiter = method.getAnnotation(Limiter.class);
                 if(limiter != null){
                     AlertType alertType = limiter.alertType();
-                    double qps = limiter.qps();
 
                     // 限流
-                    boolean enterFlag = RateLimiterUtil.enter(request, qps);
-                    if(!enterFlag){
+                    long waitMillis = LimiterUtil.tryAcquire(request, limiter);
+                    if(waitMillis > 0){
+                        log.warn("限流器 - 访问频繁 需等待: {}ms, URI: {}", waitMillis, request.getRequestURI());
+                        if(response != null){
+                            // 秒 向上取整
+                            response.setHeader(HEADER_RETRY_AFTER,
+                                    String.valueOf((waitMillis + 999) / 1000));
+                        }
                         // alert 弹出
                         if(AlertType.ALERT == alertType){
                             OutputStreamUtil.exceptionResponse(
@@ -14,11 +14,16 @@ import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.plugin.*;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.opsli.common.thread.ThreadPoolFactory;
 import org.opsli.core.autoconfigure.properties.EncryptProperties;
 import org.springframework.stereotype.Component;
 import java.lang.reflect.*;
 import java.time.chrono.ChronoLocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Mybatis 拦截器
@@ -27,6 +32,9 @@ import java.util.*;
  * Signature.type:定义拦截的类 Executor、ParameterHandler、StatementHandler、ResultSetHandler 当中的一个
  * Signature.method:在定义拦截类的基础之上，在定义拦截的方法
  * Signature.args:在定义拦截方法的基础之上在定义拦截的方法对应的参数，JAVA里面方法可能重载，故注意参数的类型和顺序
+ * <p>
+ * 每个类 需要加解密的字段、需要继续遍历的字段 首次访问时解析并缓存，无需处理的类直接跳过
+ * 加解密器 按类型单例复用
  *
  * @author Parker
  * @date 2022-08-07
@@ -43,6 +51,16 @@ import java.util.*;
 )
 public class MybatisCryptoInterceptor implements Interceptor {
 
+    /** 类 加解密计划缓存 */
+    private static final Map<Class<?>, CryptoPlan> PLAN_CACHE = new ConcurrentHashMap<>();
+    /** 加解密器缓存 */
+    private static final Map<Class<? extends ICrypto>, ICrypto> CRYPTO_CACHE = new ConcurrentHashMap<>();
+    /** 无需处理 */
+    private static final CryptoPlan EMPTY_PLAN = new CryptoPlan(Collections.emptyList(), Collections.emptyList());
+
+    /** 并行解密 线程数 */
+    private static final int DECRYPT_PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
     private final EncryptProperties encryptProperties;
 
     /**
@@ -99,13 +117,57 @@ public class MybatisCryptoInterceptor implements Interceptor {
 
         List<Object> resultList = executor.query(ms, parameter, rowBounds, resultHandler, cacheKey, boundSql);
 
-        for (Object o : resultList) {
-            handleParameterOrResult(o, CryptoType.DECRYPT);
+        // 嵌套结果对象 可能被多行共用 整个结果集共用已处理集合
+        int parallelThreshold = encryptProperties.getParallelThreshold();
+        if (parallelThreshold > 0 && resultList.size() >= parallelThreshold) {
+            // 结果较多时 并行解密
+            Set<Object> visited = Collections.newSetFromMap(
+                    Collections.synchronizedMap(new IdentityHashMap<>()));
+            parallelDecrypt(resultList, visited);
+        } else {
+            Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Object o : resultList) {
+                handleObject(o, CryptoType.DECRYPT, visited);
+            }
         }
 
         return resultList;
     }
 
+    /**
+     * 并行解密
+     * 使用专用线程池 不占用公共 ForkJoinPool (其余 parallelStream、CompletableFuture 共用，解密耗时会拖慢它们)
+     * 结果集按线程数分段，当前线程处理第一段，其余分段提交线程池；线程池满时 由当前线程执行
+     *
+     * @param resultList 结果集
+     * @param visited 已处理对象
+     */
+    private void parallelDecrypt(List<Object> resultList, Set<Object> visited) throws Throwable {
+        int size = resultList.size();
+        int step = (size + DECRYPT_PARALLELISM - 1) / DECRYPT_PARALLELISM;
+        List<Future<?>> futures = new ArrayList<>(DECRYPT_PARALLELISM);
+        for (int from = step; from < size; from += step) {
+            List<Object> part = resultList.subList(from, Math.min(size, from + step));
+            futures.add(DecryptPool.EXECUTOR.submit(() -> {
+                for (Object o : part) {
+                    handleObject(o, CryptoType.DECRYPT, visited);
+                }
+            }));
+        }
+
+        for (Object o : resultList.subList(0, Math.min(size, step))) {
+            handleObject(o, CryptoType.DECRYPT, visited);
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
     /**
      * 新增修改操作处理
      *
@@ -124,63 +186,93 @@ public class MybatisCryptoInterceptor implements Interceptor {
      *
      * @param object
      * @param cryptoType
-     * @throws IllegalAccessException
      */
-    private void handleParameterOrResult(Object object, CryptoType cryptoType) throws IllegalAccessException {
-        HashMap<Field, Object> fieldObjectHashMap = new HashMap<>();
+    private void handleParameterOrResult(Object object, CryptoType cryptoType) {
+        if (isFilter(object)) {
+            return;
+        }
+
+        // 已处理对象 同一对象在多个参数中出现时 只处理一次
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
         //多个参数
         if (object instanceof Map) {
-            Map paramMap = (Map) object;
-            Set keySet = paramMap.keySet();
-            for (Object key : keySet) {
-                Object o = paramMap.get(key);
+            Map<?, ?> paramMap = (Map<?, ?>) object;
+            for (Object o : paramMap.values()) {
                 if (o != null) {
-                    handleObject(o, o.getClass(), fieldObjectHashMap);
+                    handleObject(o, cryptoType, visited);
                 }
-
             }
         } else {
-            if (object != null) {
-                handleObject(object, object.getClass(), fieldObjectHashMap);
-            }
+            handleObject(object, cryptoType, visited);
         }
+    }
 
-        //统一修改加密解密值
-        fieldObjectHashMap.keySet().forEach(key -> {
-            try {
-                handleString(key, fieldObjectHashMap.get(key), cryptoType);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
+    /**
+     * 是否是
+     *
+     * @param object
+     * @return
+     */
+    private boolean isFilter(Object object) {
+
+        return object == null || object instanceof CharSequence || object instanceof Number || object instanceof Collection || object instanceof Date || object instanceof ChronoLocalDate;
     }
 
     /**
-     * 是否是基本类型
+     * 是否无需遍历的类型 (基本类型、枚举、数组、JDK 内置类型)
      *
      * @param type
      * @return
      */
-    private boolean isBase(Type type) {
-        return boolean.class.equals(type) ||
-                char.class.equals(type) ||
-                long.class.equals(type) ||
-                int.class.equals(type) ||
-                byte.class.equals(type) ||
-                short.class.equals(type) ||
-                double.class.equals(type) ||
-                float.class.equals(type);
+    private static boolean isLeafType(Class<?> type) {
+        return type.isPrimitive() || type.isArray() || type.isEnum() ||
+                (type.getName().startsWith("java") && !Collection.class.isAssignableFrom(type)
+                        && !Object.class.equals(type));
     }
 
     /**
-     * 是否是
+     * 获得类 加解密计划
      *
-     * @param object
+     * @param oClass
      * @return
      */
-    private boolean isFilter(Object object) {
+    private static CryptoPlan getPlan(Class<?> oClass) {
+        CryptoPlan plan = PLAN_CACHE.get(oClass);
+        if (plan == null) {
+            plan = PLAN_CACHE.computeIfAbsent(oClass, MybatisCryptoInterceptor::createPlan);
+        }
+        return plan;
+    }
 
-        return object == null || object instanceof CharSequence || object instanceof Number || object instanceof Collection || object instanceof Date || object instanceof ChronoLocalDate;
+    /**
+     * 解析类 加解密计划
+     *
+     * @param oClass
+     * @return
+     */
+    private static CryptoPlan createPlan(Class<?> oClass) {
+        if (isLeafType(oClass)) {
+            return EMPTY_PLAN;
+        }
+
+        List<CryptoField> cryptoFields = new ArrayList<>();
+        List<Field> nestedFields = new ArrayList<>();
+        for (Field declaredField : mergeField(oClass, null)) {
+            Class<?> type = declaredField.getType();
+            CryptoMapperField annotation = declaredField.getAnnotation(CryptoMapperField.class);
+            if (annotation != null && type.isAssignableFrom(String.class)) {
+                declaredField.setAccessible(true);
+                cryptoFields.add(new CryptoField(declaredField, annotation));
+            } else if (!isLeafType(type)) {
+                declaredField.setAccessible(true);
+                nestedFields.add(declaredField);
+            }
+        }
+
+        if (cryptoFields.isEmpty() && nestedFields.isEmpty()) {
+            return EMPTY_PLAN;
+        }
+        return new CryptoPlan(cryptoFields, nestedFields);
     }
 
     /**
@@ -190,7 +282,7 @@ public class MybatisCryptoInterceptor implements Interceptor {
      * @param fields
      * @return
      */
-    private List<Field> mergeField(Class<?> oClass, List<Field> fields) {
+    private static List<Field> mergeField(Class<?> oClass, List<Field> fields) {
         if (fields == null) {
             fields = new ArrayList<>();
         }
@@ -216,93 +308,68 @@ public class MybatisCryptoInterceptor implements Interceptor {
      * 处理Object
      *
      * @param obj
-     * @param oClass
-     * @throws IllegalAccessException
+     * @param cryptoType
+     * @param visited
      */
-    private void handleObject(Object obj, Class<?> oClass, HashMap<Field, Object> fieldObjectHashMap) throws IllegalAccessException {
+    private void handleObject(Object obj, CryptoType cryptoType, Set<Object> visited) {
         //过滤
         if (isFilter(obj)) {
             return;
         }
 
-        List<Field> fields = mergeField(oClass, null);
-
-        for (Field declaredField : fields) {
-
-            //静态属性直接跳过
-            if (Modifier.isStatic(declaredField.getModifiers())) {
-                continue;
-            }
-
-            boolean accessible = declaredField.isAccessible();
-            declaredField.setAccessible(true);
-            Object value = declaredField.get(obj);
-            declaredField.setAccessible(accessible);
+        CryptoPlan plan = getPlan(obj.getClass());
+        if (plan.isEmpty() || !visited.add(obj)) {
+            return;
+        }
 
-            if (value == null) {
-                // TODO
-                continue;
-            } else if (value instanceof Number) {
-                // TODO
-                continue;
-            } else if (value instanceof String) {
-                CryptoMapperField annotation = declaredField.getAnnotation(CryptoMapperField.class);
-                if (annotation != null) {
-                    fieldObjectHashMap.put(declaredField, obj);
+        try {
+            for (CryptoField cryptoField : plan.cryptoFields) {
+                Object value = cryptoField.field.get(obj);
+                if (value instanceof String) {
+                    handleString(cryptoField, obj, value, cryptoType);
                 }
+            }
 
-            } else if (value instanceof Collection) {
-                Collection coll = (Collection) value;
-                for (Object o : coll) {
-                    if (isFilter(o)) {
-                        //默认集合内类型一致
-                        break;
+            for (Field nestedField : plan.nestedFields) {
+                Object value = nestedField.get(obj);
+                if (value instanceof Collection) {
+                    for (Object o : (Collection<?>) value) {
+                        if (isFilter(o)) {
+                            //默认集合内类型一致
+                            break;
+                        }
+                        handleObject(o, cryptoType, visited);
                     }
-                    handleObject(o, o.getClass(), fieldObjectHashMap);
+                } else if (value != null) {
+                    handleObject(value, cryptoType, visited);
                 }
-            } else {
-                handleObject(value, value.getClass(), fieldObjectHashMap);
             }
+        } catch (IllegalAccessException e) {
+            log.error(e.getMessage(), e);
         }
-
     }
 
     /**
      * 处理字符
      *
-     * @param field
+     * @param cryptoField
      * @param object
+     * @param value
      * @param cryptoType
-     * @throws IllegalAccessException
-     * @throws InstantiationException
-     * @throws NoSuchMethodException
-     * @throws InvocationTargetException
      */
-    private void handleString(Field field, Object object, CryptoType cryptoType) throws Exception {
-
-        boolean accessible = field.isAccessible();
-        field.setAccessible(true);
-        Object value = field.get(object);
-
-        CryptoMapperField annotation = field.getAnnotation(CryptoMapperField.class);
-        if (annotation != null) {
-
+    private void handleString(CryptoField cryptoField, Object object, Object value, CryptoType cryptoType) {
+        try {
             String key;
-            //全局配置的key
-            String propertiesKey = encryptProperties.getKey();
-            log.debug("全局key是：" + propertiesKey);
             //属性上的key
-            String annotationKey = annotation.key();
-            log.debug("注解key是：" + annotationKey);
-
+            String annotationKey = cryptoField.annotation.key();
             if (StrUtil.isNotBlank(annotationKey)) {
                 key = annotationKey;
             } else {
-                key = propertiesKey;
+                //全局配置的key
+                key = encryptProperties.getKey();
             }
 
-            Class<? extends ICrypto> iCryptoImpl = annotation.iCrypto();
-            ICrypto iCrypto = iCryptoImpl.newInstance();
+            ICrypto iCrypto = getCrypto(cryptoField.annotation.iCrypto());
 
             //解密后的值
             String valueResult;
@@ -312,13 +379,32 @@ public class MybatisCryptoInterceptor implements Interceptor {
                 valueResult = iCrypto.encrypt(String.valueOf(value), key);
             }
 
-            log.debug("原值：" + value);
-            log.debug("现在：" + valueResult);
-            field.set(object, String.valueOf(valueResult));
-            field.setAccessible(accessible);
+            if (log.isDebugEnabled()) {
+                log.debug("原值：" + value);
+                log.debug("现在：" + valueResult);
+            }
+            cryptoField.field.set(object, String.valueOf(valueResult));
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * 获得加解密器 (单例)
+     *
+     * @param iCryptoImpl
+     * @return
+     */
+    private static ICrypto getCrypto(Class<? extends ICrypto> iCryptoImpl) {
+        return CRYPTO_CACHE.computeIfAbsent(iCryptoImpl, clazz -> {
+            try {
+                return clazz.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
     /**
      * 是否要进行拦截，然后做出决定是否生成一个代理。
      *
@@ -333,4 +419,48 @@ public class MybatisCryptoInterceptor implements Interceptor {
     @Override
     public void setProperties(Properties properties) {
     }
+
+
+    /**
+     * 并行解密 专用线程池 (首次使用时创建)
+     */
+    private static final class DecryptPool {
+
+        private static final ExecutorService EXECUTOR =
+                ThreadPoolFactory.createDefThreadPool(DECRYPT_PARALLELISM, "Crypto-Decrypt-%d");
+    }
+
+    /**
+     * 加解密字段
+     */
+    private static final class CryptoField {
+
+        private final Field field;
+        private final CryptoMapperField annotation;
+
+        private CryptoField(Field field, CryptoMapperField annotation) {
+            this.field = field;
+            this.annotation = annotation;
+        }
+    }
+
+    /**
+     * 类 加解密计划
+     */
+    private static final class CryptoPlan {
+
+        /** 需要加解密的字段 */
+        private final List<CryptoField> cryptoFields;
+        /** 需要继续遍历的字段 */
+        private final List<Field> nestedFields;
+
+        private CryptoPlan(List<CryptoField> cryptoFields, List<Field> nestedFields) {
+            this.cryptoFields = cryptoFields;
+            this.nestedFields = nestedFields;
+        }
+
+        private boolean isEmpty() {
+            return cryptoFields.isEmpty() && nestedFields.isEmpty();
+        }
+    }
 }
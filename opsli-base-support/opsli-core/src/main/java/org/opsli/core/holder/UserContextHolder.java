@@ -17,6 +17,7 @@ package org.opsli.core.holder;
 
 import com.alibaba.ttl.TransmittableThreadLocal;
 import org.apache.commons.lang3.StringUtils;
+import org.opsli.core.base.dto.LoginUserDto;
 import org.opsli.core.utils.UserTokenUtil;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
@@ -39,6 +40,12 @@ public final class UserContextHolder {
      */
     public static final ThreadLocal<String> THREAD_LOCAL = new TransmittableThreadLocal<>();
 
+    /**
+     * 存储当前请求已认证用户 (Token 验证通过后写入)
+     * 同一请求内 Token 只解析一次
+     */
+    private static final ThreadLocal<Principal> PRINCIPAL_LOCAL = new TransmittableThreadLocal<>();
+
     /**
      * 获取当前上下文用户
      * 推荐用法,避免空指针:
@@ -76,6 +83,59 @@ public final class UserContextHolder {
 
     public static void clear() {
         THREAD_LOCAL.remove();
+        PRINCIPAL_LOCAL.remove();
+    }
+
+    /**
+     * 获得当前请求已认证用户
+     * Token 不一致 返回空
+     *
+     * @param token Token
+     * @return Optional<LoginUserDto>
+     */
+    public static Optional<LoginUserDto> getLoginUser(String token) {
+        Principal principal = PRINCIPAL_LOCAL.get();
+        if(null == principal || null == token || !token.equals(principal.token)){
+            return Optional.empty();
+        }
+        return Optional.ofNullable(principal.loginUser);
+    }
+
+    /**
+     * 设置当前请求已认证用户
+     *
+     * @param token Token
+     * @param loginUser 登陆用户信息
+     */
+    public static void setLoginUser(String token, LoginUserDto loginUser) {
+        if(null == token || null == loginUser){
+            return;
+        }
+        PRINCIPAL_LOCAL.set(new Principal(token, loginUser));
+    }
+
+    /**
+     * 清除当前请求已认证用户
+     */
+    public static void clearLoginUser() {
+        PRINCIPAL_LOCAL.remove();
+    }
+
+
+    /**
+     * 已认证用户
+     */
+    private static final class Principal {
+
+        /** Token */
+        private final String token;
+        /** 登陆用户信息 */
+        private final LoginUserDto loginUser;
+
+        private Principal(String token, LoginUserDto loginUser) {
+            this.token = token;
+            this.loginUser = loginUser;
+        }
     }
 
 
@@ -38,7 +38,6 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.util.Map;
-import java.util.Optional;
 import java.util.UUID;
 
 /**
@@ -126,28 +125,30 @@ public class OperateLogAspect {
         operationLog.setCreateTime(System.currentTimeMillis());
         operationLog.setMethod(signature.getDeclaringTypeName() + "." + signature.getName());
 
+        // 当前用户信息 只解析一次
+        LoginUserDto loginUserDto = UserContextHolder.getToken()
+                .flatMap(UserTokenUtil::getLoginUserDto)
+                .orElse(null);
+
         operationLog.setLevel(annotation.level().getValue());
         operationLog.setDescription(
                 // 对当前登录用户和占位符处理
                 getDetail(
                         ((MethodSignature) joinPoint.getSignature()).getParameterNames(),
                         joinPoint.getArgs(),
-                        annotation)
+                        annotation,
+                        loginUserDto)
         );
         operationLog.setOperationType(annotation.operationType().getValue());
         operationLog.setLogType(annotation.type().getValue());
         operationLog.setModuleId(annotation.module().getId());
 
-        // 当前Token
-        Optional<String> tokenOptional = UserContextHolder.getToken();
-        if(tokenOptional.isPresent()){
-            LoginUserDto loginUserDto = UserTokenUtil.getLoginUserDto(tokenOptional.get()).orElse(null);
-            if(null != loginUserDto){
-                operationLog.setUserId(String.valueOf(loginUserDto.getUid()));
-                operationLog.setUsername(loginUserDto.getUsername());
-                operationLog.setRealName(loginUserDto.getNickname());
-                operationLog.setTenantId(loginUserDto.getTenantId());
-            }
+        // 当前用户
+        if(null != loginUserDto){
+            operationLog.setUserId(String.valueOf(loginUserDto.getUid()));
+            operationLog.setUsername(loginUserDto.getUsername());
+            operationLog.setRealName(loginUserDto.getNickname());
+            operationLog.setTenantId(loginUserDto.getTenantId());
         }
 
         // 输出控制台
@@ -192,9 +193,11 @@ public class OperateLogAspect {
      * @param argNames 方法参数名称数组
      * @param args 方法参数数组
      * @param annotation 注解信息
+     * @param loginUserDto 当前用户
      * @return 返回处理后的描述
      */
-    private String getDetail(String[] argNames, Object[] args, OperateLogger annotation){
+    private String getDetail(String[] argNames, Object[] args, OperateLogger annotation,
+                             LoginUserDto loginUserDto){
         Map<String, Object> map = Maps.newHashMap();
         for(int i = 0;i < argNames.length;i++){
             map.put(argNames[i], args[i]);
@@ -203,12 +206,8 @@ public class OperateLogAspect {
         String description = annotation.description();
         try {
             // 当前用户信息
-            Optional<String> tokenOptional = UserContextHolder.getToken();
-            if(tokenOptional.isPresent()){
-                LoginUserDto loginUserDto = UserTokenUtil.getLoginUserDto(tokenOptional.get()).orElse(null);
-                if(null != loginUserDto){
-                    description = "'" + loginUserDto.getNickname() + "'=> " + annotation.description();
-                }
+            if(null != loginUserDto){
+                description = "'" + loginUserDto.getNickname() + "'=> " + annotation.description();
             }
             description = MessUtil.getMes(description, RE, "${", "}", map);
         }catch (Exception e){
@@ -0,0 +1,449 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.log.writer;
+
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 日志批量写入器
+ *
+ * 请求线程只写入无锁环形队列 不阻塞 (队列已满时丢弃并计数)
+ * 单个写入线程 按 条数 或 时间 合并为一批 交给 handler 批量入库
+ * 入库失败 或 入库缓慢且积压过多时，批次追加到本地文件，数据库恢复后 空闲时分批回放
+ *
+ * 溢出目录 由调用方按实例配置 (同一主机多实例 不可共用)，目录与文件 仅属主可读写；
+ * 目录不属于当前用户 或无法收紧权限时 不再写入溢出文件 (直接丢弃)
+ * 回放时 每批入库成功后 记录已提交行数，重启后 从已提交位置继续，不再从头重复写入
+ * (仅 入库已提交 而行数尚未记录时 进程退出，该批会再写入一次)
+ *
+ * @author Parker
+ * @date 2021年7月15日20:28:24
+ */
+@Slf4j
+public class BatchLogWriter<T> {
+
+    /** 空闲等待 */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /** 入库缓慢阈值 (毫秒) */
+    private static final long SLOW_WRITE_MILLIS = 1000L;
+    /** 入库失败后 重试间隔 (毫秒) */
+    private static final long RETRY_BACKOFF_MILLIS = 5000L;
+    /** 停止时 最长等待 (毫秒) */
+    private static final long STOP_WAIT_MILLIS = 5000L;
+    /** 默认溢出目录 (未配置时) */
+    private static final String DEFAULT_SPILL_PATH = System.getProperty("user.home")
+            + File.separator + ".opsli" + File.separator + "log-spill";
+    /** 溢出目录权限 仅属主 */
+    private static final Set<PosixFilePermission> DIR_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+    /** 溢出文件权限 仅属主 */
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+    /** 是否支持 POSIX 权限 */
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    /** 名称 */
+    private final String name;
+    /** 类型 */
+    private final Class<T> type;
+    /** 批量入库 */
+    private final Consumer<List<T>> handler;
+    /** 环形队列 */
+    private final RingBuffer<T> buffer;
+    /** 批量条数 */
+    private final int batchSize;
+    /** 批量间隔 (毫秒) */
+    private final long flushIntervalMillis;
+    /** 溢出目录 */
+    private final File spillDir;
+    /** 溢出文件 */
+    private final File spillFile;
+    /** 回放文件 */
+    private final File replayFile;
+    /** 回放 已提交行数 */
+    private final File offsetFile;
+    /** 丢弃计数 */
+    private final AtomicLong dropCount = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread worker;
+
+    /** 以下字段只在写入线程中访问 */
+    private boolean spillReady;
+    private boolean degraded;
+    private long retryAt;
+    private BufferedReader replayReader;
+    private long replayOffset;
+
+    /**
+     * 构造函数
+     * @param name 名称 (溢出文件名)
+     * @param type 类型
+     * @param spillPath 溢出目录 为空时 使用 ~/.opsli/log-spill
+     * @param capacity 队列容量
+     * @param batchSize 批量条数
+     * @param flushIntervalMillis 批量间隔 (毫秒)
+     * @param handler 批量入库
+     */
+    public BatchLogWriter(String name, Class<T> type, String spillPath, int capacity, int batchSize,
+                          long flushIntervalMillis, Consumer<List<T>> handler) {
+        this.name = name;
+        this.type = type;
+        this.handler = handler;
+        this.buffer = new RingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.spillDir = new File(StrUtil.blankToDefault(spillPath, DEFAULT_SPILL_PATH));
+        this.spillFile = new File(spillDir, name + ".log");
+        this.replayFile = new File(spillDir, name + ".replay");
+        this.offsetFile = new File(spillDir, name + ".offset");
+    }
+
+    /**
+     * 写入日志 不阻塞
+     * @param item 日志
+     * @return boolean 队列已满 返回 false
+     */
+    public boolean write(T item) {
+        if(buffer.offer(item)){
+            LockSupport.unpark(worker);
+            return true;
+        }
+        dropCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 启动
+     */
+    public synchronized void start() {
+        if(running){
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "Batch-Log-Writer-" + name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 停止 剩余日志入库后退出
+     */
+    public synchronized void stop() {
+        if(!running){
+            return;
+        }
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(STOP_WAIT_MILLIS);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        this.prepareSpillDir();
+        List<T> batch = new ArrayList<>(batchSize);
+        long lastFlush = System.currentTimeMillis();
+        while (running || buffer.size() > 0 || !batch.isEmpty()){
+            try {
+                buffer.drainTo(batch, batchSize - batch.size());
+                long now = System.currentTimeMillis();
+                if(batch.size() >= batchSize ||
+                        (!batch.isEmpty() && (!running || now - lastFlush >= flushIntervalMillis))){
+                    flush(batch);
+                    batch.clear();
+                    lastFlush = now;
+                    continue;
+                }
+
+                if(batch.isEmpty()){
+                    replay();
+                    reportDrop();
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }catch (Exception e){
+                log.error(e.getMessage(), e);
+            }
+        }
+        closeReplay();
+    }
+
+    /**
+     * 批量入库
+     * @param batch 批次
+     */
+    private void flush(List<T> batch) {
+        long now = System.currentTimeMillis();
+        if(degraded || now < retryAt){
+            spill(batch);
+            // 积压已消化 恢复入库
+            if(degraded && buffer.size() < buffer.capacity() / 4){
+                degraded = false;
+            }
+            return;
+        }
+
+        try {
+            handler.accept(new ArrayList<>(batch));
+            long cost = System.currentTimeMillis() - now;
+            if(cost > SLOW_WRITE_MILLIS && buffer.size() > buffer.capacity() / 2){
+                degraded = true;
+                log.warn("日志批量入库缓慢 {}ms，积压 {} 条，暂存本地文件 - {}", cost, buffer.size(), name);
+            }
+        }catch (Exception e){
+            log.error("日志批量入库失败，暂存本地文件 - " + name, e);
+            retryAt = now + RETRY_BACKOFF_MILLIS;
+            spill(batch);
+        }
+    }
+
+    /**
+     * 追加到溢出文件
+     * @param batch 批次
+     */
+    private void spill(List<T> batch) {
+        List<String> lines = new ArrayList<>(batch.size());
+        for (T item : batch) {
+            lines.add(JSON.toJSONString(item));
+        }
+        appendLines(lines);
+    }
+
+    /**
+     * 回放溢出文件 每次一批
+     *
+     * 溢出文件整体改名为回放文件 (改名前 清除上一个回放文件的已提交行数)
+     * 每批入库成功后 记录已提交行数，入库失败 或 进程退出后 从已提交位置继续
+     */
+    private void replay() {
+        if(!spillReady || degraded || System.currentTimeMillis() < retryAt){
+            return;
+        }
+
+        try {
+            if(null == replayReader){
+                if(!replayFile.exists()){
+                    if(!spillFile.exists() || spillFile.length() == 0){
+                        return;
+                    }
+                    // 新的回放文件 从头开始
+                    Files.deleteIfExists(offsetFile.toPath());
+                    Files.move(spillFile.toPath(), replayFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+                replayOffset = readOffset();
+                replayReader = Files.newBufferedReader(replayFile.toPath(), StandardCharsets.UTF_8);
+                // 跳过已提交的行
+                for (long i = 0; i < replayOffset; i++) {
+                    if(null == replayReader.readLine()){
+                        break;
+                    }
+                }
+            }
+
+            List<String> lines = new ArrayList<>(batchSize);
+            int lineCount = 0;
+            String line;
+            while (lines.size() < batchSize && null != (line = replayReader.readLine())){
+                lineCount++;
+                if(!line.isEmpty()){
+                    lines.add(line);
+                }
+            }
+            if(lineCount == 0){
+                closeReplay();
+                Files.deleteIfExists(replayFile.toPath());
+                Files.deleteIfExists(offsetFile.toPath());
+                return;
+            }
+
+            List<T> batch = new ArrayList<>(lines.size());
+            for (String l : lines) {
+                try {
+                    batch.add(JSON.parseObject(l, type));
+                }catch (Exception e){
+                    log.error("日志回放 解析失败 已跳过 - {}: {}", name, l);
+                }
+            }
+
+            try {
+                if(!batch.isEmpty()){
+                    handler.accept(batch);
+                }
+            }catch (Exception e){
+                // 回放失败 保留回放文件与已提交行数 稍后从已提交位置重试
+                log.error("日志回放失败 - " + name, e);
+                retryAt = System.currentTimeMillis() + RETRY_BACKOFF_MILLIS;
+                closeReplay();
+                return;
+            }
+
+            replayOffset += lineCount;
+            writeOffset(replayOffset);
+        }catch (IOException e){
+            log.error(e.getMessage(), e);
+            retryAt = System.currentTimeMillis() + RETRY_BACKOFF_MILLIS;
+            closeReplay();
+        }
+    }
+
+    /**
+     * 读取 回放已提交行数
+     * @return long
+     */
+    private long readOffset() throws IOException {
+        if(!offsetFile.exists()){
+            return 0L;
+        }
+        String content = new String(Files.readAllBytes(offsetFile.toPath()), StandardCharsets.UTF_8).trim();
+        try {
+            return Math.max(0L, Long.parseLong(content));
+        }catch (NumberFormatException e){
+            log.error("日志回放 已提交行数无法解析 从头回放 - {}: {}", name, content);
+            return 0L;
+        }
+    }
+
+    /**
+     * 记录 回放已提交行数 (先写临时文件 再原子替换)
+     * @param offset 已提交行数
+     */
+    private void writeOffset(long offset) throws IOException {
+        Path tmp = new File(spillDir, name + ".offset.tmp").toPath();
+        Files.deleteIfExists(tmp);
+        createFile(tmp);
+        Files.write(tmp, String.valueOf(offset).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, offsetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 追加行
+     * @param lines 行
+     */
+    private void appendLines(List<String> lines) {
+        if(lines.isEmpty()){
+            return;
+        }
+        if(!spillReady && !this.prepareSpillDir()){
+            log.error("日志溢出目录不可用 丢弃 {} 条 - {}", lines.size(), name);
+            return;
+        }
+        try {
+            if(!spillFile.exists()){
+                createFile(spillFile.toPath());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(spillFile.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)){
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        }catch (IOException e){
+            log.error("日志暂存本地文件失败 丢弃 " + lines.size() + " 条 - " + name, e);
+        }
+    }
+
+    /**
+     * 创建文件 仅属主可读写
+     * @param path 文件
+     */
+    private static void createFile(Path path) throws IOException {
+        if(POSIX){
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS));
+        }else {
+            Files.createFile(path);
+        }
+    }
+
+    /**
+     * 准备溢出目录 创建时即为仅属主可读写，已存在时 校验属主并收紧权限
+     * @return boolean 是否可用
+     */
+    private boolean prepareSpillDir() {
+        if(spillReady){
+            return true;
+        }
+        try {
+            Path dir = spillDir.toPath().toAbsolutePath();
+            if(POSIX){
+                Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(DIR_PERMISSIONS));
+                UserPrincipal user = FileSystems.getDefault().getUserPrincipalLookupService()
+                        .lookupPrincipalByName(System.getProperty("user.name"));
+                if(!user.equals(Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS))){
+                    throw new IOException("日志溢出目录属主不是当前用户: " + dir);
+                }
+                Files.setPosixFilePermissions(dir, DIR_PERMISSIONS);
+                // 收紧 已存在的溢出文件
+                for (File file : new File[]{spillFile, replayFile, offsetFile}) {
+                    if(file.exists()){
+                        Files.setPosixFilePermissions(file.toPath(), FILE_PERMISSIONS);
+                    }
+                }
+            }else {
+                Files.createDirectories(dir);
+            }
+            spillReady = true;
+        }catch (IOException | UnsupportedOperationException e){
+            log.error("日志溢出目录不可用 入库失败的日志将被丢弃 - " + name, e);
+        }
+        return spillReady;
+    }
+
+    private void closeReplay() {
+        if(null == replayReader){
+            return;
+        }
+        try {
+            replayReader.close();
+        }catch (IOException ignored){}
+        replayReader = null;
+    }
+
+    /**
+     * 输出丢弃数量
+     */
+    private void reportDrop() {
+        long count = dropCount.getAndSet(0);
+        if(count > 0){
+            log.warn("日志队列已满 丢弃 {} 条 - {}", count, name);
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.log.writer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 无锁有界环形队列 (多生产者 单消费者)
+ *
+ * 每个槽位带序号，生产者 CAS 抢占写入位置，消费者按序号判断槽位是否可读
+ * 队列已满时 直接返回失败，不阻塞生产者
+ *
+ * @author Parker
+ * @date 2021年7月15日20:28:24
+ */
+public class RingBuffer<T> {
+
+    /** 容量 (2 的幂) */
+    private final int capacity;
+    /** 下标掩码 */
+    private final int mask;
+    /** 槽位序号 */
+    private final AtomicLongArray sequences;
+    /** 槽位数据 */
+    private final AtomicReferenceArray<T> items;
+    /** 写入位置 */
+    private final AtomicLong tail = new AtomicLong();
+    /** 读取位置 (只有消费者线程修改) */
+    private final AtomicLong head = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity){
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.items = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 写入 不阻塞
+     * @param item 数据
+     * @return boolean 队列已满 返回 false
+     */
+    public boolean offer(T item) {
+        if(null == item){
+            return false;
+        }
+        for (;;) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long seq = sequences.get(index);
+            long diff = seq - pos;
+            if(diff == 0){
+                if(tail.compareAndSet(pos, pos + 1)){
+                    items.set(index, item);
+                    // 发布 消费者可读
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            }else if(diff < 0){
+                // 队列已满
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 批量读取 (只允许单个消费者线程调用)
+     * @param target 目标集合
+     * @param max 最大数量
+     * @return int 读取数量
+     */
+    public int drainTo(List<T> target, int max) {
+        int count = 0;
+        long pos = head.get();
+        while (count < max){
+            int index = (int) (pos & mask);
+            if(sequences.get(index) != pos + 1){
+                // 尚未写入完成
+                break;
+            }
+            target.add(items.get(index));
+            items.set(index, null);
+            // 释放槽位 供下一圈写入
+            sequences.set(index, pos + capacity);
+            pos++;
+            count++;
+        }
+        head.set(pos);
+        return count;
+    }
+
+    /**
+     * 当前积压数量 (近似值)
+     * @return int
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(capacity, tail.get() - head.get()));
+    }
+
+    /**
+     * 容量
+     * @return int
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+}
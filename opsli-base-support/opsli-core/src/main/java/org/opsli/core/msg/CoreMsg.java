@@ -32,6 +32,7 @@ public enum CoreMsg implements BaseMsg {
     SQL_EXCEPTION_INTEGRITY_CONSTRAINT_VIOLATION(10105,"数据主键冲突或者已有该数据！"),
     SQL_EXCEPTION_NOT_HAVE_DEFAULT_VALUE(10106,"数据异常：{} 字段没有默认值！"),
     SQL_EXCEPTION_UNKNOWN(10106,"数据异常：未知异常，请联系系统管理员 {}"),
+    SQL_EXCEPTION_CURSOR(10107,"分页游标无效，请刷新页面重试！"),
 
     /**
      * Redis
@@ -48,6 +49,7 @@ public enum CoreMsg implements BaseMsg {
     EXCEL_IMPORT_ERROR(10303,"Excel导入失败!   -  耗时：{}  -  失败信息：{}"),
     EXCEL_IMPORT_NO(10304,"导入对象为空"),
     EXCEL_FILE_NULL(10305,"请选择文件"),
+    EXCEL_IMPORT_PART(10306,"Excel 部分导入失败！  -  成功：{}条  -  失败：{}条  -  耗时：{}"),
     EXCEL_HANDLE_MAX(10700, "超出最大操作数量, 当前数据[{}]条，允许最大阈值[{}]条"),
 
 
@@ -67,6 +69,7 @@ public enum CoreMsg implements BaseMsg {
     OTHER_EXCEPTION_CRYPTO_DE(10703,"解密失败"),
     OTHER_EXCEPTION_CRYPTO_REFLEX(10704,"解密反射失败"),
     OTHER_EXCEPTION_UTILS_INIT(10705,"系统工具类暂未初始化"),
+    OTHER_EXCEPTION_TREE_SNAPSHOT(10706,"树数据序列化失败"),
 
 
     ;
@@ -40,14 +40,13 @@ public enum CryptoConfigFactory {
      * @return LocalConfig
      */
     public CryptoAsymmetric getCryptoSymmetric() {
-        CryptoSymmetricOption option = new CryptoSymmetricOption();
-        // 获得缓存参数配置
-        OptionsUtil.getOptionByBean(option);
-        // 验证配置
-        ValidatorUtil.verify(option);
-
-        // 转化对象
-        return WrapperUtil.transformInstance(option, CryptoAsymmetric.class);
+        // 获得缓存参数配置 (只读快照)
+        return OptionsUtil.getConfig(CryptoSymmetricOption.class.getName(), CryptoSymmetricOption::new, option -> {
+            // 验证配置
+            ValidatorUtil.verify(option);
+            // 转化对象
+            return WrapperUtil.transformInstance(option, CryptoAsymmetric.class);
+        });
     }
 
     /**
@@ -55,14 +54,13 @@ public enum CryptoConfigFactory {
      * @return LocalConfig
      */
     public CryptoAsymmetric getCryptoAsymmetric() {
-        CryptoAsymmetricOption option = new CryptoAsymmetricOption();
-        // 获得缓存参数配置
-        OptionsUtil.getOptionByBean(option);
-        // 验证配置
-        ValidatorUtil.verify(option);
-
-        // 转化对象
-        return WrapperUtil.transformInstance(option, CryptoAsymmetric.class);
+        // 获得缓存参数配置 (只读快照)
+        return OptionsUtil.getConfig(CryptoAsymmetricOption.class.getName(), CryptoAsymmetricOption::new, option -> {
+            // 验证配置
+            ValidatorUtil.verify(option);
+            // 转化对象
+            return WrapperUtil.transformInstance(option, CryptoAsymmetric.class);
+        });
     }
 
 
@@ -43,14 +43,13 @@ public enum EmailConfigFactory {
      * @return LocalConfig
      */
     public EmailConfig getConfig() {
-        EmailConfigOption option = new EmailConfigOption();
-        // 获得缓存参数配置
-        OptionsUtil.getOptionByBean(option);
-        // 验证配置
-        ValidatorUtil.verify(option);
-
-        // 转化对象
-        return WrapperUtil.transformInstance(option, EmailConfig.class);
+        // 获得缓存参数配置 (只读快照)
+        return OptionsUtil.getConfig(EmailConfigOption.class.getName(), EmailConfigOption::new, option -> {
+            // 验证配置
+            ValidatorUtil.verify(option);
+            // 转化对象
+            return WrapperUtil.transformInstance(option, EmailConfig.class);
+        });
     }
 
 
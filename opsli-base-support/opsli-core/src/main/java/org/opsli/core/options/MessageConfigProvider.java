@@ -0,0 +1,67 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.options;
+
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.plugins.email.conf.EmailConfig;
+import org.opsli.plugins.email.conf.EmailConfigProvider;
+import org.opsli.plugins.sms.enums.SmsType;
+import org.opsli.plugins.sms.model.SmsModel;
+import org.opsli.plugins.sms.service.SmsAccessProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * 外发消息 配置提供者
+ * 重启后载入的邮件、短信 不含凭证，发送时由此获取当前配置
+ *
+ * @author Parker
+ * @date 2021-12-27 10:20
+ */
+@Slf4j
+@Component
+public class MessageConfigProvider implements EmailConfigProvider, SmsAccessProvider {
+
+    @Override
+    public EmailConfig getConfig() {
+        try {
+            return EmailConfigFactory.INSTANCE.getConfig();
+        }catch (Exception e){
+            // 未配置
+            log.error("获得邮件配置失败：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public SmsModel getAccess(SmsType type) {
+        if(SmsType.ALIYUN != type){
+            return null;
+        }
+        try {
+            SmsAliYunConfigFactory.SmsAliYunConfigOption option =
+                    SmsAliYunConfigFactory.INSTANCE.getConfig();
+            return SmsModel.builder()
+                    .accessKey(option.getAccessKey())
+                    .accessKeySecret(option.getAccessKeySecret())
+                    .build();
+        }catch (Exception e){
+            // 未配置
+            log.error("获得短信配置失败：{}", e.getMessage());
+            return null;
+        }
+    }
+
+}
@@ -41,14 +41,12 @@ public enum SmsAliYunConfigFactory {
      * @return LocalConfig
      */
     public SmsAliYunConfigOption getConfig() {
-        SmsAliYunConfigOption option = new SmsAliYunConfigOption();
-        // 获得缓存参数配置
-        OptionsUtil.getOptionByBean(option);
-        // 验证配置
-        ValidatorUtil.verify(option);
-
-        // 转化对象
-        return option;
+        // 获得缓存参数配置 (只读快照)
+        return OptionsUtil.getConfig(SmsAliYunConfigOption.class.getName(), SmsAliYunConfigOption::new, option -> {
+            // 验证配置
+            ValidatorUtil.verify(option);
+            return option;
+        });
     }
 
 
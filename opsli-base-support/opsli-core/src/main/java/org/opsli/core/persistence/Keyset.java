@@ -0,0 +1,248 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.persistence;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.util.ReflectUtil;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.commons.lang3.StringUtils;
+import org.opsli.common.constants.MyBatisConstants;
+import org.opsli.common.exception.ServiceException;
+import org.opsli.core.msg.CoreMsg;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 游标分页 (Keyset / Seek)
+ *
+ * 以上一页最后一行的排序字段值作为游标，下一页按排序字段比较定位起点
+ * 不使用 OFFSET 跳过前面的行，页数再深 耗时也不变
+ *
+ * 排序字段末尾 自动追加主键 保证顺序唯一
+ * 排序字段可为空，定位条件 按数据库的空值排序位置 单独处理 IS NULL
+ *
+ * @author Parker
+ * @date 2020-09-21 23:57
+ */
+public final class Keyset {
+
+    /** 游标参数名 */
+    public static final String CURSOR = "cursor";
+
+    /** 游标 排序签名 */
+    private static final String CURSOR_ORDER = "o";
+    /** 游标 值 */
+    private static final String CURSOR_VALUES = "v";
+
+    /**
+     * 追加主键 作为排序最后一位
+     * @param orders 排序
+     * @return List
+     */
+    public static List<Order> withTieBreaker(List<Order> orders) {
+        List<Order> list = new ArrayList<>();
+        if(null != orders){
+            list.addAll(orders);
+        }
+        for (Order order : list) {
+            if(MyBatisConstants.FIELD_ID.equals(order.getField())){
+                return list;
+            }
+        }
+        // 主键方向 与最后一个排序字段一致
+        boolean asc = list.isEmpty() || list.get(list.size() - 1).isAsc();
+        list.add(new Order(MyBatisConstants.FIELD_ID, MyBatisConstants.FIELD_ID, asc));
+        return list;
+    }
+
+    /**
+     * 生成游标
+     * @param entity 当前页最后一行
+     * @param orders 排序
+     * @return String
+     */
+    public static String encode(Object entity, List<Order> orders) {
+        JSONArray values = new JSONArray(orders.size());
+        for (Order order : orders) {
+            values.add(ReflectUtil.getFieldValue(entity, order.getField()));
+        }
+        JSONObject cursor = new JSONObject();
+        cursor.put(CURSOR_ORDER, getSignature(orders));
+        cursor.put(CURSOR_VALUES, values);
+        return Base64.encodeUrlSafe(cursor.toJSONString());
+    }
+
+    /**
+     * 解析游标
+     * @param cursor 游标
+     * @param entityClazz Entity Clazz
+     * @param orders 排序
+     * @return Object[] 排序字段值
+     */
+    public static Object[] decode(String cursor, Class<?> entityClazz, List<Order> orders) {
+        try {
+            JSONObject jsonObject = JSON.parseObject(Base64.decodeStr(cursor));
+            JSONArray values = jsonObject.getJSONArray(CURSOR_VALUES);
+            // 排序方式变化后 旧游标不可用
+            if(!StringUtils.equals(getSignature(orders), jsonObject.getString(CURSOR_ORDER))
+                    || null == values || values.size() != orders.size()){
+                throw new ServiceException(CoreMsg.SQL_EXCEPTION_CURSOR);
+            }
+
+            Object[] params = new Object[orders.size()];
+            for (int i = 0; i < orders.size(); i++) {
+                Object value = values.get(i);
+                if(null == value){
+                    // 主键 不可为空
+                    if(MyBatisConstants.FIELD_ID.equals(orders.get(i).getField())){
+                        throw new ServiceException(CoreMsg.SQL_EXCEPTION_CURSOR);
+                    }
+                    continue;
+                }
+                Field field = ReflectUtil.getField(entityClazz, orders.get(i).getField());
+                params[i] = null == field ? value : Convert.convert(field.getType(), value);
+            }
+            return params;
+        }catch (ServiceException e){
+            throw e;
+        }catch (Exception e){
+            throw new ServiceException(CoreMsg.SQL_EXCEPTION_CURSOR, e);
+        }
+    }
+
+    /**
+     * 生成定位条件
+     *
+     * 例: update_time ASC, id ASC
+     * update_time >= {0} AND (update_time > {0} OR (update_time = {0} AND (id > {1})))
+     * 首个排序字段的范围条件 便于走索引
+     *
+     * 游标值为空时 以 IS NULL 定位，空值排在后面时 非空游标之后 还包含 IS NULL 的行 (主键除外)
+     * 例: 空值最小 (MySQL) update_time ASC 游标值为空
+     * (update_time IS NOT NULL OR (update_time IS NULL AND (id > {1})))
+     *
+     * @param orders 排序
+     * @param values 游标值
+     * @param nullsSortedLow 数据库空值是否视为最小值 (MySQL、SQL Server 为是，Oracle、PostgreSQL 为否)
+     * @return String
+     */
+    public static String getSeekSql(List<Order> orders, Object[] values, boolean nullsSortedLow) {
+        String sql = null;
+        for (int i = orders.size() - 1; i >= 0; i--) {
+            Order order = orders.get(i);
+            String column = order.getColumn();
+            String param = "{" + i + "}";
+            // 主键 不为空
+            boolean nullsFirst = MyBatisConstants.FIELD_ID.equals(order.getField())
+                    || order.isAsc() == nullsSortedLow;
+
+            String after;
+            String equal;
+            if(null == values[i]){
+                // 空值排在后面时 之后没有行
+                after = nullsFirst ? column + " IS NOT NULL" : null;
+                equal = column + " IS NULL";
+            }else {
+                after = column + (order.isAsc() ? " > " : " < ") + param;
+                if(!nullsFirst){
+                    after = "(" + after + " OR " + column + " IS NULL)";
+                }
+                equal = column + " = " + param;
+            }
+
+            if(null == sql){
+                sql = null == after ? "1 = 0" : after;
+            }else {
+                String next = equal + " AND (" + sql + ")";
+                sql = null == after ? next : after + " OR (" + next + ")";
+            }
+        }
+
+        String range = getRangeSql(orders.get(0), values[0], nullsSortedLow);
+        return null == range ? "(" + sql + ")" : range + " AND (" + sql + ")";
+    }
+
+    /**
+     * 首个排序字段的范围条件
+     * @param first 首个排序字段
+     * @param value 游标值
+     * @param nullsSortedLow 数据库空值是否视为最小值
+     * @return String 无需范围条件时 返回 null
+     */
+    private static String getRangeSql(Order first, Object value, boolean nullsSortedLow) {
+        boolean nullsFirst = MyBatisConstants.FIELD_ID.equals(first.getField())
+                || first.isAsc() == nullsSortedLow;
+        String column = first.getColumn();
+        if(null == value){
+            return nullsFirst ? null : column + " IS NULL";
+        }
+        String range = column + (first.isAsc() ? " >= " : " <= ") + "{0}";
+        return nullsFirst ? range : "(" + range + " OR " + column + " IS NULL)";
+    }
+
+    /**
+     * 排序签名
+     * @param orders 排序
+     * @return String
+     */
+    private static String getSignature(List<Order> orders) {
+        StringBuilder sb = new StringBuilder();
+        for (Order order : orders) {
+            sb.append(order.getColumn()).append(order.isAsc() ? '+' : '-');
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * 排序字段
+     */
+    public static class Order {
+
+        /** Entity 字段 */
+        private final String field;
+        /** 数据库字段 */
+        private final String column;
+        /** 是否正序 */
+        private final boolean asc;
+
+        public Order(String field, String column, boolean asc) {
+            this.field = field;
+            this.column = column;
+            this.asc = asc;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public boolean isAsc() {
+            return asc;
+        }
+    }
+
+    // =================
+    private Keyset(){}
+}
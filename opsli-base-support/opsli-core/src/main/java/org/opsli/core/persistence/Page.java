@@ -42,6 +42,15 @@ public class Page<T extends BaseEntity,E extends ApiWrapper> extends PageSeriali
     /** 查询条件构造器 */
     private QueryWrapper<T> queryWrapper;
 
+    /** 游标分页 当前游标 (首页为空串) */
+    private String cursor;
+    /** 游标分页 下一页游标 (没有下一页时为空) */
+    private String nextCursor;
+    /** 游标分页 排序 */
+    private List<Keyset.Order> keysetOrders;
+    /** 游标分页 是否统计总数 (总数会短时缓存) */
+    private boolean searchCount = true;
+
     public Page(){
         super();
     }
@@ -110,6 +119,7 @@ public class Page<T extends BaseEntity,E extends ApiWrapper> extends PageSeriali
         Page.PageData pageData = new PageData();
         pageData.setRows(this.getList());
         pageData.setTotal(this.getTotal());
+        pageData.setNextCursor(this.nextCursor);
         return pageData;
     }
 
@@ -140,6 +150,38 @@ public class Page<T extends BaseEntity,E extends ApiWrapper> extends PageSeriali
         this.queryWrapper = queryWrapper;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Keyset.Order> getKeysetOrders() {
+        return keysetOrders;
+    }
+
+    public void setKeysetOrders(List<Keyset.Order> keysetOrders) {
+        this.keysetOrders = keysetOrders;
+    }
+
+    public boolean isSearchCount() {
+        return searchCount;
+    }
+
+    public void setSearchCount(boolean searchCount) {
+        this.searchCount = searchCount;
+    }
+
 
     //////////////////////////////////////////////////////////
 
@@ -155,6 +197,9 @@ public class Page<T extends BaseEntity,E extends ApiWrapper> extends PageSeriali
         /** 行 */
         private List<?> rows;
 
+        /** 下一页游标 (游标分页) */
+        private String nextCursor;
+
     }
 
 }
@@ -21,8 +21,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.opsli.common.constants.MyBatisConstants;
 import org.opsli.common.utils.FieldUtil;
 import org.opsli.core.base.entity.BaseEntity;
+import org.opsli.core.persistence.Keyset;
 import org.opsli.core.persistence.querybuilder.conf.WebQueryConf;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -58,6 +61,8 @@ public class WebQueryBuilder<T extends BaseEntity> implements QueryBuilder<T>{
     private final String defaultOrderField;
     /** 配置类 */
     private WebQueryConf conf;
+    /** 已应用的排序 (游标分页使用) */
+    private final List<Keyset.Order> orders = new ArrayList<>();
 
     /**
      * 构造函数 只是生产 查询器
@@ -122,6 +127,7 @@ public class WebQueryBuilder<T extends BaseEntity> implements QueryBuilder<T>{
      * @return QueryWrapper
      */
     private  <T extends BaseEntity> QueryWrapper<T> createQueryWrapper(QueryWrapper<T> queryWrapper){
+        orders.clear();
         if(this.parameterMap == null){
             return queryWrapper;
         }
@@ -183,11 +189,20 @@ public class WebQueryBuilder<T extends BaseEntity> implements QueryBuilder<T>{
                     key = FieldUtil.humpToUnderline(key);
                 }
                 queryWrapper.orderByDesc(key);
+                orders.add(new Keyset.Order(this.defaultOrderField, key, false));
             }
         }
         return queryWrapper;
     }
 
+    /**
+     * 获得已应用的排序 build 后可用
+     * @return List
+     */
+    public List<Keyset.Order> getOrders() {
+        return orders;
+    }
+
     /**
      * 处理值
      * @param queryWrapper 查询构造器
@@ -201,6 +216,7 @@ public class WebQueryBuilder<T extends BaseEntity> implements QueryBuilder<T>{
         ){
             return;
         }
+        String field = key;
         String keyStr = null;
         if(conf != null){
             keyStr = conf.get(key);
@@ -248,6 +264,7 @@ public class WebQueryBuilder<T extends BaseEntity> implements QueryBuilder<T>{
                 } else {
                     queryWrapper.orderByAsc(key);
                 }
+                orders.add(new Keyset.Order(field, key, !ORDER_DESC.equals(value)));
                 break;
             default:
                 break;
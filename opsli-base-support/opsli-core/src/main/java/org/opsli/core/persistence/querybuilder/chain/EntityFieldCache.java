@@ -0,0 +1,54 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.persistence.querybuilder.chain;
+
+import cn.hutool.core.util.ReflectUtil;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 责任链 实体字段元数据缓存
+ *
+ * 每次查询都会判断实体是否包含 租户、组织 字段，实体类固定不变
+ * 按 实体类 + 字段名 缓存判断结果，避免每次查询反射遍历字段
+ *
+ * @author Parker
+ * @date 2021-12-22 14:06
+ */
+final class EntityFieldCache {
+
+    /** 缓存 实体类 -> (字段名 -> 是否存在) */
+    private static final Map<Class<?>, Map<String, Boolean>> FIELD_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 实体是否包含字段
+     * @param entityClazz 实体类
+     * @param fieldName 字段名
+     * @return boolean
+     */
+    static boolean hasField(Class<?> entityClazz, String fieldName) {
+        if(null == entityClazz || null == fieldName){
+            return false;
+        }
+        return FIELD_CACHE
+                .computeIfAbsent(entityClazz, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(fieldName, k -> ReflectUtil.hasField(entityClazz, fieldName));
+    }
+
+    private EntityFieldCache(){}
+
+}
@@ -16,7 +16,6 @@
 package org.opsli.core.persistence.querybuilder.chain;
 
 import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.util.ReflectUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
@@ -28,6 +27,7 @@ import org.opsli.common.utils.FieldUtil;
 import org.opsli.common.utils.ListDistinctUtil;
 import org.opsli.core.base.entity.BaseEntity;
 import org.opsli.core.persistence.querybuilder.conf.WebQueryConf;
+import org.opsli.core.utils.OrgUtil;
 import org.opsli.core.utils.UserUtil;
 
 import java.util.List;
@@ -64,7 +64,7 @@ public class QueryDataPermsHandler implements QueryBuilderChain{
         }
 
         // 自身责任 -- 判断组织
-        boolean flag = ReflectUtil.hasField(entityClazz, MyBatisConstants.FIELD_ORG_GROUP);
+        boolean flag = EntityFieldCache.hasField(entityClazz, MyBatisConstants.FIELD_ORG_GROUP);
         if(flag) {
             // 处理查询条件
             handleDataPermsCondition(null, wrapper);
@@ -81,7 +81,7 @@ public class QueryDataPermsHandler implements QueryBuilderChain{
         }
 
         // 自身责任 -- 判断组织
-        boolean flag = ReflectUtil.hasField(entityClazz, MyBatisConstants.FIELD_ORG_GROUP);
+        boolean flag = EntityFieldCache.hasField(entityClazz, MyBatisConstants.FIELD_ORG_GROUP);
         if(flag) {
             // 处理查询条件
             handleDataPermsCondition(webQueryConf, wrapper);
@@ -169,18 +169,9 @@ public class QueryDataPermsHandler implements QueryBuilderChain{
                 }
                 // 部门及以下
                 else if(ConditionType.DEPT_AND_BELOW.equals(finalConditionType)){
-                    wra.and(wraConfine -> {
-                        // 增加右模糊 查询条件
-                        for (int i = 0; i < finalOrgIdGroupList.size(); i++) {
-                            // 右模糊匹配
-                            wraConfine.likeRight(
-                                    finalOrgField, finalOrgIdGroupList.get(i));
-
-                            if(i < finalOrgIdGroupList.size() - 1){
-                                wraConfine.or();
-                            }
-                        }
-                    });
+                    // 组织及下级 区间条件 (最小覆盖集合)
+                    wra.and(wraConfine -> OrgUtil.handleOrgPathCondition(
+                            finalOrgField, finalOrgIdGroupList, wraConfine));
                 }else {
                     // 查自身
                     wra.eq(finalCreateByField, userId);
@@ -15,7 +15,6 @@
  */
 package org.opsli.core.persistence.querybuilder.chain;
 
-import cn.hutool.core.util.ReflectUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import org.apache.commons.lang3.StringUtils;
 import org.opsli.api.wrapper.system.user.UserModel;
@@ -57,7 +56,7 @@ public class QueryTenantHandler implements QueryBuilderChain{
         }
 
         // 自身责任 -- 判断多租户
-        boolean tenantFlag = ReflectUtil.hasField(entityClazz, MyBatisConstants.FIELD_TENANT);
+        boolean tenantFlag = EntityFieldCache.hasField(entityClazz, MyBatisConstants.FIELD_TENANT);
         if(tenantFlag) {
             UserModel currUser = UserUtil.getUser();
 
@@ -77,7 +76,7 @@ public class QueryTenantHandler implements QueryBuilderChain{
         }
 
         // 自身责任 -- 判断多租户
-        boolean tenantFlag = ReflectUtil.hasField(entityClazz, MyBatisConstants.FIELD_TENANT);
+        boolean tenantFlag = EntityFieldCache.hasField(entityClazz, MyBatisConstants.FIELD_TENANT);
         if(tenantFlag) {
             UserModel currUser = UserUtil.getUser();
 
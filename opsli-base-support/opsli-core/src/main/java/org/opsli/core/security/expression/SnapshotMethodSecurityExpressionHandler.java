@@ -0,0 +1,46 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.security.expression;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.opsli.core.security.snapshot.AuthSnapshot;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+
+/**
+ * 授权快照 方法鉴权表达式处理器
+ *
+ * 认证信息中携带授权快照时 @PreAuthorize 的权限判断走快照位图
+ * 未携带快照 (如 登录过程中) 时 保持 Spring Security 默认行为
+ *
+ * @author Parker
+ * @date 2022-07-14 4:44 PM
+ */
+public class SnapshotMethodSecurityExpressionHandler extends DefaultMethodSecurityExpressionHandler {
+
+    @Override
+    protected MethodSecurityExpressionOperations createSecurityExpressionRoot(
+            Authentication authentication, MethodInvocation invocation) {
+        MethodSecurityExpressionOperations root =
+                super.createSecurityExpressionRoot(authentication, invocation);
+        if(null != authentication && authentication.getDetails() instanceof AuthSnapshot){
+            return new SnapshotSecurityExpressionRoot(root, (AuthSnapshot) authentication.getDetails());
+        }
+        return root;
+    }
+
+}
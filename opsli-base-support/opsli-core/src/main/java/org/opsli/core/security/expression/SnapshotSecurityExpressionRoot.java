@@ -0,0 +1,157 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.security.expression;
+
+import org.opsli.core.security.snapshot.AuthSnapshot;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+
+/**
+ * 授权快照 方法鉴权表达式根对象
+ *
+ * hasAuthority / hasAnyAuthority 直接查询授权快照的权限位图 (O(1))
+ * 不再由 Spring Security 逐次遍历授权集合，其余表达式委托给默认实现
+ *
+ * @author Parker
+ * @date 2022-07-14 4:44 PM
+ */
+public class SnapshotSecurityExpressionRoot implements MethodSecurityExpressionOperations {
+
+    /** 默认表达式根对象 */
+    private final MethodSecurityExpressionOperations delegate;
+    /** 授权快照 */
+    private final AuthSnapshot snapshot;
+
+    public SnapshotSecurityExpressionRoot(MethodSecurityExpressionOperations delegate,
+                                          AuthSnapshot snapshot){
+        this.delegate = delegate;
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public boolean hasAuthority(String authority) {
+        if(null == authority){
+            return false;
+        }
+        // 角色授权 (ROLE_ 前缀)
+        if(authority.startsWith(AuthSnapshot.DEFAULT_ROLE_PREFIX)){
+            return snapshot.hasRole(authority.substring(AuthSnapshot.DEFAULT_ROLE_PREFIX.length()));
+        }
+        return snapshot.hasPermission(authority);
+    }
+
+    @Override
+    public boolean hasAnyAuthority(String... authorities) {
+        if(null == authorities){
+            return false;
+        }
+        for (String authority : authorities) {
+            if(hasAuthority(authority)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasRole(String role) {
+        return delegate.hasRole(role);
+    }
+
+    @Override
+    public boolean hasAnyRole(String... roles) {
+        return delegate.hasAnyRole(roles);
+    }
+
+    @Override
+    public Authentication getAuthentication() {
+        return delegate.getAuthentication();
+    }
+
+    /**
+     * 认证主体 (表达式中 principal)
+     * @return Object
+     */
+    public Object getPrincipal() {
+        return delegate.getAuthentication().getPrincipal();
+    }
+
+    @Override
+    public boolean permitAll() {
+        return delegate.permitAll();
+    }
+
+    @Override
+    public boolean denyAll() {
+        return delegate.denyAll();
+    }
+
+    @Override
+    public boolean isAnonymous() {
+        return delegate.isAnonymous();
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return delegate.isAuthenticated();
+    }
+
+    @Override
+    public boolean isRememberMe() {
+        return delegate.isRememberMe();
+    }
+
+    @Override
+    public boolean isFullyAuthenticated() {
+        return delegate.isFullyAuthenticated();
+    }
+
+    @Override
+    public boolean hasPermission(Object target, Object permission) {
+        return delegate.hasPermission(target, permission);
+    }
+
+    @Override
+    public boolean hasPermission(Object targetId, String targetType, Object permission) {
+        return delegate.hasPermission(targetId, targetType, permission);
+    }
+
+    @Override
+    public void setFilterObject(Object filterObject) {
+        delegate.setFilterObject(filterObject);
+    }
+
+    @Override
+    public Object getFilterObject() {
+        return delegate.getFilterObject();
+    }
+
+    @Override
+    public void setReturnObject(Object returnObject) {
+        delegate.setReturnObject(returnObject);
+    }
+
+    @Override
+    public Object getReturnObject() {
+        return delegate.getReturnObject();
+    }
+
+    @Override
+    public Object getThis() {
+        return delegate.getThis();
+    }
+
+}
@@ -17,7 +17,10 @@ package org.opsli.core.security.filter;
 
 import lombok.AllArgsConstructor;
 import org.opsli.core.base.dto.LoginUserDto;
+import org.opsli.core.holder.UserContextHolder;
 import org.opsli.core.security.service.UidUserDetailDetailServiceImpl;
+import org.opsli.core.security.snapshot.AuthSnapshot;
+import org.opsli.core.utils.AuthSnapshotUtil;
 import org.opsli.core.utils.UserTokenUtil;
 import org.opsli.plugins.security.authentication.AfterAuthenticationToken;
 import org.opsli.plugins.security.exception.AuthException;
@@ -64,18 +67,28 @@ public class JwtAuthenticationTokenFilter extends OncePerRequestFilter {
                 // 认证无效
                 .orElseThrow(() -> new AuthException(AuthErrorCodeEnum.AUTH_AUTH_INVALID));
 
+        // 当前请求内 复用已认证用户 不再重复解析 Token
+        UserContextHolder.setLoginUser(token, loginUserDto);
+
         // 这里用Uid 获取用户信息，因为涉及到超管切换租户身份
         // 非 租户系统 可以直接使用 用户名获取信息
-        UserDetails userDetails = uidUserDetailDetailService.loadUserByPrincipal(loginUserDto.getUid())
+        AuthSnapshot snapshot = AuthSnapshotUtil.getSnapshot(loginUserDto.getUid())
                 // 认证无效
                 .orElseThrow(() -> new AuthException(AuthErrorCodeEnum.AUTH_AUTH_INVALID));
+        UserDetails userDetails = uidUserDetailDetailService.loadUserBySnapshot(snapshot);
 
         AfterAuthenticationToken authenticationToken =
                 new AfterAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+        // 携带授权快照 方法鉴权 (@PreAuthorize) 直接查询快照位图
+        authenticationToken.setDetails(snapshot);
 
         SecurityContextHolder.getContext().setAuthentication(authenticationToken);
 
-        //放行
-        filterChain.doFilter(request, response);
+        try {
+            //放行
+            filterChain.doFilter(request, response);
+        }finally {
+            UserContextHolder.clearLoginUser();
+        }
     }
 }
@@ -15,24 +15,20 @@
  */
 package org.opsli.core.security.service;
 
-import cn.hutool.core.util.StrUtil;
 import lombok.AllArgsConstructor;
-import org.opsli.api.wrapper.system.user.UserModel;
 import org.opsli.common.enums.DictType;
-import org.opsli.core.utils.UserUtil;
+import org.opsli.core.security.snapshot.AuthSnapshot;
+import org.opsli.core.utils.AuthSnapshotUtil;
 import org.opsli.plugins.security.UserDetailModel;
 import org.opsli.plugins.security.properties.AuthProperties;
 import org.opsli.plugins.security.service.ILoadUserDetailService;
 import org.opsli.plugins.security.utils.PasswordUtil;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Collection;
+import java.util.Optional;
 
 /**
  * 用户ID 获取用户信息Service
@@ -44,7 +40,6 @@ import java.util.stream.Collectors;
 @Service("uidUserDetailDetailService")
 public class UidUserDetailDetailServiceImpl implements ILoadUserDetailService {
 
-    private static final String DEFAULT_ROLE_PREFIX = "ROLE_";
     private final AuthProperties authProperties;
 
     @Override
@@ -55,48 +50,38 @@ public class UidUserDetailDetailServiceImpl implements ILoadUserDetailService {
 
     @Override
     public Optional<UserDetails> loadUserByPrincipal(Object principal) {
-        UserModel userModel = UserUtil.getUser((String) principal);
-        if(null == userModel){
+        // 授权快照 (用户、角色、权限 构建一次 直接复用授权信息)
+        AuthSnapshot snapshot = AuthSnapshotUtil.getSnapshot((String) principal)
+                .orElse(null);
+        if(null == snapshot){
             return Optional.empty();
         }
+        return Optional.of(loadUserBySnapshot(snapshot));
+    }
 
-        // 处理权限数据
-        List<String> authorities = new ArrayList<>();
-        List<String> userRoles = UserUtil.getUserRolesByUserId(userModel.getId());
-        List<String> userAllPerms = UserUtil.getUserAllPermsByUserId(userModel.getId());
-        for (String userRole : userRoles) {
-            authorities.add(DEFAULT_ROLE_PREFIX+userRole);
-        }
-        authorities.addAll(userAllPerms);
-
-        // 清除空的 授权
-        authorities.removeIf(StrUtil::isEmpty);
-
-        List<GrantedAuthority> grantedAuthorities = authorities.stream()
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
-
-        UserDetailModel userDetailModel = UserDetailModel.builder()
-                .username(userModel.getUsername())
-                .password(userModel.getPassword())
+    /**
+     * 根据授权快照 构建用户信息
+     * @param snapshot 授权快照
+     * @return UserDetails
+     */
+    public UserDetails loadUserBySnapshot(AuthSnapshot snapshot) {
+        boolean enable = DictType.NO_YES_YES.getValue().equals(snapshot.getEnable());
+        return UserDetailModel.builder()
+                .username(snapshot.getUsername())
+                // Token 认证 不需要密码，快照中不保存密码
                 // 账户启动
-                .enabled(
-                        DictType.NO_YES_YES.getValue().equals(userModel.getEnable()))
+                .enabled(enable)
                 // 账户未过期（如果需要 请自行扩展字段）
-                .accountNonExpired(
-                        DictType.NO_YES_YES.getValue().equals(userModel.getEnable()))
+                .accountNonExpired(enable)
                 // 账户未锁定（如果需要 请自行扩展字段）
-                .accountNonLocked(
-                        DictType.NO_YES_YES.getValue().equals(userModel.getEnable()))
+                .accountNonLocked(enable)
                 // 判断凭证是否过期（默认不判断 如果需要 请自行扩展过期后修改密码操作）
                 .credentialsNonExpired(
                         PasswordUtil.isCredentialsNonExpired(
-                                userModel.getPassword(), authProperties.getCredentialsExpired()))
-                // 授权信息
-                .authorities(grantedAuthorities)
+                                snapshot.getCredentialsCreateTime(), authProperties.getCredentialsExpired()))
+                // 授权信息 (不可变 直接复用)
+                .authorities(snapshot.getAuthorities())
                 .build();
-
-        return Optional.ofNullable(userDetailModel);
     }
 
 }
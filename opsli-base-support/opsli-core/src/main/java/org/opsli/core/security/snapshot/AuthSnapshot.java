@@ -0,0 +1,134 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.security.snapshot;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 用户授权快照 (本地编译形态)
+ *
+ * 不可变对象，构建一次后直接交给 Spring Security 使用
+ * 权限按 PermissionCatalogue 下标存储为位图，权限判断为 O(1) 位测试
+ *
+ * @author Parker
+ * @date 2022-07-14 4:44 PM
+ */
+@Getter
+public final class AuthSnapshot {
+
+    /** 角色前缀 */
+    public static final String DEFAULT_ROLE_PREFIX = "ROLE_";
+
+    /** 版本号 */
+    private final long version;
+    /** 用户ID */
+    private final String userId;
+    /** 用户名 */
+    private final String username;
+    /** 凭证创建时间 (不保存密码) */
+    private final long credentialsCreateTime;
+    /** 是否启用 */
+    private final String enable;
+    /** 租户ID */
+    private final String tenantId;
+    /** 默认组织ID */
+    private final String defOrgId;
+    /** 默认组织 父级ID集合 */
+    private final String defOrgIds;
+    /** 默认角色ID */
+    private final String defRoleId;
+    /** 数据范围 */
+    private final String dataScope;
+    /** 角色 */
+    private final Set<String> roles;
+    /** 授权信息 */
+    private final List<GrantedAuthority> authorities;
+
+    /** 权限位图 */
+    @Getter(lombok.AccessLevel.NONE)
+    private final BitSet permBits;
+
+    public AuthSnapshot(AuthSnapshotDto dto){
+        this.version = null == dto.getVersion() ? 0L : dto.getVersion();
+        this.userId = dto.getUserId();
+        this.username = dto.getUsername();
+        this.credentialsCreateTime = null == dto.getCredentialsCreateTime() ? 0L : dto.getCredentialsCreateTime();
+        this.enable = dto.getEnable();
+        this.tenantId = dto.getTenantId();
+        this.defOrgId = dto.getDefOrgId();
+        this.defOrgIds = dto.getDefOrgIds();
+        this.defRoleId = dto.getDefRoleId();
+        this.dataScope = dto.getDataScope();
+
+        List<GrantedAuthority> grantedAuthorities = new ArrayList<>();
+        Set<String> roleSet = new HashSet<>();
+        if(CollUtil.isNotEmpty(dto.getRoles())){
+            for (String role : dto.getRoles()) {
+                if(StrUtil.isEmpty(role)){
+                    continue;
+                }
+                roleSet.add(role);
+                grantedAuthorities.add(new SimpleGrantedAuthority(DEFAULT_ROLE_PREFIX + role));
+            }
+        }
+
+        BitSet bits = new BitSet();
+        if(CollUtil.isNotEmpty(dto.getPerms())){
+            for (String perm : dto.getPerms()) {
+                if(StrUtil.isEmpty(perm)){
+                    continue;
+                }
+                bits.set(PermissionCatalogue.intern(perm));
+                grantedAuthorities.add(new SimpleGrantedAuthority(perm));
+            }
+        }
+
+        this.roles = Collections.unmodifiableSet(roleSet);
+        this.permBits = bits;
+        this.authorities = Collections.unmodifiableList(grantedAuthorities);
+    }
+
+    /**
+     * 是否有权限
+     * @param perm 权限标识
+     * @return boolean
+     */
+    public boolean hasPermission(String perm){
+        int index = PermissionCatalogue.indexOf(perm);
+        return index >= 0 && permBits.get(index);
+    }
+
+    /**
+     * 是否有角色
+     * @param role 角色编号
+     * @return boolean
+     */
+    public boolean hasRole(String role){
+        return null != role && roles.contains(role);
+    }
+
+}
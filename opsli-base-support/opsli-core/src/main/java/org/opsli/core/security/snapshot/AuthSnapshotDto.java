@@ -0,0 +1,78 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.security.snapshot;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 用户授权快照 (Redis 存储形态)
+ *
+ * 一个用户的认证授权信息 合并为 Redis 中的单个值
+ *
+ * @author Parker
+ * @date 2022-07-14 4:44 PM
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AuthSnapshotDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 版本号 (构建时间戳) */
+    private Long version;
+
+    /** 用户ID */
+    private String userId;
+
+    /** 用户名 */
+    private String username;
+
+    /** 凭证创建时间 (不保存密码) */
+    private Long credentialsCreateTime;
+
+    /** 是否启用 */
+    private String enable;
+
+    /** 租户ID */
+    private String tenantId;
+
+    /** 角色 */
+    private List<String> roles;
+
+    /** 权限 */
+    private List<String> perms;
+
+    /** 默认组织ID */
+    private String defOrgId;
+
+    /** 默认组织 父级ID集合 */
+    private String defOrgIds;
+
+    /** 默认角色ID */
+    private String defRoleId;
+
+    /** 数据范围 */
+    private String dataScope;
+
+}
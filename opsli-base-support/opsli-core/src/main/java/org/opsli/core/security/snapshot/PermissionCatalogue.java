@@ -0,0 +1,67 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.security.snapshot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 权限目录
+ *
+ * 将权限标识 驻留为 递增下标，授权快照按下标存储为位图
+ * 权限标识来自菜单配置 数量有限，只增不减
+ * 下标只在当前节点有效，不参与序列化
+ *
+ * @author Parker
+ * @date 2022-07-14 4:44 PM
+ */
+public final class PermissionCatalogue {
+
+    /** 权限 -> 下标 */
+    private static final Map<String, Integer> INDEX_MAP = new ConcurrentHashMap<>();
+    /** 下标生成器 */
+    private static final AtomicInteger SEQ = new AtomicInteger();
+
+    /**
+     * 驻留权限 获得下标
+     * @param perm 权限标识
+     * @return int
+     */
+    public static int intern(String perm){
+        Integer index = INDEX_MAP.get(perm);
+        if(null != index){
+            return index;
+        }
+        return INDEX_MAP.computeIfAbsent(perm, (k) -> SEQ.getAndIncrement());
+    }
+
+    /**
+     * 获得下标 不存在返回 -1
+     * @param perm 权限标识
+     * @return int
+     */
+    public static int indexOf(String perm){
+        if(null == perm){
+            return -1;
+        }
+        Integer index = INDEX_MAP.get(perm);
+        return null == index ? -1 : index;
+    }
+
+    private PermissionCatalogue(){}
+
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.util.StrUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.api.wrapper.system.role.RoleModel;
+import org.opsli.api.wrapper.system.user.UserModel;
+import org.opsli.api.wrapper.system.user.UserOrgRefModel;
+import org.opsli.common.constants.RedisConstants;
+import org.opsli.core.cache.CacheGeneration;
+import org.opsli.core.cache.CacheGeneration.Scope;
+import org.opsli.core.cache.CacheUtil;
+import org.opsli.core.cache.SecurityCache;
+import org.opsli.core.msg.CoreMsg;
+import org.opsli.core.security.snapshot.AuthSnapshot;
+import org.opsli.core.security.snapshot.AuthSnapshotDto;
+import org.opsli.plugins.security.utils.PasswordUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
+
+/**
+ * 用户授权快照工具类
+ *
+ * 用户、租户、角色、权限、默认组织、数据范围 合并为一个 Redis 值，构建一次
+ * 本地按版本号缓存编译后的 AuthSnapshot，版本号未变化时 直接复用，不再重复构建授权信息
+ * 用户角色、权限、组织 等刷新时 一并删除快照，角色、菜单、组织、租户 变更时 由世代号整体失效
+ *
+ * @author Parker
+ * @date 2022-07-14 4:44 PM
+ */
+@Slf4j
+@Order(UTIL_ORDER)
+@Component
+@Lazy(false)
+public class AuthSnapshotUtil {
+
+    /** 版本号字段 */
+    private static final String FIELD_VERSION = "version";
+
+    /** 本地编译快照 (过期时间兜底 版本号保证一致性) */
+    private static final Cache<String, AuthSnapshot> COMPILED_CACHE = CacheBuilder
+            .newBuilder()
+            .maximumSize(20000)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+
+    /** 增加初始状态开关 防止异常使用 */
+    private static boolean IS_INIT;
+
+    private static RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * 根据用户ID 获得授权快照
+     * @param userId 用户ID
+     * @return Optional<AuthSnapshot>
+     */
+    public static Optional<AuthSnapshot> getSnapshot(String userId){
+        // 判断 工具类是否初始化完成
+        ThrowExceptionUtil.isThrowException(!IS_INIT,
+                CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
+
+        // 处理 切换租户
+        UserModel userModel = UserUtil.getUser(userId);
+        if(null == userModel){
+            return Optional.empty();
+        }
+
+        final String finalUserId = userModel.getId();
+
+        // 缓存Key
+        String cacheKey = getCacheKey(finalUserId);
+
+        // Key 带世代号 世代号变化后 旧快照不再被访问，须设置存活时间 由 Redis 淘汰
+        Object cache = SecurityCache.get(redisTemplate, cacheKey, (k) -> buildSnapshot(userModel));
+        if(null == cache){
+            return Optional.empty();
+        }
+
+        // 版本号未变化 直接复用本地编译快照
+        long version = getVersion(cache);
+        AuthSnapshot snapshot = COMPILED_CACHE.getIfPresent(finalUserId);
+        if(null != snapshot && snapshot.getVersion() == version){
+            return Optional.of(snapshot);
+        }
+
+        AuthSnapshotDto snapshotDto = Convert.convert(AuthSnapshotDto.class, cache);
+        if(null == snapshotDto){
+            return Optional.empty();
+        }
+        snapshot = new AuthSnapshot(snapshotDto);
+        COMPILED_CACHE.put(finalUserId, snapshot);
+        return Optional.of(snapshot);
+    }
+
+    /**
+     * 构建授权快照
+     * @param userModel 用户
+     * @return AuthSnapshotDto
+     */
+    private static AuthSnapshotDto buildSnapshot(UserModel userModel){
+        String userId = userModel.getId();
+        AuthSnapshotDto.AuthSnapshotDtoBuilder builder = AuthSnapshotDto.builder()
+                .version(System.currentTimeMillis())
+                .userId(userId)
+                .username(userModel.getUsername())
+                .credentialsCreateTime(getCredentialsCreateTime(userModel.getPassword()))
+                .enable(userModel.getEnable())
+                .tenantId(userModel.getTenantId())
+                .roles(UserUtil.getUserRolesByUserId(userId))
+                .perms(UserUtil.getUserAllPermsByUserId(userId));
+
+        UserOrgRefModel defOrg = UserUtil.getUserDefOrgByUserId(userId);
+        if(null != defOrg){
+            builder.defOrgId(defOrg.getOrgId())
+                    .defOrgIds(defOrg.getOrgIds());
+        }
+
+        RoleModel defRole = UserUtil.getUserDefRoleByUserId(userId);
+        if(null != defRole){
+            builder.defRoleId(defRole.getId())
+                    .dataScope(defRole.getDataScope());
+        }
+        return builder.build();
+    }
+
+    /**
+     * 获得凭证创建时间 快照中只保存创建时间 不保存密码
+     * @param password 加密密码
+     * @return Long 无法解析时 返回 null (视为凭证过期)
+     */
+    private static Long getCredentialsCreateTime(String password){
+        if(StrUtil.isEmpty(password)){
+            return null;
+        }
+        try {
+            return PasswordUtil.getCredentialsCreateTime(password);
+        }catch (Exception e){
+            return null;
+        }
+    }
+
+    /**
+     * 获得版本号 (不做整体转换)
+     * @param cache 缓存
+     * @return long
+     */
+    private static long getVersion(Object cache){
+        if(cache instanceof AuthSnapshotDto){
+            return Convert.toLong(((AuthSnapshotDto) cache).getVersion(), 0L);
+        }
+        if(cache instanceof Map){
+            return Convert.toLong(((Map<?, ?>) cache).get(FIELD_VERSION), 0L);
+        }
+        return 0L;
+    }
+
+    // ============== 刷新缓存 ==============
+
+    /**
+     * 获得快照缓存Key 供刷新时一并删除
+     * 快照依赖 角色、菜单、组织、租户 Key 中带上对应世代号
+     * @param userId 用户ID
+     * @return String
+     */
+    public static String getCacheKey(String userId){
+        if(StrUtil.isEmpty(userId)){
+            return null;
+        }
+        return CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_AUTH_SNAPSHOT + userId)
+                + CacheGeneration.tag(Scope.ROLE, Scope.MENU, Scope.ORG, Scope.TENANT);
+    }
+
+    /**
+     * 刷新授权快照 - 删就完了
+     * @param userId 用户ID
+     * @return boolean
+     */
+    public static boolean refreshSnapshot(String userId){
+        // 判断 工具类是否初始化完成
+        ThrowExceptionUtil.isThrowException(!IS_INIT,
+                CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
+
+        if(StrUtil.isEmpty(userId)){
+            return true;
+        }
+
+        COMPILED_CACHE.invalidate(userId);
+        return SecurityCache.remove(redisTemplate, getCacheKey(userId));
+    }
+
+    // =====================================
+
+    /**
+     * 初始化
+     */
+    @Autowired
+    public void init(RedisTemplate<String, Object> redisTemplate) {
+        AuthSnapshotUtil.redisTemplate = redisTemplate;
+        IS_INIT = true;
+    }
+
+}
@@ -15,8 +15,10 @@
  */
 package org.opsli.core.utils;
 
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.util.RandomUtil;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.wf.captcha.ArithmeticCaptcha;
 import com.wf.captcha.GifCaptcha;
 import com.wf.captcha.SpecCaptcha;
@@ -26,6 +28,7 @@ import org.opsli.common.exception.TokenException;
 import org.opsli.core.cache.CacheUtil;
 import org.opsli.core.msg.CoreMsg;
 import org.opsli.core.msg.TokenMsg;
+import org.opsli.core.utils.captcha.CaptchaPool;
 import org.opsli.plugins.redis.RedisPlugin;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
@@ -34,6 +37,8 @@ import org.springframework.stereotype.Component;
 
 import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
 
@@ -41,6 +46,9 @@ import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
 /**
  * 验证码
  *
+ * 每种验证码类型 各有一个储备池，由低优先级线程 预先渲染，请求时直接取出一组 绑定到 UUID
+ * 储备耗尽时 在当前线程渲染兜底
+ *
  * @author parker
  * @date 2021年5月19日12:47:20
  */
@@ -55,8 +63,12 @@ public class CaptchaUtil {
     private static final int CAPTCHA_HEIGHT = 58;
     /** 验证码位数 */
     private static final int CAPTCHA_LEN = 4;
-    /** 验证码策略 */
-    private static final List<CaptchaStrategy> CAPTCHA_STRATEGY_LIST;
+    /** 验证码储备池 每种验证码策略一个 */
+    private static final List<CaptchaPool> CAPTCHA_POOL_LIST;
+    /** 储备池 统计周期 (毫秒) */
+    private static final long POOL_TICK_PERIOD = 1000L;
+    /** 渲染线程池 低优先级 不与请求线程争抢 */
+    private static final ScheduledThreadPoolExecutor RENDER_EXECUTOR;
 
     /** 缓存前缀 */
     private static final String PREFIX = "temp:captcha:";
@@ -69,10 +81,21 @@ public class CaptchaUtil {
     private static boolean IS_INIT;
 
     static {
-        CAPTCHA_STRATEGY_LIST = Lists.newArrayListWithCapacity(3);
-        CAPTCHA_STRATEGY_LIST.add(new CaptchaStrategyBySpec());
-        CAPTCHA_STRATEGY_LIST.add(new CaptchaStrategyByGif());
-        CAPTCHA_STRATEGY_LIST.add(new CaptchaStrategyByArithmetic());
+        RENDER_EXECUTOR = new ScheduledThreadPoolExecutor(2,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Captcha-Render-%d")
+                        .setPriority(Thread.MIN_PRIORITY)
+                        .setDaemon(true).build());
+
+        List<CaptchaStrategy> captchaStrategyList = Lists.newArrayListWithCapacity(3);
+        captchaStrategyList.add(new CaptchaStrategyBySpec());
+        captchaStrategyList.add(new CaptchaStrategyByGif());
+        captchaStrategyList.add(new CaptchaStrategyByArithmetic());
+
+        CAPTCHA_POOL_LIST = Lists.newArrayListWithCapacity(captchaStrategyList.size());
+        for (CaptchaStrategy captchaStrategy : captchaStrategyList) {
+            CAPTCHA_POOL_LIST.add(new CaptchaPool(captchaStrategy::createCaptcha, RENDER_EXECUTOR));
+        }
     }
 
     /**
@@ -90,22 +113,25 @@ public class CaptchaUtil {
         }
 
         // 随机生成验证码
-        int randomInt = RandomUtil.randomInt(0, CAPTCHA_STRATEGY_LIST.size());
+        int randomInt = RandomUtil.randomInt(0, CAPTCHA_POOL_LIST.size());
 
-        // 获得验证码生成策略
-        CaptchaStrategy captchaStrategy = CAPTCHA_STRATEGY_LIST.get(randomInt);
+        // 获得验证码储备池
+        CaptchaPool captchaPool = CAPTCHA_POOL_LIST.get(randomInt);
 
-        // 生成验证码
-        Captcha captcha = captchaStrategy.createCaptcha();
+        // 取出预渲染验证码 储备耗尽时 当前线程渲染
+        CaptchaPool.CaptchaPair captcha = captchaPool.poll();
+        if(captcha == null){
+            captcha = captchaPool.render();
+        }
 
         // 缓存Key
         String cacheKey = CacheUtil.formatKey(PREFIX + uuid);
 
         // 保存至缓存
-        boolean ret = redisPlugin.put(cacheKey, captcha.text(), TIME_OUT);
+        boolean ret = redisPlugin.put(cacheKey, captcha.getText(), TIME_OUT);
         if(ret){
             // 输出
-            captcha.out(out);
+            IoUtil.write(out, true, captcha.getImage());
         }
     }
 
@@ -227,6 +253,16 @@ public class CaptchaUtil {
     public void init(RedisPlugin redisPlugin) {
         CaptchaUtil.redisPlugin = redisPlugin;
 
+        // 预热储备 并定时按取用速率 调整储备数量
+        for (CaptchaPool captchaPool : CAPTCHA_POOL_LIST) {
+            captchaPool.fill();
+        }
+        RENDER_EXECUTOR.scheduleAtFixedRate(() -> {
+            for (CaptchaPool captchaPool : CAPTCHA_POOL_LIST) {
+                captchaPool.tick(POOL_TICK_PERIOD);
+            }
+        }, POOL_TICK_PERIOD, POOL_TICK_PERIOD, TimeUnit.MILLISECONDS);
+
         IS_INIT = true;
     }
 
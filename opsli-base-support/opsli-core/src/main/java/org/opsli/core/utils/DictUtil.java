@@ -21,14 +21,17 @@ import cn.hutool.core.convert.Convert;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.opsli.api.base.result.ResultWrapper;
 import org.opsli.api.web.system.dict.DictDetailApi;
 import org.opsli.api.wrapper.system.dict.DictDetailModel;
 import org.opsli.api.wrapper.system.dict.DictWrapper;
 import org.opsli.common.constants.RedisConstants;
+import org.opsli.core.cache.CacheGeneration;
 import org.opsli.core.cache.CacheUtil;
 import org.opsli.core.cache.SecurityCache;
 import org.opsli.core.msg.CoreMsg;
+import org.opsli.core.utils.dict.DictSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.core.annotation.Order;
@@ -37,6 +40,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
 
@@ -60,6 +64,15 @@ public class DictUtil {
     /** Redis */
     private static RedisTemplate<String, Object> redisTemplate;
 
+    /** 空字典快照 */
+    private static final DictSnapshot EMPTY_SNAPSHOT = DictSnapshot.build(null, -1L, null);
+
+    /** 本地快照 最大类型数，超出后 空字典不再保留 防止任意类型编号撑大本地缓存 */
+    private static final int MAX_SNAPSHOT_SIZE = 4096;
+
+    /** 本地字典快照 类型编号 -> 快照 */
+    private static final Map<String, DictSnapshot> SNAPSHOT_MAP = new ConcurrentHashMap<>();
+
     /**
      * 根据 字典值 取 字典名称
      * @param typeCode 字典类型Code
@@ -72,30 +85,10 @@ public class DictUtil {
         ThrowExceptionUtil.isThrowException(!IS_INIT,
                 CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
 
-        // 缓存Key
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_DICT_VALUE + typeCode);
-
-        Object cache = SecurityCache.hGet(redisTemplate, cacheKey, dictValue, (k) -> {
-            // 查询数据库 并保存到缓存内
-            ResultWrapper<List<DictDetailModel>> resultVo = dictDetailApi.findListByTypeCode(typeCode);
-            if (!ResultWrapper.isSuccess(resultVo)) {
-                return null;
-            }
-
-            List<DictDetailModel> dictDetailModels = resultVo.getData();
-            for (DictDetailModel model : dictDetailModels) {
-                if (model.getDictValue().equals(dictValue)) {
-                    // 转化Model
-                    return DictUtil.formatModel(model);
-                }
-            }
-            return null;
-        });
-
-        if(null == cache){
+        DictWrapper dictWrapper = getSnapshot(typeCode).getByValue(dictValue);
+        if(null == dictWrapper){
             return defaultVal;
         }
-        DictWrapper dictWrapper = Convert.convert(DictWrapper.class, cache);
         return dictWrapper.getDictName();
     }
 
@@ -111,36 +104,17 @@ public class DictUtil {
         ThrowExceptionUtil.isThrowException(!IS_INIT,
                 CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
 
-
-        // 缓存Key
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_DICT_NAME + typeCode);
-
-        Object cache = SecurityCache.hGet(redisTemplate, cacheKey, dictName, (k) -> {
-            // 查询数据库 并保存到缓存内
-            ResultWrapper<List<DictDetailModel>> resultVo = dictDetailApi.findListByTypeCode(typeCode);
-            if (!ResultWrapper.isSuccess(resultVo)) {
-                return null;
-            }
-
-            List<DictDetailModel> dictDetailModels = resultVo.getData();
-            for (DictDetailModel model : dictDetailModels) {
-                if (model.getDictName().equals(dictName)) {
-                    // 转化Model
-                    return DictUtil.formatModel(model);
-                }
-            }
-            return null;
-        });
-
-        if(null == cache){
+        DictWrapper dictWrapper = getSnapshot(typeCode).getByName(dictName);
+        if(null == dictWrapper){
             return defaultVal;
         }
-        DictWrapper dictWrapper = Convert.convert(DictWrapper.class, cache);
         return dictWrapper.getDictValue();
     }
 
     /**
      * 根据字典code 获得字典列表
+     * 返回快照内已排序列表 只读
+     *
      * @param typeCode 类型编号
      * @return List
      */
@@ -149,13 +123,72 @@ public class DictUtil {
         ThrowExceptionUtil.isThrowException(!IS_INIT,
                 CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
 
+        return getSnapshot(typeCode).getDictList();
+    }
+
+    /**
+     * 根据字典code 获得字典快照
+     *
+     * 本地快照与字典世代号一致时 直接使用，不访问 Redis；
+     * 世代号变更 (本节点修改 或 其他节点广播) 后 重新从 Redis 加载，Redis 中没有则查询数据库
+     *
+     * @param typeCode 类型编号
+     * @return DictSnapshot
+     */
+    public static DictSnapshot getSnapshot(String typeCode){
+        // 判断 工具类是否初始化完成
+        ThrowExceptionUtil.isThrowException(!IS_INIT,
+                CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
+
+        if(StringUtils.isEmpty(typeCode)){
+            return EMPTY_SNAPSHOT;
+        }
+
+        long generation = CacheGeneration.get(CacheGeneration.Scope.DICT);
+        DictSnapshot snapshot = SNAPSHOT_MAP.get(typeCode);
+        if(null != snapshot && snapshot.getGeneration() >= generation){
+            return snapshot;
+        }
+
+        // 在 Map 锁外加载 Redis、数据库 IO 不阻塞其余类型；并发时可能重复加载 结果一致
+        DictSnapshot loaded = loadSnapshot(typeCode, generation);
+        // 空字典同样保留 未配置的类型编号 不必每次访问 Redis
+        if(loaded.isEmpty() && null == snapshot && SNAPSHOT_MAP.size() >= MAX_SNAPSHOT_SIZE){
+            return loaded;
+        }
+
+        // 只前进不后退 并发加载时 保留世代号较新的快照
+        while (true) {
+            DictSnapshot current = SNAPSHOT_MAP.get(typeCode);
+            if(null == current){
+                current = SNAPSHOT_MAP.putIfAbsent(typeCode, loaded);
+                if(null == current){
+                    return loaded;
+                }
+            }
+            if(current.getGeneration() >= generation){
+                return current;
+            }
+            if(SNAPSHOT_MAP.replace(typeCode, current, loaded)){
+                return loaded;
+            }
+        }
+    }
+
+    /**
+     * 加载字典快照
+     * @param typeCode 类型编号
+     * @param generation 字典世代号
+     * @return DictSnapshot
+     */
+    private static DictSnapshot loadSnapshot(String typeCode, long generation){
         // 缓存Key
         String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_DICT_VALUE + typeCode);
 
         Map<String, Object> dictCacheMap = SecurityCache.hGetAll(redisTemplate, cacheKey, (k) -> {
             // 查询数据库 并保存到缓存内
             ResultWrapper<List<DictDetailModel>> resultVo = dictDetailApi.findListByTypeCode(typeCode);
-            if (!ResultWrapper.isSuccess(resultVo)) {
+            if (!ResultWrapper.isSuccess(resultVo) || null == resultVo.getData()) {
                 return null;
             }
 
@@ -167,15 +200,11 @@ public class DictUtil {
             return dictMap;
         });
 
-        List<DictWrapper> dictWrappers = handleDictList(dictCacheMap, typeCode);
-
-        // 排序
-        return sortDictWrappers(dictWrappers);
+        // 快照构建时排序 无需预先排序
+        return DictSnapshot.build(typeCode, generation, toDictWrappers(dictCacheMap, typeCode));
     }
 
 
-
-
     // ===============
 
 
@@ -218,6 +247,9 @@ public class DictUtil {
                 count--;
             }
         }
+
+        // 递增字典世代号 所有节点的本地快照随之失效
+        CacheGeneration.increment(CacheGeneration.Scope.DICT);
         return count == 0;
     }
 
@@ -231,11 +263,6 @@ public class DictUtil {
         ThrowExceptionUtil.isThrowException(!IS_INIT,
                 CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
 
-        List<DictWrapper> dictWrapperList = DictUtil.getDictList(typeCode);
-        if(CollUtil.isEmpty(dictWrapperList)){
-            return true;
-        }
-
         // 缓存Key
         String cacheKeyByValue = CacheUtil.formatKey(
                 RedisConstants.PREFIX_DICT_VALUE + typeCode);
@@ -243,23 +270,14 @@ public class DictUtil {
         String cacheKeyByName = CacheUtil.formatKey(
                 RedisConstants.PREFIX_DICT_NAME + typeCode);
 
-        return SecurityCache.remove(redisTemplate, cacheKeyByValue, cacheKeyByName);
-    }
+        boolean ret = SecurityCache.remove(redisTemplate, cacheKeyByValue, cacheKeyByName);
 
-
-    /**
-     * 格式化 字典
-     * @param model 字典模型
-     */
-    private static DictWrapper formatModel(DictDetailModel model){
-        DictWrapper dictWrapperModel = new DictWrapper();
-        dictWrapperModel.setTypeCode(model.getTypeCode());
-        dictWrapperModel.setDictName(model.getDictName());
-        dictWrapperModel.setDictValue(model.getDictValue());
-        dictWrapperModel.setModel(model);
-        return dictWrapperModel;
+        // 递增字典世代号 所有节点的本地快照随之失效
+        CacheGeneration.increment(CacheGeneration.Scope.DICT);
+        return ret;
     }
 
+
     /**
      * 字典排序
      * @param dictWrapperModels 字典Model
@@ -292,6 +310,19 @@ public class DictUtil {
      * @return List
      */
     public static List<DictWrapper> handleDictList(Map<String, Object> dictMap, String typeCode){
+        List<DictWrapper> dictWrapperModels = toDictWrappers(dictMap, typeCode);
+
+        // 返回排序后 list
+        return CollUtil.isNotEmpty(dictWrapperModels)?sortDictWrappers(dictWrapperModels):dictWrapperModels;
+    }
+
+    /**
+     * 转换字典集合 (无序)
+     * @param dictMap Map
+     * @param typeCode 类型编号
+     * @return List
+     */
+    private static List<DictWrapper> toDictWrappers(Map<String, Object> dictMap, String typeCode){
         List<DictWrapper> dictWrapperModels = Lists.newArrayList();
         if(CollUtil.isNotEmpty(dictMap)){
             for (Map.Entry<String, Object> entry : dictMap.entrySet()) {
@@ -303,14 +334,11 @@ public class DictUtil {
                 dictWrapperModel.setTypeCode(typeCode);
                 dictWrapperModel.setDictName(model.getDictName());
                 dictWrapperModel.setDictValue(model.getDictValue());
-                dictWrapperModel.setDictValue(model.getDictValue());
                 dictWrapperModel.setModel(model);
                 dictWrapperModels.add(dictWrapperModel);
             }
-         }
-
-        // 返回排序后 list
-        return CollUtil.isNotEmpty(dictWrapperModels)?sortDictWrappers(dictWrapperModels):dictWrapperModels;
+        }
+        return dictWrapperModels;
     }
 
 
@@ -15,7 +15,6 @@
  */
 package org.opsli.core.utils;
 
-import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.convert.Convert;
 import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.date.TimeInterval;
@@ -23,24 +22,27 @@ import cn.hutool.core.util.ReflectUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.alibaba.excel.support.ExcelTypeEnum;
-import com.google.common.collect.Maps;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.opsli.api.base.warpper.ApiWrapper;
-import org.opsli.api.wrapper.system.dict.DictWrapper;
 import org.opsli.common.enums.ExcelOperate;
+import org.opsli.core.utils.dict.DictSnapshot;
 import org.opsli.core.utils.excel.factory.AbstractModelHelper;
 import org.opsli.core.utils.excel.factory.ModelFactoryHelper;
 import org.opsli.plugins.excel.ExcelPlugin;
 import org.opsli.plugins.excel.annotation.ExcelInfo;
 import org.opsli.plugins.excel.exception.ExcelPluginException;
 import org.opsli.plugins.excel.listener.BatchExcelListener;
+import org.opsli.plugins.excel.pipeline.ExcelImportPipeline;
+import org.opsli.plugins.excel.pipeline.ExcelImportReport;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletResponse;
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * Excel 工具类
@@ -52,10 +54,10 @@ import java.util.Map;
 public final class ExcelUtil {
 
     /** 字典KEY */
-    public static final String DICT_NAME_KEY = "dictName";
-    public static final String DICT_VALUE_KEY = "dictValue";
+    public static final String DICT_NAME_KEY = DictSnapshot.DICT_NAME_KEY;
+    public static final String DICT_VALUE_KEY = DictSnapshot.DICT_VALUE_KEY;
     /** 字段字典Map */
-    private static final Map<Class<?>, JSONObject> FIELD_DICT_MAP = Maps.newHashMap();
+    private static final Map<Class<?>, JSONObject> FIELD_DICT_MAP = new ConcurrentHashMap<>();
 
     private ExcelUtil(){}
 
@@ -110,6 +112,19 @@ public final class ExcelUtil {
         ExcelUtilSingletonHolder.EXCEL_PLUGIN.readExcelByListener(excel, rowModel, sheetName, headLineNum, batchExcelListener);
     }
 
+    /**
+     * 流水线导入
+     * @param excel 文件
+     * @param rowModel 类型
+     * @param pipeline 导入流水线
+     * @param <T> 泛型
+     * @return ExcelImportReport 导入报告
+     */
+    public <T> ExcelImportReport importExcel(MultipartFile excel, Class<T> rowModel,
+                                             ExcelImportPipeline<T> pipeline) throws ExcelPluginException {
+        return ExcelUtilSingletonHolder.EXCEL_PLUGIN.importExcel(excel, rowModel, pipeline);
+    }
+
     ///////////////////////
 
     public <T> void writeExcel(HttpServletResponse response, List<T> list, String fileName, String sheetName, Class<T> classType, ExcelTypeEnum excelTypeEnum) throws ExcelPluginException {
@@ -118,6 +133,61 @@ public final class ExcelUtil {
         ExcelUtilSingletonHolder.EXCEL_PLUGIN.writeExcel(response, ts, fileName, sheetName, classType, excelTypeEnum);
     }
 
+    /**
+     * 分批导出
+     * 每批数据 处理字典后写入，写入后即可释放
+     *
+     * @param response response
+     * @param fileName 文件名
+     * @param sheetName sheet 名
+     * @param classType 类型
+     * @param excelTypeEnum 文件类型
+     * @param dataProvider 数据提供者 参数为批次写入器
+     * @param <T> 泛型
+     */
+    public <T> void writeExcel(HttpServletResponse response, String fileName, String sheetName, Class<T> classType,
+                               ExcelTypeEnum excelTypeEnum, Consumer<Consumer<List<T>>> dataProvider) throws ExcelPluginException {
+        // 字典只取一次
+        JSONObject fieldsDictJson = this.getFieldsDict(this.getFields(classType));
+        AbstractModelHelper modelHelper = null;
+        try {
+            modelHelper = ModelFactoryHelper.getModelHelper(classType);
+        }catch (Exception e){
+            // 与 handleDatas 一致 处理失败时 导出原数据
+            log.error(e.getMessage(), e);
+        }
+        final AbstractModelHelper finalModelHelper = modelHelper;
+        ExcelUtilSingletonHolder.EXCEL_PLUGIN.writeExcel(response, fileName, sheetName, classType, excelTypeEnum,
+                writer -> dataProvider.accept(list -> {
+                    // 处理数据
+                    if(finalModelHelper != null){
+                        this.handleDatas(list, fieldsDictJson, finalModelHelper, ExcelOperate.WRITE);
+                    }
+                    writer.accept(list);
+                }));
+    }
+
+    /**
+     * 获得导入单行字典翻译器
+     * 字典只取一次 供流水线逐行翻译，翻译异常由流水线记录为该行失败
+     *
+     * @param classType 类型
+     * @param <T> 泛型
+     * @return Consumer<T>
+     */
+    public <T> Consumer<T> getImportTranslator(Class<T> classType){
+        JSONObject fieldsDictJson = this.getFieldsDict(this.getFields(classType));
+        AbstractModelHelper modelHelper;
+        try {
+            modelHelper = ModelFactoryHelper.getModelHelper(classType);
+        }catch (Exception e){
+            // 与 handleDatas 一致 处理失败时 导入原数据
+            log.error(e.getMessage(), e);
+            return data -> {};
+        }
+        return data -> modelHelper.transformByImport(fieldsDictJson, cast(data));
+    }
+
     /**
      * 处理字典
      * @param datas 数据
@@ -141,18 +211,7 @@ public final class ExcelUtil {
             // 获得 helper类
             AbstractModelHelper modelHelper = ModelFactoryHelper.getModelHelper(typeClazz);
             // 字典赋值
-            for (T data : datas) {
-                switch (operate) {
-                    case READ:
-                        modelHelper.transformByImport(fieldsDictJson, cast(data));
-                        break;
-                    case WRITE:
-                        modelHelper.transformByExport(fieldsDictJson, cast(data));
-                        break;
-                    default:
-                        break;
-                }
-            }
+            this.handleDatas(datas, fieldsDictJson, modelHelper, operate);
 
         }catch (Exception e){
             log.error(e.getMessage(), e);
@@ -166,6 +225,34 @@ public final class ExcelUtil {
         return datas;
     }
 
+    /**
+     * 处理字典 (已取得字典)
+     * @param datas 数据
+     * @param fieldsDictJson 字段字典
+     * @param modelHelper helper类
+     * @param operate 操作方式
+     * @param <T> 泛型
+     */
+    private <T> void handleDatas(List<T> datas, JSONObject fieldsDictJson,
+                                 AbstractModelHelper modelHelper, ExcelOperate operate){
+        if(datas == null){
+            return;
+        }
+        // 字典赋值
+        for (T data : datas) {
+            switch (operate) {
+                case READ:
+                    modelHelper.transformByImport(fieldsDictJson, cast(data));
+                    break;
+                case WRITE:
+                    modelHelper.transformByExport(fieldsDictJson, cast(data));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
     /**
      * 获得字段字典Code
      *
@@ -215,27 +302,14 @@ public final class ExcelUtil {
             for (String s : fieldNameAndTypeCodeDict.keySet()) {
                 String key = Convert.toStr(s);
                 String typeCode = fieldNameAndTypeCodeDict.getStr(key);
-                List<DictWrapper> dictWrapperList = DictUtil.getDictList(typeCode);
-                // 如果字典 List 为空 则走下一个
-                if (CollUtil.isEmpty(dictWrapperList)) {
+                DictSnapshot dictSnapshot = DictUtil.getSnapshot(typeCode);
+                // 如果字典为空 则走下一个
+                if (dictSnapshot.isEmpty()) {
                     continue;
                 }
 
-                JSONObject dictObject = JSONUtil.createObj();
-                JSONObject nameJsonObject = JSONUtil.createObj();
-                JSONObject valueJsonObject = JSONUtil.createObj();
-                for (DictWrapper wrapper : dictWrapperList) {
-                    JSONObject dictWrapper = JSONUtil.parseObj(wrapper);
-                    if (!JSONUtil.isNull(dictWrapper)) {
-                        nameJsonObject.putOpt(wrapper.getDictName(), wrapper.getDictValue());
-                        valueJsonObject.putOpt(wrapper.getDictValue(), wrapper.getDictName());
-                    }
-                }
-
-                dictObject.putOpt(DICT_NAME_KEY, nameJsonObject);
-                dictObject.putOpt(DICT_VALUE_KEY, valueJsonObject);
-
-                dictJson.putOpt(typeCode, dictObject);
+                // 快照内已生成 直接引用
+                dictJson.putOpt(typeCode, dictSnapshot.getExcelDict());
             }
         }catch (Exception ignored){}
         return dictJson;
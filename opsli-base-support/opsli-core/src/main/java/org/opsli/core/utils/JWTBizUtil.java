@@ -20,6 +20,7 @@ import cn.hutool.core.codec.Base64;
 import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.exceptions.ValidateException;
 import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.crypto.SecureUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import cn.hutool.jwt.JWT;
@@ -27,20 +28,39 @@ import cn.hutool.jwt.JWTPayload;
 import cn.hutool.jwt.JWTValidator;
 import cn.hutool.jwt.signers.JWTSigner;
 import cn.hutool.jwt.signers.JWTSignerUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.opsli.core.base.dto.LoginUserDto;
 import org.opsli.plugins.security.JwtConstants;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * JWT 的工具类：包含了创建和解码的工具
  *
+ * 签名密钥只计算一次，签名器按线程复用（HMac 非线程安全）
+ * 验证通过的 Token 按摘要缓存解析结果，直到 Token 过期，同一 Token 不再重复验签和解析
+ *
  * @author Parker
  * @date 2021年12月22日20:01:23
  */
 public final class JWTBizUtil {
 
+    /** 签名密钥 (盐 -> 密钥) */
+    private static final Map<String, byte[]> KEY_MAP = new ConcurrentHashMap<>();
+    /** 签名器 (按线程复用) */
+    private static final ThreadLocal<Map<String, JWTSigner>> SIGNER_HOLDER = ThreadLocal.withInitial(HashMap::new);
+    /** 已验证 Token (摘要 -> 解析结果) 过期时间在读取时判断 */
+    private static final Cache<String, VerifiedToken> VERIFIED_CACHE = CacheBuilder
+            .newBuilder()
+            .maximumSize(20000)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+
     /**
      * 刷新 Token
      *
@@ -104,8 +124,7 @@ public final class JWTBizUtil {
      * @return String
      */
     private static String generate(Map<String, Object> payloadsMap, String secret, Integer expireMinutes) {
-        byte[] keys = Base64.encode(secret).getBytes();
-        JWTSigner jwtSigner = JWTSignerUtil.hs256(keys);
+        JWTSigner jwtSigner = getSigner(secret);
 
         // 签发时间
         Date issuedAt = DateUtil.date();
@@ -129,23 +148,24 @@ public final class JWTBizUtil {
      * @param secret 盐
      */
     public static void verify(String token, String secret) {
-        byte[] keys = Base64.encode(secret).getBytes();
-        JWTSigner jwtSigner = JWTSignerUtil.hs256(keys);
-
-        JWTValidator validator = JWTValidator.of(token);
-        try {
-            // 验证签名
-            validator.validateAlgorithm(jwtSigner);
-        } catch (Exception e) {
-            throw new ValidateException(100524, "Token无效，请重新登录");
+        // 已验证过的 Token 只判断时间
+        VerifiedToken verifiedToken = getVerifiedToken(token, secret);
+        if(null != verifiedToken){
+            if(!verifiedToken.isDateValid()){
+                throw new ValidateException(100525, "Token已过期，请重新登录");
+            }
+            return;
         }
 
+        JWT jwt = verifySign(token, secret);
         try {
             // 验证时间
-            validator.validateDate();
+            JWTValidator.of(jwt).validateDate();
         } catch (Exception e) {
             throw new ValidateException(100525, "Token已过期，请重新登录", e);
         }
+
+        putVerifiedToken(token, secret, jwt);
     }
 
     /**
@@ -155,16 +175,111 @@ public final class JWTBizUtil {
      * @param secret 盐
      */
     public static void verifyBySign(String token, String secret) {
-        byte[] keys = Base64.encode(secret).getBytes();
-        JWTSigner jwtSigner = JWTSignerUtil.hs256(keys);
+        // 已验证过的 Token 直接通过
+        if(null != getVerifiedToken(token, secret)){
+            return;
+        }
 
-        JWTValidator validator = JWTValidator.of(token);
+        JWT jwt = verifySign(token, secret);
+        putVerifiedToken(token, secret, jwt);
+    }
+
+    /**
+     * 清除已验证 Token (退出登录时)
+     *
+     * @param token Token
+     */
+    public static void invalidate(String token) {
+        if(null == token){
+            return;
+        }
+        VERIFIED_CACHE.invalidate(digest(token));
+    }
+
+    /**
+     * 验证签名
+     *
+     * @param token  Token
+     * @param secret 盐
+     * @return JWT
+     */
+    private static JWT verifySign(String token, String secret) {
+        JWT jwt;
         try {
+            jwt = JWT.of(token);
             // 验证签名
-            validator.validateAlgorithm(jwtSigner);
+            JWTValidator.of(jwt).validateAlgorithm(getSigner(secret));
         } catch (Exception e) {
             throw new ValidateException(100524, "Token无效，请重新登录");
         }
+        return jwt;
+    }
+
+    /**
+     * 获得签名器
+     *
+     * @param secret 盐
+     * @return JWTSigner
+     */
+    private static JWTSigner getSigner(String secret) {
+        return SIGNER_HOLDER.get().computeIfAbsent(secret, (k) -> JWTSignerUtil.hs256(
+                KEY_MAP.computeIfAbsent(k, (s) -> Base64.encode(s).getBytes())));
+    }
+
+    /**
+     * 获得已验证 Token
+     *
+     * @param token  Token
+     * @param secret 盐 为空则不校验盐
+     * @return VerifiedToken
+     */
+    private static VerifiedToken getVerifiedToken(String token, String secret) {
+        if(null == token){
+            return null;
+        }
+        VerifiedToken verifiedToken = VERIFIED_CACHE.getIfPresent(digest(token));
+        if(null == verifiedToken){
+            return null;
+        }
+        if(null != secret && !secret.equals(verifiedToken.secret)){
+            return null;
+        }
+        return verifiedToken;
+    }
+
+    /**
+     * 存储已验证 Token
+     *
+     * @param token  Token
+     * @param secret 盐
+     * @param jwt    JWT
+     */
+    private static void putVerifiedToken(String token, String secret, JWT jwt) {
+        try {
+            JSONObject claims = jwt.getPayload().getClaimsJson();
+            JSONObject payloads = jwt.getPayloads();
+            String tag = payloads.getStr(JwtConstants.JWT_CLAIM_TAG);
+            payloads.remove(JwtConstants.JWT_CLAIM_TAG);
+
+            VerifiedToken verifiedToken = new VerifiedToken(
+                    secret,
+                    payloads.toBean(LoginUserDto.class),
+                    tag,
+                    claims.getDate(JWTPayload.ISSUED_AT),
+                    claims.getDate(JWTPayload.EXPIRES_AT)
+            );
+            VERIFIED_CACHE.put(digest(token), verifiedToken);
+        }catch (Exception ignored){}
+    }
+
+    /**
+     * Token 摘要
+     *
+     * @param token Token
+     * @return String
+     */
+    private static String digest(String token) {
+        return SecureUtil.sha256(token);
     }
 
 
@@ -174,6 +289,12 @@ public final class JWTBizUtil {
      * @param token Token
      */
     public static LoginUserDto getLoginUserFromToken(String token) {
+        VerifiedToken verifiedToken = getVerifiedToken(token, null);
+        if(null != verifiedToken){
+            // 返回副本 防止调用方修改缓存
+            return BeanUtil.copyProperties(verifiedToken.loginUser, LoginUserDto.class);
+        }
+
         JSONObject payloads = JWT.of(token)
                 .getPayloads();
         // 移除标识
@@ -200,7 +321,12 @@ public final class JWTBizUtil {
      * @param token Token
      */
     public static Date getIssuedDateFromToken(String token) {
-        // 获得失效时间
+        VerifiedToken verifiedToken = getVerifiedToken(token, null);
+        if(null != verifiedToken){
+            return verifiedToken.issuedAt;
+        }
+
+        // 获得签名时间
         return JWT.of(token).getPayload()
                 .getClaimsJson().getDate(JWTPayload.ISSUED_AT);
     }
@@ -211,6 +337,11 @@ public final class JWTBizUtil {
      * @param token Token
      */
     public static Date getExpiredDateFromToken(String token) {
+        VerifiedToken verifiedToken = getVerifiedToken(token, null);
+        if(null != verifiedToken){
+            return verifiedToken.expiresAt;
+        }
+
         // 获得失效时间
         return JWT.of(token).getPayload()
                 .getClaimsJson().getDate(JWTPayload.EXPIRES_AT);
@@ -222,6 +353,11 @@ public final class JWTBizUtil {
      * @param token Token
      */
     public static boolean isRefreshToken(String token) {
+        VerifiedToken verifiedToken = getVerifiedToken(token, null);
+        if(null != verifiedToken){
+            return Tag.REFRESH_TOKEN.getTag().equals(verifiedToken.tag);
+        }
+
         String tag = Tag.TOKEN.getTag();
         try {
             tag = JWT.of(token).getPayload()
@@ -257,6 +393,45 @@ public final class JWTBizUtil {
     }
 
 
+    /**
+     * 已验证 Token 解析结果 (只读)
+     */
+    private static final class VerifiedToken {
+
+        /** 盐 */
+        private final String secret;
+        /** 登陆用户信息 */
+        private final LoginUserDto loginUser;
+        /** 标签 */
+        private final String tag;
+        /** 签名时间 */
+        private final Date issuedAt;
+        /** 失效时间 */
+        private final Date expiresAt;
+
+        private VerifiedToken(String secret, LoginUserDto loginUser, String tag,
+                              Date issuedAt, Date expiresAt) {
+            this.secret = secret;
+            this.loginUser = loginUser;
+            this.tag = tag;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * 时间是否有效
+         * @return boolean
+         */
+        private boolean isDateValid() {
+            long now = System.currentTimeMillis();
+            if(null != issuedAt && issuedAt.getTime() > now){
+                return false;
+            }
+            return null == expiresAt || expiresAt.getTime() > now;
+        }
+    }
+
+
     /**
      * 私有化构造函数
      */
@@ -0,0 +1,306 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.common.annotation.Limiter;
+import org.opsli.common.enums.LimiterType;
+import org.opsli.common.utils.IPUtil;
+import org.opsli.common.utils.RateLimiterUtil;
+import org.opsli.core.autoconfigure.properties.LimiterProperties;
+import org.opsli.core.cache.CacheUtil;
+import org.opsli.core.holder.UserContextHolder;
+import org.opsli.plugins.redis.RedisPlugin;
+import org.opsli.plugins.redis.scripts.enums.RedisScriptsEnum;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
+
+/**
+ * 集群限流工具类
+ *
+ * 1. 本地预检: 本节点放行数 已超出限制时 全局必然超出，直接拒绝 不经过 Redis
+ * 2. 批量预取: 按突发容量比例 一次从 Redis 预取多个令牌，本地消耗完之前 不经过 Redis
+ * 3. 全局限流: Redis Lua GCRA 令牌桶，所有节点共享同一配额
+ * Redis 异常时 退化为单机限流
+ *
+ * 超出限制 立即返回需等待的毫秒数，不阻塞请求线程
+ *
+ * @author Parker
+ * @date 2020-12-31
+ */
+@Slf4j
+@Order(UTIL_ORDER)
+@Component
+@Lazy(false)
+public class LimiterUtil {
+
+    /** 限流Key 前缀 */
+    private static final String PREFIX_LIMITER = "kv#{}:limiter:";
+    /** 全局限流 客户端标识 */
+    private static final String GLOBAL_CLIENT = "global";
+    /** 批量预取令牌 本地缓存 */
+    private static final Cache<String, Lease> LEASE_CACHE = CacheBuilder
+            .newBuilder()
+            .maximumSize(10_0000)
+            .expireAfterAccess(5, TimeUnit.MINUTES)
+            .build();
+    /** 路径匹配 */
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    /** 是否开启 */
+    private static boolean ENABLE = true;
+    /** 是否开启集群限流 */
+    private static boolean CLUSTER = true;
+    /** 批量预取令牌 比例 */
+    private static double LEASE_RATIO = 0d;
+    /** 限流策略 */
+    private static List<LimiterProperties.Policy> POLICIES = Collections.emptyList();
+    /** 是否有租户策略 */
+    private static boolean HAS_TENANT_POLICY = false;
+
+    /** 增加初始状态开关 防止异常使用 */
+    private static boolean IS_INIT;
+
+    private static RedisPlugin redisPlugin;
+
+    /**
+     * 尝试进入 不阻塞
+     * @param request request
+     * @param limiter 限流注解
+     * @return long 需等待毫秒数 0 为放行
+     */
+    public static long tryAcquire(HttpServletRequest request, Limiter limiter){
+        if(!IS_INIT || !ENABLE || null == request || null == limiter){
+            return 0;
+        }
+
+        String uri = request.getRequestURI();
+
+        // 策略
+        double qps = limiter.qps();
+        int burst = limiter.burst();
+        LimiterType type = limiter.type();
+        LimiterProperties.Policy policy = getPolicy(uri);
+        if(null != policy){
+            if(null != policy.getQps()){
+                qps = policy.getQps();
+            }
+            if(null != policy.getBurst()){
+                burst = policy.getBurst();
+            }
+            if(null != policy.getType()){
+                type = policy.getType();
+            }
+        }
+
+        //不限流
+        if(qps <= 0){
+            return 0;
+        }
+
+        String clientId = getClientId(request, type);
+
+        // 1. 本地预检
+        RateLimiterUtil.TokenBucket bucket = RateLimiterUtil.getBucket(clientId, uri, qps, burst);
+        if(null == bucket){
+            return 0;
+        }
+        long waitMillis = bucket.peek();
+        if(waitMillis > 0 || !CLUSTER){
+            return waitMillis > 0 ? waitMillis : bucket.tryAcquire();
+        }
+
+        String key = CacheUtil.formatKey(PREFIX_LIMITER) + uri + ":" + clientId;
+        try {
+            // 2. 批量预取
+            Lease lease = LEASE_CACHE.get(key, Lease::new);
+            if(lease.tryAcquire()){
+                bucket.record();
+                return 0;
+            }
+
+            // 3. 全局限流
+            int leaseSize = getLeaseSize(bucket);
+            waitMillis = acquire(key, bucket, leaseSize);
+            if(waitMillis > 0 && leaseSize > 1){
+                // 预取失败 退回单个令牌
+                leaseSize = 1;
+                waitMillis = acquire(key, bucket, leaseSize);
+            }
+            if(waitMillis > 0){
+                return waitMillis;
+            }
+            lease.put(leaseSize - 1, bucket.getInterval() * leaseSize);
+            bucket.record();
+            return 0;
+        }catch (Exception e){
+            // Redis 异常 退化为单机限流
+            log.warn("集群限流异常 退化为单机限流: {}", e.getMessage());
+            return bucket.tryAcquire();
+        }
+    }
+
+    /**
+     * 全局令牌桶
+     * @param key 限流Key
+     * @param bucket 本地令牌桶 (共用令牌间隔 与 突发容量)
+     * @param cost 消耗令牌数
+     * @return long 需等待毫秒数 0 为放行
+     */
+    private static long acquire(String key, RateLimiterUtil.TokenBucket bucket, int cost){
+        Object ret = redisPlugin.callScript(RedisScriptsEnum.REDIS_RATE_LIMITER,
+                Collections.singletonList(key),
+                Math.max(1L, TimeUnit.NANOSECONDS.toMicros(bucket.getInterval())),
+                (long) bucket.getBurst(),
+                (long) cost
+        );
+        if(!(ret instanceof Long)){
+            throw new IllegalStateException("限流脚本不存在");
+        }
+        return (Long) ret;
+    }
+
+    /**
+     * 获得预取令牌数
+     * @param bucket 本地令牌桶
+     * @return int
+     */
+    private static int getLeaseSize(RateLimiterUtil.TokenBucket bucket){
+        return Math.max(1, (int) (bucket.getBurst() * LEASE_RATIO));
+    }
+
+    /**
+     * 获得客户端标识
+     * @param request request
+     * @param type 限流维度
+     * @return String
+     */
+    private static String getClientId(HttpServletRequest request, LimiterType type){
+        String clientId = null;
+        switch (type){
+            case GLOBAL:
+                return GLOBAL_CLIENT;
+            case USER:
+                clientId = UserContextHolder.getToken()
+                        .map(UserTokenUtil::getUserIdByToken).orElse(null);
+                break;
+            case TENANT:
+                clientId = UserContextHolder.getToken()
+                        .map(UserTokenUtil::getTenantIdByToken).orElse(null);
+                break;
+            default:
+                break;
+        }
+        // 未登录 按 IP
+        if(StrUtil.isEmpty(clientId)){
+            clientId = IPUtil.getClientIdBySingle(request);
+        }
+        return clientId;
+    }
+
+    /**
+     * 获得限流策略 租户策略 优先于 接口策略
+     * @param uri 请求路径
+     * @return Policy
+     */
+    private static LimiterProperties.Policy getPolicy(String uri){
+        if(CollUtil.isEmpty(POLICIES)){
+            return null;
+        }
+
+        String tenantId = null;
+        if(HAS_TENANT_POLICY){
+            tenantId = UserContextHolder.getToken()
+                    .map(UserTokenUtil::getTenantIdByToken).orElse(null);
+        }
+
+        LimiterProperties.Policy matched = null;
+        for (LimiterProperties.Policy policy : POLICIES) {
+            if(StrUtil.isEmpty(policy.getPath()) || !PATH_MATCHER.match(policy.getPath(), uri)){
+                continue;
+            }
+            if(StrUtil.isEmpty(policy.getTenantId())){
+                if(null == matched){
+                    matched = policy;
+                }
+            }else if(policy.getTenantId().equals(tenantId)){
+                return policy;
+            }
+        }
+        return matched;
+    }
+
+
+    /**
+     * 批量预取的令牌
+     * 超过有效期未用完 直接作废 (只会少放行 不会多放行)
+     */
+    private static final class Lease {
+
+        /** 剩余令牌 */
+        private final AtomicInteger remaining = new AtomicInteger();
+        /** 有效期 (纳秒) */
+        private volatile long expireAt;
+
+        private boolean tryAcquire(){
+            if(System.nanoTime() - expireAt > 0){
+                return false;
+            }
+            return remaining.getAndUpdate((i) -> i > 0 ? i - 1 : 0) > 0;
+        }
+
+        private void put(int count, long ttlNanos){
+            if(count <= 0){
+                return;
+            }
+            expireAt = System.nanoTime() + ttlNanos;
+            remaining.set(count);
+        }
+    }
+
+    /**
+     * 初始化
+     */
+    @Autowired
+    public void init(LimiterProperties limiterProperties, RedisPlugin redisPlugin){
+        LimiterUtil.ENABLE = limiterProperties.isEnable();
+        LimiterUtil.CLUSTER = limiterProperties.isCluster();
+        LimiterUtil.LEASE_RATIO = Math.max(0d, Math.min(1d, limiterProperties.getLeaseRatio()));
+        if(null != limiterProperties.getPolicies()){
+            LimiterUtil.POLICIES = Collections.unmodifiableList(limiterProperties.getPolicies());
+            LimiterUtil.HAS_TENANT_POLICY = limiterProperties.getPolicies().stream()
+                    .anyMatch((policy) -> StrUtil.isNotEmpty(policy.getTenantId()));
+        }
+        LimiterUtil.redisPlugin = redisPlugin;
+        IS_INIT = true;
+    }
+
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils;
+
+import cn.hutool.system.oshi.CpuInfo;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.core.msg.CoreMsg;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
+
+/**
+ * 系统监控 采集器
+ *
+ * 单个后台线程 按固定周期采集 CPU、内存、JVM、磁盘、线程池 信息，
+ * 最新一次采集结果 直接返回，最近 HISTORY_SIZE 次 保存在环形缓冲中；
+ * 采集完成后 通知订阅方 (如 SSE 推送)，采集开销 与查看人数无关
+ *
+ * CPU 使用率 按相邻两次采集的 CPU 时钟之差计算，不再阻塞等待
+ *
+ * @author Parker
+ * @date 2021-12-24 10:35
+ */
+@Slf4j
+@Order(UTIL_ORDER)
+@Component
+@Lazy(false)
+public class MetricsSamplerUtil {
+
+    /** 采集周期 (毫秒) */
+    public static final long SAMPLE_PERIOD = 5000L;
+
+    /** 首次采集延迟 (毫秒) 保证首次 CPU 时钟差有意义 */
+    private static final long FIRST_DELAY = 1000L;
+
+    /** 历史记录数量 (10 分钟) */
+    private static final int HISTORY_SIZE = 120;
+
+    /** 历史记录 环形缓冲 */
+    private static final MetricsSample[] HISTORY = new MetricsSample[HISTORY_SIZE];
+
+    /** 订阅方 */
+    private static final List<Consumer<MetricsSample>> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /** 采集线程 */
+    private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("Metrics-Sampler-%d")
+                    .setDaemon(true).build());
+
+    /** 已采集次数 由 HISTORY 保护 */
+    private static long sampleCount;
+
+    /** 最新采集结果 */
+    private static volatile MetricsSample latest;
+
+    /** 上次 CPU 时钟 仅采集线程访问 */
+    private static long[] prevTicks;
+
+    /** 服务器信息 启动后不变 */
+    private static SystemInfoUtil.SysInfo sysInfo;
+
+    /** 增加初始状态开关 防止异常使用 */
+    private static boolean IS_INIT;
+
+    /**
+     * 获得最新采集结果
+     * @return MetricsSample 首次采集完成前 为空
+     */
+    public static MetricsSample getLatest() {
+        // 判断 工具类是否初始化完成
+        ThrowExceptionUtil.isThrowException(!IS_INIT,
+                CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
+        return latest;
+    }
+
+    /**
+     * 获得历史采集结果 由旧到新
+     * @return List
+     */
+    public static List<MetricsSample> getHistory() {
+        // 判断 工具类是否初始化完成
+        ThrowExceptionUtil.isThrowException(!IS_INIT,
+                CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
+
+        synchronized (HISTORY){
+            int size = (int) Math.min(sampleCount, HISTORY_SIZE);
+            List<MetricsSample> history = Lists.newArrayListWithCapacity(size);
+            for (long i = sampleCount - size; i < sampleCount; i++) {
+                history.add(HISTORY[(int) (i % HISTORY_SIZE)]);
+            }
+            return history;
+        }
+    }
+
+    /**
+     * 订阅采集结果
+     * 在采集线程中回调 订阅方不可长时间阻塞
+     * @param listener 订阅方
+     */
+    public static void addListener(Consumer<MetricsSample> listener) {
+        if(listener != null){
+            LISTENERS.add(listener);
+        }
+    }
+
+    /**
+     * 取消订阅
+     * @param listener 订阅方
+     */
+    public static void removeListener(Consumer<MetricsSample> listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * 采集
+     * 任务内异常不可抛出 否则定时任务终止
+     */
+    private static void sample() {
+        try {
+            long[] ticks = SystemInfoUtil.INSTANCE.getCpuTicks();
+
+            MetricsSample sample = new MetricsSample();
+            sample.setTimestamp(System.currentTimeMillis());
+            sample.setSystemInfo(sysInfo);
+            sample.setCpuInfo(SystemInfoUtil.INSTANCE.getCpuInfo(prevTicks, ticks));
+            sample.setMemInfo(SystemInfoUtil.INSTANCE.getMemoryInfo());
+            sample.setJvmInfo(SystemInfoUtil.INSTANCE.getJvmInfo());
+            sample.setSysFileInfo(SystemInfoUtil.INSTANCE.getDiskInfo());
+            sample.setThreadPoolInfo(SystemInfoUtil.INSTANCE.getThreadPoolInfo());
+            prevTicks = ticks;
+
+            synchronized (HISTORY){
+                HISTORY[(int) (sampleCount % HISTORY_SIZE)] = sample;
+                sampleCount++;
+            }
+            latest = sample;
+
+            for (Consumer<MetricsSample> listener : LISTENERS) {
+                try {
+                    listener.accept(sample);
+                }catch (Exception e){
+                    log.error(e.getMessage(), e);
+                }
+            }
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 采集结果
+     */
+    @Data
+    public static class MetricsSample {
+
+        /** 采集时间 */
+        private long timestamp;
+
+        /** 服务器信息 */
+        private SystemInfoUtil.SysInfo systemInfo;
+
+        /** CPU信息 */
+        private CpuInfo cpuInfo;
+
+        /** 内存信息 */
+        private SystemInfoUtil.MemoryInfo memInfo;
+
+        /** JVM信息 */
+        private SystemInfoUtil.JvmInfo jvmInfo;
+
+        /** 磁盘信息 */
+        private List<SystemInfoUtil.DiskInfo> sysFileInfo;
+
+        /** 线程池信息 */
+        private List<SystemInfoUtil.ThreadPoolInfo> threadPoolInfo;
+    }
+
+    // ==========================
+
+    /**
+     * 初始化
+     */
+    @PostConstruct
+    public void init() {
+        sysInfo = SystemInfoUtil.INSTANCE.getSysInfo();
+        prevTicks = SystemInfoUtil.INSTANCE.getCpuTicks();
+        EXECUTOR.scheduleAtFixedRate(MetricsSamplerUtil::sample,
+                FIRST_DELAY, SAMPLE_PERIOD, TimeUnit.MILLISECONDS);
+
+        IS_INIT = true;
+    }
+
+}
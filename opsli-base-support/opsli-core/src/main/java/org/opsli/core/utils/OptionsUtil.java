@@ -29,6 +29,7 @@ import org.opsli.api.wrapper.system.options.OptionsModel;
 import org.opsli.common.annotation.OptionDict;
 import org.opsli.common.constants.RedisConstants;
 import org.opsli.common.enums.OptionsType;
+import org.opsli.core.cache.CacheGeneration;
 import org.opsli.core.cache.CacheUtil;
 import org.opsli.core.cache.SecurityCache;
 import org.opsli.core.msg.CoreMsg;
@@ -41,6 +42,9 @@ import org.springframework.stereotype.Component;
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
 
@@ -48,6 +52,9 @@ import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
  * 参数工具类
  * Hash 永久缓存
  *
+ * 本地保留参数快照 与 已组装好的配置对象，按参数世代号整体失效：
+ * 参数变更后递增世代号 并广播至其余节点，之后首次访问时重新加载
+ *
  * @author Parker
  * @date 2020-09-22 11:17
  */
@@ -60,8 +67,14 @@ public class OptionsUtil {
     /** 参数 Api */
     private static OptionsApi optionsApi;
 
-    /** 实体类字段 */
-    private static final Map<Class<?>, Field[]> ENTITY_FIELD_MAP = Maps.newHashMap();
+    /** 实体类 参数字段 (字段名 -> 参数编号) */
+    private static final Map<Class<?>, Map<String, String>> ENTITY_FIELD_MAP = new ConcurrentHashMap<>();
+
+    /** 本地参数快照 参数编号 -> 参数 */
+    private static final Map<String, Snapshot<OptionsModel>> OPTION_MAP = new ConcurrentHashMap<>();
+
+    /** 本地配置对象快照 配置Key -> 配置对象 */
+    private static final Map<String, Snapshot<Object>> CONFIG_MAP = new ConcurrentHashMap<>();
 
     /** 增加初始状态开关 防止异常使用 */
     private static boolean IS_INIT;
@@ -105,29 +118,61 @@ public class OptionsUtil {
         }
 
         // 字段缓存 减少每次更新 反射
-        Field[] fields = ENTITY_FIELD_MAP.get(beanObj.getClass());
-        if(fields == null){
-            fields = ReflectUtil.getFields(beanObj.getClass());
-            ENTITY_FIELD_MAP.put(beanObj.getClass(), fields);
-        }
-
-
-        for (Field f : fields) {
-            // 处理注解字段
-            OptionDict optionField = f.getAnnotation(OptionDict.class);
-            if (optionField != null) {
-                String optionCode = optionField.value();
-                // 获得配置
-                OptionsModel option = getOptionByCode(optionCode);
-                if(option != null){
-                    BeanUtil.setProperty(beanObj, f.getName(), option.getOptionValue());
+        Map<String, String> optionFieldMap = ENTITY_FIELD_MAP.computeIfAbsent(beanObj.getClass(), clazz -> {
+            Map<String, String> fieldMap = Maps.newLinkedHashMap();
+            for (Field f : ReflectUtil.getFields(clazz)) {
+                // 处理注解字段
+                OptionDict optionField = f.getAnnotation(OptionDict.class);
+                if (optionField != null) {
+                    fieldMap.put(f.getName(), optionField.value());
                 }
             }
+            return fieldMap;
+        });
+
+        for (Map.Entry<String, String> entry : optionFieldMap.entrySet()) {
+            // 获得配置
+            OptionsModel option = getOptionByCode(entry.getValue());
+            if(option != null){
+                BeanUtil.setProperty(beanObj, entry.getKey(), option.getOptionValue());
+            }
         }
 
         return beanObj;
     }
 
+    /**
+     * 获得配置对象
+     *
+     * 同一参数世代内 配置对象只组装、转换 (含校验) 一次，之后直接返回同一实例 调用方只读；
+     * 转换异常 (如校验不通过) 不缓存，下次访问重新组装
+     *
+     * @param configKey 配置Key 全局唯一
+     * @param optionSupplier 参数 Bean 创建
+     * @param converter 转换 (校验、转化对象)
+     * @param <T> 参数 Bean
+     * @param <R> 配置对象
+     * @return R
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, R> R getConfig(String configKey, Supplier<T> optionSupplier, Function<T, R> converter){
+        // 判断 工具类是否初始化完成
+        ThrowExceptionUtil.isThrowException(!IS_INIT,
+                CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
+
+        long generation = CacheGeneration.get(CacheGeneration.Scope.OPTIONS);
+        Snapshot<Object> snapshot = CONFIG_MAP.get(configKey);
+        if(null != snapshot && snapshot.generation == generation){
+            return (R) snapshot.value;
+        }
+
+        // 组装后整体替换 并发时可能重复组装 结果一致
+        T option = getOptionByBean(optionSupplier.get());
+        R config = converter.apply(option);
+        CONFIG_MAP.put(configKey, new Snapshot<>(generation, config));
+        return config;
+    }
+
     /**
      * 根据 optionCode 获得参数
      * @param optionCode 参数编号
@@ -138,6 +183,17 @@ public class OptionsUtil {
         ThrowExceptionUtil.isThrowException(!IS_INIT,
                 CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
 
+        if(StringUtils.isEmpty(optionCode)){
+            return null;
+        }
+
+        // 本地快照 与参数世代号一致时 直接使用 (只读)
+        long generation = CacheGeneration.get(CacheGeneration.Scope.OPTIONS);
+        Snapshot<OptionsModel> snapshot = OPTION_MAP.get(optionCode);
+        if(null != snapshot && snapshot.generation == generation){
+            return snapshot.value;
+        }
+
         // 缓存Key
         String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_OPTIONS_CODE);
 
@@ -150,7 +206,12 @@ public class OptionsUtil {
             return resultVo.getData();
         });
 
-        return Convert.convert(OptionsModel.class, cache);
+        OptionsModel option = Convert.convert(OptionsModel.class, cache);
+        if(null != option){
+            // 不存在的参数不保留 防止任意编号撑大本地缓存
+            OPTION_MAP.put(optionCode, new Snapshot<>(generation, option));
+        }
+        return option;
     }
 
     // ============== 刷新缓存 ==============
@@ -173,7 +234,11 @@ public class OptionsUtil {
         String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_OPTIONS_CODE);
 
         // 删除缓存
-        return SecurityCache.hDel(redisTemplate, cacheKey, option.getOptionCode());
+        boolean ret = SecurityCache.hDel(redisTemplate, cacheKey, option.getOptionCode());
+
+        // 递增参数世代号 所有节点的本地参数、配置对象随之失效
+        CacheGeneration.increment(CacheGeneration.Scope.OPTIONS);
+        return ret;
     }
 
     /**
@@ -224,6 +289,22 @@ public class OptionsUtil {
 
     // =====================================
 
+    /**
+     * 本地快照
+     * @param <V> 值
+     */
+    private static final class Snapshot<V> {
+
+        /** 参数世代号 */
+        private final long generation;
+        private final V value;
+
+        private Snapshot(long generation, V value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+
     /**
      * 初始化
      */
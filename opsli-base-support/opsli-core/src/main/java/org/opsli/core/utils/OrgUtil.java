@@ -16,6 +16,8 @@
 package org.opsli.core.utils;
 
 import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
@@ -23,9 +25,12 @@ import org.opsli.api.wrapper.system.org.SysOrgModel;
 import org.opsli.api.wrapper.system.user.UserOrgRefModel;
 import org.opsli.common.enums.DictType;
 import org.opsli.common.utils.FieldUtil;
-import org.opsli.common.utils.ListDistinctUtil;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * 组织机构工具类
@@ -42,6 +47,8 @@ public final class OrgUtil {
     public static final String ORG_ALL = "org_all";
     /** 未分组 */
     public static final String ORG_NULL = "org_null";
+    /** 组织路径 分割符 */
+    private static final String DELIMITER = ",";
 
     /** 增加初始状态开关 防止异常使用 */
     private static boolean IS_INIT;
@@ -96,20 +103,9 @@ public final class OrgUtil {
                         for (UserOrgRefModel userOrgRefModel : orgListByUserId) {
                             parentIdList.add(userOrgRefModel.getOrgIds());
                         }
-                        // 去重
-                        parentIdList = ListDistinctUtil.distinct(parentIdList);
-
-                        // 增加右模糊 查询条件
-                        for (int i = 0; i < parentIdList.size(); i++) {
-                            // 右模糊匹配
-                            wraConfine.likeRight(
-                                    userRefOrgField,
-                                    parentIdList.get(i));
-
-                            if(i < parentIdList.size() - 1){
-                                wraConfine.or();
-                            }
-                        }
+
+                        // 组织及下级 区间条件
+                        handleOrgPathCondition(userRefOrgField, parentIdList, wraConfine);
                     }
                 });
             }
@@ -133,9 +129,9 @@ public final class OrgUtil {
                     });
                     break;
                 default:
-                    // 右模糊匹配
-                    wra.likeRight(
-                            userRefOrgField, orgIdGroup);
+                    // 组织及下级 区间条件
+                    wra.and(wraPath -> handleOrgPathCondition(
+                            userRefOrgField, Collections.singletonList(orgIdGroup), wraPath));
                     wra.and(wraYes -> {
                         wraYes.eq(FieldUtil.humpToUnderline(USER_ORG_FIELD),
                                 DictType.NO_YES_YES.getValue());
@@ -146,6 +142,79 @@ public final class OrgUtil {
         });
     }
 
+    /**
+     * 处理 组织及下级 条件
+     *
+     * 组织路径 (org_ids) 为物化路径，下级路径均以 上级路径 + "," 为前缀，
+     * 一个组织及其下级 在路径索引上是一段连续区间：等于自身 或 以 "自身," 开头
+     * 先求出最小覆盖集合 (剔除已被其他组织覆盖的下级)，每个组织只产生一段区间，
+     * 既避免长 OR 链，也避免 "0,12" 误匹配 "0,123" 这类同前缀的兄弟组织
+     *
+     * 条件之间为 OR 关系，调用方需放在 and(...) 中
+     *
+     * @param field 组织路径字段
+     * @param orgIdsList 组织路径集合
+     * @param queryWrapper 查询条件
+     */
+    public static void handleOrgPathCondition(String field, Collection<String> orgIdsList,
+                                              QueryWrapper<?> queryWrapper) {
+        List<String> coverList = getCoverOrgIds(orgIdsList);
+        if(CollUtil.isEmpty(coverList)){
+            // 如果为空 则默认 不查询
+            queryWrapper.eq("1", "2");
+            return;
+        }
+
+        for (int i = 0; i < coverList.size(); i++) {
+            String orgIds = coverList.get(i);
+            queryWrapper.eq(field, orgIds)
+                    .or()
+                    .likeRight(field, orgIds + DELIMITER);
+
+            if(i < coverList.size() - 1){
+                queryWrapper.or();
+            }
+        }
+    }
+
+    /**
+     * 获得组织路径 最小覆盖集合
+     * 组织路径的任一上级路径也在集合中时 该路径已被覆盖 直接剔除
+     *
+     * @param orgIdsList 组织路径集合
+     * @return List 有序
+     */
+    public static List<String> getCoverOrgIds(Collection<String> orgIdsList) {
+        if(CollUtil.isEmpty(orgIdsList)){
+            return ListUtil.empty();
+        }
+
+        Set<String> orgIdsSet = new TreeSet<>();
+        for (String orgIds : orgIdsList) {
+            if(StrUtil.isNotBlank(orgIds)){
+                orgIdsSet.add(orgIds);
+            }
+        }
+
+        List<String> coverList = Lists.newArrayListWithCapacity(orgIdsSet.size());
+        for (String orgIds : orgIdsSet) {
+            boolean covered = false;
+            // 逐级检查上级路径
+            int index = orgIds.lastIndexOf(DELIMITER);
+            while (index > 0){
+                if(orgIdsSet.contains(orgIds.substring(0, index))){
+                    covered = true;
+                    break;
+                }
+                index = orgIds.lastIndexOf(DELIMITER, index - 1);
+            }
+            if(!covered){
+                coverList.add(orgIds);
+            }
+        }
+        return coverList;
+    }
+
     // ===========
 
     private OrgUtil() {}
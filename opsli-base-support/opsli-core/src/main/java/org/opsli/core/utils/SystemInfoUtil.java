@@ -9,14 +9,18 @@ import cn.hutool.system.oshi.CpuInfo;
 import cn.hutool.system.oshi.OshiUtil;
 import com.google.common.collect.Lists;
 import lombok.Data;
+import org.opsli.common.thread.ThreadPoolFactory;
 import org.opsli.common.utils.ConvertBytesUtil;
-import oshi.SystemInfo;
+import oshi.hardware.CentralProcessor;
 import oshi.hardware.GlobalMemory;
 import oshi.software.os.FileSystem;
 import oshi.software.os.OSFileStore;
 
+import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 
 
 /**
@@ -60,9 +64,9 @@ public enum SystemInfoUtil {
      */
     public List<DiskInfo> getDiskInfo(){
         List<DiskInfo> diskInfoList = Lists.newArrayList();
-        SystemInfo si = new SystemInfo();
 
-        FileSystem fileSystem = si.getOperatingSystem().getFileSystem();
+        // 复用 OshiUtil 持有的 SystemInfo 不再每次新建
+        FileSystem fileSystem = OshiUtil.getOs().getFileSystem();
         List<OSFileStore> fileStores = fileSystem.getFileStores();
         for (OSFileStore fs : fileStores) {
             long free = fs.getUsableSpace();
@@ -118,6 +122,61 @@ public enum SystemInfoUtil {
         return OshiUtil.getCpuInfo(WAITING_TIME);
     }
 
+    /**
+     * 获得CPU时钟
+     * @return long[]
+     */
+    public long[] getCpuTicks(){
+        return OshiUtil.getProcessor().getSystemCpuLoadTicks();
+    }
+
+    /**
+     * 获得CPU信息 按两次CPU时钟之差计算 不阻塞等待
+     * @param prevTicks 上次CPU时钟
+     * @param ticks 本次CPU时钟
+     * @return CpuInfo
+     */
+    public CpuInfo getCpuInfo(long[] prevTicks, long[] ticks){
+        long user = getTicks(prevTicks, ticks, CentralProcessor.TickType.USER);
+        long nice = getTicks(prevTicks, ticks, CentralProcessor.TickType.NICE);
+        long sys = getTicks(prevTicks, ticks, CentralProcessor.TickType.SYSTEM);
+        long idle = getTicks(prevTicks, ticks, CentralProcessor.TickType.IDLE);
+        long ioWait = getTicks(prevTicks, ticks, CentralProcessor.TickType.IOWAIT);
+        long irq = getTicks(prevTicks, ticks, CentralProcessor.TickType.IRQ);
+        long softIrq = getTicks(prevTicks, ticks, CentralProcessor.TickType.SOFTIRQ);
+        long steal = getTicks(prevTicks, ticks, CentralProcessor.TickType.STEAL);
+        long total = Math.max(user + nice + sys + idle + ioWait + irq + softIrq + steal, 0);
+
+        CentralProcessor processor = OshiUtil.getProcessor();
+        return new CpuInfo(processor.getLogicalProcessorCount(), total,
+                getPercent(sys, total), getPercent(user, total),
+                getPercent(ioWait, total), getPercent(idle, total),
+                processor.toString());
+    }
+
+    /**
+     * 获得线程池信息
+     * @return List ThreadPoolInfo
+     */
+    public List<ThreadPoolInfo> getThreadPoolInfo(){
+        Map<ThreadPoolExecutor, String> threadPools = ThreadPoolFactory.getThreadPools();
+        List<ThreadPoolInfo> threadPoolInfoList = Lists.newArrayListWithCapacity(threadPools.size());
+        for (Map.Entry<ThreadPoolExecutor, String> entry : threadPools.entrySet()) {
+            ThreadPoolExecutor executor = entry.getKey();
+
+            ThreadPoolInfo threadPoolInfo = new ThreadPoolInfo();
+            threadPoolInfo.setPoolName(entry.getValue());
+            threadPoolInfo.setCorePoolSize(executor.getCorePoolSize());
+            threadPoolInfo.setMaximumPoolSize(executor.getMaximumPoolSize());
+            threadPoolInfo.setPoolSize(executor.getPoolSize());
+            threadPoolInfo.setActiveCount(executor.getActiveCount());
+            threadPoolInfo.setQueueSize(executor.getQueue().size());
+            threadPoolInfo.setCompletedTaskCount(executor.getCompletedTaskCount());
+            threadPoolInfoList.add(threadPoolInfo);
+        }
+        return threadPoolInfoList;
+    }
+
     /**
      * 获得Jvm信息
      * @return JvmInfo
@@ -179,16 +238,30 @@ public enum SystemInfoUtil {
         // JDK 运行时间
         jvmInfo.setRunTime(runTimed);
 
+        // 线程数
+        jvmInfo.setThreadCount(ManagementFactory.getThreadMXBean().getThreadCount());
+
         return jvmInfo;
     }
 
+    private static long getTicks(long[] prevTicks, long[] ticks, CentralProcessor.TickType tickType){
+        return ticks[tickType.getIndex()] - prevTicks[tickType.getIndex()];
+    }
+
+    private static double getPercent(long value, long total){
+        if(value <= 0 || total <= 0){
+            return 0D;
+        }
+        return NumberUtil.round(100D * value / total, 2).doubleValue();
+    }
+
     // ======================================
 
     /**
      * 内存信息 静态内部类
      */
     @Data
-    private static class MemoryInfo {
+    public static class MemoryInfo {
 
         /** 内存总量 */
         private String total;
@@ -246,6 +319,9 @@ public enum SystemInfoUtil {
         /** JDK运行时间 */
         private String runTime;
 
+        /** 线程数 */
+        private int threadCount;
+
     }
 
     /**
@@ -302,4 +378,32 @@ public enum SystemInfoUtil {
         private double usage;
     }
 
+    /**
+     * 线程池监控
+     */
+    @Data
+    public static class ThreadPoolInfo {
+
+        /** 线程池名称 */
+        private String poolName;
+
+        /** 核心线程数 */
+        private int corePoolSize;
+
+        /** 最大线程数 */
+        private int maximumPoolSize;
+
+        /** 当前线程数 */
+        private int poolSize;
+
+        /** 活跃线程数 */
+        private int activeCount;
+
+        /** 队列中任务数 */
+        private int queueSize;
+
+        /** 已完成任务数 */
+        private long completedTaskCount;
+    }
+
 }
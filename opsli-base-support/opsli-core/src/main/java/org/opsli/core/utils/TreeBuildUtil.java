@@ -110,11 +110,7 @@ public enum TreeBuildUtil {
         final String defParentId = ObjectUtil.defaultIfNull(parentId, DEF_PARENT_ID);
         final TreeNodeConfig treeConfig = ObjectUtil.defaultIfNull(config, TreeNodeConfig.DEFAULT_CONFIG);
 
-        List<String> excludeFields = ListUtil.list(false);
-        excludeFields.addAll(DEF_EXCLUDE_FIELDS);
-        excludeFields.add(treeConfig.getIdKey());
-        excludeFields.add(treeConfig.getParentIdKey());
-        excludeFields.add(treeConfig.getWeightKey());
+        List<String> excludeFields = this.getExcludeFields(treeConfig);
 
         //转换器
         return TreeUtil.build(dataList, defParentId, treeConfig,
@@ -153,11 +149,7 @@ public enum TreeBuildUtil {
 
         // 默认值处理
         final TreeNodeConfig treeConfig = ObjectUtil.defaultIfNull(config, TreeNodeConfig.DEFAULT_CONFIG);
-        List<String> excludeFields = ListUtil.list(false);
-        excludeFields.addAll(DEF_EXCLUDE_FIELDS);
-        excludeFields.add(treeConfig.getIdKey());
-        excludeFields.add(treeConfig.getParentIdKey());
-        excludeFields.add(treeConfig.getWeightKey());
+        List<String> excludeFields = this.getExcludeFields(treeConfig);
 
         //转换器
         List<Tree<Object>> treeNodes = Lists.newArrayListWithCapacity(dataList.size());
@@ -172,6 +164,20 @@ public enum TreeBuildUtil {
     }
 
 
+    /**
+     * 获得 扩展属性排除字段
+     * @param config 配置
+     * @return List<String>
+     */
+    public List<String> getExcludeFields(TreeNodeConfig config){
+        List<String> excludeFields = ListUtil.list(false);
+        excludeFields.addAll(DEF_EXCLUDE_FIELDS);
+        excludeFields.add(config.getIdKey());
+        excludeFields.add(config.getParentIdKey());
+        excludeFields.add(config.getWeightKey());
+        return excludeFields;
+    }
+
     /**
      * 处理 树节点
      * @param config 配置
@@ -191,11 +197,7 @@ public enum TreeBuildUtil {
             config = TreeNodeConfig.DEFAULT_CONFIG;
         }
         if(CollUtil.isEmpty(excludeFields)){
-            excludeFields = ListUtil.list(false);
-            excludeFields.addAll(DEF_EXCLUDE_FIELDS);
-            excludeFields.add(config.getIdKey());
-            excludeFields.add(config.getParentIdKey());
-            excludeFields.add(config.getWeightKey());
+            excludeFields = this.getExcludeFields(config);
         }
 
         // Bean 对象转 Map
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.convert.Convert;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.common.constants.RedisConstants;
+import org.opsli.core.cache.CacheUtil;
+import org.opsli.core.msg.CoreMsg;
+import org.opsli.core.utils.tree.TreeSnapshot;
+import org.opsli.core.utils.tree.TreeSnapshotSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.opsli.common.constants.OrderConstants.UTIL_ORDER;
+
+/**
+ * 树快照工具类
+ *
+ * 每棵树在本地保留一份不可变快照 {@link TreeSnapshot}，查询直接走快照 不访问数据库，
+ * 响应为预先序列化的 JSON 字节，带强 ETag，If-None-Match 命中时返回 304
+ *
+ * 版本号存储在 Redis 中，本地至多每秒检查一次：
+ * 1. 本节点变更 事务提交后递增版本号，快照版本连续时 只重新加载变更节点 增量生成新快照
+ * 2. 其余节点变更 检查到版本号不一致时 全量重建
+ *
+ * @author Parker
+ * @date 2021-12-21 10:05
+ */
+@Slf4j
+@Order(UTIL_ORDER)
+@Component
+@Lazy(false)
+public class TreeSnapshotUtil {
+
+    /** 版本号 本地检查间隔 (毫秒) */
+    private static final long CHECK_INTERVAL = 1000L;
+
+    /** 快照 */
+    private static final Map<String, Holder> HOLDER_MAP = new ConcurrentHashMap<>();
+
+    /** 增加初始状态开关 防止异常使用 */
+    private static boolean IS_INIT;
+
+    private static RedisTemplate<String, Object> redisTemplate;
+
+    private static ObjectMapper objectMapper;
+
+
+    /**
+     * 获得快照
+     * @param source 数据源 同名数据源 以首次传入的为准
+     * @return TreeSnapshot
+     */
+    public static TreeSnapshot get(final TreeSnapshotSource source){
+        // 判断 工具类是否初始化完成
+        ThrowExceptionUtil.isThrowException(!IS_INIT,
+                CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
+
+        Holder holder = HOLDER_MAP.computeIfAbsent(source.getTreeName(), k -> new Holder(source));
+        return holder.get();
+    }
+
+    /**
+     * 输出渲染结果
+     * If-None-Match 与 ETag 一致时 返回 304
+     *
+     * @param rendered 渲染结果
+     */
+    public static void write(final TreeSnapshot.Rendered rendered){
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        if(null == attributes || null == attributes.getResponse()){
+            return;
+        }
+
+        HttpServletResponse response = attributes.getResponse();
+        // 每次使用前 向服务端校验
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+        ServletWebRequest webRequest = new ServletWebRequest(attributes.getRequest(), response);
+        if(webRequest.checkNotModified(rendered.getEtag())){
+            return;
+        }
+
+        byte[] body = rendered.getBody();
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentLength(body.length);
+        try {
+            response.getOutputStream().write(body);
+            response.flushBuffer();
+        }catch (IOException e){
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 节点新增或变更 (重新加载这些节点)
+     * 处于事务中时 提交后执行
+     *
+     * @param treeName 树名称
+     * @param ids 节点ID
+     */
+    public static void refresh(final String treeName, final Collection<String> ids){
+        change(treeName, ids, null, false);
+    }
+
+    /**
+     * 节点删除 (连同子孙节点)
+     * 处于事务中时 提交后执行
+     *
+     * @param treeName 树名称
+     * @param ids 节点ID
+     */
+    public static void remove(final String treeName, final Collection<String> ids){
+        change(treeName, null, ids, false);
+    }
+
+    /**
+     * 整树失效 (批量变更 无法确定受影响节点时使用)
+     * 处于事务中时 提交后执行
+     *
+     * @param treeName 树名称
+     */
+    public static void invalidate(final String treeName){
+        change(treeName, null, null, true);
+    }
+
+    // ====================================
+
+    /**
+     * 变更
+     * @param treeName 树名称
+     * @param refreshIds 重新加载的节点
+     * @param removeIds 删除的节点
+     * @param full 是否全量
+     */
+    private static void change(final String treeName, final Collection<String> refreshIds,
+                               final Collection<String> removeIds, final boolean full){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            // 提交前的数据 不能进入快照
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doChange(treeName, refreshIds, removeIds, full);
+                }
+            });
+            return;
+        }
+        doChange(treeName, refreshIds, removeIds, full);
+    }
+
+    private static void doChange(final String treeName, final Collection<String> refreshIds,
+                                 final Collection<String> removeIds, final boolean full){
+        Long version = null;
+        try {
+            version = redisTemplate.opsForValue().increment(getKey(treeName));
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }
+
+        Holder holder = HOLDER_MAP.get(treeName);
+        if(null == holder){
+            return;
+        }
+        holder.apply(version, refreshIds, removeIds, full);
+    }
+
+    /**
+     * 获得版本号
+     * @param treeName 树名称
+     * @param current 当前快照 Redis 异常时 沿用当前快照
+     * @return long
+     */
+    private static long getVersion(final String treeName, final TreeSnapshot current){
+        try {
+            Object cache = redisTemplate.opsForValue().get(getKey(treeName));
+            return Convert.toLong(cache, 0L);
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+            return null == current ? 0L : current.getVersion();
+        }
+    }
+
+    private static String getKey(final String treeName){
+        return CacheUtil.formatKey(RedisConstants.PREFIX_TREE_VERSION + treeName);
+    }
+
+    /**
+     * 快照持有者
+     */
+    private static final class Holder {
+
+        private final TreeSnapshotSource source;
+
+        private volatile TreeSnapshot snapshot;
+
+        /** 最后检查版本号时间 */
+        private volatile long checkTime;
+
+        private Holder(TreeSnapshotSource source) {
+            this.source = source;
+        }
+
+        private TreeSnapshot get() {
+            TreeSnapshot current = snapshot;
+            long now = System.currentTimeMillis();
+            if(null != current && now - checkTime < CHECK_INTERVAL){
+                return current;
+            }
+
+            long version = getVersion(source.getTreeName(), current);
+            if(null != current && current.getVersion() == version){
+                checkTime = now;
+                return current;
+            }
+
+            synchronized (this) {
+                current = snapshot;
+                if(null != current && current.getVersion() == version){
+                    checkTime = now;
+                    return current;
+                }
+
+                // 版本号在加载前读取，加载期间提交的变更 会在下次检查时重新加载
+                current = TreeSnapshot.build(version, source.getTreeNodeConfig(),
+                        source.loadTreeNodes(), objectMapper);
+                snapshot = current;
+                checkTime = now;
+                return current;
+            }
+        }
+
+        private synchronized void apply(Long version, Collection<String> refreshIds,
+                                        Collection<String> removeIds, boolean full) {
+            TreeSnapshot current = snapshot;
+            // 版本不连续 (期间有其余节点变更) 交由下次查询全量重建
+            if(full || null == version || null == current || current.getVersion() != version - 1){
+                snapshot = null;
+                return;
+            }
+
+            try {
+                List<Map<String, Object>> rows = CollUtil.isEmpty(refreshIds)
+                        ? Collections.emptyList()
+                        : source.loadTreeNodes(refreshIds);
+                snapshot = current.apply(version, rows, refreshIds, removeIds);
+                checkTime = System.currentTimeMillis();
+            }catch (Exception e){
+                log.error(e.getMessage(), e);
+                snapshot = null;
+            }
+        }
+    }
+
+    /**
+     * 初始化
+     */
+    @Autowired
+    public void init(RedisTemplate<String, Object> redisTemplate,
+                     MappingJackson2HttpMessageConverter jackson2HttpMessageConverter){
+        TreeSnapshotUtil.redisTemplate = redisTemplate;
+        TreeSnapshotUtil.objectMapper = jackson2HttpMessageConverter.getObjectMapper();
+        IS_INIT = true;
+    }
+
+}
@@ -148,6 +148,12 @@ public class UserTokenUtil {
             return Optional.empty();
         }
 
+        // 当前请求已认证 直接返回
+        Optional<LoginUserDto> loginUserOptional = UserContextHolder.getLoginUser(token);
+        if(loginUserOptional.isPresent()){
+            return loginUserOptional;
+        }
+
         LoginUserDto loginUserFromToken = JWTBizUtil.getLoginUserFromToken(token);
         return Optional.ofNullable(loginUserFromToken);
     }
@@ -173,7 +179,7 @@ public class UserTokenUtil {
         }
         String userId = "";
         try {
-            LoginUserDto loginUserFromToken = JWTBizUtil.getLoginUserFromToken(token);
+            LoginUserDto loginUserFromToken = getLoginUserDto(token).orElse(null);
             userId = loginUserFromToken.getUid();
         }catch (Exception ignored){}
         return userId;
@@ -200,7 +206,7 @@ public class UserTokenUtil {
         }
         String username = "";
         try {
-            LoginUserDto loginUserFromToken = JWTBizUtil.getLoginUserFromToken(token);
+            LoginUserDto loginUserFromToken = getLoginUserDto(token).orElse(null);
             username = loginUserFromToken.getUsername();
         }catch (Exception ignored){}
         return username;
@@ -227,7 +233,7 @@ public class UserTokenUtil {
         }
         String username = "";
         try {
-            LoginUserDto loginUserFromToken = JWTBizUtil.getLoginUserFromToken(token);
+            LoginUserDto loginUserFromToken = getLoginUserDto(token).orElse(null);
             username = loginUserFromToken.getTenantId();
         }catch (Exception ignored){}
         return username;
@@ -255,6 +261,10 @@ public class UserTokenUtil {
                     RedisConstants.PREFIX_TICKET +
                             loginUserDto.getLoginFrom() + ":" + loginUserDto.getUsername());
 
+            // 清除已验证 Token
+            JWTBizUtil.invalidate(token);
+            UserContextHolder.clearLoginUser();
+
             // 获得要退出用户
             UserModel user = UserUtil.getUser(loginUserDto.getUid());
             if(user != null){
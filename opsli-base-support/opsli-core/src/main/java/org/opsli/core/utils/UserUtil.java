@@ -15,7 +15,6 @@
  */
 package org.opsli.core.utils;
 
-import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.collection.ListUtil;
 import cn.hutool.core.convert.Convert;
 import cn.hutool.core.util.StrUtil;
@@ -33,6 +32,8 @@ import org.opsli.api.wrapper.system.user.UserOrgRefModel;
 import org.opsli.common.constants.RedisConstants;
 import org.opsli.common.exception.TokenException;
 import org.opsli.core.autoconfigure.properties.GlobalProperties;
+import org.opsli.core.cache.CacheGeneration;
+import org.opsli.core.cache.CacheGeneration.Scope;
 import org.opsli.core.cache.CacheUtil;
 import org.opsli.core.cache.SecurityCache;
 import org.opsli.core.holder.UserContextHolder;
@@ -319,7 +320,7 @@ public class UserUtil {
         }
 
         // 缓存Key
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_AND_ROLES + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_AND_ROLES, userId, Scope.ROLE);
 
         final String finalUserId = userId;
         Object cache = SecurityCache.get(redisTemplate, cacheKey, (k) -> {
@@ -329,7 +330,7 @@ public class UserUtil {
                 return null;
             }
             return resultVo.getData();
-        }, true);
+        });
 
         List<String> roles = Convert.toList(String.class, cache);
         if(null == roles){
@@ -358,7 +359,7 @@ public class UserUtil {
 
 
         // 缓存Key
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_PERMISSIONS + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_PERMISSIONS, userId, Scope.ROLE, Scope.MENU);
 
         final String finalUserId = userId;
         Object cache = SecurityCache.get(redisTemplate, cacheKey, (k) -> {
@@ -368,7 +369,7 @@ public class UserUtil {
                 return null;
             }
             return resultVo.getData();
-        }, true);
+        });
 
         List<String> permissions = Convert.toList(String.class, cache);
         if(null == permissions){
@@ -396,7 +397,7 @@ public class UserUtil {
 
 
         // 缓存Key
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_ORGS + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_ORGS, userId, Scope.ORG);
 
         final String finalUserId = userId;
         Object cache = SecurityCache.get(redisTemplate, cacheKey, (k) -> {
@@ -406,7 +407,7 @@ public class UserUtil {
                 return null;
             }
             return resultVo.getData();
-        }, true);
+        });
 
         List<UserOrgRefModel> orgList = Convert.toList(UserOrgRefModel.class, cache);
         if(null == orgList){
@@ -447,7 +448,7 @@ public class UserUtil {
 
 
         // 缓存Key
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_MENUS + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_MENUS, userId, Scope.ROLE, Scope.MENU);
 
         final String finalUserId = userId;
         Object cache = SecurityCache.get(redisTemplate, cacheKey, (k) -> {
@@ -457,7 +458,7 @@ public class UserUtil {
                 return null;
             }
             return resultVo.getData();
-        }, true);
+        });
 
         List<MenuModel> menus = Convert.toList(MenuModel.class, cache);
         if(null == menus){
@@ -486,7 +487,7 @@ public class UserUtil {
 
 
         // 缓存Key
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_DEF_ROLE + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_DEF_ROLE, userId, Scope.ROLE);
 
         final String finalUserId = userId;
         Object cache = SecurityCache.get(redisTemplate, cacheKey, (k) -> {
@@ -496,7 +497,7 @@ public class UserUtil {
                 return null;
             }
             return resultVo.getData();
-        }, true);
+        });
 
         return Convert.convert(RoleModel.class, cache);
     }
@@ -521,7 +522,7 @@ public class UserUtil {
         }
 
         // 缓存Key
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_DEF_ORG + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_DEF_ORG, userId, Scope.ORG);
 
         final String finalUserId = userId;
         Object cache = SecurityCache.get(redisTemplate, cacheKey, (k) -> {
@@ -531,7 +532,7 @@ public class UserUtil {
                 return null;
             }
             return resultVo.getData();
-        }, true);
+        });
 
         return Convert.convert(UserOrgRefModel.class, cache);
     }
@@ -581,8 +582,10 @@ public class UserUtil {
         String cacheKeyByMobile = CacheUtil.formatKey(RedisConstants.PREFIX_USER_MOBILE + user.getMobile());
         String cacheKeyByEmail = CacheUtil.formatKey(RedisConstants.PREFIX_USER_EMAIL + user.getEmail());
 
+        String cacheKeyByAuthSnapshot = AuthSnapshotUtil.getCacheKey(user.getId());
+
         return SecurityCache.remove(redisTemplate,
-                cacheKeyByUserId, cacheKeyByUsername, cacheKeyByMobile, cacheKeyByEmail);
+                cacheKeyByUserId, cacheKeyByUsername, cacheKeyByMobile, cacheKeyByEmail, cacheKeyByAuthSnapshot);
     }
 
 
@@ -596,9 +599,11 @@ public class UserUtil {
         ThrowExceptionUtil.isThrowException(!IS_INIT,
                 CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
 
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_AND_ROLES + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_AND_ROLES, userId, Scope.ROLE);
+        // 授权快照 一并删除
+        String cacheKeyByAuthSnapshot = AuthSnapshotUtil.getCacheKey(userId);
 
-        return SecurityCache.remove(redisTemplate, cacheKey);
+        return SecurityCache.remove(redisTemplate, cacheKey, cacheKeyByAuthSnapshot);
     }
 
     /**
@@ -615,9 +620,11 @@ public class UserUtil {
             return true;
         }
 
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_DEF_ROLE + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_DEF_ROLE, userId, Scope.ROLE);
+        // 授权快照 一并删除
+        String cacheKeyByAuthSnapshot = AuthSnapshotUtil.getCacheKey(userId);
 
-        return SecurityCache.remove(redisTemplate, cacheKey);
+        return SecurityCache.remove(redisTemplate, cacheKey, cacheKeyByAuthSnapshot);
     }
 
 
@@ -632,9 +639,11 @@ public class UserUtil {
         ThrowExceptionUtil.isThrowException(!IS_INIT,
                 CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
 
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_PERMISSIONS + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_PERMISSIONS, userId, Scope.ROLE, Scope.MENU);
+        // 授权快照 一并删除
+        String cacheKeyByAuthSnapshot = AuthSnapshotUtil.getCacheKey(userId);
 
-        return SecurityCache.remove(redisTemplate, cacheKey);
+        return SecurityCache.remove(redisTemplate, cacheKey, cacheKeyByAuthSnapshot);
     }
 
     /**
@@ -651,9 +660,11 @@ public class UserUtil {
             return true;
         }
 
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_ORGS + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_ORGS, userId, Scope.ORG);
+        // 授权快照 一并删除
+        String cacheKeyByAuthSnapshot = AuthSnapshotUtil.getCacheKey(userId);
 
-        return SecurityCache.remove(redisTemplate, cacheKey);
+        return SecurityCache.remove(redisTemplate, cacheKey, cacheKeyByAuthSnapshot);
     }
 
     /**
@@ -670,9 +681,11 @@ public class UserUtil {
             return true;
         }
 
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_DEF_ORG + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_DEF_ORG, userId, Scope.ORG);
+        // 授权快照 一并删除
+        String cacheKeyByAuthSnapshot = AuthSnapshotUtil.getCacheKey(userId);
 
-        return SecurityCache.remove(redisTemplate, cacheKey);
+        return SecurityCache.remove(redisTemplate, cacheKey, cacheKeyByAuthSnapshot);
     }
 
 
@@ -686,7 +699,7 @@ public class UserUtil {
         ThrowExceptionUtil.isThrowException(!IS_INIT,
                 CoreMsg.OTHER_EXCEPTION_UTILS_INIT);
 
-        String cacheKey = CacheUtil.formatKey(RedisConstants.PREFIX_USER_ID_MENUS + userId);
+        String cacheKey = getCacheKey(RedisConstants.PREFIX_USER_ID_MENUS, userId, Scope.ROLE, Scope.MENU);
 
         return SecurityCache.remove(redisTemplate, cacheKey);
     }
@@ -741,10 +754,23 @@ public class UserUtil {
             return true;
         }
 
-        // 获得当前用户权限
-        List<String> userAllPermsByUserId = UserUtil.getUserAllPermsByUserId(currUser.getId());
-        return !CollUtil.isEmpty(userAllPermsByUserId) &&
-                userAllPermsByUserId.contains(PERMS_TENANT);
+        // 获得当前用户权限 (授权快照 位图判断)
+        return AuthSnapshotUtil.getSnapshot(currUser.getId())
+                .map(snapshot -> snapshot.hasPermission(PERMS_TENANT))
+                .orElse(false);
+    }
+
+    /**
+     * 获得用户派生缓存Key 带上所依赖维度的世代号
+     * 维度变更时 递增世代号即可使全部用户的该类缓存失效
+     * 旧世代的 Key 不会再被访问，写入时 必须设置存活时间 (不能永久存储) 由 Redis 自然淘汰
+     * @param prefix 前缀
+     * @param userId 用户ID
+     * @param scopes 依赖维度
+     * @return String
+     */
+    private static String getCacheKey(String prefix, String userId, Scope... scopes){
+        return CacheUtil.formatKey(prefix + userId) + CacheGeneration.tag(scopes);
     }
 
     // =====================================
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils.captcha;
+
+import com.wf.captcha.base.Captcha;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 验证码储备池 (单个验证码类型)
+ *
+ * 由低优先级线程 预先渲染 图片 + 答案，请求时直接取出一组 不再在请求线程上渲染
+ * 每组验证码只会被取出一次，取出后即从储备中移除
+ *
+ * 目标储备数量 按取用速率 (指数平滑) 自动调整：目标 = 每秒取用数 * RESERVE_SECONDS，
+ * 限制在 [MIN_SIZE, MAX_SIZE] 之间；储备耗尽时 由调用方在当前线程渲染兜底
+ *
+ * @author Parker
+ * @date 2021-12-23 14:10
+ */
+@Slf4j
+public final class CaptchaPool {
+
+    /** 最小储备数量 */
+    private static final int MIN_SIZE = 8;
+    /** 最大储备数量 限制内存占用 */
+    private static final int MAX_SIZE = 128;
+    /** 储备时长 (秒) */
+    private static final double RESERVE_SECONDS = 10D;
+    /** 平滑系数 越大 越快跟随最新速率 */
+    private static final double ALPHA = 0.3D;
+
+    /** 渲染 */
+    private final Supplier<Captcha> renderer;
+    /** 渲染线程池 */
+    private final Executor executor;
+    /** 储备 */
+    private final BlockingQueue<CaptchaPair> reserve = new ArrayBlockingQueue<>(MAX_SIZE);
+    /** 本周期 取用数 */
+    private final AtomicInteger demand = new AtomicInteger();
+    /** 补充中 */
+    private final AtomicBoolean filling = new AtomicBoolean();
+
+    /** 取用速率 (每秒) */
+    private volatile double rate;
+    /** 目标储备数量 */
+    private volatile int targetSize = MIN_SIZE;
+
+    public CaptchaPool(Supplier<Captcha> renderer, Executor executor) {
+        this.renderer = renderer;
+        this.executor = executor;
+    }
+
+    /**
+     * 取出一组验证码
+     * @return CaptchaPair 储备耗尽时 为空
+     */
+    public CaptchaPair poll() {
+        demand.incrementAndGet();
+        CaptchaPair pair = reserve.poll();
+        if(reserve.size() < targetSize){
+            this.fill();
+        }
+        return pair;
+    }
+
+    /**
+     * 渲染一组验证码
+     * @return CaptchaPair
+     */
+    public CaptchaPair render() {
+        Captcha captcha = renderer.get();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        captcha.out(out);
+        return new CaptchaPair(captcha.text(), out.toByteArray());
+    }
+
+    /**
+     * 统计周期结束 更新取用速率 及 目标储备数量
+     * @param periodMillis 统计周期 (毫秒)
+     */
+    public void tick(long periodMillis) {
+        double current = demand.getAndSet(0) * 1000D / periodMillis;
+        rate = ALPHA * current + (1 - ALPHA) * rate;
+        int size = (int) Math.ceil(rate * RESERVE_SECONDS);
+        targetSize = Math.min(MAX_SIZE, Math.max(MIN_SIZE, size));
+        this.fill();
+    }
+
+    /**
+     * 补充储备 同一时间 只有一个补充任务
+     */
+    public void fill() {
+        if(reserve.size() >= targetSize || !filling.compareAndSet(false, true)){
+            return;
+        }
+        try {
+            executor.execute(this::doFill);
+        }catch (RejectedExecutionException e){
+            filling.set(false);
+        }
+    }
+
+    private void doFill() {
+        try {
+            while (reserve.size() < targetSize) {
+                if(!reserve.offer(this.render())){
+                    break;
+                }
+            }
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }finally {
+            filling.set(false);
+        }
+    }
+
+    /**
+     * 预渲染验证码 答案 + 图片
+     */
+    public static final class CaptchaPair {
+
+        /** 答案 */
+        private final String text;
+        /** 图片 */
+        private final byte[] image;
+
+        private CaptchaPair(String text, byte[] image) {
+            this.text = text;
+            this.image = image;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public byte[] getImage() {
+            return image;
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils.dict;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.opsli.api.wrapper.system.dict.DictWrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字典快照 (不可变)
+ *
+ * 单个字典类型 一次性建立：已排序字典列表、字典值 -> 字典、字典名称 -> 字典 索引，
+ * 翻译时直接查本地索引，不再访问 Redis 也不再逐个遍历、排序
+ *
+ * 快照带有构建时的字典世代号，世代号变更后 快照作废并重新加载
+ *
+ * @author Parker
+ * @date 2021-12-22 16:20
+ */
+public final class DictSnapshot {
+
+    /** Excel 字典 KEY */
+    public static final String DICT_NAME_KEY = "dictName";
+    public static final String DICT_VALUE_KEY = "dictValue";
+
+    /** 排序 空排序号排在最后 */
+    private static final Comparator<DictWrapper> SORT_COMPARATOR = Comparator.comparingInt(
+            wrapper -> {
+                if(wrapper == null || wrapper.getModel() == null || wrapper.getModel().getSortNo() == null){
+                    return Integer.MAX_VALUE;
+                }
+                return wrapper.getModel().getSortNo();
+            });
+
+    /** 字典类型编号 */
+    private final String typeCode;
+
+    /** 字典世代号 */
+    private final long generation;
+
+    /** 已排序字典列表 */
+    private final List<DictWrapper> dictList;
+
+    /** 字典值 -> 字典 */
+    private final Map<String, DictWrapper> valueMap;
+
+    /** 字典名称 -> 字典 */
+    private final Map<String, DictWrapper> nameMap;
+
+    /** Excel 翻译字典 首次使用时生成 */
+    private volatile JSONObject excelDict;
+
+    private DictSnapshot(String typeCode, long generation, List<DictWrapper> dictList,
+                         Map<String, DictWrapper> valueMap, Map<String, DictWrapper> nameMap) {
+        this.typeCode = typeCode;
+        this.generation = generation;
+        this.dictList = dictList;
+        this.valueMap = valueMap;
+        this.nameMap = nameMap;
+    }
+
+    /**
+     * 构建快照
+     * @param typeCode 字典类型编号
+     * @param generation 字典世代号
+     * @param dictWrappers 字典集合 (无序)
+     * @return DictSnapshot
+     */
+    public static DictSnapshot build(String typeCode, long generation, List<DictWrapper> dictWrappers) {
+        List<DictWrapper> dictList = null == dictWrappers ?
+                new ArrayList<>() : new ArrayList<>(dictWrappers);
+        // 稳定排序
+        dictList.sort(SORT_COMPARATOR);
+
+        Map<String, DictWrapper> valueMap = new HashMap<>(Math.max(16, dictList.size() << 1));
+        Map<String, DictWrapper> nameMap = new HashMap<>(Math.max(16, dictList.size() << 1));
+        for (DictWrapper wrapper : dictList) {
+            // 与原逐个遍历一致 重复时以排序靠前的为准
+            valueMap.putIfAbsent(wrapper.getDictValue(), wrapper);
+            nameMap.putIfAbsent(wrapper.getDictName(), wrapper);
+        }
+
+        return new DictSnapshot(typeCode, generation, Collections.unmodifiableList(dictList),
+                Collections.unmodifiableMap(valueMap), Collections.unmodifiableMap(nameMap));
+    }
+
+    public String getTypeCode() {
+        return typeCode;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public boolean isEmpty() {
+        return dictList.isEmpty();
+    }
+
+    /**
+     * 获得已排序字典列表 (只读)
+     * @return List
+     */
+    public List<DictWrapper> getDictList() {
+        return dictList;
+    }
+
+    /**
+     * 根据 字典值 取 字典
+     * @param dictValue 字典值
+     * @return DictWrapper
+     */
+    public DictWrapper getByValue(String dictValue) {
+        return valueMap.get(dictValue);
+    }
+
+    /**
+     * 根据 字典名称 取 字典
+     * @param dictName 字典名称
+     * @return DictWrapper
+     */
+    public DictWrapper getByName(String dictName) {
+        return nameMap.get(dictName);
+    }
+
+    /**
+     * 获得 Excel 翻译字典 {dictName: {名称: 值}, dictValue: {值: 名称}}
+     * 同一快照只生成一次，调用方只读 不可修改
+     *
+     * @return JSONObject
+     */
+    public JSONObject getExcelDict() {
+        JSONObject dict = excelDict;
+        if(null != dict){
+            return dict;
+        }
+
+        JSONObject nameJsonObject = JSONUtil.createObj();
+        JSONObject valueJsonObject = JSONUtil.createObj();
+        for (DictWrapper wrapper : dictList) {
+            nameJsonObject.putOpt(wrapper.getDictName(), wrapper.getDictValue());
+            valueJsonObject.putOpt(wrapper.getDictValue(), wrapper.getDictName());
+        }
+        dict = JSONUtil.createObj();
+        dict.putOpt(DICT_NAME_KEY, nameJsonObject);
+        dict.putOpt(DICT_VALUE_KEY, valueJsonObject);
+        excelDict = dict;
+        return dict;
+    }
+
+}
@@ -0,0 +1,551 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils.tree;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.lang.tree.Tree;
+import cn.hutool.core.lang.tree.TreeNodeConfig;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.api.base.result.ResultWrapper;
+import org.opsli.common.constants.TreeConstants;
+import org.opsli.common.exception.ServiceException;
+import org.opsli.core.msg.CoreMsg;
+import org.opsli.core.utils.TreeBuildUtil;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 树快照 (不可变)
+ *
+ * 节点一次性建立索引：id -> 节点、parentId -> 已排序子节点数组，
+ * 查询时直接从索引组装，不再访问数据库 也不再逐行反射转换
+ *
+ * 渲染结果 (含 ResultWrapper 外壳的 JSON 字节) 按参数缓存在快照内，附带强 ETag，
+ * 快照不可变 渲染结果随快照一同失效
+ *
+ * 数据变更时 {@link #apply} 基于当前快照生成新快照：
+ * 未变更节点原样复用，只重排受影响父节点的子节点数组，
+ * 与变更无关的 单层子节点渲染结果 也一并沿用
+ *
+ * @author Parker
+ * @date 2021-12-21 10:05
+ */
+@Slf4j
+public final class TreeSnapshot {
+
+    /** 不限层级 */
+    private static final int UNLIMITED_DEEP = -1;
+
+    /** 缓存的最大层级 超过后按不限层级处理 */
+    private static final int MAX_DEEP = 32;
+
+    private static final Node[] EMPTY_NODES = new Node[0];
+
+    private static final Comparator<Node> WEIGHT_COMPARATOR =
+            Comparator.comparing(node -> node.weight, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    /** 版本号 */
+    private final long version;
+
+    /** 树节点配置 */
+    private final TreeNodeConfig config;
+
+    /** 扩展属性排除字段 */
+    private final List<String> excludeFields;
+
+    /** 序列化 */
+    private final ObjectMapper objectMapper;
+
+    /** id -> 节点 */
+    private final Map<String, Node> nodeMap;
+
+    /** parentId -> 子节点 (按排序字段升序) */
+    private final Map<String, Node[]> childrenMap;
+
+    /** 渲染结果 */
+    private final ConcurrentMap<RenderKey, Rendered> renderMap;
+
+    private TreeSnapshot(long version, TreeNodeConfig config, List<String> excludeFields,
+                         ObjectMapper objectMapper, Map<String, Node> nodeMap,
+                         Map<String, Node[]> childrenMap, ConcurrentMap<RenderKey, Rendered> renderMap) {
+        this.version = version;
+        this.config = config;
+        this.excludeFields = excludeFields;
+        this.objectMapper = objectMapper;
+        this.nodeMap = nodeMap;
+        this.childrenMap = childrenMap;
+        this.renderMap = renderMap;
+    }
+
+    /**
+     * 全量构建
+     * @param version 版本号
+     * @param config 树节点配置
+     * @param rows 节点数据
+     * @param objectMapper 序列化
+     * @return TreeSnapshot
+     */
+    public static TreeSnapshot build(long version, TreeNodeConfig config,
+                                     List<Map<String, Object>> rows, ObjectMapper objectMapper) {
+        List<String> excludeFields = TreeBuildUtil.INSTANCE.getExcludeFields(config);
+
+        // 保持加载顺序 排序字段相同的节点 按加载顺序排列
+        Map<String, Node> nodeMap = new LinkedHashMap<>();
+        if(null != rows){
+            for (Map<String, Object> row : rows) {
+                Node node = Node.of(row, config, excludeFields);
+                if(null != node){
+                    nodeMap.put(node.id, node);
+                }
+            }
+        }
+
+        Map<String, List<Node>> groupMap = new HashMap<>();
+        for (Node node : nodeMap.values()) {
+            groupMap.computeIfAbsent(node.parentId, k -> new ArrayList<>()).add(node);
+        }
+        Map<String, Node[]> childrenMap = new HashMap<>(groupMap.size() * 2);
+        for (Map.Entry<String, List<Node>> entry : groupMap.entrySet()) {
+            childrenMap.put(entry.getKey(), sort(entry.getValue()));
+        }
+
+        return new TreeSnapshot(version, config, excludeFields, objectMapper,
+                nodeMap, childrenMap, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * 增量构建新快照
+     *
+     * @param newVersion 新版本号
+     * @param rows 重新加载的节点数据
+     * @param refreshIds 重新加载的ID 未出现在 rows 中的视为已删除 (仅删除自身)
+     * @param removeIds 删除的ID (连同子孙节点)
+     * @return TreeSnapshot
+     */
+    public TreeSnapshot apply(long newVersion, List<Map<String, Object>> rows,
+                              Collection<String> refreshIds, Collection<String> removeIds) {
+        Map<String, Node> newNodeMap = new LinkedHashMap<>(nodeMap);
+        // 子节点数组发生变化的父节点
+        Set<String> affected = new HashSet<>();
+        // 移除的节点 (其子节点数组一并移除)
+        Set<String> removed = new HashSet<>();
+        // 新增或变更的节点
+        List<Node> upserted = new ArrayList<>();
+
+        // 删除 连同子孙节点
+        if(null != removeIds){
+            Deque<String> stack = new ArrayDeque<>(removeIds);
+            while (!stack.isEmpty()) {
+                String id = stack.pop();
+                if(!removed.add(id)){
+                    continue;
+                }
+                Node old = newNodeMap.remove(id);
+                if(null != old){
+                    affected.add(old.parentId);
+                }
+                for (Node child : getChildrenNodes(id)) {
+                    stack.push(child.id);
+                }
+            }
+        }
+
+        // 新增、变更
+        Set<String> found = new HashSet<>();
+        if(null != rows){
+            for (Map<String, Object> row : rows) {
+                Node node = Node.of(row, config, excludeFields);
+                if(null == node || removed.contains(node.id)){
+                    continue;
+                }
+                Node old = newNodeMap.put(node.id, node);
+                if(null != old){
+                    affected.add(old.parentId);
+                }
+                affected.add(node.parentId);
+                upserted.add(node);
+                found.add(node.id);
+            }
+        }
+        if(null != refreshIds){
+            for (String id : refreshIds) {
+                if(found.contains(id)){
+                    continue;
+                }
+                Node old = newNodeMap.remove(id);
+                if(null != old){
+                    affected.add(old.parentId);
+                }
+            }
+        }
+
+        // 只重排受影响的子节点数组
+        Map<String, Node[]> newChildrenMap = new HashMap<>(childrenMap);
+        for (String id : removed) {
+            newChildrenMap.remove(id);
+        }
+        for (String parentId : affected) {
+            List<Node> list = new ArrayList<>();
+            Set<String> ids = new HashSet<>();
+            for (Node child : getChildrenNodes(parentId)) {
+                Node current = newNodeMap.get(child.id);
+                if(null != current && Objects.equals(parentId, current.parentId) && ids.add(current.id)){
+                    list.add(current);
+                }
+            }
+            for (Node node : upserted) {
+                if(Objects.equals(parentId, node.parentId) && ids.add(node.id)){
+                    list.add(node);
+                }
+            }
+            if(list.isEmpty()){
+                newChildrenMap.remove(parentId);
+            }else{
+                newChildrenMap.put(parentId, sort(list));
+            }
+        }
+
+        // 沿用与变更无关的 单层子节点渲染结果
+        // 父节点自身及其子节点的子集均未变化时 输出不变
+        ConcurrentMap<RenderKey, Rendered> newRenderMap = new ConcurrentHashMap<>();
+        for (Map.Entry<RenderKey, Rendered> entry : renderMap.entrySet()) {
+            RenderKey key = entry.getKey();
+            if(!key.shallow || affected.contains(key.parentId) || removed.contains(key.parentId)){
+                continue;
+            }
+            boolean reuse = true;
+            for (Node child : newChildrenMap.getOrDefault(key.parentId, EMPTY_NODES)) {
+                if(affected.contains(child.id)){
+                    reuse = false;
+                    break;
+                }
+            }
+            if(reuse){
+                newRenderMap.put(key, entry.getValue());
+            }
+        }
+
+        return new TreeSnapshot(newVersion, config, excludeFields, objectMapper,
+                newNodeMap, newChildrenMap, newRenderMap);
+    }
+
+    // ======================== 查询 ========================
+
+    /**
+     * 版本号
+     * @return long
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 节点数
+     * @return int
+     */
+    public int size() {
+        return nodeMap.size();
+    }
+
+    /**
+     * 获得节点扩展属性
+     * @param id ID
+     * @return Map 不可修改
+     */
+    public Map<String, Object> getNode(String id) {
+        Node node = nodeMap.get(id);
+        return null == node ? null : node.extra;
+    }
+
+    /**
+     * 获得子节点ID
+     * @param parentId 父节点ID
+     * @return List
+     */
+    public List<String> getChildrenIds(String parentId) {
+        Node[] children = getChildrenNodes(parentId);
+        List<String> ids = new ArrayList<>(children.length);
+        for (Node child : children) {
+            ids.add(child.id);
+        }
+        return ids;
+    }
+
+    /**
+     * 是否有满足条件的子节点
+     * @param parentId 父节点ID
+     * @param filter 过滤 (可为空)
+     * @return boolean
+     */
+    public boolean hasChildren(String parentId, Predicate<Map<String, Object>> filter) {
+        for (Node child : getChildrenNodes(parentId)) {
+            if(null == filter || filter.test(child.extra)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 构建树
+     * 结构与 TreeBuildUtil 构建结果一致，并带有 isLeaf、hasChildren 标识
+     *
+     * @param parentId 父节点ID
+     * @param deep 层级 为空或小于0 不限层级
+     * @param filter 过滤 (可为空) 不满足条件的节点 连同子孙节点一并排除
+     * @param excludeId 排除的节点ID (可为空) 连同子孙节点一并排除
+     * @return List<Tree<Object>>
+     */
+    public List<Tree<Object>> getTrees(String parentId, Integer deep,
+                                       Predicate<Map<String, Object>> filter, String excludeId) {
+        return buildTrees(parentId, 1, normalizeDeep(deep), filter, excludeId);
+    }
+
+    // ======================== 渲染 ========================
+
+    /**
+     * 渲染 单层子节点 (懒加载)
+     * 数据变更与该父节点无关时 渲染结果沿用至新快照
+     *
+     * @param parentId 父节点ID
+     * @param variant 变体 (过滤条件标识)
+     * @param filter 过滤 (可为空)
+     * @return Rendered
+     */
+    public Rendered renderChildren(String parentId, String variant, Predicate<Map<String, Object>> filter) {
+        return render(new RenderKey(parentId, variant, 1, true),
+                () -> getTrees(parentId, 1, filter, null));
+    }
+
+    /**
+     * 渲染 树
+     * @param parentId 父节点ID
+     * @param deep 层级 为空或小于0 不限层级
+     * @param variant 变体 (过滤条件标识)
+     * @param filter 过滤 (可为空)
+     * @return Rendered
+     */
+    public Rendered renderTree(String parentId, Integer deep, String variant, Predicate<Map<String, Object>> filter) {
+        int normalizeDeep = normalizeDeep(deep);
+        return render(new RenderKey(parentId, variant, normalizeDeep, false),
+                () -> getTrees(parentId, normalizeDeep, filter, null));
+    }
+
+    /**
+     * 渲染 自定义数据 (基于当前快照组装)
+     * 任意数据变更后失效
+     *
+     * @param variant 变体
+     * @param dataSupplier 数据
+     * @return Rendered
+     */
+    public Rendered render(String variant, Supplier<Object> dataSupplier) {
+        return render(new RenderKey(null, variant, UNLIMITED_DEEP, false), dataSupplier);
+    }
+
+    /**
+     * 渲染 不缓存 (参数不固定时使用)
+     * @param data 数据
+     * @return Rendered
+     */
+    public Rendered renderOnce(Object data) {
+        return Rendered.of(serialize(data));
+    }
+
+    private Rendered render(RenderKey key, Supplier<Object> dataSupplier) {
+        Rendered rendered = renderMap.get(key);
+        if(null != rendered){
+            return rendered;
+        }
+        rendered = Rendered.of(serialize(dataSupplier.get()));
+        Rendered prev = renderMap.putIfAbsent(key, rendered);
+        return null == prev ? rendered : prev;
+    }
+
+    private byte[] serialize(Object data) {
+        try {
+            return objectMapper.writeValueAsBytes(ResultWrapper.getSuccessResultWrapper(data));
+        }catch (JsonProcessingException e){
+            log.error(e.getMessage(), e);
+            throw new ServiceException(CoreMsg.OTHER_EXCEPTION_TREE_SNAPSHOT);
+        }
+    }
+
+    // ======================== 内部 ========================
+
+    private List<Tree<Object>> buildTrees(String parentId, int level, int deep,
+                                          Predicate<Map<String, Object>> filter, String excludeId) {
+        // 与 hutool TreeUtil 层级裁剪一致 顶层节点为第1层
+        if(deep != UNLIMITED_DEEP && level > deep){
+            return Collections.emptyList();
+        }
+        Node[] children = getChildrenNodes(parentId);
+        List<Tree<Object>> trees = new ArrayList<>(children.length);
+        for (Node node : children) {
+            if(node.id.equals(excludeId) || (null != filter && !filter.test(node.extra))){
+                continue;
+            }
+            Tree<Object> tree = new Tree<>(config);
+            tree.setId(node.id);
+            tree.setParentId(node.parentId);
+            tree.setWeight(node.weight);
+            for (Map.Entry<String, Object> entry : node.extra.entrySet()) {
+                tree.putExtra(entry.getKey(), entry.getValue());
+            }
+
+            List<Tree<Object>> childTrees = buildTrees(node.id, level + 1, deep, filter, excludeId);
+            if(!childTrees.isEmpty()){
+                tree.setChildren(childTrees);
+            }
+
+            boolean hasChildren = hasChildren(node.id, filter);
+            tree.putExtra(TreeConstants.IS_LEAF, !hasChildren);
+            tree.putExtra(TreeConstants.HAS_CHILDREN, hasChildren);
+            trees.add(tree);
+        }
+        return trees;
+    }
+
+    private Node[] getChildrenNodes(String parentId) {
+        return childrenMap.getOrDefault(parentId, EMPTY_NODES);
+    }
+
+    private static Node[] sort(List<Node> list) {
+        // 稳定排序
+        list.sort(WEIGHT_COMPARATOR);
+        return list.toArray(EMPTY_NODES);
+    }
+
+    private static int normalizeDeep(Integer deep) {
+        if(null == deep || deep < 0 || deep > MAX_DEEP){
+            return UNLIMITED_DEEP;
+        }
+        return deep;
+    }
+
+    /**
+     * 节点
+     */
+    private static final class Node {
+
+        private final String id;
+        private final String parentId;
+        private final Integer weight;
+        /** 扩展属性 */
+        private final Map<String, Object> extra;
+
+        private Node(String id, String parentId, Integer weight, Map<String, Object> extra) {
+            this.id = id;
+            this.parentId = parentId;
+            this.weight = weight;
+            this.extra = extra;
+        }
+
+        private static Node of(Map<String, Object> row, TreeNodeConfig config, List<String> excludeFields) {
+            if(null == row){
+                return null;
+            }
+            String id = Convert.toStr(row.get(config.getIdKey()));
+            if(null == id){
+                return null;
+            }
+            Map<String, Object> extra = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : row.entrySet()) {
+                if(!excludeFields.contains(entry.getKey())){
+                    extra.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return new Node(id,
+                    Convert.toStr(row.get(config.getParentIdKey())),
+                    Convert.toInt(row.get(config.getWeightKey())),
+                    Collections.unmodifiableMap(extra));
+        }
+    }
+
+    /**
+     * 渲染参数
+     */
+    private static final class RenderKey {
+
+        private final String parentId;
+        private final String variant;
+        private final int deep;
+        /** 单层子节点 */
+        private final boolean shallow;
+
+        private RenderKey(String parentId, String variant, int deep, boolean shallow) {
+            this.parentId = parentId;
+            this.variant = variant;
+            this.deep = deep;
+            this.shallow = shallow;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RenderKey)) {
+                return false;
+            }
+            RenderKey that = (RenderKey) o;
+            return deep == that.deep && shallow == that.shallow &&
+                    Objects.equals(parentId, that.parentId) && Objects.equals(variant, that.variant);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(parentId, variant, deep, shallow);
+        }
+    }
+
+    /**
+     * 渲染结果
+     */
+    public static final class Rendered {
+
+        /** JSON 字节 */
+        private final byte[] body;
+
+        /** 强 ETag */
+        private final String etag;
+
+        private Rendered(byte[] body, String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+
+        private static Rendered of(byte[] body) {
+            return new Rendered(body, "\"" + DigestUtil.md5Hex(body) + "\"");
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils.tree;
+
+import cn.hutool.core.lang.tree.TreeNodeConfig;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 树快照 数据源
+ *
+ * 节点以 Map 形式提供，Key 与 {@link TreeNodeConfig} 中的 id、parentId、weight 对应，
+ * 其余属性作为节点扩展属性输出
+ *
+ * @author Parker
+ * @date 2021-12-21 10:05
+ */
+public interface TreeSnapshotSource {
+
+    /**
+     * 树名称 (同名数据源共用一份快照)
+     * @return String
+     */
+    String getTreeName();
+
+    /**
+     * 树节点配置
+     * @return TreeNodeConfig
+     */
+    TreeNodeConfig getTreeNodeConfig();
+
+    /**
+     * 全量加载节点
+     * @return List
+     */
+    List<Map<String, Object>> loadTreeNodes();
+
+    /**
+     * 按ID加载节点 (增量重建)
+     * @param ids ID集合
+     * @return List 已不存在的ID 不返回
+     */
+    List<Map<String, Object>> loadTreeNodes(Collection<String> ids);
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.oss.chunk;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 分片上传 任务
+ *
+ * @author Parker
+ * @date 2021-12-29 14:20
+ */
+@Data
+public class ChunkSession implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 上传编号 */
+    private String uploadId;
+
+    /** 上传人 */
+    private String ownerId;
+
+    /** 文件后缀 */
+    private String suffix;
+
+    /** 文件大小 */
+    private long size;
+
+    /** 分片大小 */
+    private long chunkSize;
+
+    /** 分片数量 */
+    private int chunkCount;
+
+    /** 创建时间 */
+    private long createTime;
+
+}
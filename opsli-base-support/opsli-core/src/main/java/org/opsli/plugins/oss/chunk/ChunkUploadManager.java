@@ -0,0 +1,564 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.oss.chunk;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.ReUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson.JSON;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.core.autoconfigure.properties.GlobalProperties;
+import org.opsli.core.utils.GlobalPropertiesUtil;
+import org.opsli.plugins.oss.OssStorageFactory;
+import org.opsli.plugins.oss.exception.StoragePluginException;
+import org.opsli.plugins.oss.msg.OssMsg;
+import org.opsli.plugins.oss.service.BaseOssStorageService;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * 分片上传 (可断点续传、可并行)
+ *
+ * 1. 初始化：声明文件大小、分片大小，获得上传编号
+ * 2. 上传分片：各分片可并行、可重复上传，边写入边校验 MD5，完整写入后 才原子改名为分片文件
+ * 3. 查询：已上传的分片 断点续传时 只需补传缺失分片
+ * 4. 完成：按顺序串联分片 流式写入当前存储服务，不在内存中拼接整个文件
+ *
+ * 分片暂存于 opsli.chunk.path 目录 (仅属主可读写)，集群部署时 同一上传编号的请求 需路由至同一节点
+ * 每个用户 进行中的任务数、声明的文件大小合计 均有上限，分片写入不会超出声明大小，占用磁盘随之受限
+ * 长时间无上传的任务 定时清理
+ *
+ * @author Parker
+ * @date 2021-12-29 14:20
+ */
+@Slf4j
+public enum ChunkUploadManager {
+
+    /** 实例 */
+    INSTANCE;
+
+    /** 默认暂存目录 */
+    private static final String DEFAULT_CHUNK_PATH = System.getProperty("user.home")
+            + File.separator + ".opsli" + File.separator + "chunk";
+    /** 目录权限 仅属主可读写 */
+    private static final Set<PosixFilePermission> DIR_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+    /** 是否支持 POSIX 权限 */
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    /** 任务信息 文件名 */
+    private static final String SESSION_FILE = "session.json";
+    /** 上传编号格式 */
+    private static final String UPLOAD_ID_REGEX = "^[0-9a-z]{32}$";
+    /** 分片文件 后缀 */
+    private static final String PART_SUFFIX = ".part";
+    /** 最小分片大小 (最后一片除外) */
+    private static final long MIN_CHUNK_SIZE = 256 * 1024L;
+    /** 最大分片大小 */
+    private static final long MAX_CHUNK_SIZE = 32 * 1024 * 1024L;
+    /** 最大分片数量 */
+    private static final int MAX_CHUNK_COUNT = 10000;
+    /** 任务过期时间 (毫秒) 最后一次上传分片后开始计算 */
+    private static final long EXPIRE_MILLIS = 24 * 60 * 60 * 1000L;
+    /** 清理间隔 (分钟) */
+    private static final long CLEAN_INTERVAL_MINUTES = 30L;
+    /** 缓冲区大小 */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** 任务锁 上传分片为读锁 (可并行)，完成、清理为写锁 */
+    private final Striped<ReadWriteLock> striped = Striped.readWriteLock(64);
+
+    /** 暂存区 首次使用时 按配置创建 */
+    private volatile Staging staging;
+
+    ChunkUploadManager(){
+        ScheduledThreadPoolExecutor cleaner = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Chunk-Upload-Cleaner-%d")
+                        .setDaemon(true).build());
+        cleaner.scheduleWithFixedDelay(this::cleanExpired,
+                CLEAN_INTERVAL_MINUTES, CLEAN_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 初始化上传任务
+     * @param ownerId 上传人
+     * @param suffix 文件后缀
+     * @param size 文件大小
+     * @param chunkSize 分片大小
+     * @return ChunkSession
+     */
+    public ChunkSession init(String ownerId, String suffix, long size, long chunkSize){
+        if(size <= 0 || chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE
+                || (chunkSize < MIN_CHUNK_SIZE && chunkSize < size)){
+            throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_ARGS);
+        }
+        long chunkCount = (size + chunkSize - 1) / chunkSize;
+        if(chunkCount > MAX_CHUNK_COUNT){
+            throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_ARGS);
+        }
+
+        ChunkSession session = new ChunkSession();
+        session.setUploadId(IdUtil.simpleUUID());
+        session.setOwnerId(ownerId);
+        session.setSuffix(suffix);
+        session.setSize(size);
+        session.setChunkSize(chunkSize);
+        session.setChunkCount((int) chunkCount);
+        session.setCreateTime(System.currentTimeMillis());
+
+        Staging current = this.getStaging();
+        // 先占用配额 再创建任务
+        current.acquire(ownerId, size);
+        File dir = this.getSessionDir(session.getUploadId());
+        try {
+            Files.createDirectory(dir.toPath());
+            Files.write(new File(dir, SESSION_FILE).toPath(), JSON.toJSONBytes(session));
+        }catch (IOException e){
+            FileUtil.del(dir);
+            current.release(ownerId, size);
+            log.error(e.getMessage(), e);
+            throw new StoragePluginException(OssMsg.EXCEPTION_UPLOAD_ERROR, e);
+        }
+        return session;
+    }
+
+    /**
+     * 上传分片 边写入边校验，写入完整后 才视为已上传
+     * @param ownerId 上传人
+     * @param uploadId 上传编号
+     * @param index 分片序号 从0开始
+     * @param checksum 分片 MD5 (可空)
+     * @param in 分片内容
+     */
+    public void uploadChunk(String ownerId, String uploadId, int index, String checksum, InputStream in){
+        Lock lock = striped.get(uploadId).readLock();
+        lock.lock();
+        try {
+            ChunkSession session = this.getSession(ownerId, uploadId);
+            if(index < 0 || index >= session.getChunkCount()){
+                throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_ARGS);
+            }
+            long expectSize = this.getChunkSize(session, index);
+
+            File dir = this.getSessionDir(uploadId);
+            File tmp = Files.createTempFile(dir.toPath(), "chunk-", ".tmp").toFile();
+            try {
+                MessageDigest md = newMd5();
+                long size = 0L;
+                try (OutputStream out = Files.newOutputStream(tmp.toPath())){
+                    byte[] buf = new byte[BUFFER_SIZE];
+                    int len;
+                    while ((len = in.read(buf)) != -1) {
+                        size += len;
+                        // 超出分片大小 立即中止
+                        if(size > expectSize){
+                            throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_SIZE);
+                        }
+                        md.update(buf, 0, len);
+                        out.write(buf, 0, len);
+                    }
+                }
+                if(size != expectSize){
+                    throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_SIZE);
+                }
+                if(StrUtil.isNotEmpty(checksum)
+                        && !checksum.equalsIgnoreCase(HexUtil.encodeHexStr(md.digest()))){
+                    throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_CHECKSUM);
+                }
+                Files.move(tmp.toPath(), this.getPartFile(dir, index).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        }catch (IOException e){
+            log.error(e.getMessage(), e);
+            throw new StoragePluginException(OssMsg.EXCEPTION_UPLOAD_ERROR, e);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获得已上传的分片序号
+     * @param ownerId 上传人
+     * @param uploadId 上传编号
+     * @return List
+     */
+    public List<Integer> getUploadedChunks(String ownerId, String uploadId){
+        ChunkSession session = this.getSession(ownerId, uploadId);
+        File dir = this.getSessionDir(uploadId);
+        List<Integer> indexList = Lists.newArrayList();
+        for (int i = 0; i < session.getChunkCount(); i++) {
+            if(this.getPartFile(dir, i).isFile()){
+                indexList.add(i);
+            }
+        }
+        return indexList;
+    }
+
+    /**
+     * 完成上传 按顺序串联分片 写入当前存储服务
+     * @param ownerId 上传人
+     * @param uploadId 上传编号
+     * @return FileAttr
+     */
+    public BaseOssStorageService.FileAttr complete(String ownerId, String uploadId){
+        Lock lock = striped.get(uploadId).writeLock();
+        lock.lock();
+        try {
+            ChunkSession session = this.getSession(ownerId, uploadId);
+            File dir = this.getSessionDir(uploadId);
+            List<Integer> uploadedList = this.getUploadedChunks(ownerId, uploadId);
+            if(uploadedList.size() != session.getChunkCount()){
+                throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_INCOMPLETE.getCode(),
+                        StrUtil.format(OssMsg.EXCEPTION_CHUNK_INCOMPLETE.getMessage(),
+                                session.getChunkCount() - uploadedList.size()));
+            }
+
+            BaseOssStorageService.FileAttr fileAttr;
+            try (InputStream in = new SequenceInputStream(new PartEnumeration(dir, session.getChunkCount()))){
+                fileAttr = OssStorageFactory.INSTANCE.getHandle().upload(in, session.getSuffix(), ownerId);
+            }catch (IOException | UncheckedIOException e){
+                log.error(e.getMessage(), e);
+                throw new StoragePluginException(OssMsg.EXCEPTION_UPLOAD_ERROR, e);
+            }
+
+            FileUtil.del(dir);
+            this.getStaging().release(ownerId, session.getSize());
+            return fileAttr;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取消上传
+     * @param ownerId 上传人
+     * @param uploadId 上传编号
+     */
+    public void abort(String ownerId, String uploadId){
+        Lock lock = striped.get(uploadId).writeLock();
+        lock.lock();
+        try {
+            ChunkSession session = this.getSession(ownerId, uploadId);
+            FileUtil.del(this.getSessionDir(uploadId));
+            this.getStaging().release(ownerId, session.getSize());
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清理过期任务 正在上传、合并中的任务 跳过
+     */
+    void cleanExpired(){
+        Staging current = this.staging;
+        if(current == null){
+            return;
+        }
+        try {
+            File[] dirs = current.getDir().listFiles(File::isDirectory);
+            if(dirs == null){
+                return;
+            }
+            long expireTime = System.currentTimeMillis() - EXPIRE_MILLIS;
+            for (File dir : dirs) {
+                // 分片写入、改名 都会更新目录修改时间
+                if(dir.lastModified() >= expireTime){
+                    continue;
+                }
+                Lock lock = striped.get(dir.getName()).writeLock();
+                if(!lock.tryLock()){
+                    continue;
+                }
+                try {
+                    ChunkSession session = readSession(new File(dir, SESSION_FILE));
+                    FileUtil.del(dir);
+                    if(session != null){
+                        current.release(session.getOwnerId(), session.getSize());
+                    }
+                    log.info("分片上传 清理过期任务：{}", dir.getName());
+                }finally {
+                    lock.unlock();
+                }
+            }
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获得任务 校验上传人
+     * @param ownerId 上传人
+     * @param uploadId 上传编号
+     * @return ChunkSession
+     */
+    private ChunkSession getSession(String ownerId, String uploadId){
+        // 上传编号 只允许字母数字 防止路径穿越
+        if(StrUtil.isEmpty(uploadId) || !ReUtil.isMatch(UPLOAD_ID_REGEX, uploadId)){
+            throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_SESSION_NULL);
+        }
+        File sessionFile = new File(this.getSessionDir(uploadId), SESSION_FILE);
+        if(!sessionFile.isFile()){
+            throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_SESSION_NULL);
+        }
+        ChunkSession session = readSession(sessionFile);
+        if(session == null || !StrUtil.equals(ownerId, session.getOwnerId())){
+            throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_SESSION_NULL);
+        }
+        return session;
+    }
+
+    /**
+     * 获得分片大小 最后一片为剩余大小
+     * @param session 任务
+     * @param index 分片序号
+     * @return long
+     */
+    private long getChunkSize(ChunkSession session, int index){
+        if(index < session.getChunkCount() - 1){
+            return session.getChunkSize();
+        }
+        return session.getSize() - session.getChunkSize() * (session.getChunkCount() - 1);
+    }
+
+    private File getSessionDir(String uploadId){
+        return new File(this.getStaging().getDir(), uploadId);
+    }
+
+    /**
+     * 获得暂存区 首次使用时 按系统配置创建
+     * @return Staging
+     */
+    private Staging getStaging(){
+        Staging current = this.staging;
+        if(current != null){
+            return current;
+        }
+        synchronized (this){
+            if(this.staging == null){
+                GlobalProperties globalProperties = GlobalPropertiesUtil.getGlobalProperties();
+                GlobalProperties.Chunk chunk = globalProperties.getChunk() != null
+                        ? globalProperties.getChunk() : new GlobalProperties.Chunk();
+                this.configure(StrUtil.isNotEmpty(chunk.getPath()) ? chunk.getPath() : DEFAULT_CHUNK_PATH,
+                        chunk.getMaxSessionsPerUser(), chunk.getMaxBytesPerUser());
+            }
+            return this.staging;
+        }
+    }
+
+    /**
+     * 配置暂存区 创建暂存目录，并按已有任务 恢复各用户的配额占用
+     * @param path 暂存目录
+     * @param maxSessionsPerUser 每个用户 进行中的任务上限
+     * @param maxBytesPerUser 每个用户 进行中的任务 文件大小合计上限
+     */
+    synchronized void configure(String path, int maxSessionsPerUser, long maxBytesPerUser){
+        Staging newStaging = new Staging(new File(path).getAbsoluteFile(), maxSessionsPerUser, maxBytesPerUser);
+        try {
+            prepareDir(newStaging.getDir().toPath());
+        }catch (IOException | UnsupportedOperationException e){
+            log.error("分片上传 暂存目录不可用：" + path, e);
+            throw new StoragePluginException(OssMsg.EXCEPTION_UPLOAD_ERROR, e);
+        }
+        File[] dirs = newStaging.getDir().listFiles(File::isDirectory);
+        if(dirs != null){
+            for (File dir : dirs) {
+                ChunkSession session = readSession(new File(dir, SESSION_FILE));
+                if(session != null){
+                    newStaging.restore(session.getOwnerId(), session.getSize());
+                }
+            }
+        }
+        this.staging = newStaging;
+    }
+
+    /**
+     * 准备暂存目录 创建时即为仅属主可读写，已存在时 校验属主并收紧权限
+     * @param dir 暂存目录
+     */
+    private static void prepareDir(Path dir) throws IOException {
+        if(!POSIX){
+            Files.createDirectories(dir);
+            return;
+        }
+        Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(DIR_PERMISSIONS));
+        UserPrincipal user = FileSystems.getDefault().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if(!user.equals(Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS))){
+            throw new IOException("暂存目录属主不是当前用户: " + dir);
+        }
+        Files.setPosixFilePermissions(dir, DIR_PERMISSIONS);
+    }
+
+    private static ChunkSession readSession(File sessionFile){
+        if(!sessionFile.isFile()){
+            return null;
+        }
+        try {
+            return JSON.parseObject(Files.readAllBytes(sessionFile.toPath()), ChunkSession.class);
+        }catch (IOException | RuntimeException e){
+            log.warn("分片上传 任务信息读取失败：{}", sessionFile.getAbsolutePath());
+            return null;
+        }
+    }
+
+    private File getPartFile(File dir, int index){
+        return new File(dir, index + PART_SUFFIX);
+    }
+
+    private static MessageDigest newMd5(){
+        try {
+            return MessageDigest.getInstance("MD5");
+        }catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 暂存区 目录与各用户配额占用
+     */
+    private static final class Staging {
+
+        private final File dir;
+        private final int maxSessionsPerUser;
+        private final long maxBytesPerUser;
+        /** 各用户 进行中的任务占用 Key: 上传人 */
+        private final Map<String, Usage> usageMap = new ConcurrentHashMap<>();
+
+        private Staging(File dir, int maxSessionsPerUser, long maxBytesPerUser) {
+            this.dir = dir;
+            this.maxSessionsPerUser = maxSessionsPerUser;
+            this.maxBytesPerUser = maxBytesPerUser;
+        }
+
+        private File getDir() {
+            return dir;
+        }
+
+        /**
+         * 占用配额 超出上限时 抛出异常
+         */
+        private void acquire(String ownerId, long size) {
+            usageMap.compute(ownerId, (key, usage) -> {
+                Usage current = usage != null ? usage : new Usage(0, 0L);
+                if(current.sessions >= maxSessionsPerUser){
+                    throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_SESSION_LIMIT);
+                }
+                if(current.bytes + size > maxBytesPerUser){
+                    throw new StoragePluginException(OssMsg.EXCEPTION_CHUNK_BYTES_LIMIT);
+                }
+                return new Usage(current.sessions + 1, current.bytes + size);
+            });
+        }
+
+        /**
+         * 恢复已有任务的占用 不校验上限
+         */
+        private void restore(String ownerId, long size) {
+            usageMap.merge(ownerId, new Usage(1, size),
+                    (a, b) -> new Usage(a.sessions + b.sessions, a.bytes + b.bytes));
+        }
+
+        /**
+         * 释放配额
+         */
+        private void release(String ownerId, long size) {
+            usageMap.computeIfPresent(ownerId, (key, usage) -> usage.sessions <= 1
+                    ? null : new Usage(usage.sessions - 1, Math.max(0L, usage.bytes - size)));
+        }
+    }
+
+    /**
+     * 配额占用
+     */
+    private static final class Usage {
+
+        /** 任务数 */
+        private final int sessions;
+        /** 文件大小合计 */
+        private final long bytes;
+
+        private Usage(int sessions, long bytes) {
+            this.sessions = sessions;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 分片 顺序读取 读到时才打开文件，同时只占用一个文件句柄
+     */
+    private static final class PartEnumeration implements Enumeration<InputStream> {
+
+        private final File dir;
+        private final int count;
+        private int index;
+
+        private PartEnumeration(File dir, int count) {
+            this.dir = dir;
+            this.count = count;
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return index < count;
+        }
+
+        @Override
+        public InputStream nextElement() {
+            if(!hasMoreElements()){
+                throw new NoSuchElementException();
+            }
+            File part = new File(dir, (index++) + PART_SUFFIX);
+            try {
+                return new BufferedInputStream(Files.newInputStream(part.toPath()), BUFFER_SIZE);
+            }catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+}
@@ -42,11 +42,8 @@ public enum LocalConfigFactory implements ConfigFactory<LocalConfigFactory.Local
      */
     @Override
     public LocalConfig getConfig() {
-        LocalConfig config = new LocalConfig();
-        // 获得缓存参数配置
-        OptionsUtil.getOptionByBean(config);
-
-        return config;
+        // 获得缓存参数配置 (只读快照)
+        return OptionsUtil.getConfig(LocalConfig.class.getName(), LocalConfig::new, config -> config);
     }
 
 
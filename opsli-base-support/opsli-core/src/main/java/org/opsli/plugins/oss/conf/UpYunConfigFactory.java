@@ -22,6 +22,7 @@ import org.opsli.common.annotation.validator.Validator;
 import org.opsli.common.annotation.validator.ValidatorLenMax;
 import org.opsli.common.enums.ValidatorType;
 import org.opsli.core.utils.OptionsUtil;
+import org.opsli.core.utils.ValidatorUtil;
 
 import java.io.Serializable;
 
@@ -36,17 +37,32 @@ public enum UpYunConfigFactory implements ConfigFactory<UpYunConfigFactory.UpYun
     /** 实例对象 */
     INSTANCE;
 
+    /** 已验证配置 Key 后缀 */
+    private static final String VERIFIED_SUFFIX = "#verified";
+
     /**
      * 获得配置信息
      * @return LocalConfig
      */
     @Override
     public UpYunConfig getConfig() {
-        UpYunConfig config = new UpYunConfig();
-        // 获得缓存参数配置
-        OptionsUtil.getOptionByBean(config);
+        // 获得缓存参数配置 (只读快照)
+        return OptionsUtil.getConfig(UpYunConfig.class.getName(), UpYunConfig::new, config -> config);
+    }
 
-        return config;
+    /**
+     * 获得已验证的配置信息
+     * 同一参数版本内只验证一次
+     *
+     * @return UpYunConfig
+     */
+    public UpYunConfig getVerifiedConfig() {
+        // 获得缓存参数配置 (只读快照)
+        return OptionsUtil.getConfig(UpYunConfig.class.getName() + VERIFIED_SUFFIX, UpYunConfig::new, config -> {
+            // 验证对象
+            ValidatorUtil.verify(config);
+            return config;
+        });
     }
 
 
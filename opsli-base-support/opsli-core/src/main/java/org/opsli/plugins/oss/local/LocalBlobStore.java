@@ -0,0 +1,645 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.oss.local;
+
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.ReUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.alibaba.fastjson.JSON;
+import com.google.common.util.concurrent.Striped;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 本地 内容寻址存储
+ *
+ * 文件按内容摘要 (SHA-256) 只存储一份，多次上传相同内容 只增加引用计数
+ * 目录结构 (root 为本地存储目录)：
+ * 1. blobs/ab/cd/{digest}.{suffix}   文件内容 不对外提供访问，只能经逻辑文件名 映射读取
+ * 2. .store/index/ab/{digest}.json   索引 大小、路径、引用计数
+ * 3. .store/names/xx/{name}          逻辑文件名 -> 摘要、上传人
+ * 4. .store/tmp/                     上传中的临时文件
+ *
+ * 秒传：只凭摘要 不能引用已存在的内容 (否则知道摘要即可取得他人文件，也可探测某内容是否存在)，
+ * 需先获取挑战 再回答 内容中随机范围的摘要 证明持有该内容；内容不存在 与回答错误 结果相同
+ *
+ * 崩溃一致性：先写文件内容 再增加引用 最后写逻辑文件名；删除时 先删逻辑文件名 再减少引用 最后删内容
+ * 所有文件 均先写临时文件再原子替换，任何时刻崩溃 引用计数只会偏多 (文件残留) 不会偏少 (误删文件)
+ *
+ * 并发：同一摘要的 索引、逻辑文件名读写 由进程内分段锁串行
+ *
+ * @author Parker
+ * @date 2021-12-28 10:12
+ */
+@Slf4j
+public final class LocalBlobStore {
+
+    /** 摘要算法 */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    /** 摘要格式 */
+    private static final String DIGEST_REGEX = "^[0-9a-f]{64}$";
+    /** 后缀格式 */
+    private static final String SUFFIX_REGEX = "^[0-9A-Za-z]{1,16}$";
+    /** 文件内容 目录 */
+    public static final String BLOB_DIR = "blobs";
+    /** 存储元数据 目录 不对外提供下载 */
+    public static final String STORE_DIR = ".store";
+    /** 索引后缀 */
+    private static final String INDEX_SUFFIX = ".json";
+    /** 临时文件后缀 */
+    private static final String TMP_SUFFIX = ".tmp";
+    /** 临时文件 过期时间 (毫秒) 超过后视为崩溃残留 */
+    private static final long TMP_EXPIRE_MILLIS = 24 * 60 * 60 * 1000L;
+    /** 缓冲区大小 */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** 挑战范围 最大长度 */
+    private static final int CHALLENGE_LENGTH = 64 * 1024;
+    /** 挑战 有效期 (毫秒) */
+    private static final long CHALLENGE_EXPIRE_MILLIS = 5 * 60 * 1000L;
+    /** 未回答的挑战 上限 */
+    private static final int MAX_CHALLENGES = 10000;
+
+    /** 存储实例 Key: 存储目录 */
+    private static final Map<String, LocalBlobStore> STORE_MAP = new ConcurrentHashMap<>();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** 分段锁 按摘要 */
+    private final Striped<Lock> striped = Striped.lock(64);
+
+    /** 未回答的挑战 Key: 挑战编号 */
+    private final Map<String, PendingChallenge> challengeMap = new ConcurrentHashMap<>();
+
+    private final File root;
+    private final File indexDir;
+    private final File nameDir;
+    private final File tmpDir;
+
+    /** 检查点 各步骤完成后回调 (测试中 用于模拟崩溃) */
+    private volatile Checkpoint checkpoint = step -> {};
+
+    /**
+     * 获得存储实例
+     * @param rootPath 存储目录
+     * @return LocalBlobStore
+     */
+    public static LocalBlobStore of(String rootPath){
+        return STORE_MAP.computeIfAbsent(new File(rootPath).getAbsolutePath(), LocalBlobStore::new);
+    }
+
+    LocalBlobStore(String rootPath){
+        this.root = new File(rootPath);
+        File storeDir = new File(root, STORE_DIR);
+        this.indexDir = new File(storeDir, "index");
+        this.nameDir = new File(storeDir, "names");
+        this.tmpDir = new File(storeDir, "tmp");
+        this.cleanTmp();
+    }
+
+    /**
+     * 存储 边写临时文件 边计算摘要，内容已存在时 丢弃临时文件 只增加引用
+     *
+     * @param in 输入流
+     * @param name 逻辑文件名
+     * @param suffix 后缀
+     * @param owner 上传人 (可空)
+     * @return BlobRef
+     */
+    public BlobRef put(InputStream in, String name, String suffix, String owner) throws IOException {
+        File tmp = this.createTmpFile();
+        try {
+            MessageDigest md = newDigest();
+            long size = 0L;
+            try (OutputStream out = Files.newOutputStream(tmp.toPath())){
+                byte[] buf = new byte[BUFFER_SIZE];
+                int len;
+                while ((len = in.read(buf)) != -1) {
+                    md.update(buf, 0, len);
+                    out.write(buf, 0, len);
+                    size += len;
+                }
+            }
+            return this.commit(HexUtil.encodeHexStr(md.digest()), size, name, suffix, owner, tmp);
+        }finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * 秒传 获取挑战
+     *
+     * 无论内容是否存在 都返回挑战，挑战范围 只由声明的大小决定，不泄露内容是否存在
+     *
+     * @param digest 摘要
+     * @param size 大小
+     * @return Challenge 参数格式错误 或未回答的挑战过多时 返回 null
+     */
+    public Challenge challenge(String digest, long size) {
+        digest = StrUtil.nullToEmpty(digest).toLowerCase();
+        if(!ReUtil.isMatch(DIGEST_REGEX, digest) || size < 0){
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        challengeMap.values().removeIf(pending -> pending.getExpireTime() < now);
+        if(challengeMap.size() >= MAX_CHALLENGES){
+            return null;
+        }
+
+        long length = Math.min(size, CHALLENGE_LENGTH);
+        long offset = Math.floorMod(RANDOM.nextLong(), size - length + 1);
+        byte[] id = new byte[16];
+        RANDOM.nextBytes(id);
+        Challenge challenge = new Challenge(HexUtil.encodeHexStr(id), offset, length);
+        challengeMap.put(challenge.getChallengeId(),
+                new PendingChallenge(digest, size, offset, length, now + CHALLENGE_EXPIRE_MILLIS));
+        return challenge;
+    }
+
+    /**
+     * 秒传 回答挑战 引用已存在的内容
+     *
+     * 回答 = hex(SHA-256(挑战编号 UTF-8 字节 + 内容[offset, offset + length)))
+     * 挑战只能回答一次
+     *
+     * @param challengeId 挑战编号
+     * @param proof 回答
+     * @param name 逻辑文件名
+     * @param suffix 后缀
+     * @param owner 上传人 (可空)
+     * @return BlobRef 挑战无效、内容不存在、回答错误时 均返回 null
+     */
+    public BlobRef putByChallenge(String challengeId, String proof, String name, String suffix,
+                                  String owner) throws IOException {
+        PendingChallenge pending = challengeId == null ? null : challengeMap.remove(challengeId);
+        if(pending == null || pending.getExpireTime() < System.currentTimeMillis()
+                || StrUtil.isEmpty(proof)){
+            return null;
+        }
+
+        Lock lock = striped.get(pending.getDigest());
+        lock.lock();
+        try {
+            BlobMeta meta = this.readMeta(pending.getDigest());
+            File blobFile = meta == null ? null : new File(root, meta.getPath());
+            if(blobFile == null || !blobFile.isFile()
+                    || meta.getSize() != pending.getSize() || blobFile.length() != pending.getSize()){
+                return null;
+            }
+            String expected = computeProof(challengeId, blobFile, pending.getOffset(), pending.getLength());
+            if(!MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                    proof.toLowerCase().getBytes(StandardCharsets.UTF_8))){
+                return null;
+            }
+            return this.commit(pending.getDigest(), pending.getSize(), name, suffix, owner, null);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放逻辑文件 引用归零时 删除文件内容
+     *
+     * 逻辑文件名 在摘要锁内 重新读取并删除，并发释放同一文件名时 只有一个成功
+     *
+     * @param name 逻辑文件名
+     * @param owner 上传人 不为空时 须与上传时一致
+     * @return boolean 是否已释放
+     */
+    public boolean release(String name, String owner) throws IOException {
+        File nameFile = this.getNameFile(name);
+        NameEntry entry = this.readName(nameFile);
+        if(entry == null){
+            return false;
+        }
+
+        Lock lock = striped.get(entry.getDigest());
+        lock.lock();
+        try {
+            NameEntry current = this.readName(nameFile);
+            if(current == null || !entry.getDigest().equals(current.getDigest())){
+                return false;
+            }
+            if(owner != null && !owner.equals(current.getOwner())){
+                return false;
+            }
+
+            // 先删逻辑文件名 崩溃时只会多计引用
+            Files.delete(nameFile.toPath());
+            this.checkpoint.reached(Checkpoint.NAME);
+
+            BlobMeta meta = this.readMeta(current.getDigest());
+            if(meta == null){
+                return true;
+            }
+            meta.setRefCount(meta.getRefCount() - 1);
+            if(meta.getRefCount() > 0){
+                this.writeMeta(meta);
+                this.checkpoint.reached(Checkpoint.INDEX);
+                return true;
+            }
+            // 先删索引 再删内容，崩溃时 残留的内容文件 在下次上传相同内容时覆盖
+            Files.deleteIfExists(this.getIndexFile(current.getDigest()).toPath());
+            this.checkpoint.reached(Checkpoint.INDEX);
+            Files.deleteIfExists(new File(root, meta.getPath()).toPath());
+            this.checkpoint.reached(Checkpoint.BLOB);
+        }finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * 获得逻辑文件 对应的内容
+     * @param name 逻辑文件名
+     * @return BlobMeta 不存在时 返回 null
+     */
+    public BlobMeta get(String name) throws IOException {
+        NameEntry entry = this.readName(this.getNameFile(name));
+        if(entry == null){
+            return null;
+        }
+        return this.readMeta(entry.getDigest());
+    }
+
+    /**
+     * 获得逻辑文件 对应的内容文件
+     * @param name 逻辑文件名
+     * @return File 不存在时 返回 null
+     */
+    public File getFile(String name) throws IOException {
+        BlobMeta meta = this.get(name);
+        if(meta == null){
+            return null;
+        }
+        File blobFile = this.getBlobFile(meta);
+        return blobFile.isFile() ? blobFile : null;
+    }
+
+    /**
+     * 获得内容文件
+     * @param meta 索引
+     * @return File
+     */
+    public File getBlobFile(BlobMeta meta){
+        return new File(root, meta.getPath());
+    }
+
+    /**
+     * 设置检查点
+     * @param checkpoint 检查点
+     */
+    void setCheckpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * 计算挑战回答
+     * @param challengeId 挑战编号
+     * @param file 文件
+     * @param offset 开始位置
+     * @param length 长度
+     * @return String
+     */
+    static String computeProof(String challengeId, File file, long offset, long length) throws IOException {
+        MessageDigest md = newDigest();
+        md.update(challengeId.getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, BUFFER_SIZE));
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0){
+                buffer.clear();
+                buffer.limit((int) Math.min(remaining, buffer.capacity()));
+                int n = channel.read(buffer, position);
+                if(n < 0){
+                    throw new IOException("文件长度变化");
+                }
+                md.update(buffer.array(), 0, n);
+                position += n;
+                remaining -= n;
+            }
+        }
+        return HexUtil.encodeHexStr(md.digest());
+    }
+
+    /**
+     * 创建临时文件 与内容文件位于同一文件系统 以便原子移动
+     * @return File
+     */
+    private File createTmpFile() throws IOException {
+        if(!tmpDir.exists() && !tmpDir.mkdirs()){
+            throw new IOException("无法创建目录: " + tmpDir.getAbsolutePath());
+        }
+        return File.createTempFile("blob-", TMP_SUFFIX, tmpDir);
+    }
+
+    /**
+     * 提交 增加引用 写入逻辑文件名
+     * @param digest 摘要
+     * @param size 大小
+     * @param name 逻辑文件名
+     * @param suffix 后缀
+     * @param owner 上传人
+     * @param tmp 临时文件 为空时为秒传
+     * @return BlobRef 秒传且内容不存在时 返回 null
+     */
+    private BlobRef commit(String digest, long size, String name, String suffix, String owner,
+                           File tmp) throws IOException {
+        File nameFile = this.getNameFile(name);
+        Lock lock = striped.get(digest);
+        lock.lock();
+        try {
+            if(nameFile.exists()){
+                throw new IOException("逻辑文件名已存在: " + name);
+            }
+
+            BlobMeta meta = this.readMeta(digest);
+            // 索引存在 且内容文件完好
+            File existedFile = meta == null ? null : new File(root, meta.getPath());
+            boolean existed = existedFile != null && existedFile.isFile()
+                    && meta.getSize() == size && existedFile.length() == size;
+            if(!existed){
+                if(tmp == null){
+                    return null;
+                }
+                // 新内容 或内容文件已损坏 以本次内容为准
+                String path = this.getBlobPath(digest, suffix);
+                File blobFile = new File(root, path);
+                mkdirs(blobFile.getParentFile());
+                Files.move(tmp.toPath(), blobFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                this.checkpoint.reached(Checkpoint.BLOB);
+                meta = new BlobMeta(digest, size, path, meta == null ? 0L : meta.getRefCount(),
+                        System.currentTimeMillis());
+            }
+            meta.setRefCount(meta.getRefCount() + 1);
+            this.writeMeta(meta);
+            this.checkpoint.reached(Checkpoint.INDEX);
+
+            this.writeAtomic(nameFile, JSON.toJSONBytes(
+                    new NameEntry(digest, owner, System.currentTimeMillis())));
+            this.checkpoint.reached(Checkpoint.NAME);
+            return new BlobRef(name, digest, meta.getSize(), meta.getPath(), existed);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    private NameEntry readName(File nameFile) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(nameFile.toPath());
+        }catch (NoSuchFileException e){
+            // 不存在 或已被并发释放
+            return null;
+        }
+        NameEntry entry = JSON.parseObject(bytes, NameEntry.class);
+        return entry == null || StrUtil.isEmpty(entry.getDigest()) ? null : entry;
+    }
+
+    private BlobMeta readMeta(String digest) throws IOException {
+        File indexFile = this.getIndexFile(digest);
+        if(!indexFile.isFile()){
+            return null;
+        }
+        return JSON.parseObject(Files.readAllBytes(indexFile.toPath()), BlobMeta.class);
+    }
+
+    private void writeMeta(BlobMeta meta) throws IOException {
+        this.writeAtomic(this.getIndexFile(meta.getDigest()), JSON.toJSONBytes(meta));
+    }
+
+    /**
+     * 先写临时文件 再原子替换
+     * @param file 文件
+     * @param bytes 内容
+     */
+    private void writeAtomic(File file, byte[] bytes) throws IOException {
+        mkdirs(file.getParentFile());
+        File tmp = this.createTmpFile();
+        try {
+            Files.write(tmp.toPath(), bytes);
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * 清理 崩溃残留的临时文件
+     */
+    private void cleanTmp() {
+        File[] files = tmpDir.listFiles((dir, fileName) -> fileName.endsWith(TMP_SUFFIX));
+        if(files == null){
+            return;
+        }
+        long expireTime = System.currentTimeMillis() - TMP_EXPIRE_MILLIS;
+        for (File file : files) {
+            if(file.lastModified() < expireTime && !file.delete()){
+                log.warn("临时文件删除失败：{}", file.getAbsolutePath());
+            }
+        }
+    }
+
+    private String getBlobPath(String digest, String suffix) {
+        String path = BLOB_DIR + "/" + digest.substring(0, 2) + "/" + digest.substring(2, 4) + "/" + digest;
+        if(StrUtil.isNotEmpty(suffix) && ReUtil.isMatch(SUFFIX_REGEX, suffix)){
+            path += "." + suffix;
+        }
+        return path;
+    }
+
+    private File getIndexFile(String digest) {
+        return new File(indexDir, digest.substring(0, 2) + File.separator + digest + INDEX_SUFFIX);
+    }
+
+    private File getNameFile(String name) {
+        // 逻辑文件名 只取文件名部分 防止路径穿越
+        String fileName = new File(StrUtil.nullToEmpty(name)).getName();
+        return new File(nameDir, SecureUtil.md5(fileName).substring(0, 2) + File.separator + fileName);
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if(!dir.exists() && !dir.mkdirs() && !dir.exists()){
+            throw new IOException("无法创建目录: " + dir.getAbsolutePath());
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // =============================
+
+    /**
+     * 检查点
+     */
+    @FunctionalInterface
+    interface Checkpoint {
+
+        /** 内容文件 已写入或已删除 */
+        String BLOB = "blob";
+        /** 索引 已写入或已删除 */
+        String INDEX = "index";
+        /** 逻辑文件名 已写入或已删除 */
+        String NAME = "name";
+
+        /**
+         * 步骤完成
+         * @param step 步骤
+         */
+        void reached(String step) throws IOException;
+
+    }
+
+    /**
+     * 内容索引
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BlobMeta {
+
+        /** 摘要 */
+        private String digest;
+
+        /** 大小 */
+        private long size;
+
+        /** 内容文件 相对路径 */
+        private String path;
+
+        /** 引用计数 */
+        private long refCount;
+
+        /** 创建时间 */
+        private long createTime;
+
+    }
+
+    /**
+     * 逻辑文件名
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class NameEntry {
+
+        /** 摘要 */
+        private String digest;
+
+        /** 上传人 */
+        private String owner;
+
+        /** 创建时间 */
+        private long createTime;
+
+    }
+
+    /**
+     * 秒传挑战
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Challenge {
+
+        /** 挑战编号 */
+        private String challengeId;
+
+        /** 开始位置 */
+        private long offset;
+
+        /** 长度 */
+        private long length;
+
+    }
+
+    /**
+     * 未回答的挑战
+     */
+    @Data
+    @AllArgsConstructor
+    private static class PendingChallenge {
+
+        /** 摘要 */
+        private String digest;
+
+        /** 声明的大小 */
+        private long size;
+
+        /** 开始位置 */
+        private long offset;
+
+        /** 长度 */
+        private long length;
+
+        /** 过期时间 */
+        private long expireTime;
+
+    }
+
+    /**
+     * 存储结果
+     */
+    @Data
+    @AllArgsConstructor
+    public static class BlobRef {
+
+        /** 逻辑文件名 */
+        private String name;
+
+        /** 摘要 */
+        private String digest;
+
+        /** 大小 */
+        private long size;
+
+        /** 内容文件 相对路径 */
+        private String path;
+
+        /** 内容是否已存在 (未写入新内容) */
+        private boolean existed;
+
+    }
+
+}
@@ -0,0 +1,414 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.oss.local;
+
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.common.utils.IPUtil;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地文件 下载
+ *
+ * 1. 条件请求：ETag、Last-Modified (If-None-Match、If-Modified-Since、If-Match、If-Unmodified-Since)
+ * 2. 范围请求：单范围、多范围 (multipart/byteranges)，If-Range 校验，重叠范围合并
+ * 3. 文件内容 由 FileChannel.transferTo 直接写出，不经过应用层缓冲区
+ * 4. 同一客户端 (调用方指定 如用户、客户端地址) 同时下载数量有上限，超出时返回 429
+ *
+ * @author Parker
+ * @date 2021-12-30 10:40
+ */
+@Slf4j
+public enum LocalFileDownloader {
+
+    /** 实例 */
+    INSTANCE;
+
+    /** 同一客户端 最大同时下载数 */
+    private static final int MAX_STREAMS_PER_CLIENT = 4;
+    /** 最大范围数 超出时忽略 Range 返回整个文件 */
+    private static final int MAX_RANGES = 16;
+    /** 范围单位 */
+    private static final String BYTES_UNIT = "bytes";
+    /** 默认内容类型 */
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    /** 换行 */
+    private static final String CRLF = "\r\n";
+    /** HEAD 请求 */
+    private static final String METHOD_HEAD = "HEAD";
+    /** 429 */
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    /** 客户端 当前下载数 */
+    private final Map<String, AtomicInteger> streamMap = new ConcurrentHashMap<>();
+
+    /**
+     * 输出文件 按客户端地址 限制同时下载数
+     * @param file 文件
+     * @param request 请求
+     * @param response 响应
+     */
+    public void serve(File file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        this.serve(file, IPUtil.getClientAddressBySingle(request), request, response);
+    }
+
+    /**
+     * 输出文件
+     * @param file 文件
+     * @param clientKey 客户端标识 同一标识 同时下载数有上限
+     * @param request 请求
+     * @param response 响应
+     */
+    public void serve(File file, String clientKey, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        if(file == null || !file.isFile()){
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long length = file.length();
+        // HTTP 日期 精确到秒
+        long lastModified = file.lastModified() / 1000 * 1000;
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader("Accept-Ranges", BYTES_UNIT);
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+
+        // 条件请求
+        if(!this.checkPreconditions(request, response, etag, lastModified)){
+            return;
+        }
+
+        String contentType = request.getServletContext().getMimeType(file.getName());
+        if(StrUtil.isEmpty(contentType)){
+            contentType = DEFAULT_CONTENT_TYPE;
+        }
+
+        // 范围请求
+        List<long[]> ranges = null;
+        String rangeHeader = request.getHeader("Range");
+        if(StrUtil.isNotEmpty(rangeHeader) && this.checkIfRange(request, etag, lastModified)){
+            ranges = parseRanges(rangeHeader, length);
+            if(ranges != null && ranges.isEmpty()){
+                response.setHeader("Content-Range", BYTES_UNIT + " */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+
+        String clientId = StrUtil.nullToEmpty(clientKey);
+        if(!this.acquire(clientId)){
+            response.setHeader("Retry-After", "1");
+            response.sendError(SC_TOO_MANY_REQUESTS);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            boolean isHead = METHOD_HEAD.equalsIgnoreCase(request.getMethod());
+            if(ranges == null){
+                response.setContentType(contentType);
+                response.setContentLengthLong(length);
+                if(!isHead){
+                    this.transfer(channel, 0, length, response.getOutputStream());
+                }
+            }else if(ranges.size() == 1){
+                long[] range = ranges.get(0);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setContentType(contentType);
+                response.setHeader("Content-Range", contentRange(range, length));
+                response.setContentLengthLong(range[1] - range[0] + 1);
+                if(!isHead){
+                    this.transfer(channel, range[0], range[1] - range[0] + 1, response.getOutputStream());
+                }
+            }else {
+                this.writeMultipart(channel, ranges, length, contentType, isHead, response);
+            }
+        }catch (IOException e){
+            // 客户端中断 (如视频拖动) 属正常情况
+            log.debug("文件下载中断：{} - {}", file.getName(), e.getMessage());
+        }finally {
+            this.release(clientId);
+        }
+    }
+
+    /**
+     * 多范围 multipart/byteranges
+     */
+    private void writeMultipart(FileChannel channel, List<long[]> ranges, long length, String contentType,
+                                boolean isHead, HttpServletResponse response) throws IOException {
+        String boundary = RandomUtil.randomString(32);
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0L;
+        for (long[] range : ranges) {
+            byte[] partHeader = (CRLF + "--" + boundary + CRLF
+                    + "Content-Type: " + contentType + CRLF
+                    + "Content-Range: " + contentRange(range, length) + CRLF + CRLF)
+                    .getBytes(StandardCharsets.ISO_8859_1);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range[1] - range[0] + 1;
+        }
+        byte[] end = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.ISO_8859_1);
+        contentLength += end.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if(isHead){
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            out.write(partHeaders.get(i));
+            this.transfer(channel, range[0], range[1] - range[0] + 1, out);
+        }
+        out.write(end);
+    }
+
+    /**
+     * 写出文件内容 由 transferTo 直接从文件通道写出
+     * @param channel 文件通道
+     * @param position 开始位置
+     * @param count 长度
+     * @param out 输出流
+     */
+    private void transfer(FileChannel channel, long position, long count, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long transferred = 0L;
+        while (transferred < count){
+            long n = channel.transferTo(position + transferred, count - transferred, target);
+            if(n <= 0){
+                // 文件在下载过程中被截断
+                throw new IOException("文件长度变化");
+            }
+            transferred += n;
+        }
+        out.flush();
+    }
+
+    /**
+     * 校验条件请求
+     * @return boolean 是否继续输出
+     */
+    private boolean checkPreconditions(HttpServletRequest request, HttpServletResponse response,
+                                       String etag, long lastModified) throws IOException {
+        String ifMatch = request.getHeader("If-Match");
+        if(ifMatch != null){
+            if(!matchEtag(ifMatch, etag, false)){
+                response.sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
+                return false;
+            }
+        }else {
+            long ifUnmodifiedSince = getDateHeader(request, "If-Unmodified-Since");
+            if(ifUnmodifiedSince != -1 && lastModified > ifUnmodifiedSince){
+                response.sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
+                return false;
+            }
+        }
+
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if(ifNoneMatch != null){
+            if(matchEtag(ifNoneMatch, etag, true)){
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return false;
+            }
+        }else {
+            long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+            if(ifModifiedSince != -1 && lastModified <= ifModifiedSince){
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 校验 If-Range 不满足时 忽略 Range 返回整个文件
+     * @return boolean 是否按范围输出
+     */
+    private boolean checkIfRange(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if(ifRange == null){
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if(ifRange.startsWith("\"") || ifRange.startsWith("W/")){
+            return ifRange.equals(etag);
+        }
+        long date = getDateHeader(request, "If-Range");
+        return date != -1 && date == lastModified;
+    }
+
+    /**
+     * 解析 Range
+     * @param header Range
+     * @param length 文件长度
+     * @return List 格式错误或范围过多时 返回 null (忽略 Range)，均无法满足时 返回空集合
+     */
+    static List<long[]> parseRanges(String header, long length) {
+        String prefix = BYTES_UNIT + "=";
+        if(!header.startsWith(prefix)){
+            return null;
+        }
+        String[] specs = header.substring(prefix.length()).split(",");
+        if(specs.length > MAX_RANGES){
+            return null;
+        }
+
+        List<long[]> ranges = new ArrayList<>(specs.length);
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int index = spec.indexOf('-');
+                if(index < 0){
+                    return null;
+                }
+                String startStr = spec.substring(0, index).trim();
+                String endStr = spec.substring(index + 1).trim();
+                long start;
+                long end;
+                if(startStr.isEmpty()){
+                    // 后 N 个字节
+                    long suffixLength = Long.parseLong(endStr);
+                    if(suffixLength < 0){
+                        return null;
+                    }
+                    if(suffixLength == 0 || length == 0){
+                        continue;
+                    }
+                    start = Math.max(0, length - suffixLength);
+                    end = length - 1;
+                }else {
+                    start = Long.parseLong(startStr);
+                    end = endStr.isEmpty() ? length - 1 : Long.parseLong(endStr);
+                    if(start < 0 || end < start){
+                        return null;
+                    }
+                    if(start >= length){
+                        continue;
+                    }
+                    end = Math.min(end, length - 1);
+                }
+                ranges.add(new long[]{start, end});
+            }
+        }catch (NumberFormatException e){
+            return null;
+        }
+
+        if(ranges.size() <= 1){
+            return ranges;
+        }
+
+        // 合并 重叠、相邻的范围
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        List<long[]> merged = new ArrayList<>(ranges.size());
+        long[] current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            if(range[0] <= current[1] + 1){
+                current[1] = Math.max(current[1], range[1]);
+            }else {
+                merged.add(current);
+                current = range;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * 匹配 ETag
+     * @param header 请求头
+     * @param etag ETag
+     * @param weak 是否弱比较
+     * @return boolean
+     */
+    private static boolean matchEtag(String header, String etag, boolean weak) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if("*".equals(tag)){
+                return true;
+            }
+            if(weak && tag.startsWith("W/")){
+                tag = tag.substring(2);
+            }
+            if(tag.equals(etag)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        }catch (IllegalArgumentException e){
+            return -1;
+        }
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return BYTES_UNIT + " " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    /**
+     * 占用下载数
+     * @param clientId 客户端
+     * @return boolean 是否未超出上限
+     */
+    private boolean acquire(String clientId) {
+        boolean[] acquired = new boolean[1];
+        streamMap.compute(clientId, (key, count) -> {
+            if(count == null){
+                count = new AtomicInteger();
+            }
+            if(count.get() < MAX_STREAMS_PER_CLIENT){
+                count.incrementAndGet();
+                acquired[0] = true;
+            }
+            return count;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * 释放下载数
+     * @param clientId 客户端
+     */
+    private void release(String clientId) {
+        streamMap.computeIfPresent(clientId,
+                (key, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+}
@@ -30,7 +30,20 @@ public enum OssMsg implements BaseMsg {
      * OSS
      */
     EXCEPTION_UPLOAD_ERROR(90500, "上传文件失败，请检查配置信息"),
-    EXCEPTION_UPLOAD_AUTH_ERROR(90501, "权限认证异常")
+    EXCEPTION_UPLOAD_AUTH_ERROR(90501, "权限认证异常"),
+    EXCEPTION_DELETE_ERROR(90502, "删除文件失败"),
+    EXCEPTION_DELETE_NULL(90503, "文件不存在或无权删除"),
+
+    /**
+     * 分片上传
+     */
+    EXCEPTION_CHUNK_ARGS(90510, "分片参数错误"),
+    EXCEPTION_CHUNK_SESSION_NULL(90511, "上传任务不存在或已过期"),
+    EXCEPTION_CHUNK_SIZE(90512, "分片大小不符"),
+    EXCEPTION_CHUNK_CHECKSUM(90513, "分片校验失败，请重新上传该分片"),
+    EXCEPTION_CHUNK_INCOMPLETE(90514, "分片不完整，缺少{}个分片"),
+    EXCEPTION_CHUNK_SESSION_LIMIT(90515, "进行中的上传任务过多，请完成或取消后再试"),
+    EXCEPTION_CHUNK_BYTES_LIMIT(90516, "进行中的上传任务 文件总大小超出上限"),
 
     ;
 
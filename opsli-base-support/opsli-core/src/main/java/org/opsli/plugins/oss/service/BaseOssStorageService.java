@@ -75,6 +75,25 @@ public abstract class BaseOssStorageService implements OssStorageService {
      * @return FileAttr
      */
     protected FileAttr getFileAttr(InputStream inputStream, String suffix){
+        return this.getFileAttr(inputStream.hashCode(), suffix);
+    }
+
+    /**
+     * 获得文件信息 (无文件内容 如秒传)
+     * @param suffix 后缀
+     * @return FileAttr
+     */
+    protected FileAttr getFileAttr(String suffix){
+        return this.getFileAttr(RandomUtil.randomInt(), suffix);
+    }
+
+    /**
+     * 获得文件信息
+     * @param fileNameHashCode 文件名 hash
+     * @param suffix 后缀
+     * @return FileAttr
+     */
+    private FileAttr getFileAttr(int fileNameHashCode, String suffix){
         FileAttr fileAttr = new FileAttr();
         fileAttr.setSuffix(suffix);
 
@@ -83,8 +102,6 @@ public abstract class BaseOssStorageService implements OssStorageService {
 
         // 当前时间戳
         long currentTimeMillis = System.currentTimeMillis();
-        // 文件名 HashCode
-        int fileNameHashCode = inputStream.hashCode();
         // 随机字符串
         String randomString = RandomUtil.randomStringUpper(5);
         // 随机数
@@ -163,6 +180,23 @@ public abstract class BaseOssStorageService implements OssStorageService {
         /** 文件存储 */
         private String fileStoragePath;
 
+        /** 内容摘要 (SHA-256) 仅内容寻址存储返回 */
+        private String digest;
+
+    }
+
+    @Data
+    public static class DigestChallenge{
+
+        /** 挑战编号 */
+        private String challengeId;
+
+        /** 开始位置 */
+        private long offset;
+
+        /** 长度 */
+        private long length;
+
     }
 
 }
@@ -56,4 +56,49 @@ public interface OssStorageService {
      */
     BaseOssStorageService.FileAttr upload(InputStream inputStream, String suffix);
 
+    /**
+     * 文件上传
+     * @param inputStream    输入流
+     * @param suffix 后缀
+     * @param owner 上传人 删除文件时校验
+     * @return 返回文件信息
+     */
+    default BaseOssStorageService.FileAttr upload(InputStream inputStream, String suffix, String owner){
+        return this.upload(inputStream, suffix);
+    }
+
+    /**
+     * 秒传 获取挑战
+     * 无论内容是否存在 都返回挑战，需回答挑战 证明持有该内容
+     * @param digest 内容摘要 (SHA-256)
+     * @param size 文件大小
+     * @return 返回挑战 不支持秒传时 返回 null
+     */
+    default BaseOssStorageService.DigestChallenge challengeDigest(String digest, long size){
+        return null;
+    }
+
+    /**
+     * 秒传 回答挑战 引用已存在的文件
+     * @param challengeId 挑战编号
+     * @param proof 回答 hex(SHA-256(挑战编号 + 内容中挑战范围的字节))
+     * @param suffix 后缀
+     * @param owner 上传人 删除文件时校验
+     * @return 返回文件信息 不支持、内容不存在或回答错误时 返回 null
+     */
+    default BaseOssStorageService.FileAttr uploadByDigest(String challengeId, String proof,
+                                                          String suffix, String owner){
+        return null;
+    }
+
+    /**
+     * 删除文件
+     * @param fileStoragePath 文件存储路径 (上传时返回)
+     * @param owner 上传人 须与上传时一致
+     * @return 是否已删除 不支持、文件不存在或上传人不一致时 返回 false
+     */
+    default boolean delete(String fileStoragePath, String owner){
+        return false;
+    }
+
 }
@@ -15,26 +15,32 @@
  */
 package org.opsli.plugins.oss.service.impl;
 
-import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.StrUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
 import org.opsli.core.autoconfigure.properties.GlobalProperties;
 import org.opsli.core.utils.GlobalPropertiesUtil;
 import org.opsli.core.utils.ValidatorUtil;
 import org.opsli.plugins.oss.enums.OssStorageType;
 import org.opsli.plugins.oss.conf.LocalConfigFactory;
+import org.opsli.plugins.oss.exception.StoragePluginException;
+import org.opsli.plugins.oss.local.LocalBlobStore;
+import org.opsli.plugins.oss.msg.OssMsg;
 import org.opsli.plugins.oss.service.BaseOssStorageService;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Date;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * 本地文件上传
  *
+ * 文件按内容摘要存储 (内容寻址)，相同内容只存储一份，见 {@link LocalBlobStore}
+ *
  * @author Parker
  * @date 2021年4月30日14:09:08
  */
@@ -63,78 +69,217 @@ public class LocalStorageServiceImpl extends BaseOssStorageService {
             return new FileAttr();
         }
 
-        // 获得系统配置信息
-        GlobalProperties globalProperties = GlobalPropertiesUtil.getGlobalProperties();
+        // 文件属性
+        FileAttr fileAttr = super.getFileAttr(file);
+        try (InputStream inputStream = Files.newInputStream(file.toPath())){
+            return this.store(inputStream, fileAttr, null);
+        }catch (IOException e){
+            log.error(e.getMessage(), e);
+            throw new StoragePluginException(OssMsg.EXCEPTION_UPLOAD_ERROR, e);
+        }
+    }
 
-        // 获得配置信息
-        LocalConfigFactory.LocalConfig config = LocalConfigFactory.INSTANCE.getConfig();
+    @Override
+    public FileAttr upload(InputStream inputStream, String suffix) {
+        return this.upload(inputStream, suffix, null);
+    }
 
-        // 验证对象
-        ValidatorUtil.verify(config);
+    @Override
+    public FileAttr upload(InputStream inputStream, String suffix, String owner) {
+        // 文件属性
+        FileAttr fileAttr = super.getFileAttr(inputStream, suffix);
+        try {
+            return this.store(inputStream, fileAttr, owner);
+        }catch (IOException e){
+            log.error(e.getMessage(), e);
+            throw new StoragePluginException(OssMsg.EXCEPTION_UPLOAD_ERROR, e);
+        }
+    }
 
-        // 当前时间戳
-        long currentTimeMillis = System.currentTimeMillis();
+    @Override
+    public DigestChallenge challengeDigest(String digest, long size) {
+        LocalBlobStore.Challenge challenge = this.getStore(this.getConfig()).challenge(digest, size);
+        if(challenge == null){
+            return null;
+        }
+        DigestChallenge digestChallenge = new DigestChallenge();
+        digestChallenge.setChallengeId(challenge.getChallengeId());
+        digestChallenge.setOffset(challenge.getOffset());
+        digestChallenge.setLength(challenge.getLength());
+        return digestChallenge;
+    }
 
-        // 当前时间
-        Date currDate = DateUtil.date(currentTimeMillis);
+    @Override
+    public FileAttr uploadByDigest(String challengeId, String proof, String suffix, String owner) {
+        // 获得配置信息
+        LocalConfigFactory.LocalConfig config = this.getConfig();
 
-        // 静态路径
-        String genPath = globalProperties != null && globalProperties.getWeb() != null &&
-                StrUtil.isNotEmpty(globalProperties.getWeb().getUploadPath())
-                ? globalProperties.getWeb().getUploadPath()
-                : FileUtil.getUserHomePath();
+        // 文件属性
+        FileAttr fileAttr = super.getFileAttr(suffix);
+        try {
+            LocalBlobStore.BlobRef blobRef = this.getStore(config).putByChallenge(
+                    challengeId, proof, fileAttr.getRandomFileNameAndSuffix(), suffix, owner);
+            // 内容不存在 或回答错误 需上传文件
+            if(blobRef == null){
+                return null;
+            }
+            return this.handleFileAttr(fileAttr, blobRef, config);
+        }catch (IOException e){
+            log.error(e.getMessage(), e);
+            throw new StoragePluginException(OssMsg.EXCEPTION_UPLOAD_ERROR, e);
+        }
+    }
 
-        // 静态路径前缀 默认为空
-        String pathPrefix = StrUtil.isNotEmpty(config.getPathPrefix())?config.getPathPrefix():"";
+    @Override
+    public boolean delete(String fileStoragePath, String owner) {
+        if(StrUtil.isEmpty(fileStoragePath) || StrUtil.isEmpty(owner)){
+            return false;
+        }
+        // 去除域名 取固定路径之后的部分
+        int index = fileStoragePath.indexOf(FIXED_PATH + FOLDER_PREFIX);
+        if(index < 0){
+            return false;
+        }
+        Path target = this.resolve(fileStoragePath.substring(index + FIXED_PATH.length()));
+        LocalBlobStore store = target == null ? null : this.getStore(target);
+        if(store == null){
+            return false;
+        }
+        try {
+            return store.release(target.getFileName().toString(), owner);
+        }catch (IOException e){
+            log.error(e.getMessage(), e);
+            throw new StoragePluginException(OssMsg.EXCEPTION_DELETE_ERROR, e);
+        }
+    }
+
+    /**
+     * 存储文件
+     * @param inputStream 输入流
+     * @param fileAttr 文件属性
+     * @param owner 上传人
+     * @return FileAttr
+     */
+    private FileAttr store(InputStream inputStream, FileAttr fileAttr, String owner) throws IOException {
+        // 获得配置信息
+        LocalConfigFactory.LocalConfig config = this.getConfig();
 
-        // 文件夹名称
-        String folderName = DateUtil.format(currDate, "yyyyMMdd");
+        LocalBlobStore.BlobRef blobRef = this.getStore(config).put(
+                inputStream, fileAttr.getRandomFileNameAndSuffix(), fileAttr.getSuffix(), owner);
+        return this.handleFileAttr(fileAttr, blobRef, config);
+    }
 
-        // 包 全名称
-        String packageName = super.handlePath(genPath, false)
-                + super.handlePath(FIXED_PATH) + super.handlePath(pathPrefix)
-                + super.handlePath(folderName);
+    /**
+     * 处理文件属性
+     * 对外地址 使用随机逻辑文件名，下载时 再映射至内容文件，地址中不出现内容摘要
+     *
+     * @param fileAttr 文件属性
+     * @param blobRef 存储结果
+     * @param config 配置
+     * @return FileAttr
+     */
+    private FileAttr handleFileAttr(FileAttr fileAttr, LocalBlobStore.BlobRef blobRef,
+                                    LocalConfigFactory.LocalConfig config){
         // 包 半名称
-        String packageNameByHalf = super.handlePath(FIXED_PATH) + super.handlePath(pathPrefix)
-                + super.handlePath(folderName);
+        String packageNameByHalf = super.handlePath(FIXED_PATH) + super.handlePath(this.getPathPrefix(config));
 
-        // 文件属性
-        FileAttr fileAttr = super.getFileAttr(file);
+        fileAttr.setSize(blobRef.getSize());
+        fileAttr.setDigest(blobRef.getDigest());
         // 设置文件路径
         fileAttr.setFileStoragePath(
-                config.getDomain() + packageNameByHalf + fileAttr.getName() + fileAttr.getSuffix());
+                config.getDomain() + packageNameByHalf + super.handlePath(blobRef.getName()));
+        return fileAttr;
+    }
 
-        // 创建文件夹
-        FileUtil.mkdir(packageName);
+    /**
+     * 获得存储
+     * @param config 配置
+     * @return LocalBlobStore
+     */
+    private LocalBlobStore getStore(LocalConfigFactory.LocalConfig config){
+        // 包 全名称
+        String packageName = this.getFixedRootPath() + super.handlePath(this.getPathPrefix(config));
+        return LocalBlobStore.of(packageName);
+    }
 
-        // 创建文件
-        File tmpFile = new File(
-                packageName + super.handlePath(fileAttr.getRandomFileNameAndSuffix()));
-        try {
-            FileUtils.copyFile(file, tmpFile);
-        }catch (IOException e){
-            log.error(e.getMessage(), e);
+    /**
+     * 获得逻辑文件 所在的存储
+     * @param target 逻辑文件路径
+     * @return LocalBlobStore 所在目录不是存储目录时 返回 null
+     */
+    private LocalBlobStore getStore(Path target){
+        Path dir = target.getParent();
+        if(dir == null || !Files.isDirectory(dir.resolve(LocalBlobStore.STORE_DIR))){
+            return null;
         }
-        FileUtil.touch(tmpFile);
-
-        return fileAttr;
+        return LocalBlobStore.of(dir.toString());
     }
 
-    @Override
-    public FileAttr upload(InputStream inputStream, String suffix) {
-        // 获得系统配置信息
-        GlobalProperties globalProperties = GlobalPropertiesUtil.getGlobalProperties();
+    /**
+     * 获得下载文件
+     * 逻辑文件名 映射至内容文件；旧版本直接存储的文件 按路径读取
+     * 内容文件目录、存储元数据目录 不对外提供下载
+     *
+     * @param path 请求路径 (固定路径之后的部分)
+     * @return File 路径非法时 返回 null
+     */
+    public File getFile(String path){
+        Path target = this.resolve(path);
+        if(target == null){
+            return null;
+        }
 
-        // 获得配置信息
-        LocalConfigFactory.LocalConfig config = LocalConfigFactory.INSTANCE.getConfig();
-        // 验证对象
-        ValidatorUtil.verify(config);
+        LocalBlobStore store = this.getStore(target);
+        if(store != null){
+            try {
+                File blobFile = store.getFile(target.getFileName().toString());
+                if(blobFile != null){
+                    return blobFile;
+                }
+            }catch (IOException e){
+                log.error(e.getMessage(), e);
+                return null;
+            }
+        }
+        return target.toFile();
+    }
+
+    /**
+     * 解析请求路径
+     * @param path 请求路径 (固定路径之后的部分)
+     * @return Path 路径越界 或位于内容文件、存储元数据目录时 返回 null
+     */
+    private Path resolve(String path){
+        if(StrUtil.isEmpty(path)){
+            return null;
+        }
 
-        // 当前时间戳
-        long currentTimeMillis = System.currentTimeMillis();
+        Path root = Paths.get(this.getFixedRootPath()).toAbsolutePath().normalize();
+        Path target;
+        try {
+            target = root.resolve(StrUtil.removePrefix(path, FOLDER_PREFIX)).normalize();
+        }catch (InvalidPathException e){
+            return null;
+        }
+        if(!target.startsWith(root) || target.equals(root)){
+            return null;
+        }
+        for (Path name : root.relativize(target)) {
+            if(LocalBlobStore.STORE_DIR.equals(name.toString())
+                    || LocalBlobStore.BLOB_DIR.equals(name.toString())){
+                return null;
+            }
+        }
+        return target;
+    }
 
-        // 当前时间
-        Date currDate = DateUtil.date(currentTimeMillis);
+    /**
+     * 获得固定路径 全名称
+     * @return String
+     */
+    private String getFixedRootPath(){
+        // 获得系统配置信息
+        GlobalProperties globalProperties = GlobalPropertiesUtil.getGlobalProperties();
 
         // 静态路径
         String genPath = globalProperties != null && globalProperties.getWeb() != null &&
@@ -142,42 +287,27 @@ public class LocalStorageServiceImpl extends BaseOssStorageService {
                 ? globalProperties.getWeb().getUploadPath()
                 : FileUtil.getUserHomePath();
 
-        // 静态路径前缀 默认为空
-        String pathPrefix = StrUtil.isNotEmpty(config.getPathPrefix())?config.getPathPrefix():"";
-
-        // 文件夹名称
-        String folderName = DateUtil.format(currDate, "yyyyMMdd");
-
-        // 包 全名称
-        String packageName = super.handlePath(genPath, false)
-                + super.handlePath(FIXED_PATH) + super.handlePath(pathPrefix)
-                + super.handlePath(folderName);
-        // 包 半名称
-        String packageNameByHalf = super.handlePath(FIXED_PATH) + super.handlePath(pathPrefix)
-                + super.handlePath(folderName);
-
-        // 文件属性
-        FileAttr fileAttr = super.getFileAttr(inputStream, suffix);
-
-        // 设置文件路径
-        fileAttr.setFileStoragePath(
-                config.getDomain() + packageNameByHalf
-                        + super.handlePath(fileAttr.getRandomFileNameAndSuffix()));
-
-        // 创建文件夹
-        FileUtil.mkdir(packageName);
+        return super.handlePath(genPath, false) + super.handlePath(FIXED_PATH);
+    }
 
-        // 创建文件
-        File tmpFile = new File(
-                packageName + super.handlePath(fileAttr.getRandomFileNameAndSuffix()));
-        try {
-            FileUtils.copyInputStreamToFile(inputStream, tmpFile);
-        }catch (IOException e){
-            log.error(e.getMessage(), e);
-        }
-        FileUtil.touch(tmpFile);
+    /**
+     * 获得配置信息
+     * @return LocalConfig
+     */
+    private LocalConfigFactory.LocalConfig getConfig(){
+        LocalConfigFactory.LocalConfig config = LocalConfigFactory.INSTANCE.getConfig();
+        // 验证对象
+        ValidatorUtil.verify(config);
+        return config;
+    }
 
-        return fileAttr;
+    /**
+     * 静态路径前缀 默认为空
+     * @param config 配置
+     * @return String
+     */
+    private String getPathPrefix(LocalConfigFactory.LocalConfig config){
+        return StrUtil.isNotEmpty(config.getPathPrefix())?config.getPathPrefix():"";
     }
 
 }
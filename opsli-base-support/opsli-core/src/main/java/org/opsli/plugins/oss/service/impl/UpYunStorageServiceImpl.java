@@ -26,7 +26,6 @@ import okhttp3.Response;
 import org.apache.commons.io.FileUtils;
 import org.opsli.core.autoconfigure.properties.GlobalProperties;
 import org.opsli.core.utils.GlobalPropertiesUtil;
-import org.opsli.core.utils.ValidatorUtil;
 import org.opsli.plugins.oss.conf.LocalConfigFactory;
 import org.opsli.plugins.oss.conf.UpYunConfigFactory;
 import org.opsli.plugins.oss.enums.OssStorageType;
@@ -68,11 +67,8 @@ public class UpYunStorageServiceImpl extends BaseOssStorageService {
             return new FileAttr();
         }
 
-        // 获得配置信息
-        UpYunConfigFactory.UpYunConfig config = UpYunConfigFactory.INSTANCE.getConfig();
-
-        // 验证对象
-        ValidatorUtil.verify(config);
+        // 获得配置信息 (已验证)
+        UpYunConfigFactory.UpYunConfig config = UpYunConfigFactory.INSTANCE.getVerifiedConfig();
 
         // 当前时间戳
         long currentTimeMillis = System.currentTimeMillis();
@@ -110,11 +106,8 @@ public class UpYunStorageServiceImpl extends BaseOssStorageService {
 
     @Override
     public FileAttr upload(InputStream inputStream, String suffix) {
-        // 获得配置信息
-        UpYunConfigFactory.UpYunConfig config = UpYunConfigFactory.INSTANCE.getConfig();
-
-        // 验证对象
-        ValidatorUtil.verify(config);
+        // 获得配置信息 (已验证)
+        UpYunConfigFactory.UpYunConfig config = UpYunConfigFactory.INSTANCE.getVerifiedConfig();
 
         // 当前时间戳
         long currentTimeMillis = System.currentTimeMillis();
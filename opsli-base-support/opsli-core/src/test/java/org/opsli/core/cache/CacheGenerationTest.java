@@ -0,0 +1,206 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.common.constants.RedisConstants;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+import org.opsli.core.cache.CacheGeneration.Scope;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 缓存世代号 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 14:20
+ */
+public class CacheGenerationTest {
+
+    /** 模拟用户数 */
+    private static final int USER_COUNT = 50000;
+
+    /** 以 Map 模拟 Redis 计数器 (与 Redis 一样 在用例之间保留) */
+    private static final Map<String, Long> COUNTERS = new ConcurrentHashMap<>();
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private ValueOperations<String, Object> valueOperations;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init(){
+        redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(anyString())).thenAnswer(
+                (invocation) -> COUNTERS.get(invocation.<String>getArgument(0)));
+        when(valueOperations.increment(anyString())).thenAnswer(
+                (invocation) -> COUNTERS.merge(invocation.<String>getArgument(0), 1L, Long::sum));
+
+        new CacheUtil().init(new CacheProperties());
+        new CacheGeneration().init(redisTemplate);
+    }
+
+    /**
+     * 递增世代号 只需一次 INCR，与用户数量无关，所有依赖该维度的用户缓存 Key 全部变化
+     */
+    @Test
+    public void invalidationIsConstantInUserCount(){
+        List<String> roleKeys = buildKeys(Scope.ROLE);
+        List<String> orgKeys = buildKeys(Scope.ORG);
+        clearInvocations(valueOperations, redisTemplate);
+
+        CacheGeneration.increment(Scope.ROLE);
+
+        // 一次 INCR、一次广播，不逐个删除用户缓存
+        verify(valueOperations, times(1)).increment(anyString());
+        verify(redisTemplate, times(1)).convertAndSend(anyString(), any());
+        verify(redisTemplate, never()).delete(any(Collection.class));
+        verify(redisTemplate, never()).delete(anyString());
+
+        // 依赖角色的 Key 全部变化
+        Set<String> oldRoleKeys = new HashSet<>(roleKeys);
+        for (String key : buildKeys(Scope.ROLE)) {
+            assertFalse(oldRoleKeys.contains(key));
+        }
+        // 不依赖角色的 Key 不受影响
+        assertEquals(orgKeys, buildKeys(Scope.ORG));
+    }
+
+    /**
+     * 多个维度 任一变化 Key 都会变化
+     */
+    @Test
+    public void tagChangesWithAnyScope(){
+        String before = CacheGeneration.tag(Scope.ROLE, Scope.MENU);
+        CacheGeneration.increment(Scope.MENU);
+        String afterMenu = CacheGeneration.tag(Scope.ROLE, Scope.MENU);
+        CacheGeneration.increment(Scope.ROLE);
+        String afterRole = CacheGeneration.tag(Scope.ROLE, Scope.MENU);
+
+        assertFalse(before.equals(afterMenu));
+        assertFalse(afterMenu.equals(afterRole));
+        // 不含 ':' 不影响 Key 命名空间
+        assertFalse(afterRole.contains(":"));
+        assertTrue(afterRole.startsWith("@"));
+    }
+
+    /**
+     * 其余节点 通过广播更新本地副本
+     */
+    @Test
+    public void updateFromOtherNode(){
+        long value = CacheGeneration.get(Scope.TENANT) + 10;
+        CacheGeneration.update(Scope.TENANT, value);
+        assertEquals(value, CacheGeneration.get(Scope.TENANT));
+    }
+
+    /**
+     * 乱序到达的世代号 (延迟广播、事务内外两次递增竞争) 不会使本地副本回退
+     */
+    @Test
+    public void outOfOrderUpdatesNeverGoBackwards(){
+        String key = CacheUtil.formatKey(RedisConstants.PREFIX_GENERATION + "menu");
+        long base = CacheGeneration.get(Scope.MENU);
+        // 其余节点 (事务内、提交后) 连续递增两次
+        COUNTERS.put(key, base + 2);
+        CacheGeneration.update(Scope.MENU, base + 2);
+        // 延迟到达的旧消息
+        CacheGeneration.update(Scope.MENU, base + 1);
+        assertEquals(base + 2, CacheGeneration.get(Scope.MENU));
+
+        // 本地副本过期后 读取到落后的值 (如 读取与递增交错)
+        when(valueOperations.get(key)).thenReturn(base + 1);
+        ReflectionTestUtils.setField(getGeneration(Scope.MENU), "loadTime", 0L);
+        assertEquals(base + 2, CacheGeneration.get(Scope.MENU));
+    }
+
+    /**
+     * 并发乱序更新 最终为最大值
+     */
+    @Test
+    public void concurrentUpdatesKeepMaximum() throws Exception {
+        long base = CacheGeneration.get(Scope.DICT);
+        int threads = 8;
+        int perThread = 2000;
+        COUNTERS.put(CacheUtil.formatKey(RedisConstants.PREFIX_GENERATION + "dict"),
+                base + (long) perThread * threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                // 各线程 以不同顺序 写入
+                for (int i = perThread; i > 0; i--) {
+                    CacheGeneration.update(Scope.DICT, base + (long) i * threads - offset);
+                    assertTrue(CacheGeneration.get(Scope.DICT) >= base + (long) i * threads - offset);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(base + (long) perThread * threads, CacheGeneration.get(Scope.DICT));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object getGeneration(Scope scope){
+        Map<Scope, Object> localMap = (Map<Scope, Object>)
+                ReflectionTestUtils.getField(CacheGeneration.class, "LOCAL_MAP");
+        return localMap.get(scope);
+    }
+
+    private static List<String> buildKeys(Scope scope){
+        List<String> keys = new ArrayList<>(USER_COUNT);
+        for (int i = 0; i < USER_COUNT; i++) {
+            keys.add(CacheUtil.formatKey("kv#{}:user_id:roles:" + i) + CacheGeneration.tag(scope));
+        }
+        return keys;
+    }
+
+}
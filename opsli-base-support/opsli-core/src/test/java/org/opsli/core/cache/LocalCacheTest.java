@@ -0,0 +1,231 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache;
+
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+import org.opsli.core.cache.receiver.LocalCacheReceiver;
+import org.opsli.plugins.redis.jsonserializer.FastJson2JsonRedisSerializer;
+import org.opsli.plugins.redis.pushsub.entity.BaseSubMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地一级缓存 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 10:12
+ */
+public class LocalCacheTest {
+
+    private CapturingRedisTemplate redisTemplate;
+
+    @BeforeEach
+    public void init(){
+        redisTemplate = new CapturingRedisTemplate();
+        redisTemplate.setValueSerializer(new FastJson2JsonRedisSerializer<>(Object.class));
+        new LocalCache().init(new CacheProperties(), redisTemplate);
+        LocalCache.clear();
+    }
+
+    /**
+     * 每次读取 返回独立副本
+     */
+    @Test
+    public void getReturnsIndependentCopy(){
+        String key = "kv#opsli:test:user:1";
+        JSONObject user = new JSONObject();
+        user.put("username", "demo");
+
+        LocalCache.put(key, user, LocalCache.version(key));
+        // 写入后 修改原对象 不影响缓存
+        user.put("username", "changed");
+
+        JSONObject first = (JSONObject) LocalCache.get(key);
+        assertNotNull(first);
+        first.put("username", "hacked");
+
+        JSONObject second = (JSONObject) LocalCache.get(key);
+        assertNotSame(first, second);
+        assertEquals("demo", second.getString("username"));
+    }
+
+    /**
+     * Hash 每次读取 返回独立副本
+     */
+    @Test
+    public void hashReturnsIndependentCopy(){
+        String key = "hash#opsli:test:dict";
+        JSONObject item = new JSONObject();
+        item.put("name", "a");
+        Map<String, Object> cacheMap = new HashMap<>();
+        cacheMap.put("1", item);
+
+        LocalCache.hPutAll(key, cacheMap, LocalCache.version(key));
+        LocalCache.hPut(key, "2", item, LocalCache.version(key));
+
+        ((JSONObject) LocalCache.hGetAll(key).get("1")).put("name", "b");
+        ((JSONObject) LocalCache.hGet(key, "2")).put("name", "b");
+
+        assertEquals("a", ((JSONObject) LocalCache.hGetAll(key).get("1")).getString("name"));
+        assertEquals("a", ((JSONObject) LocalCache.hGet(key, "2")).getString("name"));
+    }
+
+    /**
+     * 清除前开始的回源 不能在清除后写回旧数据
+     */
+    @Test
+    public void staleLoaderIsDiscardedAfterEvict(){
+        String key = "kv#opsli:test:role:1";
+        JSONObject stale = new JSONObject();
+        stale.put("v", 1);
+
+        // 回源开始
+        long version = LocalCache.version(key);
+        // 回源期间 数据被修改
+        LocalCache.evict(key);
+        // 回源结束 写回旧数据
+        LocalCache.put(key, stale, version);
+        LocalCache.hPut(key, "f", stale, version);
+        Map<String, Object> staleMap = new HashMap<>();
+        staleMap.put("f", stale);
+        LocalCache.hPutAll(key, staleMap, version);
+
+        assertNull(LocalCache.get(key));
+        assertNull(LocalCache.hGet(key, "f"));
+        assertNull(LocalCache.hGetAll(key));
+    }
+
+    /**
+     * 并发 回源与清除 最后一次清除之后 不能残留旧数据
+     */
+    @Test
+    public void concurrentLoadAndEvictNeverLeavesStaleValue() throws Exception {
+        String key = "kv#opsli:test:menu:1";
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            for (int i = 0; i < 7; i++) {
+                executor.execute(() -> {
+                    JSONObject val = new JSONObject();
+                    val.put("v", "old");
+                    while (running.get()) {
+                        long version = LocalCache.version(key);
+                        Thread.yield();
+                        LocalCache.put(key, val, version);
+                    }
+                });
+            }
+            for (int i = 0; i < 10000; i++) {
+                LocalCache.evict(key);
+            }
+            running.set(false);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+            // 所有回源都结束后 清除一次 之后不再有写入
+            LocalCache.evict(key);
+            assertNull(LocalCache.get(key));
+        }finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 多节点失效：节点A 清除并广播，消息经订阅者送达 节点B 后 清除 节点B 的一级缓存
+     * 两个节点共用一个 JVM，通过改写消息中的节点标识 模拟来自其余节点的消息
+     */
+    @Test
+    public void invalidationIsDeliveredToOtherInstances() throws Exception {
+        String key = "kv#opsli:test:user:2";
+        JSONObject user = new JSONObject();
+        user.put("username", "demo");
+        LocalCache.put(key, user, LocalCache.version(key));
+
+        // 节点A 广播
+        LocalCache.evictAndPublish(redisTemplate, key);
+        assertEquals(1, redisTemplate.messages.size());
+        assertEquals(new LocalCacheReceiver().getListenerChannel(), redisTemplate.channels.get(0));
+
+        // 节点B 清除前 已缓存
+        LocalCache.put(key, user, LocalCache.version(key));
+        assertNotNull(LocalCache.get(key));
+
+        // 自身消息 不处理
+        LocalCacheReceiver receiver = new LocalCacheReceiver();
+        receiver.receiveMessage(redisTemplate.messages.get(0));
+        assertNotNull(LocalCache.get(key));
+
+        // 其余节点消息
+        JSONObject msg = JSONObject.parseObject(redisTemplate.messages.get(0));
+        msg.put(BaseSubMessage.BASE_ID, UUID.randomUUID().toString());
+        CountDownLatch latch = new CountDownLatch(1);
+        new Thread(() -> {
+            receiver.receiveMessage(msg.toJSONString());
+            latch.countDown();
+        }).start();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNull(LocalCache.get(key));
+
+        // Hash 字段失效
+        String hashKey = "hash#opsli:test:dict";
+        LocalCache.hPut(hashKey, "1", user, LocalCache.version(hashKey));
+        LocalCache.hPut(hashKey, "2", user, LocalCache.version(hashKey));
+        redisTemplate.messages.clear();
+        LocalCache.evictFieldsAndPublish(redisTemplate, hashKey, "1");
+        LocalCache.hPut(hashKey, "1", user, LocalCache.version(hashKey));
+
+        JSONObject fieldMsg = JSONObject.parseObject(redisTemplate.messages.get(0));
+        fieldMsg.put(BaseSubMessage.BASE_ID, UUID.randomUUID().toString());
+        receiver.receiveMessage(fieldMsg.toJSONString());
+        assertNull(LocalCache.hGet(hashKey, "1"));
+        assertNotNull(LocalCache.hGet(hashKey, "2"));
+    }
+
+    /**
+     * 记录广播消息 不连接 Redis
+     */
+    private static final class CapturingRedisTemplate extends RedisTemplate<String, Object> {
+
+        private final List<String> channels = new ArrayList<>();
+        private final List<String> messages = new ArrayList<>();
+
+        @Override
+        public void convertAndSend(String channel, Object message) {
+            channels.add(channel);
+            messages.add(String.valueOf(message));
+        }
+    }
+
+}
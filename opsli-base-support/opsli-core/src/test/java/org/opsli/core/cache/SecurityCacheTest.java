@@ -0,0 +1,152 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache;
+
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+import org.opsli.core.cache.filter.NullCacheFilter;
+import org.opsli.plugins.redis.jsonserializer.FastJson2JsonRedisSerializer;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 安全缓存 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 11:05
+ */
+public class SecurityCacheTest {
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private ValueOperations<String, Object> valueOperations;
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @BeforeEach
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void init(){
+        redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        hashOperations = mock(HashOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) new FastJson2JsonRedisSerializer<>(Object.class));
+
+        new LocalCache().init(new CacheProperties(), redisTemplate);
+        LocalCache.clear();
+
+        new NullCacheFilter().init(new CacheProperties());
+    }
+
+    /**
+     * 空缓存过滤器误判 (已存在的 Key 命中过滤器) 时 仍然从 Redis 读取
+     */
+    @Test
+    public void filterHitStillReadsRedis(){
+        String key = "opsli:user_id:fp1";
+        JSONObject user = new JSONObject();
+        user.put("id", "fp1");
+        when(valueOperations.get("kv#" + key)).thenReturn(user);
+
+        // 模拟误判
+        NullCacheFilter.put(key);
+
+        AtomicInteger loads = new AtomicInteger();
+        Object cache = SecurityCache.get(redisTemplate, key, (k) -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        assertNotNull(cache);
+        assertEquals("fp1", ((JSONObject) cache).getString("id"));
+        assertEquals(0, loads.get());
+    }
+
+    /**
+     * Hash 误判时 仍然从 Redis 读取
+     */
+    @Test
+    public void filterHitStillReadsRedisHash(){
+        String key = "opsli:dict:fp";
+        when(hashOperations.get("hash#" + key, "1")).thenReturn("v1");
+
+        NullCacheFilter.put(key + "_1");
+
+        Object cache = SecurityCache.hGet(redisTemplate, key, "1", (k) -> null);
+        assertEquals("v1", cache);
+    }
+
+    /**
+     * 缓存未命中 且过滤器命中 时 不回源
+     */
+    @Test
+    public void filterHitSkipsLoaderOnMiss(){
+        String key = "opsli:user_id:absent";
+        when(valueOperations.get(anyString())).thenReturn(null);
+
+        AtomicInteger loads = new AtomicInteger();
+        // 第一次 回源 记录不存在
+        assertNull(SecurityCache.get(redisTemplate, key, (k) -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(1, loads.get());
+
+        // 第二次 不再回源
+        assertNull(SecurityCache.get(redisTemplate, key, (k) -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Hash 删除 作用于带前缀的 Redis Key 且清除一级缓存
+     */
+    @Test
+    public void hDelRemovesPrefixedField(){
+        String key = "opsli:dict:del";
+        when(hashOperations.get("hash#" + key, "1")).thenReturn("v1");
+        assertEquals("v1", SecurityCache.hGet(redisTemplate, key, "1", (k) -> null));
+
+        when(hashOperations.hasKey("hash#" + key, "1")).thenReturn(true);
+        when(hashOperations.delete("hash#" + key, "1")).thenReturn(1L);
+        assertTrue(SecurityCache.hDel(redisTemplate, key, "1"));
+        verify(hashOperations).delete("hash#" + key, "1");
+        verify(hashOperations, never()).delete(eq(key), any());
+
+        // 删除后 一级缓存不再返回旧值
+        when(hashOperations.get("hash#" + key, "1")).thenReturn("v2");
+        assertEquals("v2", SecurityCache.hGet(redisTemplate, key, "1", (k) -> null));
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache.filter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 计数布隆过滤器 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 10:40
+ */
+public class CountingBloomFilterTest {
+
+    private static final int EXPECTED = 50000;
+    private static final double FPP = 0.001D;
+
+    /**
+     * 写入的 Key 不会漏判
+     */
+    @Test
+    public void noFalseNegatives(){
+        CountingBloomFilter filter = new CountingBloomFilter(EXPECTED, FPP);
+        for (int i = 0; i < EXPECTED; i++) {
+            filter.put("opsli:user_id:" + i);
+        }
+        for (int i = 0; i < EXPECTED; i++) {
+            assertTrue(filter.mightContain("opsli:user_id:" + i));
+        }
+    }
+
+    /**
+     * 写满预期数量时 误判率 接近配置值
+     */
+    @Test
+    public void falsePositiveRateStaysNearConfigured(){
+        CountingBloomFilter filter = new CountingBloomFilter(EXPECTED, FPP);
+        for (int i = 0; i < EXPECTED; i++) {
+            filter.put("opsli:user_id:" + i);
+        }
+
+        int probes = 200000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if(filter.mightContain("opsli:user_id:x" + i)){
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue(rate < FPP * 3, "误判率过高: " + rate);
+    }
+
+    /**
+     * 删除后 不再命中，且不影响其余 Key
+     */
+    @Test
+    public void removeClearsKeyWithoutAffectingOthers(){
+        CountingBloomFilter filter = new CountingBloomFilter(EXPECTED, FPP);
+        for (int i = 0; i < 1000; i++) {
+            filter.put("opsli:role:" + i);
+        }
+        for (int i = 0; i < 500; i++) {
+            filter.remove("opsli:role:" + i);
+        }
+
+        int stillHit = 0;
+        for (int i = 0; i < 500; i++) {
+            if(filter.mightContain("opsli:role:" + i)){
+                stillHit++;
+            }
+        }
+        // 删除后 只可能因误判命中
+        assertTrue(stillHit < 5, "删除后仍命中: " + stillHit);
+        for (int i = 500; i < 1000; i++) {
+            assertTrue(filter.mightContain("opsli:role:" + i));
+        }
+    }
+
+    /**
+     * 删除不存在的 Key 不会误减其余 Key 的计数器
+     */
+    @Test
+    public void removeOfAbsentKeyIsIgnored(){
+        CountingBloomFilter filter = new CountingBloomFilter(EXPECTED, FPP);
+        filter.put("opsli:menu:1");
+        for (int i = 0; i < 10000; i++) {
+            filter.remove("opsli:menu:absent" + i);
+        }
+        assertTrue(filter.mightContain("opsli:menu:1"));
+    }
+
+    /**
+     * 内存占用 只与 预期数量 和 误判率 有关
+     */
+    @Test
+    public void memoryIsFixedByConfiguration(){
+        CountingBloomFilter filter = new CountingBloomFilter(EXPECTED, FPP);
+        long before = filter.memoryBytes();
+        for (int i = 0; i < EXPECTED * 4; i++) {
+            filter.put("opsli:org:" + i);
+        }
+        assertEquals(before, filter.memoryBytes());
+        assertTrue(filter.isFull());
+
+        // 4bit 计数器: m = -n*ln(p)/ln2^2 ≈ 14.4 * n，每个计数器 半个字节
+        long expectedBytes = (long) (-EXPECTED * Math.log(FPP) / (Math.log(2) * Math.log(2))) / 2;
+        assertTrue(Math.abs(before - expectedBytes) <= 8, "内存占用: " + before);
+        assertFalse(new CountingBloomFilter(EXPECTED, FPP).isFull());
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.cache.filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 空缓存过滤器 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 10:52
+ */
+public class NullCacheFilterTest {
+
+    private CacheProperties.NullFilter nullFilter;
+
+    @BeforeEach
+    public void init(){
+        CacheProperties cacheProperties = new CacheProperties();
+        nullFilter = cacheProperties.getNullFilter();
+        nullFilter.setExpectedInsertions(10000);
+        nullFilter.setMaxNamespaces(4);
+        new NullCacheFilter().init(cacheProperties);
+    }
+
+    @Test
+    public void putAndRemove(){
+        String key = "opsli:user_id:1";
+        assertFalse(NullCacheFilter.mightContain(key));
+        NullCacheFilter.put(key);
+        assertTrue(NullCacheFilter.mightContain(key));
+        NullCacheFilter.remove(key);
+        assertFalse(NullCacheFilter.mightContain(key));
+    }
+
+    /**
+     * 命名空间数量 与 写入数量 均不影响内存上限
+     */
+    @Test
+    public void memoryIsBoundedByNamespaces(){
+        long perFilter = new CountingBloomFilter(nullFilter.getExpectedInsertions(), nullFilter.getFpp()).memoryBytes();
+        // 命名空间上限 + 默认命名空间，每个命名空间 当前/上一代
+        long maxBytes = (nullFilter.getMaxNamespaces() + 1) * 2 * perFilter;
+
+        for (int ns = 0; ns < 100; ns++) {
+            for (int i = 0; i < 5000; i++) {
+                NullCacheFilter.put("opsli:ns" + ns + ":" + i);
+            }
+        }
+        assertTrue(NullCacheFilter.memoryBytes() <= maxBytes,
+                "内存占用: " + NullCacheFilter.memoryBytes() + " 上限: " + maxBytes);
+
+        // 写满后轮换 不会继续增长
+        for (int i = 0; i < 100000; i++) {
+            NullCacheFilter.put("opsli:ns1:more" + i);
+        }
+        assertTrue(NullCacheFilter.memoryBytes() <= maxBytes);
+    }
+
+}
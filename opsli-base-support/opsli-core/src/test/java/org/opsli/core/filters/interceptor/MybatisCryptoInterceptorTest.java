@@ -0,0 +1,164 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.filters.interceptor;
+
+import opsli.plugins.crypto.spring.annotation.CryptoMapperField;
+import opsli.plugins.crypto.spring.crypto.ICrypto;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.core.autoconfigure.properties.EncryptProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mybatis 加解密拦截器 测试
+ *
+ * @author Parker
+ * @date 2022-08-07
+ */
+public class MybatisCryptoInterceptorTest {
+
+    /** 执行解密的线程 */
+    private static final Set<String> THREADS = ConcurrentHashMap.newKeySet();
+
+    private MybatisCryptoInterceptor interceptor;
+
+    @BeforeEach
+    public void init(){
+        EncryptProperties properties = new EncryptProperties();
+        properties.setParallelThreshold(100);
+        interceptor = new MybatisCryptoInterceptor(properties);
+        THREADS.clear();
+    }
+
+    /**
+     * 结果较多时 使用专用线程池并行解密 不占用公共 ForkJoinPool
+     */
+    @Test
+    public void parallelDecryptUsesDedicatedPool() throws Throwable {
+        List<Object> rows = query(5000);
+
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals("secret-" + i, ((Row) rows.get(i)).secret);
+        }
+        assertTrue(THREADS.contains(Thread.currentThread().getName()));
+        assertTrue(THREADS.stream().anyMatch(name -> name.startsWith("Crypto-Decrypt-")));
+        assertFalse(THREADS.stream().anyMatch(name -> name.contains("ForkJoinPool")));
+    }
+
+    /**
+     * 结果较少时 当前线程解密
+     */
+    @Test
+    public void smallResultDecryptsInCaller() throws Throwable {
+        List<Object> rows = query(50);
+
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals("secret-" + i, ((Row) rows.get(i)).secret);
+        }
+        assertEquals(1, THREADS.size());
+        assertTrue(THREADS.contains(Thread.currentThread().getName()));
+    }
+
+    /**
+     * 同一对象 在结果中出现多次 只解密一次
+     */
+    @Test
+    public void sharedRowDecryptedOnce() throws Throwable {
+        Row shared = new Row(new StringBuilder("secret-shared").reverse().toString());
+        List<Object> source = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            source.add(shared);
+        }
+        execute(source);
+        assertEquals("secret-shared", shared.secret);
+    }
+
+    // ========================
+
+    private List<Object> query(int count) throws Throwable {
+        List<Object> source = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            source.add(new Row(new StringBuilder("secret-" + i).reverse().toString()));
+        }
+        return execute(source);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> execute(List<Object> source) throws Throwable {
+        Executor executor = mock(Executor.class);
+        Configuration configuration = new Configuration();
+        MappedStatement ms = new MappedStatement.Builder(configuration, "test.select",
+                new StaticSqlSource(configuration, "select 1"), SqlCommandType.SELECT).build();
+        when(executor.createCacheKey(any(), any(), any(), any())).thenReturn(new CacheKey());
+        when(executor.query(any(), any(), any(), any(), any(), any())).thenReturn(source);
+
+        Object[] args = {ms, null, RowBounds.DEFAULT, null};
+        Invocation invocation = new Invocation(executor, Executor.class.getMethod("query",
+                MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class), args);
+        return (List<Object>) interceptor.intercept(invocation);
+    }
+
+    /**
+     * 测试行
+     */
+    public static class Row {
+
+        @CryptoMapperField(iCrypto = ReverseCrypto.class)
+        private String secret;
+
+        public Row(String secret) {
+            this.secret = secret;
+        }
+    }
+
+    /**
+     * 测试加解密器 (反转字符串) 记录执行线程
+     */
+    public static class ReverseCrypto implements ICrypto {
+
+        @Override
+        public String encrypt(String value, String key) {
+            return new StringBuilder(value).reverse().toString();
+        }
+
+        @Override
+        public String decrypt(String value, String key) {
+            THREADS.add(Thread.currentThread().getName());
+            return new StringBuilder(value).reverse().toString();
+        }
+    }
+
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.log.writer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 日志批量写入器 测试
+ *
+ * @author Parker
+ * @date 2021年7月15日20:28:24
+ */
+public class BatchLogWriterTest {
+
+    private static final String NAME = "test-log";
+
+    private final List<BatchLogWriter<TestLog>> writers = new ArrayList<>();
+
+    @AfterEach
+    public void destroy(){
+        for (BatchLogWriter<TestLog> writer : writers) {
+            writer.stop();
+        }
+    }
+
+    /**
+     * 队列已满时 不阻塞 直接丢弃，已入队的日志 按顺序入库
+     */
+    @Test
+    public void overflowDropsWithoutBlocking(@TempDir Path root) throws Exception {
+        List<String> saved = new CopyOnWriteArrayList<>();
+        BatchLogWriter<TestLog> writer = create(root, 8, (list) -> list.forEach((l) -> saved.add(l.getId())));
+
+        int accepted = 0;
+        for (int i = 0; i < 20; i++) {
+            if(writer.write(new TestLog(String.valueOf(i)))){
+                accepted++;
+            }
+        }
+        assertEquals(8, accepted);
+
+        writer.start();
+        await(() -> saved.size() == 8);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(String.valueOf(i), saved.get(i));
+        }
+        // 积压消化后 可继续写入
+        assertTrue(writer.write(new TestLog("next")));
+        await(() -> saved.size() == 9);
+    }
+
+    /**
+     * 入库失败时 溢出到本地文件，目录与文件 仅属主可读写
+     */
+    @Test
+    public void spillIsOwnerOnly(@TempDir Path root) throws Exception {
+        Path spillPath = root.resolve("instance-a");
+        BatchLogWriter<TestLog> writer = create(spillPath, 64, (list) -> {
+            throw new IllegalStateException("db down");
+        });
+        writer.start();
+        for (int i = 0; i < 5; i++) {
+            writer.write(new TestLog(String.valueOf(i)));
+        }
+        Path spillFile = spillPath.resolve(NAME + ".log");
+        await(() -> lines(spillFile) == 5);
+
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(spillPath)));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(spillFile)));
+    }
+
+    /**
+     * 已存在的目录 权限过宽时 启动时收紧
+     */
+    @Test
+    public void existingDirTightened(@TempDir Path root) throws Exception {
+        Files.setPosixFilePermissions(root, PosixFilePermissions.fromString("rwxrwxrwx"));
+        BatchLogWriter<TestLog> writer = create(root, 64, (list) -> {});
+        writer.start();
+        await(() -> {
+            try {
+                return "rwx------".equals(PosixFilePermissions.toString(Files.getPosixFilePermissions(root)));
+            }catch (Exception e){
+                return false;
+            }
+        });
+    }
+
+    /**
+     * 数据库恢复 (重启) 后 回放溢出文件，每条只入库一次
+     */
+    @Test
+    public void replayAfterRecovery(@TempDir Path root) throws Exception {
+        spill(root, 25);
+
+        List<String> saved = new CopyOnWriteArrayList<>();
+        create(root, 64, (list) -> list.forEach((l) -> saved.add(l.getId()))).start();
+        await(() -> saved.size() == 25 && !Files.exists(root.resolve(NAME + ".replay")));
+
+        assertEquals(25, new HashSet<>(saved).size());
+        assertFalse(Files.exists(root.resolve(NAME + ".offset")));
+    }
+
+    /**
+     * 回放中途失败 (或进程退出) 后 从已提交位置继续，已入库的批次不再重复写入
+     */
+    @Test
+    public void replayResumesFromCommittedOffset(@TempDir Path root) throws Exception {
+        spill(root, 25);
+
+        // 第一批入库成功 第二批失败
+        List<String> saved = new CopyOnWriteArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        BatchLogWriter<TestLog> first = create(root, 64, (list) -> {
+            if(calls.incrementAndGet() > 1){
+                throw new IllegalStateException("db down");
+            }
+            list.forEach((l) -> saved.add(l.getId()));
+        });
+        first.start();
+        await(() -> calls.get() >= 2);
+        first.stop();
+        assertEquals(10, saved.size());
+
+        // 重启
+        create(root, 64, (list) -> list.forEach((l) -> saved.add(l.getId()))).start();
+        await(() -> saved.size() >= 25 && !Files.exists(root.resolve(NAME + ".replay")));
+
+        assertEquals(25, saved.size());
+        Set<String> unique = new HashSet<>(saved);
+        assertEquals(25, unique.size());
+        for (int i = 0; i < 25; i++) {
+            assertTrue(unique.contains(String.valueOf(i)));
+        }
+    }
+
+    /**
+     * 回放中途进程退出 (第二批入库时崩溃) 后 重启从已提交位置继续
+     */
+    @Test
+    public void replayResumesAfterCrash(@TempDir Path root) throws Exception {
+        spill(root, 25);
+
+        List<String> saved = new CopyOnWriteArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch crashed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BatchLogWriter<TestLog> first = create(root, 64, (list) -> {
+            if(calls.incrementAndGet() > 1){
+                crashed.countDown();
+                // 模拟进程在此处退出：不再有任何后续处理
+                awaitQuietly(release);
+                throw new ThreadDeath();
+            }
+            list.forEach((l) -> saved.add(l.getId()));
+        });
+        first.start();
+        assertTrue(crashed.await(10, TimeUnit.SECONDS));
+        assertEquals(10, saved.size());
+
+        try {
+            // 重启
+            create(root, 64, (list) -> list.forEach((l) -> saved.add(l.getId()))).start();
+            await(() -> saved.size() >= 25 && !Files.exists(root.resolve(NAME + ".replay")));
+        }finally {
+            release.countDown();
+        }
+
+        assertEquals(25, saved.size());
+        assertEquals(25, new HashSet<>(saved).size());
+    }
+
+    /**
+     * 回放期间 新的溢出写入独立文件 回放完成后继续回放
+     */
+    @Test
+    public void spillDuringReplayIsKept(@TempDir Path root) throws Exception {
+        spill(root, 10);
+
+        List<String> saved = new CopyOnWriteArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        BatchLogWriter<TestLog> writer = create(root, 64, (list) -> {
+            // 首批 (回放) 成功 随后新写入的日志入库失败
+            if(calls.incrementAndGet() == 2){
+                throw new IllegalStateException("db down");
+            }
+            list.forEach((l) -> saved.add(l.getId()));
+        });
+        writer.start();
+        await(() -> saved.size() == 10);
+        writer.write(new TestLog("late"));
+        await(() -> lines(root.resolve(NAME + ".log")) == 1);
+        writer.stop();
+
+        create(root, 64, (list) -> list.forEach((l) -> saved.add(l.getId()))).start();
+        await(() -> saved.contains("late"));
+        assertEquals(11, saved.size());
+    }
+
+    // ========================
+
+    /**
+     * 以失败的写入器 溢出指定条数
+     */
+    private void spill(Path root, int count) throws Exception {
+        BatchLogWriter<TestLog> writer = create(root, 64, (list) -> {
+            throw new IllegalStateException("db down");
+        });
+        writer.start();
+        for (int i = 0; i < count; i++) {
+            writer.write(new TestLog(String.valueOf(i)));
+        }
+        await(() -> lines(root.resolve(NAME + ".log")) == count);
+        writer.stop();
+    }
+
+    private BatchLogWriter<TestLog> create(Path root, int capacity, Consumer<List<TestLog>> handler){
+        BatchLogWriter<TestLog> writer = new BatchLogWriter<>(NAME, TestLog.class, root.toString(),
+                capacity, 10, 20L, handler);
+        writers.add(writer);
+        return writer;
+    }
+
+    private static long lines(Path file){
+        try {
+            return Files.exists(file) ? Files.readAllLines(file).size() : 0;
+        }catch (Exception e){
+            return -1;
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch){
+        try {
+            latch.await();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()){
+            assertTrue(System.currentTimeMillis() < end, "等待超时");
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    /**
+     * 测试日志
+     */
+    public static class TestLog {
+
+        private String id;
+
+        public TestLog() {
+        }
+
+        public TestLog(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+    }
+
+}
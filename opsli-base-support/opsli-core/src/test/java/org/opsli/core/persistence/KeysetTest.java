@@ -0,0 +1,238 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.persistence;
+
+import cn.hutool.core.codec.Base64;
+import org.junit.jupiter.api.Test;
+import org.opsli.common.exception.ServiceException;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 游标分页 测试
+ *
+ * 定位条件在 H2 内存数据库中执行，以 NULLS FIRST / LAST 模拟 空值最小 (MySQL) 与 空值最大 (PostgreSQL)
+ *
+ * @author Parker
+ * @date 2021-12-31 17:45
+ */
+public class KeysetTest {
+
+    private static final Pattern PARAM = Pattern.compile("\\{(\\d+)}");
+
+    /**
+     * 排序字段非空时 定位条件与原来一致
+     */
+    @Test
+    public void seekSqlWithoutNulls(){
+        List<Keyset.Order> orders = Keyset.withTieBreaker(
+                Collections.singletonList(new Keyset.Order("sortVal", "sort_val", true)));
+        assertEquals("sort_val >= {0} AND (sort_val > {0} OR (sort_val = {0} AND (id > {1})))",
+                Keyset.getSeekSql(orders, new Object[]{1, "a"}, true));
+        // 空值最小 倒序 空值在后
+        List<Keyset.Order> desc = Keyset.withTieBreaker(
+                Collections.singletonList(new Keyset.Order("sortVal", "sort_val", false)));
+        assertEquals("(sort_val <= {0} OR sort_val IS NULL) AND "
+                        + "((sort_val < {0} OR sort_val IS NULL) OR (sort_val = {0} AND (id < {1})))",
+                Keyset.getSeekSql(desc, new Object[]{1, "a"}, true));
+    }
+
+    /**
+     * 游标值为空 按 IS NULL 定位
+     */
+    @Test
+    public void seekSqlWithNull(){
+        List<Keyset.Order> orders = Keyset.withTieBreaker(
+                Collections.singletonList(new Keyset.Order("sortVal", "sort_val", true)));
+        // 空值最小 正序 空值在前
+        assertEquals("(sort_val IS NOT NULL OR (sort_val IS NULL AND (id > {1})))",
+                Keyset.getSeekSql(orders, new Object[]{null, "a"}, true));
+        // 空值最大 正序 空值在后
+        assertEquals("sort_val IS NULL AND (sort_val IS NULL AND (id > {1}))",
+                Keyset.getSeekSql(orders, new Object[]{null, "a"}, false));
+        assertEquals("(sort_val >= {0} OR sort_val IS NULL) AND "
+                        + "((sort_val > {0} OR sort_val IS NULL) OR (sort_val = {0} AND (id > {1})))",
+                Keyset.getSeekSql(orders, new Object[]{1, "a"}, false));
+    }
+
+    /**
+     * 游标 编码解码 空值保留
+     */
+    @Test
+    public void cursorKeepsNulls(){
+        List<Keyset.Order> orders = Keyset.withTieBreaker(
+                Collections.singletonList(new Keyset.Order("sortVal", "sort_val", true)));
+        String cursor = Keyset.encode(new Row("r1", null), orders);
+        assertArrayEquals(new Object[]{null, "r1"}, Keyset.decode(cursor, Row.class, orders));
+
+        cursor = Keyset.encode(new Row("r2", 3), orders);
+        assertArrayEquals(new Object[]{3, "r2"}, Keyset.decode(cursor, Row.class, orders));
+    }
+
+    /**
+     * 无效游标
+     */
+    @Test
+    public void invalidCursor(){
+        List<Keyset.Order> orders = Keyset.withTieBreaker(
+                Collections.singletonList(new Keyset.Order("sortVal", "sort_val", true)));
+        // 主键为空
+        String cursor = Keyset.encode(new Row(null, 1), orders);
+        assertThrows(ServiceException.class, () -> Keyset.decode(cursor, Row.class, orders));
+
+        // 排序方式变化
+        List<Keyset.Order> desc = Keyset.withTieBreaker(
+                Collections.singletonList(new Keyset.Order("sortVal", "sort_val", false)));
+        String ascCursor = Keyset.encode(new Row("r1", 1), orders);
+        assertThrows(ServiceException.class, () -> Keyset.decode(ascCursor, Row.class, desc));
+
+        assertThrows(ServiceException.class, () ->
+                Keyset.decode(Base64.encodeUrlSafe("not json"), Row.class, orders));
+    }
+
+    /**
+     * 可空排序字段 逐页翻完 与整体排序结果一致，不丢行 不重复
+     */
+    @Test
+    public void pagesMatchFullOrder() throws SQLException {
+        for (boolean nullsSortedLow : new boolean[]{true, false}) {
+            try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:keyset_" + nullsSortedLow)){
+                init(connection);
+                for (boolean asc : new boolean[]{true, false}) {
+                    for (int pageSize : new int[]{1, 3, 7, 100}) {
+                        assertPages(connection, asc, nullsSortedLow, pageSize);
+                    }
+                }
+            }
+        }
+    }
+
+    // ========================
+
+    private static void init(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()){
+            statement.execute("CREATE TABLE sys_row (id VARCHAR(32) PRIMARY KEY, sort_val INT)");
+        }
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO sys_row VALUES (?, ?)")){
+            for (int i = 0; i < 40; i++) {
+                ps.setString(1, String.format("r%02d", (i * 17) % 40));
+                if(i % 3 == 0){
+                    ps.setNull(2, java.sql.Types.INTEGER);
+                }else {
+                    ps.setInt(2, i % 5);
+                }
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private static void assertPages(Connection connection, boolean asc, boolean nullsSortedLow, int pageSize)
+            throws SQLException {
+        String direction = asc ? " ASC" : " DESC";
+        String nulls = asc == nullsSortedLow ? " NULLS FIRST" : " NULLS LAST";
+        String orderBy = " ORDER BY sort_val" + direction + nulls + ", id" + direction;
+        List<Keyset.Order> orders = Keyset.withTieBreaker(
+                Collections.singletonList(new Keyset.Order("sortVal", "sort_val", asc)));
+
+        List<String> expected = new ArrayList<>();
+        for (Row row : query(connection, "SELECT id, sort_val FROM sys_row" + orderBy, new Object[0])) {
+            expected.add(row.id);
+        }
+
+        List<String> actual = new ArrayList<>();
+        String cursor = null;
+        for (int n = 0; n <= expected.size(); n++) {
+            String sql = "SELECT id, sort_val FROM sys_row";
+            Object[] values = new Object[0];
+            if(null != cursor){
+                values = Keyset.decode(cursor, Row.class, orders);
+                sql += " WHERE " + Keyset.getSeekSql(orders, values, nullsSortedLow);
+            }
+            List<Row> rows = query(connection, sql + orderBy + " LIMIT " + (pageSize + 1), values);
+            cursor = null;
+            if(rows.size() > pageSize){
+                rows = rows.subList(0, pageSize);
+                cursor = Keyset.encode(rows.get(rows.size() - 1), orders);
+            }
+            for (Row row : rows) {
+                actual.add(row.id);
+            }
+            if(null == cursor){
+                break;
+            }
+        }
+
+        assertEquals(expected, actual, "asc=" + asc + ", nullsSortedLow=" + nullsSortedLow
+                + ", pageSize=" + pageSize);
+    }
+
+    private static List<Row> query(Connection connection, String sql, Object[] values) throws SQLException {
+        // {i} 占位符 转为 JDBC 参数
+        List<Object> params = new ArrayList<>();
+        Matcher matcher = PARAM.matcher(sql);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()){
+            params.add(values[Integer.parseInt(matcher.group(1))]);
+            matcher.appendReplacement(sb, "?");
+        }
+        matcher.appendTail(sb);
+
+        List<Row> rows = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(sb.toString())){
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()){
+                while (rs.next()){
+                    rows.add(new Row(rs.getString(1), (Integer) rs.getObject(2)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 测试行
+     */
+    public static class Row {
+
+        private String id;
+        private Integer sortVal;
+
+        public Row() {
+        }
+
+        public Row(String id, Integer sortVal) {
+            this.id = id;
+            this.sortVal = sortVal;
+        }
+    }
+
+}
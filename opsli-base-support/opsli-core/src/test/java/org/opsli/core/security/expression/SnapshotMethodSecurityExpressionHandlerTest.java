@@ -0,0 +1,95 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.security.expression;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.core.security.snapshot.AuthSnapshot;
+import org.opsli.core.security.snapshot.AuthSnapshotDto;
+import org.opsli.plugins.security.authentication.AfterAuthenticationToken;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 授权快照 方法鉴权表达式 测试
+ *
+ * @author Parker
+ * @date 2022-07-14 4:44 PM
+ */
+public class SnapshotMethodSecurityExpressionHandlerTest {
+
+    private final SnapshotMethodSecurityExpressionHandler handler = new SnapshotMethodSecurityExpressionHandler();
+
+    /**
+     * 携带快照时 权限判断走快照 (授权集合为空 仍可通过)
+     */
+    @Test
+    public void snapshotDecidesAuthority(){
+        AuthSnapshot snapshot = new AuthSnapshot(AuthSnapshotDto.builder()
+                .userId("1")
+                .roles(Collections.singletonList("admin"))
+                .perms(Arrays.asList("system_user_select", "system_user_update"))
+                .build());
+        AfterAuthenticationToken authentication =
+                new AfterAuthenticationToken("user", null, Collections.emptyList());
+        authentication.setDetails(snapshot);
+
+        assertTrue(evaluate(authentication, "hasAuthority('system_user_select')"));
+        assertFalse(evaluate(authentication, "hasAuthority('system_user_delete')"));
+        assertTrue(evaluate(authentication, "hasAnyAuthority('system_user_delete', 'system_user_update')"));
+        assertFalse(evaluate(authentication, "hasAnyAuthority('system_user_delete', 'system_role_delete')"));
+        assertTrue(evaluate(authentication, "hasAuthority('ROLE_admin')"));
+        assertTrue(evaluate(authentication, "isAuthenticated() and hasAuthority('system_user_update')"));
+    }
+
+    /**
+     * 未携带快照时 保持默认行为
+     */
+    @Test
+    public void withoutSnapshotFallsBackToAuthorities(){
+        Authentication authentication = new AfterAuthenticationToken("user", null,
+                Collections.singletonList(new SimpleGrantedAuthority("system_user_select")));
+
+        assertTrue(evaluate(authentication, "hasAuthority('system_user_select')"));
+        assertFalse(evaluate(authentication, "hasAuthority('system_user_update')"));
+    }
+
+    private boolean evaluate(Authentication authentication, String expressionString){
+        SimpleMethodInvocation invocation = new SimpleMethodInvocation(this, getMethod());
+        EvaluationContext ctx = handler.createEvaluationContext(authentication, invocation);
+        Expression expression = handler.getExpressionParser().parseExpression(expressionString);
+        return ExpressionUtils.evaluateAsBoolean(expression, ctx);
+    }
+
+    private Method getMethod(){
+        try {
+            return Object.class.getMethod("toString");
+        }catch (NoSuchMethodException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.api.base.result.ResultWrapper;
+import org.opsli.api.web.system.dict.DictDetailApi;
+import org.opsli.api.wrapper.system.dict.DictDetailModel;
+import org.opsli.api.wrapper.system.dict.DictWrapper;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+import org.opsli.core.cache.CacheGeneration;
+import org.opsli.core.cache.CacheUtil;
+import org.opsli.core.cache.LocalCache;
+import org.opsli.core.cache.filter.NullCacheFilter;
+import org.opsli.core.utils.dict.DictSnapshot;
+import org.opsli.plugins.redis.jsonserializer.FastJson2JsonRedisSerializer;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 字典工具类 本地快照测试
+ *
+ * @author Parker
+ * @date 2021-12-22 16:20
+ */
+public class DictUtilTest {
+
+    private static final String TYPE_SEX = "test_sex";
+    private static final String TYPE_NONE = "test_none";
+
+    /** Redis 读取次数 */
+    private final AtomicInteger redisReads = new AtomicInteger();
+    private DictDetailApi dictDetailApi;
+
+    @BeforeEach
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void init(){
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, Object> valueOperations = mock(ValueOperations.class);
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) new FastJson2JsonRedisSerializer<>(Object.class));
+        // Redis 中没有字典 每次都回源
+        when(hashOperations.entries(anyString())).thenAnswer((invocation) -> {
+            redisReads.incrementAndGet();
+            return Collections.emptyMap();
+        });
+
+        dictDetailApi = mock(DictDetailApi.class);
+        when(dictDetailApi.findListByTypeCode(eq(TYPE_SEX))).thenReturn(ResultWrapper.getSuccessResultWrapper(
+                Arrays.asList(detail("2", "女", 2), detail("0", "未知", null), detail("1", "男", 1))));
+        when(dictDetailApi.findListByTypeCode(eq(TYPE_NONE)))
+                .thenReturn(ResultWrapper.getSuccessResultWrapper(new ArrayList<>()));
+
+        new CacheUtil().init(new CacheProperties());
+        new LocalCache().init(new CacheProperties(), redisTemplate);
+        LocalCache.clear();
+        new NullCacheFilter().init(new CacheProperties());
+        new CacheGeneration().init(redisTemplate);
+        new DictUtil().init(dictDetailApi, redisTemplate);
+
+        Map<?, ?> snapshotMap = (Map<?, ?>) ReflectionTestUtils.getField(DictUtil.class, "SNAPSHOT_MAP");
+        snapshotMap.clear();
+    }
+
+    /**
+     * 首次加载 按排序号排序 (空排序号在后)，再次访问 直接使用本地快照
+     */
+    @Test
+    public void hitUsesLocalSnapshot(){
+        List<DictWrapper> dictList = DictUtil.getDictList(TYPE_SEX);
+        assertEquals(Arrays.asList("1", "2", "0"),
+                dictList.stream().map(DictWrapper::getDictValue).collect(Collectors.toList()));
+        int reads = redisReads.get();
+        assertTrue(reads > 0);
+
+        DictSnapshot snapshot = DictUtil.getSnapshot(TYPE_SEX);
+        assertEquals("男", DictUtil.getDictNameByValue(TYPE_SEX, "1", null));
+        assertEquals("2", DictUtil.getDictValueByName(TYPE_SEX, "女", null));
+        assertEquals("默认", DictUtil.getDictNameByValue(TYPE_SEX, "9", "默认"));
+
+        assertSame(snapshot, DictUtil.getSnapshot(TYPE_SEX));
+        assertEquals(reads, redisReads.get());
+    }
+
+    /**
+     * 未配置的字典类型 同样保留空快照，不再重复访问 Redis
+     */
+    @Test
+    public void emptyTypeIsCached(){
+        DictSnapshot snapshot = DictUtil.getSnapshot(TYPE_NONE);
+        assertTrue(snapshot.isEmpty());
+        int reads = redisReads.get();
+        assertTrue(reads > 0);
+
+        for (int i = 0; i < 10; i++) {
+            assertSame(snapshot, DictUtil.getSnapshot(TYPE_NONE));
+            assertEquals("默认", DictUtil.getDictNameByValue(TYPE_NONE, "1", "默认"));
+        }
+        assertEquals(reads, redisReads.get());
+    }
+
+    /**
+     * 字典世代号变更后 重新加载，之后再次命中新快照
+     */
+    @Test
+    public void generationChangeReloads(){
+        DictSnapshot before = DictUtil.getSnapshot(TYPE_SEX);
+        int reads = redisReads.get();
+
+        when(dictDetailApi.findListByTypeCode(eq(TYPE_SEX))).thenReturn(ResultWrapper.getSuccessResultWrapper(
+                Collections.singletonList(detail("1", "男性", 1))));
+        CacheGeneration.update(CacheGeneration.Scope.DICT, before.getGeneration() + 1);
+
+        DictSnapshot after = DictUtil.getSnapshot(TYPE_SEX);
+        assertNotSame(before, after);
+        assertEquals(before.getGeneration() + 1, after.getGeneration());
+        assertTrue(redisReads.get() > reads);
+        assertEquals("男性", DictUtil.getDictNameByValue(TYPE_SEX, "1", null));
+        assertEquals(1, after.getDictList().size());
+
+        reads = redisReads.get();
+        assertSame(after, DictUtil.getSnapshot(TYPE_SEX));
+        assertEquals(reads, redisReads.get());
+    }
+
+    /**
+     * 对外的字典集合处理 仍返回排序后的列表
+     */
+    @Test
+    public void handleDictListIsSorted(){
+        Map<String, Object> dictMap = new LinkedHashMap<>();
+        dictMap.put("2", detail("2", "女", 2));
+        dictMap.put("1", detail("1", "男", 1));
+        List<DictWrapper> dictList = DictUtil.handleDictList(dictMap, TYPE_SEX);
+        assertEquals(Arrays.asList("1", "2"),
+                dictList.stream().map(DictWrapper::getDictValue).collect(Collectors.toList()));
+    }
+
+    private static DictDetailModel detail(String value, String name, Integer sortNo){
+        DictDetailModel model = new DictDetailModel();
+        model.setTypeCode(TYPE_SEX);
+        model.setDictValue(value);
+        model.setDictName(name);
+        model.setSortNo(sortNo);
+        return model;
+    }
+
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils;
+
+import com.alibaba.excel.EasyExcel;
+import com.alibaba.excel.annotation.ExcelProperty;
+import com.alibaba.excel.support.ExcelTypeEnum;
+import lombok.Data;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.common.exception.ServiceException;
+import org.opsli.core.msg.CoreMsg;
+import org.opsli.core.persistence.Keyset;
+import org.opsli.plugins.excel.ExcelPlugin;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分批导出 Excel 测试
+ *
+ * 与 BaseRestController.excelExport 一样 按游标分批查询、分批写入
+ * 数据在 H2 内存数据库中，排序字段含有空值 (H2 与 MySQL 一样 空值最小)
+ *
+ * @author Parker
+ * @date 2021-12-31 18:20
+ */
+public class ExcelExportTest {
+
+    private static final int ROWS = 95;
+    private static final int CHUNK_SIZE = 10;
+
+    private Connection connection;
+
+    @BeforeEach
+    public void init() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:excel_export");
+        try (Statement statement = connection.createStatement()){
+            statement.execute("CREATE TABLE sys_row (id VARCHAR(32) PRIMARY KEY, sort_val INT)");
+        }
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO sys_row VALUES (?, ?)")){
+            for (int i = 0; i < ROWS; i++) {
+                ps.setString(1, String.format("r%03d", i));
+                if(i % 4 == 0){
+                    ps.setNull(2, Types.INTEGER);
+                }else {
+                    ps.setInt(2, i % 7);
+                }
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    @AfterEach
+    public void destroy() throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * 排序字段含有空值 倒序导出 全部数据按顺序写入
+     */
+    @Test
+    public void exportWithNullSortValues() throws SQLException {
+        List<Keyset.Order> orders = Keyset.withTieBreaker(
+                Collections.singletonList(new Keyset.Order("sortVal", "sort_val", false)));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new ExcelPlugin().writeExcel(response, "rows", "sheet", Row.class, ExcelTypeEnum.XLSX,
+                writer -> export(orders, writer));
+
+        List<Row> expected = query("SELECT id, sort_val FROM sys_row ORDER BY sort_val DESC, id DESC",
+                new Object[0]);
+        List<Row> actual = EasyExcel.read(new ByteArrayInputStream(response.getContentAsByteArray()))
+                .head(Row.class).sheet().doReadSync();
+        assertEquals(ROWS, actual.size());
+        assertEquals(expected, actual);
+        assertTrue(response.getHeader("Content-Disposition").startsWith("attachment; filename=rows-"));
+    }
+
+    /**
+     * 中途查询失败 不返回残缺的文件
+     */
+    @Test
+    public void failedExportWritesNothing() {
+        List<Keyset.Order> orders = Keyset.withTieBreaker(
+                Collections.singletonList(new Keyset.Order("sortVal", "sort_val", true)));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThrows(ServiceException.class, () ->
+                new ExcelPlugin().writeExcel(response, "rows", "sheet", Row.class, ExcelTypeEnum.XLSX,
+                        writer -> {
+                            List<Row> rows = new ArrayList<>();
+                            rows.add(new Row());
+                            writer.accept(rows);
+                            throw new ServiceException(CoreMsg.SQL_EXCEPTION_CURSOR);
+                        }));
+
+        assertFalse(response.isCommitted());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertNull(response.getHeader("Content-Disposition"));
+    }
+
+    // ========================
+
+    /**
+     * 同 BaseRestController.excelExport 的分批循环
+     */
+    private void export(List<Keyset.Order> orders, Consumer<List<Row>> writer) {
+        try {
+            String cursor = "";
+            while (cursor != null){
+                String sql = "SELECT id, sort_val FROM sys_row";
+                Object[] values = new Object[0];
+                if(!cursor.isEmpty()){
+                    values = Keyset.decode(cursor, Row.class, orders);
+                    // H2 空值最小
+                    sql += " WHERE " + Keyset.getSeekSql(orders, values, true);
+                }
+                List<Row> rows = query(sql + " ORDER BY sort_val DESC, id DESC LIMIT " + (CHUNK_SIZE + 1),
+                        values);
+                cursor = null;
+                if(rows.size() > CHUNK_SIZE){
+                    rows = rows.subList(0, CHUNK_SIZE);
+                    cursor = Keyset.encode(rows.get(rows.size() - 1), orders);
+                }
+                writer.accept(new ArrayList<>(rows));
+            }
+        }catch (SQLException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<Row> query(String sql, Object[] values) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            int end = sql.indexOf('}', i);
+            if(c == '{' && end > i){
+                params.add(values[Integer.parseInt(sql.substring(i + 1, end))]);
+                sb.append('?');
+                i = end;
+            }else {
+                sb.append(c);
+            }
+        }
+
+        List<Row> rows = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(sb.toString())){
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()){
+                while (rs.next()){
+                    Row row = new Row();
+                    row.setId(rs.getString(1));
+                    row.setSortVal((Integer) rs.getObject(2));
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 导出行
+     */
+    @Data
+    public static class Row {
+
+        @ExcelProperty("ID")
+        private String id;
+
+        @ExcelProperty("排序")
+        private Integer sortVal;
+    }
+
+}
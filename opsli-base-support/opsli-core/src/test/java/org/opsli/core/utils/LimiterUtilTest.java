@@ -0,0 +1,235 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.common.annotation.Limiter;
+import org.opsli.common.utils.IPUtil;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+import org.opsli.core.autoconfigure.properties.LimiterProperties;
+import org.opsli.core.cache.CacheUtil;
+import org.opsli.plugins.redis.lock.LuaRedisPlugin;
+import org.opsli.plugins.redis.scripts.enums.RedisScriptsEnum;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 集群限流 测试
+ *
+ * 使用 LuaJ 内存 Redis 原样执行 rate_limiter.lua 代替 Redis
+ *
+ * @author Parker
+ * @date 2021-12-31 15:40
+ */
+public class LimiterUtilTest {
+
+    private StubRedisPlugin redisPlugin;
+
+    @BeforeEach
+    public void init(){
+        new CacheUtil().init(new CacheProperties());
+        redisPlugin = new StubRedisPlugin();
+    }
+
+    /**
+     * 并发客户端 全局放行数严格等于突发容量，被拒绝的请求 立即返回需等待的毫秒数
+     */
+    @Test
+    @Limiter(qps = 0.1d, burst = 20)
+    public void concurrentClients() throws Exception {
+        initLimiter(0d);
+        Limiter limiter = getLimiter("concurrentClients");
+        MockHttpServletRequest request = newRequest("/limiter/concurrent", "10.1.0.1");
+
+        int threads = 32;
+        int perThread = 20;
+        AtomicInteger passed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < perThread; j++) {
+                        long waitMillis = LimiterUtil.tryAcquire(request, limiter);
+                        if(waitMillis == 0){
+                            passed.incrementAndGet();
+                        }else {
+                            assertTrue(waitMillis <= TimeUnit.SECONDS.toMillis(10));
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        }finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(20, passed.get());
+        assertEquals(threads * perThread - 20, rejected.get());
+    }
+
+    /**
+     * 本节点已超出限制时 本地预检直接拒绝，不再访问 Redis
+     */
+    @Test
+    @Limiter(qps = 0.1d, burst = 3)
+    public void localPreCheckSkipsRedis(){
+        initLimiter(0d);
+        Limiter limiter = getLimiter("localPreCheckSkipsRedis");
+        MockHttpServletRequest request = newRequest("/limiter/preCheck", "10.1.0.2");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, LimiterUtil.tryAcquire(request, limiter));
+        }
+        int calls = redisPlugin.calls.get();
+        assertEquals(3, calls);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(LimiterUtil.tryAcquire(request, limiter) > 0);
+        }
+        assertEquals(calls, redisPlugin.calls.get());
+    }
+
+    /**
+     * 其他节点 已用完全局配额时，本节点本地桶未满 也要拒绝
+     */
+    @Test
+    @Limiter(qps = 0.1d, burst = 5)
+    public void quotaSharedAcrossNodes(){
+        initLimiter(0d);
+        Limiter limiter = getLimiter("quotaSharedAcrossNodes");
+        MockHttpServletRequest request = newRequest("/limiter/shared", "10.1.0.3");
+
+        // 模拟其他节点 消耗全部配额
+        String key = CacheUtil.formatKey("kv#{}:limiter:") + "/limiter/shared:"
+                + IPUtil.getClientIdBySingle(request);
+        assertEquals(0L, redisPlugin.gcra(key, TimeUnit.SECONDS.toMicros(10), 5, 5));
+
+        long waitMillis = LimiterUtil.tryAcquire(request, limiter);
+        assertTrue(waitMillis > 0);
+        assertTrue(waitMillis <= TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * 批量预取令牌 本地消耗完之前 不访问 Redis
+     */
+    @Test
+    @Limiter(qps = 0.1d, burst = 10)
+    public void leaseBatchesRedisCalls(){
+        initLimiter(0.5d);
+        Limiter limiter = getLimiter("leaseBatchesRedisCalls");
+        MockHttpServletRequest request = newRequest("/limiter/lease", "10.1.0.4");
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, LimiterUtil.tryAcquire(request, limiter));
+        }
+        // 每次预取 5 个令牌
+        assertEquals(2, redisPlugin.calls.get());
+        assertTrue(LimiterUtil.tryAcquire(request, limiter) > 0);
+    }
+
+    /**
+     * Redis 异常时 退化为单机限流，仍然限制在突发容量内
+     */
+    @Test
+    @Limiter(qps = 0.1d, burst = 4)
+    public void fallbackWhenRedisFails(){
+        initLimiter(0d);
+        redisPlugin.down = true;
+        Limiter limiter = getLimiter("fallbackWhenRedisFails");
+        MockHttpServletRequest request = newRequest("/limiter/fallback", "10.1.0.5");
+
+        int passed = 0;
+        for (int i = 0; i < 20; i++) {
+            if(LimiterUtil.tryAcquire(request, limiter) == 0){
+                passed++;
+            }
+        }
+        assertEquals(4, passed);
+    }
+
+    // ========================
+
+    private void initLimiter(double leaseRatio){
+        LimiterProperties properties = new LimiterProperties();
+        properties.setLeaseRatio(leaseRatio);
+        new LimiterUtil().init(properties, redisPlugin);
+    }
+
+    private static Limiter getLimiter(String methodName){
+        try {
+            return LimiterUtilTest.class.getMethod(methodName).getAnnotation(Limiter.class);
+        }catch (NoSuchMethodException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MockHttpServletRequest newRequest(String uri, String ip){
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.addHeader("X-Forwarded-For", ip);
+        return request;
+    }
+
+    /**
+     * 内存 Redis (LuaJ 原样执行 rate_limiter.lua) 统计调用次数 并可模拟 Redis 故障
+     */
+    private static final class StubRedisPlugin extends LuaRedisPlugin {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean down;
+
+        @Override
+        public Object callScript(RedisScriptsEnum scriptsEnum, List<String> keys, Object... argv) {
+            calls.incrementAndGet();
+            if(down){
+                throw new RedisConnectionFailureException("redis down");
+            }
+            assertEquals(RedisScriptsEnum.REDIS_RATE_LIMITER, scriptsEnum);
+            return super.callScript(scriptsEnum, keys, argv);
+        }
+
+        /**
+         * 直接执行限流脚本 (模拟其他节点)
+         */
+        private long gcra(String key, long interval, long burst, long cost){
+            return (Long) super.callScript(RedisScriptsEnum.REDIS_RATE_LIMITER,
+                    Collections.singletonList(key), interval, burst, cost);
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.api.base.result.ResultWrapper;
+import org.opsli.api.web.system.options.OptionsApi;
+import org.opsli.api.wrapper.system.options.OptionsModel;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+import org.opsli.core.cache.CacheGeneration;
+import org.opsli.core.cache.CacheUtil;
+import org.opsli.core.cache.LocalCache;
+import org.opsli.core.cache.filter.NullCacheFilter;
+import org.opsli.plugins.redis.jsonserializer.FastJson2JsonRedisSerializer;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 参数工具类 刷新测试
+ *
+ * Redis Hash 使用内存实现 Key 与真实存取一致 (含 hash# 前缀)
+ *
+ * @author Parker
+ * @date 2021-12-22 16:20
+ */
+public class OptionsUtilTest {
+
+    private static final String CODE = "test_option";
+
+    /** 内存 Redis Hash Key -> (字段 -> 值) */
+    private final Map<String, Map<Object, Object>> hashStore = new ConcurrentHashMap<>();
+    /** 参数世代号 */
+    private final AtomicLong generation = new AtomicLong();
+    private OptionsApi optionsApi;
+
+    @BeforeEach
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void init(){
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, Object> valueOperations = mock(ValueOperations.class);
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) new FastJson2JsonRedisSerializer<>(Object.class));
+
+        when(hashOperations.get(anyString(), any())).thenAnswer((invocation) ->
+                hash(invocation.getArgument(0)).get(invocation.getArgument(1)));
+        when(hashOperations.hasKey(anyString(), any())).thenAnswer((invocation) ->
+                hash(invocation.getArgument(0)).containsKey(invocation.getArgument(1)));
+        when(hashOperations.delete(anyString(), any())).thenAnswer((invocation) ->
+                null == hash(invocation.getArgument(0)).remove(invocation.getArgument(1)) ? 0L : 1L);
+        doAnswer((invocation) -> {
+            hash(invocation.getArgument(0)).put(invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(hashOperations).put(anyString(), any(), any());
+
+        // 世代号 从当前本地副本开始递增 (本地副本单调递增)
+        when(valueOperations.get(anyString())).thenAnswer((invocation) -> generation.get());
+        when(valueOperations.increment(anyString())).thenAnswer((invocation) -> generation.incrementAndGet());
+
+        optionsApi = mock(OptionsApi.class);
+        when(optionsApi.getByCode(eq(CODE))).thenReturn(ResultWrapper.getSuccessResultWrapper(option("v1")));
+
+        new CacheUtil().init(new CacheProperties());
+        new LocalCache().init(new CacheProperties(), redisTemplate);
+        LocalCache.clear();
+        new NullCacheFilter().init(new CacheProperties());
+        new CacheGeneration().init(redisTemplate);
+        generation.set(CacheGeneration.get(CacheGeneration.Scope.OPTIONS));
+        new OptionsUtil().init(optionsApi, redisTemplate);
+
+        Map<?, ?> optionMap = (Map<?, ?>) ReflectionTestUtils.getField(OptionsUtil.class, "OPTION_MAP");
+        optionMap.clear();
+    }
+
+    /**
+     * 修改参数后刷新 再次获取为新值
+     */
+    @Test
+    public void refreshReturnsNewValue(){
+        assertEquals("v1", OptionsUtil.getOptionByCode(CODE).getOptionValue());
+        // 已写入 Redis
+        assertEquals(1, hashStore.values().stream().mapToInt(Map::size).sum());
+
+        // 数据库修改后 刷新参数
+        OptionsModel updated = option("v2");
+        when(optionsApi.getByCode(eq(CODE))).thenReturn(ResultWrapper.getSuccessResultWrapper(updated));
+        assertTrue(OptionsUtil.refreshOption(updated));
+
+        // Redis 中旧值已删除
+        assertEquals(0, hashStore.values().stream().mapToInt(Map::size).sum());
+        assertEquals("v2", OptionsUtil.getOptionByCode(CODE).getOptionValue());
+        assertEquals("v2", OptionsUtil.getOptionByCode(CODE).getOptionValue());
+    }
+
+    private Map<Object, Object> hash(String key){
+        return hashStore.computeIfAbsent(key, (k) -> new ConcurrentHashMap<>());
+    }
+
+    private static OptionsModel option(String value){
+        OptionsModel model = new OptionsModel();
+        model.setOptionCode(CODE);
+        model.setOptionName("测试参数");
+        model.setOptionValue(value);
+        return model;
+    }
+
+}
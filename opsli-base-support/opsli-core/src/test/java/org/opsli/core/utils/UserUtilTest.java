@@ -0,0 +1,89 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils;
+
+import cn.hutool.core.collection.ListUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.api.base.result.ResultWrapper;
+import org.opsli.api.web.system.user.UserApi;
+import org.opsli.api.web.system.user.UserOrgRefApi;
+import org.opsli.api.web.system.user.UserRoleRefApi;
+import org.opsli.api.wrapper.system.user.UserModel;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+import org.opsli.core.autoconfigure.properties.GlobalProperties;
+import org.opsli.core.cache.CacheGeneration;
+import org.opsli.core.cache.CacheUtil;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用户工具类 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 14:45
+ */
+public class UserUtilTest {
+
+    private ValueOperations<String, Object> valueOperations;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init(){
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        UserModel user = new UserModel();
+        user.setId("u1");
+        UserApi userApi = mock(UserApi.class);
+        when(userApi.getById(anyString())).thenReturn(ResultWrapper.getSuccessResultWrapper(user));
+        UserRoleRefApi userRoleRefApi = mock(UserRoleRefApi.class);
+        when(userRoleRefApi.getRolesByUserId(anyString()))
+                .thenReturn(ResultWrapper.getSuccessResultWrapper(ListUtil.toList("admin")));
+
+        new CacheUtil().init(new CacheProperties());
+        new CacheGeneration().init(redisTemplate);
+        new UserUtil().init(new GlobalProperties(), userApi, userRoleRefApi,
+                mock(UserOrgRefApi.class), redisTemplate);
+    }
+
+    /**
+     * 带世代号的用户派生缓存 必须设置存活时间，世代号变化后 旧 Key 由 Redis 淘汰
+     */
+    @Test
+    public void generationTaggedKeysAreWrittenWithTtl(){
+        assertEquals(ListUtil.toList("admin"), UserUtil.getUserRolesByUserId("u1"));
+
+        String prefix = CacheUtil.formatKey("kv#{}:user_id:roles:u1@");
+        verify(valueOperations).set(startsWith(prefix), any(), anyLong(), eq(TimeUnit.SECONDS));
+        verify(valueOperations, never()).set(startsWith(prefix), any());
+    }
+
+}
@@ -0,0 +1,344 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.core.utils.tree;
+
+import cn.hutool.core.lang.tree.Tree;
+import cn.hutool.core.lang.tree.TreeNodeConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.common.constants.TreeConstants;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 树快照 增量构建测试
+ *
+ * 模拟数据库 每次变更后 增量快照须与全量重建的快照一致
+ *
+ * @author Parker
+ * @date 2021-12-21 10:05
+ */
+class TreeSnapshotTest {
+
+    private static final String ROOT = "0";
+
+    private static final TreeNodeConfig CONFIG = TreeNodeConfig.DEFAULT_CONFIG;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /** 模拟数据库 id -> 行 */
+    private Map<String, Map<String, Object>> db;
+
+    private TreeSnapshot snapshot;
+
+    private int weightSeq;
+
+    private int idSeq;
+
+    @BeforeEach
+    void setUp() {
+        db = new LinkedHashMap<>();
+        weightSeq = 0;
+        idSeq = 0;
+        // 0
+        // ├─ a ─┬─ a1 ── a11
+        // │     └─ a2
+        // └─ b ─── b1
+        insert("a", ROOT);
+        insert("a1", "a");
+        insert("a11", "a1");
+        insert("a2", "a");
+        insert("b", ROOT);
+        insert("b1", "b");
+        snapshot = rebuild(1);
+    }
+
+    @Test
+    void moveSubtree() {
+        // a1 (连同 a11) 移动到 b 下
+        db.get("a1").put(CONFIG.getParentIdKey(), "b");
+        refresh("a1");
+
+        assertEquals(Collections.singletonList("a2"), snapshot.getChildrenIds("a"));
+        // 按排序字段 插入到 b1 之前
+        assertEquals(Arrays.asList("a1", "b1"), snapshot.getChildrenIds("b"));
+        assertEquals(Collections.singletonList("a11"), snapshot.getChildrenIds("a1"));
+        assertMatchesRebuild();
+    }
+
+    @Test
+    void deleteWithChildren() {
+        removeSubtree("a");
+
+        assertNull(snapshot.getNode("a"));
+        assertNull(snapshot.getNode("a1"));
+        assertNull(snapshot.getNode("a11"));
+        assertNull(snapshot.getNode("a2"));
+        assertTrue(snapshot.getChildrenIds("a").isEmpty());
+        assertTrue(snapshot.getChildrenIds("a1").isEmpty());
+        assertEquals(Collections.singletonList("b"), snapshot.getChildrenIds(ROOT));
+        assertEquals(2, snapshot.size());
+        assertMatchesRebuild();
+    }
+
+    @Test
+    void deleteLastChildMakesLeaf() {
+        removeSubtree("b1");
+
+        Tree<Object> b = findRoot("b");
+        assertEquals(Boolean.TRUE, b.get(TreeConstants.IS_LEAF));
+        assertEquals(Boolean.FALSE, b.get(TreeConstants.HAS_CHILDREN));
+        assertMatchesRebuild();
+    }
+
+    @Test
+    void reorderSiblings() {
+        // 交换 a1、a2 排序
+        Object w1 = db.get("a1").get(CONFIG.getWeightKey());
+        db.get("a1").put(CONFIG.getWeightKey(), db.get("a2").get(CONFIG.getWeightKey()));
+        db.get("a2").put(CONFIG.getWeightKey(), w1);
+        refresh("a1", "a2");
+
+        assertEquals(Arrays.asList("a2", "a1"), snapshot.getChildrenIds("a"));
+        assertMatchesRebuild();
+    }
+
+    @Test
+    void refreshMissingRowRemovesNode() {
+        db.remove("a2");
+        refresh("a2");
+
+        assertNull(snapshot.getNode("a2"));
+        assertEquals(Collections.singletonList("a1"), snapshot.getChildrenIds("a"));
+        assertMatchesRebuild();
+    }
+
+    @Test
+    void etagChangesOnlyForAffectedParent() {
+        TreeSnapshot.Rendered aBefore = snapshot.renderChildren("a", "all", null);
+        TreeSnapshot.Rendered a1Before = snapshot.renderChildren("a1", "all", null);
+        TreeSnapshot.Rendered bBefore = snapshot.renderChildren("b", "all", null);
+        TreeSnapshot.Rendered treeBefore = snapshot.renderTree(ROOT, null, "all", null);
+        // 同一快照 渲染结果复用
+        assertSame(aBefore, snapshot.renderChildren("a", "all", null));
+
+        db.get("a2").put(CONFIG.getNameKey(), "renamed");
+        refresh("a2");
+
+        TreeSnapshot.Rendered aAfter = snapshot.renderChildren("a", "all", null);
+        assertNotEquals(aBefore.getEtag(), aAfter.getEtag());
+        assertTrue(new String(aAfter.getBody()).contains("renamed"));
+        // 整树渲染 任意变更后失效
+        TreeSnapshot.Rendered treeAfter = snapshot.renderTree(ROOT, null, "all", null);
+        assertNotSame(treeBefore, treeAfter);
+        assertTrue(new String(treeAfter.getBody()).contains("renamed"));
+        // 与变更无关的父节点 沿用渲染结果 ETag 不变
+        assertSame(a1Before, snapshot.renderChildren("a1", "all", null));
+        assertSame(bBefore, snapshot.renderChildren("b", "all", null));
+        assertMatchesRebuild();
+    }
+
+    @Test
+    void etagChangesWhenChildBecomesLeaf() {
+        TreeSnapshot.Rendered aBefore = snapshot.renderChildren("a", "all", null);
+        TreeSnapshot.Rendered rootBefore = snapshot.renderChildren(ROOT, "all", null);
+
+        // a11 删除后 a1 变为叶子节点，a 的单层子节点渲染结果 (含 isLeaf) 须失效
+        removeSubtree("a11");
+
+        TreeSnapshot.Rendered aAfter = snapshot.renderChildren("a", "all", null);
+        assertNotEquals(aBefore.getEtag(), aAfter.getEtag());
+        assertSame(rootBefore, snapshot.renderChildren(ROOT, "all", null));
+        assertMatchesRebuild();
+    }
+
+    @Test
+    void randomMutationsMatchRebuild() {
+        Random random = new Random(20211221L);
+        for (int i = 0; i < 40; i++) {
+            insert("n" + (idSeq++), randomParent(random, null));
+        }
+        snapshot = rebuild(snapshot.getVersion() + 1);
+
+        for (int step = 0; step < 500; step++) {
+            // 渲染一次 使渲染结果参与沿用判断
+            snapshot.renderChildren(randomParent(random, null), "all", null);
+
+            int op = random.nextInt(5);
+            List<String> ids = new ArrayList<>(db.keySet());
+            if(op == 0 || ids.isEmpty()){
+                String id = "n" + (idSeq++);
+                insert(id, randomParent(random, null));
+                refresh(id);
+            }else if(op == 1){
+                String id = ids.get(random.nextInt(ids.size()));
+                db.get(id).put(CONFIG.getNameKey(), "name-" + step);
+                refresh(id);
+            }else if(op == 2){
+                String id = ids.get(random.nextInt(ids.size()));
+                db.get(id).put(CONFIG.getParentIdKey(), randomParent(random, id));
+                refresh(id);
+            }else if(op == 3){
+                String id = ids.get(random.nextInt(ids.size()));
+                db.get(id).put(CONFIG.getWeightKey(), randomWeight(random));
+                refresh(id);
+            }else if(random.nextInt(4) == 0){
+                removeSubtree(ids.get(random.nextInt(ids.size())));
+            }
+
+            assertMatchesRebuild();
+        }
+    }
+
+    // ====================================
+
+    private void insert(String id, String parentId) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put(CONFIG.getIdKey(), id);
+        row.put(CONFIG.getParentIdKey(), parentId);
+        // 排序字段唯一 同级排序结果唯一
+        row.put(CONFIG.getWeightKey(), (++weightSeq) * 2);
+        row.put(CONFIG.getNameKey(), "name-" + id);
+        db.put(id, row);
+    }
+
+    private void refresh(String... ids) {
+        List<String> idList = Arrays.asList(ids);
+        snapshot = snapshot.apply(snapshot.getVersion() + 1, load(idList), idList, null);
+    }
+
+    private void removeSubtree(String id) {
+        Deque<String> stack = new ArrayDeque<>(Collections.singletonList(id));
+        while (!stack.isEmpty()) {
+            String current = stack.pop();
+            db.remove(current);
+            for (Map<String, Object> row : db.values()) {
+                if(current.equals(row.get(CONFIG.getParentIdKey()))){
+                    stack.push((String) row.get(CONFIG.getIdKey()));
+                }
+            }
+        }
+        snapshot = snapshot.apply(snapshot.getVersion() + 1, Collections.emptyList(),
+                null, Collections.singletonList(id));
+    }
+
+    /**
+     * 按ID加载 与数据源一致 返回副本
+     */
+    private List<Map<String, Object>> load(Collection<String> ids) {
+        return ids.stream()
+                .map(db::get)
+                .filter(row -> null != row)
+                .map(row -> (Map<String, Object>) new LinkedHashMap<>(row))
+                .collect(Collectors.toList());
+    }
+
+    private TreeSnapshot rebuild(long version) {
+        return TreeSnapshot.build(version, CONFIG, load(db.keySet()), objectMapper);
+    }
+
+    /**
+     * 随机排序 (奇数 不与新增节点重复)
+     */
+    private int randomWeight(Random random) {
+        Set<Object> used = db.values().stream()
+                .map(row -> row.get(CONFIG.getWeightKey()))
+                .collect(Collectors.toSet());
+        int weight;
+        do {
+            weight = random.nextInt(weightSeq * 2 + 2) * 2 + 1;
+        } while (used.contains(weight));
+        return weight;
+    }
+
+    /**
+     * 随机父节点 不能是自身及其子孙节点
+     */
+    private String randomParent(Random random, String self) {
+        Set<String> excluded = new HashSet<>();
+        if(null != self){
+            Deque<String> stack = new ArrayDeque<>(Collections.singletonList(self));
+            while (!stack.isEmpty()) {
+                String current = stack.pop();
+                excluded.add(current);
+                for (Map<String, Object> row : db.values()) {
+                    if(current.equals(row.get(CONFIG.getParentIdKey()))){
+                        stack.push((String) row.get(CONFIG.getIdKey()));
+                    }
+                }
+            }
+        }
+        List<String> candidates = db.keySet().stream()
+                .filter(id -> !excluded.contains(id))
+                .collect(Collectors.toList());
+        candidates.add(ROOT);
+        return candidates.get(random.nextInt(candidates.size()));
+    }
+
+    private Tree<Object> findRoot(String id) {
+        return snapshot.getTrees(ROOT, null, null, null).stream()
+                .filter(tree -> id.equals(tree.getId()))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+    }
+
+    private void assertMatchesRebuild() {
+        TreeSnapshot expected = rebuild(snapshot.getVersion());
+
+        assertEquals(expected.size(), snapshot.size());
+        assertEquals(expected.getTrees(ROOT, null, null, null), snapshot.getTrees(ROOT, null, null, null));
+        for (String id : db.keySet()) {
+            assertEquals(expected.getNode(id), snapshot.getNode(id), id);
+            assertEquals(expected.getChildrenIds(id), snapshot.getChildrenIds(id), id);
+        }
+        // 沿用的单层渲染结果 内容须与新快照一致 (忽略外壳时间戳)
+        for (String parentId : parents()) {
+            assertEquals(stripTimestamp(expected.renderChildren(parentId, "all", null)),
+                    stripTimestamp(snapshot.renderChildren(parentId, "all", null)), parentId);
+        }
+    }
+
+    private Set<String> parents() {
+        Set<String> parents = new HashSet<>(db.keySet());
+        parents.add(ROOT);
+        return parents;
+    }
+
+    private String stripTimestamp(TreeSnapshot.Rendered rendered) {
+        return new String(rendered.getBody()).replaceAll("\"timestamp\":\\d+", "");
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.oss.chunk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opsli.plugins.oss.exception.StoragePluginException;
+import org.opsli.plugins.oss.msg.OssMsg;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分片上传 测试
+ *
+ * @author Parker
+ * @date 2021-12-29 16:10
+ */
+class ChunkUploadManagerTest {
+
+    private static final long MB = 1024 * 1024L;
+
+    private final ChunkUploadManager manager = ChunkUploadManager.INSTANCE;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void stagingDirIsOwnerOnly() throws IOException {
+        Path dir = root.resolve("chunk");
+        manager.configure(dir.toString(), 8, 100 * MB);
+
+        ChunkSession session = manager.init("u1", "bin", 300 * 1024L, 256 * 1024L);
+        manager.uploadChunk("u1", session.getUploadId(), 1, null, in(300 * 1024 - 256 * 1024));
+
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+        assertEquals(1, manager.getUploadedChunks("u1", session.getUploadId()).size());
+        manager.abort("u1", session.getUploadId());
+    }
+
+    @Test
+    void existingDirTightened() throws IOException {
+        Path dir = Files.createDirectories(root.resolve("open"));
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxrwxrwx"));
+
+        manager.configure(dir.toString(), 8, 100 * MB);
+
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+    }
+
+    @Test
+    void sessionQuotaPerUser() {
+        manager.configure(root.resolve("sessions").toString(), 2, 100 * MB);
+
+        ChunkSession first = manager.init("u1", "bin", MB, MB);
+        manager.init("u1", "bin", MB, MB);
+        assertQuota(OssMsg.EXCEPTION_CHUNK_SESSION_LIMIT, () -> manager.init("u1", "bin", MB, MB));
+
+        // 其他用户 不受影响
+        manager.init("u2", "bin", MB, MB);
+
+        // 取消后 释放配额
+        manager.abort("u1", first.getUploadId());
+        manager.init("u1", "bin", MB, MB);
+    }
+
+    @Test
+    void byteQuotaPerUser() {
+        manager.configure(root.resolve("bytes").toString(), 8, 10 * MB);
+
+        ChunkSession first = manager.init("u1", "bin", 6 * MB, MB);
+        assertQuota(OssMsg.EXCEPTION_CHUNK_BYTES_LIMIT, () -> manager.init("u1", "bin", 5 * MB, MB));
+        manager.init("u1", "bin", 4 * MB, MB);
+
+        manager.abort("u1", first.getUploadId());
+        manager.init("u1", "bin", 6 * MB, MB);
+    }
+
+    @Test
+    void quotaRestoredAfterRestart() {
+        String path = root.resolve("restart").toString();
+        manager.configure(path, 2, 100 * MB);
+        manager.init("u1", "bin", MB, MB);
+        manager.init("u1", "bin", MB, MB);
+
+        // 重启 按磁盘上的任务 恢复占用
+        manager.configure(path, 2, 100 * MB);
+        assertQuota(OssMsg.EXCEPTION_CHUNK_SESSION_LIMIT, () -> manager.init("u1", "bin", MB, MB));
+    }
+
+    @Test
+    void expiredSessionReleasesQuota() {
+        Path dir = root.resolve("expired");
+        manager.configure(dir.toString(), 1, 100 * MB);
+        ChunkSession session = manager.init("u1", "bin", MB, MB);
+        assertQuota(OssMsg.EXCEPTION_CHUNK_SESSION_LIMIT, () -> manager.init("u1", "bin", MB, MB));
+
+        File sessionDir = dir.resolve(session.getUploadId()).toFile();
+        assertTrue(sessionDir.setLastModified(System.currentTimeMillis() - 25 * 60 * 60 * 1000L));
+        manager.cleanExpired();
+
+        manager.init("u1", "bin", MB, MB);
+    }
+
+    private static void assertQuota(OssMsg msg, Runnable action) {
+        StoragePluginException e = assertThrows(StoragePluginException.class, action::run);
+        assertEquals(msg.getCode(), e.getCode());
+    }
+
+    private static ByteArrayInputStream in(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return new ByteArrayInputStream(bytes);
+    }
+
+}
@@ -0,0 +1,369 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.oss.local;
+
+import cn.hutool.core.util.HexUtil;
+import com.alibaba.fastjson.JSON;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地内容寻址存储 测试
+ *
+ * @author Parker
+ * @date 2021-12-28 15:30
+ */
+class LocalBlobStoreTest {
+
+    private static final String OWNER = "user-1";
+
+    @TempDir
+    Path root;
+
+    @Test
+    void sameContentStoredOnce() throws IOException {
+        LocalBlobStore store = new LocalBlobStore(root.toString());
+        byte[] content = bytes(1000, 1);
+
+        LocalBlobStore.BlobRef first = store.put(in(content), "a.txt", "txt", OWNER);
+        LocalBlobStore.BlobRef second = store.put(in(content), "b.txt", "txt", OWNER);
+
+        assertFalse(first.isExisted());
+        assertTrue(second.isExisted());
+        assertEquals(first.getPath(), second.getPath());
+        assertEquals(2, store.get("a.txt").getRefCount());
+        assertArrayEquals(content, Files.readAllBytes(store.getFile("b.txt").toPath()));
+        assertEquals(1, countFiles(LocalBlobStore.BLOB_DIR));
+    }
+
+    @Test
+    void challengeProvesPossession() throws IOException {
+        LocalBlobStore store = new LocalBlobStore(root.toString());
+        byte[] content = bytes(200 * 1024, 2);
+        String digest = sha256(content);
+        store.put(in(content), "a.bin", "bin", OWNER);
+
+        LocalBlobStore.Challenge challenge = store.challenge(digest, content.length);
+        assertNotNull(challenge);
+        assertTrue(challenge.getLength() > 0);
+        assertTrue(challenge.getOffset() + challenge.getLength() <= content.length);
+
+        LocalBlobStore.BlobRef ref = store.putByChallenge(challenge.getChallengeId(),
+                proof(challenge, content), "b.bin", "bin", "user-2");
+        assertNotNull(ref);
+        assertTrue(ref.isExisted());
+        assertEquals(2, store.get("b.bin").getRefCount());
+
+        // 挑战只能回答一次
+        assertNull(store.putByChallenge(challenge.getChallengeId(),
+                proof(challenge, content), "c.bin", "bin", "user-2"));
+    }
+
+    @Test
+    void wrongProofRejected() throws IOException {
+        LocalBlobStore store = new LocalBlobStore(root.toString());
+        byte[] content = bytes(1000, 3);
+        store.put(in(content), "a.bin", "bin", OWNER);
+
+        LocalBlobStore.Challenge challenge = store.challenge(sha256(content), content.length);
+        // 只知道摘要 不持有内容
+        byte[] guess = bytes(1000, 4);
+        assertNull(store.putByChallenge(challenge.getChallengeId(),
+                proof(challenge, guess), "b.bin", "bin", "user-2"));
+        assertNull(store.get("b.bin"));
+        assertEquals(1, store.get("a.bin").getRefCount());
+    }
+
+    @Test
+    void unknownDigestIndistinguishable() throws IOException {
+        LocalBlobStore store = new LocalBlobStore(root.toString());
+        byte[] stored = bytes(1000, 5);
+        byte[] unknown = bytes(1000, 6);
+        store.put(in(stored), "a.bin", "bin", OWNER);
+
+        // 内容不存在时 同样返回挑战，回答后 结果与回答错误相同
+        LocalBlobStore.Challenge challenge = store.challenge(sha256(unknown), unknown.length);
+        assertNotNull(challenge);
+        assertEquals(unknown.length, challenge.getLength());
+        assertNull(store.putByChallenge(challenge.getChallengeId(),
+                proof(challenge, unknown), "b.bin", "bin", OWNER));
+
+        // 格式错误的摘要
+        assertNull(store.challenge("not-a-digest", 10));
+    }
+
+    @Test
+    void releaseChecksOwner() throws IOException {
+        LocalBlobStore store = new LocalBlobStore(root.toString());
+        byte[] content = bytes(1000, 7);
+        store.put(in(content), "a.bin", "bin", OWNER);
+
+        assertFalse(store.release("a.bin", "user-2"));
+        assertNotNull(store.getFile("a.bin"));
+
+        assertTrue(store.release("a.bin", OWNER));
+        assertFalse(store.release("a.bin", OWNER));
+        assertNull(store.getFile("a.bin"));
+        assertEquals(0, countFiles(LocalBlobStore.BLOB_DIR));
+        assertEquals(0, countFiles(LocalBlobStore.STORE_DIR + "/index"));
+    }
+
+    @Test
+    void concurrentPutAndRelease() throws Exception {
+        LocalBlobStore store = new LocalBlobStore(root.toString());
+        List<byte[]> contents = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            contents.add(bytes(4096, 10 + i));
+        }
+
+        int threads = 16;
+        int perThread = 40;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<String> kept = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    byte[] content = contents.get((thread + i) % contents.size());
+                    String name = thread + "-" + i + ".bin";
+                    store.put(in(content), name, "bin", OWNER);
+                    // 一半立即释放 与其他线程的上传交错
+                    if(i % 2 == 0){
+                        assertTrue(store.release(name, OWNER));
+                    }else {
+                        kept.add(name);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        assertConsistent();
+        assertEquals(threads * perThread / 2, countFiles(LocalBlobStore.STORE_DIR + "/names"));
+
+        // 同一文件名 两个线程同时释放 只有一个成功
+        AtomicInteger released = new AtomicInteger();
+        CountDownLatch start2 = new CountDownLatch(1);
+        futures.clear();
+        for (String name : kept) {
+            for (int i = 0; i < 2; i++) {
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    start2.await();
+                    if(store.release(name, OWNER)){
+                        released.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+        }
+        start2.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(kept.size(), released.get());
+        assertEquals(0, countFiles(LocalBlobStore.BLOB_DIR));
+        assertEquals(0, countFiles(LocalBlobStore.STORE_DIR + "/index"));
+        assertEquals(0, countFiles(LocalBlobStore.STORE_DIR + "/names"));
+    }
+
+    @Test
+    void crashAtEveryStepKeepsReferencedContent() throws IOException {
+        String[] steps = {LocalBlobStore.Checkpoint.BLOB, LocalBlobStore.Checkpoint.INDEX,
+                LocalBlobStore.Checkpoint.NAME};
+        byte[] content = bytes(1000, 20);
+        byte[] other = bytes(1000, 21);
+
+        for (String step : steps) {
+            // 新内容上传中 崩溃
+            this.crashDuring(step, store -> store.put(in(other), UUID.randomUUID() + ".bin", "bin", OWNER),
+                    content);
+            // 已存在内容上传中 崩溃
+            this.crashDuring(step, store -> store.put(in(content), UUID.randomUUID() + ".bin", "bin", OWNER),
+                    content);
+            // 释放中 崩溃 (引用未归零)
+            this.crashDuring(step, store -> {
+                String name = UUID.randomUUID() + ".bin";
+                store.setCheckpoint(s -> {});
+                store.put(in(content), name, "bin", OWNER);
+                store.setCheckpoint(crashAt(step));
+                store.release(name, OWNER);
+            }, content);
+            // 释放中 崩溃 (引用归零 删除内容)
+            this.crashDuring(step, store -> {
+                String name = UUID.randomUUID() + ".bin";
+                store.setCheckpoint(s -> {});
+                store.put(in(other), name, "bin", OWNER);
+                store.setCheckpoint(crashAt(step));
+                store.release(name, OWNER);
+            }, content);
+        }
+    }
+
+    /**
+     * 在指定步骤后 模拟崩溃，重新打开存储后 校验一致性，且仍可正常上传、释放
+     */
+    private void crashDuring(String step, StoreAction action, byte[] content) throws IOException {
+        File dir = Files.createTempDirectory(root, "crash-").toFile();
+        LocalBlobStore store = new LocalBlobStore(dir.getPath());
+        store.put(in(content), "keep.bin", "bin", OWNER);
+
+        store.setCheckpoint(crashAt(step));
+        try {
+            action.run(store);
+        }catch (Crash ignored){
+            // 模拟崩溃
+        }
+
+        // 重启
+        LocalBlobStore restarted = new LocalBlobStore(dir.getPath());
+        assertConsistent(dir.toPath());
+        assertArrayEquals(content, Files.readAllBytes(restarted.getFile("keep.bin").toPath()));
+
+        // 崩溃后 相同内容仍可正常上传、释放
+        restarted.put(in(content), "again.bin", "bin", OWNER);
+        assertTrue(restarted.release("again.bin", OWNER));
+        assertTrue(restarted.release("keep.bin", OWNER));
+        assertConsistent(dir.toPath());
+        assertNull(restarted.getFile("keep.bin"));
+    }
+
+    private static LocalBlobStore.Checkpoint crashAt(String step){
+        return reached -> {
+            if(step.equals(reached)){
+                throw new Crash();
+            }
+        };
+    }
+
+    private void assertConsistent() throws IOException {
+        assertConsistent(root);
+    }
+
+    /**
+     * 每个逻辑文件名 都能读到完整内容，且引用计数 不少于引用它的文件名数量
+     */
+    private static void assertConsistent(Path dir) throws IOException {
+        Map<String, Integer> nameCount = new HashMap<>();
+        for (Path nameFile : list(dir.resolve(LocalBlobStore.STORE_DIR).resolve("names"))) {
+            LocalBlobStore.NameEntry entry = JSON.parseObject(
+                    Files.readAllBytes(nameFile), LocalBlobStore.NameEntry.class);
+            nameCount.merge(entry.getDigest(), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : nameCount.entrySet()) {
+            Path indexFile = dir.resolve(LocalBlobStore.STORE_DIR).resolve("index")
+                    .resolve(entry.getKey().substring(0, 2)).resolve(entry.getKey() + ".json");
+            assertTrue(Files.isRegularFile(indexFile), "索引丢失：" + entry.getKey());
+            LocalBlobStore.BlobMeta meta = JSON.parseObject(
+                    Files.readAllBytes(indexFile), LocalBlobStore.BlobMeta.class);
+            assertTrue(meta.getRefCount() >= entry.getValue(), "引用计数偏少：" + entry.getKey());
+            byte[] blob = Files.readAllBytes(dir.resolve(meta.getPath()));
+            assertEquals(entry.getKey(), sha256(blob));
+        }
+    }
+
+    private long countFiles(String relative) throws IOException {
+        return list(root.resolve(relative)).size();
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        if(!Files.isDirectory(dir)){
+            return new ArrayList<>();
+        }
+        try (Stream<Path> stream = Files.walk(dir)){
+            return stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    private static String proof(LocalBlobStore.Challenge challenge, byte[] content) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(challenge.getChallengeId().getBytes(StandardCharsets.UTF_8));
+            md.update(content, (int) challenge.getOffset(), (int) challenge.getLength());
+            return HexUtil.encodeHexStr(md.digest());
+        }catch (Exception e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexUtil.encodeHexStr(MessageDigest.getInstance("SHA-256").digest(content));
+        }catch (Exception e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] bytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static ByteArrayInputStream in(byte[] content) {
+        return new ByteArrayInputStream(content);
+    }
+
+    @FunctionalInterface
+    private interface StoreAction {
+        void run(LocalBlobStore store) throws IOException;
+    }
+
+    /**
+     * 模拟崩溃
+     */
+    private static final class Crash extends IOException {
+    }
+
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.oss.local;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地文件下载 测试
+ *
+ * @author Parker
+ * @date 2021-12-30 16:20
+ */
+class LocalFileDownloaderTest {
+
+    @TempDir
+    Path root;
+
+    /**
+     * 同时下载数 按调用方指定的客户端标识计算，不同客户端互不影响
+     */
+    @Test
+    void streamLimitPerClient() throws Exception {
+        File file = root.resolve("a.bin").toFile();
+        Files.write(file.toPath(), new byte[1024]);
+
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> serve(file, "user-1", new BlockingResponse(started, gate))));
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // 同一用户 超出上限
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        LocalFileDownloader.INSTANCE.serve(file, "user-1", request(), rejected);
+        assertEquals(429, rejected.getStatus());
+
+        // 其他用户 不受影响
+        MockHttpServletResponse other = new MockHttpServletResponse();
+        LocalFileDownloader.INSTANCE.serve(file, "user-2", request(), other);
+        assertEquals(200, other.getStatus());
+        assertEquals(1024, other.getContentAsByteArray().length);
+
+        gate.countDown();
+        for (Future<Integer> future : futures) {
+            assertEquals(200, (int) future.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // 下载结束后 释放
+        MockHttpServletResponse again = new MockHttpServletResponse();
+        LocalFileDownloader.INSTANCE.serve(file, "user-1", request(), again);
+        assertEquals(200, again.getStatus());
+    }
+
+    /**
+     * 未指定客户端标识时 按客户端地址，直连客户端 不共用同一配额
+     */
+    @Test
+    void defaultKeyIsClientAddress() throws Exception {
+        File file = root.resolve("b.bin").toFile();
+        Files.write(file.toPath(), new byte[1024]);
+
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> {
+                BlockingResponse response = new BlockingResponse(started, gate);
+                LocalFileDownloader.INSTANCE.serve(file, request("10.0.0.1"), response);
+                return response.getStatus();
+            }));
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        MockHttpServletResponse sameAddress = new MockHttpServletResponse();
+        LocalFileDownloader.INSTANCE.serve(file, request("10.0.0.1"), sameAddress);
+        assertEquals(429, sameAddress.getStatus());
+
+        MockHttpServletResponse otherAddress = new MockHttpServletResponse();
+        LocalFileDownloader.INSTANCE.serve(file, request("10.0.0.2"), otherAddress);
+        assertEquals(200, otherAddress.getStatus());
+
+        gate.countDown();
+        for (Future<Integer> future : futures) {
+            assertEquals(200, (int) future.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+    }
+
+    private static int serve(File file, String clientKey, MockHttpServletResponse response) throws IOException {
+        LocalFileDownloader.INSTANCE.serve(file, clientKey, request(), response);
+        return response.getStatus();
+    }
+
+    private static MockHttpServletRequest request() {
+        return request("127.0.0.1");
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/static/files/a.bin");
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+    /**
+     * 写出时阻塞 模拟下载中的连接
+     */
+    private static final class BlockingResponse extends MockHttpServletResponse {
+
+        private final CountDownLatch started;
+        private final CountDownLatch gate;
+
+        private BlockingResponse(CountDownLatch started, CountDownLatch gate) {
+            this.started = started;
+            this.gate = gate;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            ServletOutputStream target = super.getOutputStream();
+            return new ServletOutputStream() {
+                private boolean first = true;
+
+                @Override
+                public void write(int b) throws IOException {
+                    this.block();
+                    target.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    this.block();
+                    target.write(b, off, len);
+                }
+
+                private void block() throws IOException {
+                    if(!first){
+                        return;
+                    }
+                    first = false;
+                    started.countDown();
+                    try {
+                        gate.await();
+                    }catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+            };
+        }
+    }
+
+}
@@ -57,6 +57,7 @@ public enum GeneratorMsg implements BaseMsg {
     EXCEPTION_CREATE_FIELD_NULL(50142,"生成失败，暂无表字段"),
     EXCEPTION_CREATE_MENU_CODE_NULL(50143,"生成菜单失败，请先生成代码"),
     EXCEPTION_CREATE_MENU_PARENT_NULL(50144,"上级菜单不可为空"),
+    EXCEPTION_CREATE_CODE_ERROR(50145,"生成代码失败，请检查代码模板"),
 
     /**
      * 模板
@@ -16,10 +16,10 @@
 package org.opsli.plugins.generator.strategy.create;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.convert.Convert;
 import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.StrUtil;
 import com.google.common.collect.Lists;
@@ -28,27 +28,43 @@ import com.jfinal.kit.Kv;
 import lombok.extern.slf4j.Slf4j;
 import org.opsli.api.ApiFlag;
 import org.opsli.common.enums.DictType;
+import org.opsli.common.thread.ThreadPoolFactory;
 import org.opsli.common.utils.MessUtil;
 import org.opsli.common.utils.Props;
 import org.opsli.common.utils.ZipUtils;
 import org.opsli.modulars.generator.logs.wrapper.GenBuilderModel;
 import org.opsli.modulars.generator.template.wrapper.GenTemplateDetailModel;
 import org.opsli.plugins.generator.enums.CodeType;
+import org.opsli.plugins.generator.exception.GeneratorException;
 import org.opsli.plugins.generator.factory.GeneratorFactory;
+import org.opsli.plugins.generator.msg.GeneratorMsg;
 import org.opsli.plugins.generator.utils.EnjoyUtil;
 import org.opsli.plugins.generator.utils.GenTemplateUtil;
 import org.opsli.plugins.generator.utils.GeneratorHandleUtil;
 
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Java代码构建器
  *
+ * 各模板文件 并行渲染，渲染完成的文件 立即写入响应 zip 流，
+ * 同时渲染中的文件数有上限，内存中只保留少量文件内容，不再整体缓存 zip
+ *
  * @author parker
  * @date 2020-09-13 19:36
  */
@@ -68,6 +84,12 @@ public enum CodeBuilder {
     private static final String POINT_PREFIX = ".";
     /** 基础路径前缀 */
     public static final String BASE_PATH = "/代码生成-";
+    /** 线程池名称格式 */
+    private static final String THREAD_POOL_NAME = "CodeBuilderPool-%d";
+    /** 渲染并行数 */
+    private static final int PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /** 同时渲染中的文件上限 */
+    private static final int MAX_IN_FLIGHT = PARALLELISM * 2;
 
     /** 排除字段 */
     private static final List<String> EXCLUDE_FIELDS;
@@ -81,47 +103,92 @@ public enum CodeBuilder {
 
     /**
      * 构建
+     *
+     * 渲染失败时 不向客户端返回残缺的 zip，异常继续抛出
      */
     public void build(GenBuilderModel builderModel, HttpServletResponse response){
-        if(builderModel == null){
+        // 处理表数据
+        GenBuilderModel genBuilderModel = GeneratorHandleUtil.handleData(builderModel, EXCLUDE_FIELDS);
+        if(genBuilderModel == null){
             return;
         }
 
         String dateStr = DateUtil.format(DateUtil.date(), "yyyyMMddHHmmss");
+        List<GenTemplateDetailModel> templateDetailList =
+                GenTemplateUtil.getTemplateDetailList(genBuilderModel.getTemplateId());
+        List<Callable<Map<String, String>>> tasks = Lists.newArrayListWithCapacity(templateDetailList.size());
+        // 循环处理代码模板
+        for (GenTemplateDetailModel templateDetailModel : templateDetailList) {
+            tasks.add(() -> this.createCode(genBuilderModel, templateDetailModel, dateStr));
+        }
 
-        // 处理表数据
-        GenBuilderModel genBuilderModel = GeneratorHandleUtil.handleData(builderModel, EXCLUDE_FIELDS);
-        if(genBuilderModel == null){
+        this.write(tasks, dateStr, response);
+    }
+
+    /**
+     * 并行渲染 并按完成顺序写入响应 zip 流
+     *
+     * 响应流在写出第一个文件时才打开
+     * 渲染失败时 丢弃未写出的内容，响应未提交则重置响应 抛出业务异常；
+     * 响应已提交则不再写 zip 目录，抛出非业务异常 由容器中断连接，客户端拿到的是下载失败 而不是残缺的 zip
+     *
+     * @param tasks 渲染任务
+     * @param dateStr 日期字符串
+     * @param response HttpServletResponse
+     */
+    void write(List<Callable<Map<String, String>>> tasks, String dateStr, HttpServletResponse response){
+        if(CollUtil.isEmpty(tasks)){
             return;
         }
 
-
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        OutputStream out = this.getOutputStream(response, dateStr);
+        DeferredOutputStream out = new DeferredOutputStream(() -> this.getOutputStream(response, dateStr));
+        int parallelism = Math.min(PARALLELISM, tasks.size());
+        ExecutorService executor = ThreadPoolFactory.createInitThreadPool(parallelism, parallelism,
+                0L, TimeUnit.SECONDS, MAX_IN_FLIGHT, THREAD_POOL_NAME, new ThreadPoolExecutor.CallerRunsPolicy());
+        CompletionService<Map<String, String>> completionService = new ExecutorCompletionService<>(executor);
+        ZipOutputStream zos = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        Exception failure = null;
         try {
-            if(out != null){
-                List<GenTemplateDetailModel> templateDetailList =
-                        GenTemplateUtil.getTemplateDetailList(genBuilderModel.getTemplateId());
-
-                List<Map<String, String>> fileList =
-                        Lists.newArrayListWithCapacity(templateDetailList.size());
-
-                // 循环处理代码模板
-                for (GenTemplateDetailModel templateDetailModel : templateDetailList) {
-                    fileList.add(
-                            this.createCode(genBuilderModel, templateDetailModel, dateStr)
-                    );
-                }
-
-                // 生成zip文件
-                ZipUtils.toZip(fileList, byteArrayOutputStream);
+            int submitted = 0;
+            while (submitted < tasks.size() && submitted < MAX_IN_FLIGHT){
+                completionService.submit(tasks.get(submitted++));
+            }
 
-                // 输出流文件
-                IoUtil.write(out,true, byteArrayOutputStream.toByteArray());
+            // 按完成顺序 写入 zip，每写出一个 再提交一个
+            for (int i = 0; i < tasks.size(); i++) {
+                Map<String, String> file = completionService.take().get();
+                if(submitted < tasks.size()){
+                    completionService.submit(tasks.get(submitted++));
+                }
+                ZipUtils.putEntry(zos, file.get(ZipUtils.FILE_PATH),
+                        file.get(ZipUtils.FILE_NAME), file.get(ZipUtils.FILE_DATA));
             }
+            zos.finish();
+            out.flush();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            failure = e;
+        }catch (ExecutionException e){
+            failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
         }catch (Exception e){
-            log.error(e.getMessage(), e);
+            failure = e;
+        }finally {
+            executor.shutdownNow();
         }
+
+        if(failure == null){
+            return;
+        }
+
+        log.error(failure.getMessage(), failure);
+        // 丢弃已缓冲的内容 不写 zip 目录
+        out.abort();
+        if(!response.isCommitted()){
+            response.reset();
+            throw new GeneratorException(GeneratorMsg.EXCEPTION_CREATE_CODE_ERROR);
+        }
+        // 响应已提交 不能再返回业务异常信息，交由容器中断连接
+        throw new IllegalStateException(GeneratorMsg.EXCEPTION_CREATE_CODE_ERROR.getMessage(), failure);
     }
 
     /**
@@ -154,7 +221,7 @@ public enum CodeBuilder {
         }
 
         // 代码
-        String codeStr = EnjoyUtil.renderByStr(templateModel.getFileContent(),
+        String codeStr = EnjoyUtil.renderByTemplate(templateModel.getId(), templateModel.getFileContent(),
                 this.createKv(builderModel)
         );
 
@@ -252,8 +319,63 @@ public enum CodeBuilder {
             response.setHeader("Content-Disposition", "attachment; filename=" + fileName);
             response.setHeader("Cache-Control", "no-store, no-cache");
             return response.getOutputStream();
-        } catch (IOException ignored) {}
-        return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 延迟打开的输出流
+     * 首次写出时才打开响应流，放弃后 写出内容全部丢弃
+     */
+    private static final class DeferredOutputStream extends OutputStream {
+
+        private final Supplier<OutputStream> opener;
+        private OutputStream target;
+        private boolean aborted;
+
+        private DeferredOutputStream(Supplier<OutputStream> opener) {
+            this.opener = opener;
+        }
+
+        private void abort() {
+            this.aborted = true;
+        }
+
+        private OutputStream target() {
+            if(target == null){
+                target = opener.get();
+            }
+            return target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(!aborted){
+                target().write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(!aborted){
+                target().write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if(!aborted && target != null){
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(!aborted && target != null){
+                target.close();
+            }
+        }
     }
 
     public static void main(String[] args) {
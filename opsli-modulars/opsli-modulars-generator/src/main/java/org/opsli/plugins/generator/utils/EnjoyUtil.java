@@ -16,9 +16,13 @@
 package org.opsli.plugins.generator.utils;
 
 import cn.hutool.core.io.IoUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Maps;
 import com.jfinal.kit.Kv;
 import com.jfinal.template.Engine;
+import com.jfinal.template.Template;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.core.io.ClassPathResource;
@@ -26,6 +30,7 @@ import org.springframework.core.io.ClassPathResource;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /***
  * Enjoy 模板引擎
@@ -41,6 +46,17 @@ public final class EnjoyUtil {
     /** 模板文件Map */
     private static final Map<String, String> TEMPLATE_FILE_MAP = Maps.newConcurrentMap();
 
+    /** 已编译模板 最大缓存数量 */
+    private static final int COMPILED_TEMPLATE_MAX_SIZE = 512;
+
+    /**
+     * 已编译模板缓存 Key: 模板ID + 内容摘要
+     * 模板内容修改后 摘要随之变化 不会命中旧模板，旧模板 由容量上限淘汰
+     */
+    private static final Cache<String, Template> COMPILED_TEMPLATE_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(COMPILED_TEMPLATE_MAX_SIZE)
+            .build();
+
     /**
      * 根据具体魔板生成文件
      * @param templateFileName  模板文件名称
@@ -85,6 +101,26 @@ public final class EnjoyUtil {
                 .renderToString(kv);
     }
 
+    /**
+     * 根据模板生成文件 复用已编译模板
+     * 已编译模板可多线程同时渲染
+     *
+     * @param templateId  模板ID
+     * @param template  模板
+     * @param kv                渲染参数
+     * @return String
+     */
+    public static String renderByTemplate(final String templateId, final String template, Kv kv)  {
+        String cacheKey = templateId + ":" + SecureUtil.md5(template);
+        try {
+            return COMPILED_TEMPLATE_CACHE.get(cacheKey,
+                    () -> Engine.use().getTemplateByString(template))
+                    .renderToString(kv);
+        }catch (ExecutionException e){
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
 
     private EnjoyUtil(){}
 }
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.generator.strategy.create;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.jupiter.api.Test;
+import org.opsli.common.utils.ZipUtils;
+import org.opsli.plugins.generator.exception.GeneratorException;
+import org.opsli.plugins.generator.msg.GeneratorMsg;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 代码构建器 测试
+ *
+ * 渲染失败时 不能返回 200 + 残缺的 zip
+ *
+ * @author Parker
+ * @date 2021-12-20 10:00
+ */
+class CodeBuilderTest {
+
+    /** zip 目录结束标记 */
+    private static final byte[] END_OF_CENTRAL_DIRECTORY = {0x50, 0x4b, 0x05, 0x06};
+
+    private static final String DATE_STR = "20211220100000";
+
+    @Test
+    void allRendered() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        List<Callable<Map<String, String>>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(file("File" + i + ".java", "class File" + i + " {}"));
+        }
+
+        CodeBuilder.INSTANCE.write(tasks, DATE_STR, response);
+
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getHeader("Content-Disposition").contains(DATE_STR));
+        assertEquals(20, countEntries(response.getContentAsByteArray()));
+    }
+
+    @Test
+    void failureBeforeCommitReturnsError() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        List<Callable<Map<String, String>>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(file("File" + i + ".java", "class File" + i + " {}"));
+        }
+        tasks.add(failing());
+
+        GeneratorException e = assertThrows(GeneratorException.class,
+                () -> CodeBuilder.INSTANCE.write(tasks, DATE_STR, response));
+
+        assertEquals(GeneratorMsg.EXCEPTION_CREATE_CODE_ERROR.getCode(), e.getCode());
+        assertFalse(response.isCommitted());
+        // 响应已重置 下载头与已写内容均被丢弃，由全局异常处理返回错误信息
+        assertNull(response.getHeader("Content-Disposition"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void failureAfterCommitAbortsZip() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setBufferSize(1024);
+        // 先写出足够多的不可压缩内容 使响应提交，最后一个模板渲染失败
+        List<Callable<Map<String, String>>> tasks = Lists.newArrayList();
+        Random random = new Random(1);
+        for (int i = 0; i < 8; i++) {
+            byte[] bytes = new byte[4096];
+            random.nextBytes(bytes);
+            tasks.add(file("File" + i + ".txt", new String(bytes, StandardCharsets.ISO_8859_1)));
+        }
+        tasks.add(() -> {
+            // 保证失败发生在其余文件写出之后
+            Thread.sleep(200);
+            throw new IllegalArgumentException("模板语法错误");
+        });
+
+        // 非业务异常 全局异常处理不会再往已提交的响应里写 JSON，容器中断连接
+        assertThrows(IllegalStateException.class,
+                () -> CodeBuilder.INSTANCE.write(tasks, DATE_STR, response));
+
+        assertTrue(response.isCommitted());
+        byte[] content = response.getContentAsByteArray();
+        assertTrue(content.length > 0);
+        assertFalse(contains(content, END_OF_CENTRAL_DIRECTORY));
+    }
+
+    private static Callable<Map<String, String>> file(String name, String data){
+        return () -> {
+            Map<String, String> map = Maps.newHashMap();
+            map.put(ZipUtils.FILE_PATH, CodeBuilder.BASE_PATH + DATE_STR + "/");
+            map.put(ZipUtils.FILE_NAME, name);
+            map.put(ZipUtils.FILE_DATA, data);
+            return map;
+        };
+    }
+
+    private static Callable<Map<String, String>> failing(){
+        return () -> {
+            throw new IllegalArgumentException("模板语法错误");
+        };
+    }
+
+    private static int countEntries(byte[] zip) throws IOException {
+        int count = 0;
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))){
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null){
+                if(!entry.isDirectory()){
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean contains(byte[] data, byte[] pattern){
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            boolean match = true;
+            for (int j = 0; j < pattern.length && match; j++) {
+                match = data[i + j] == pattern[j];
+            }
+            if(match){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -18,9 +18,11 @@ package org.opsli.modulars.system.area.service.impl;
 
 import cn.hutool.core.collection.CollUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
 import org.opsli.api.wrapper.system.area.SysAreaModel;
 import org.opsli.common.constants.MyBatisConstants;
+import org.opsli.common.constants.TreeConstants;
 import org.opsli.common.enums.DictType;
 import org.opsli.common.exception.ServiceException;
 import org.opsli.common.utils.FieldUtil;
@@ -28,6 +30,7 @@ import org.opsli.core.base.entity.HasChildren;
 import org.opsli.core.base.service.impl.CrudServiceImpl;
 import org.opsli.core.persistence.querybuilder.GenQueryBuilder;
 import org.opsli.core.persistence.querybuilder.QueryBuilder;
+import org.opsli.core.utils.TreeSnapshotUtil;
 import org.opsli.modulars.system.SystemMsg;
 import org.opsli.modulars.system.area.entity.SysArea;
 import org.opsli.modulars.system.area.mapper.SysAreaMapper;
@@ -36,6 +39,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -81,7 +87,23 @@ public class SysAreaServiceImpl extends CrudServiceImpl<SysAreaMapper, SysArea,
             model.setParentId("0");
         }
 
-        return super.insert(model);
+        SysAreaModel ret = super.insert(model);
+        if(ret != null){
+            // 刷新树快照
+            TreeSnapshotUtil.refresh(TreeConstants.SNAPSHOT_AREA, Collections.singletonList(ret.getId()));
+        }
+        return ret;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean insertBatch(List<SysAreaModel> models) {
+        boolean ret = super.insertBatch(models);
+        if(ret){
+            // 批量新增 整树失效
+            TreeSnapshotUtil.invalidate(TreeConstants.SNAPSHOT_AREA);
+        }
+        return ret;
     }
 
     @Transactional(rollbackFor = Exception.class)
@@ -98,7 +120,12 @@ public class SysAreaServiceImpl extends CrudServiceImpl<SysAreaMapper, SysArea,
             throw new ServiceException(SystemMsg.EXCEPTION_AREA_UNIQUE);
         }
 
-        return super.update(model);
+        SysAreaModel ret = super.update(model);
+        if(ret != null){
+            // 刷新树快照
+            TreeSnapshotUtil.refresh(TreeConstants.SNAPSHOT_AREA, Collections.singletonList(ret.getId()));
+        }
+        return ret;
     }
 
 
@@ -108,9 +135,23 @@ public class SysAreaServiceImpl extends CrudServiceImpl<SysAreaMapper, SysArea,
         // 先删除子数据
         this.deleteByParentId(id);
 
+        // 刷新树快照 (连同子孙节点)
+        TreeSnapshotUtil.remove(TreeConstants.SNAPSHOT_AREA, Collections.singletonList(id));
+
         return super.delete(id);
     }
 
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean delete(SysAreaModel model) {
+        boolean ret = super.delete(model);
+        if(ret){
+            // 刷新树快照
+            TreeSnapshotUtil.refresh(TreeConstants.SNAPSHOT_AREA, Collections.singletonList(model.getId()));
+        }
+        return ret;
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean deleteAll(String[] ids) {
@@ -119,9 +160,27 @@ public class SysAreaServiceImpl extends CrudServiceImpl<SysAreaMapper, SysArea,
             this.deleteByParentId(id);
         }
 
+        // 刷新树快照 (连同子孙节点)
+        TreeSnapshotUtil.remove(TreeConstants.SNAPSHOT_AREA, Arrays.asList(ids));
+
         return super.deleteAll(ids);
     }
 
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean deleteAll(Collection<SysAreaModel> models) {
+        boolean ret = super.deleteAll(models);
+        if(ret){
+            // 刷新树快照
+            List<String> idList = Lists.newArrayListWithCapacity(models.size());
+            for (SysAreaModel model : models) {
+                idList.add(model.getId());
+            }
+            TreeSnapshotUtil.refresh(TreeConstants.SNAPSHOT_AREA, idList);
+        }
+        return ret;
+    }
+
     /**
      * 逐级删除子数据
      * @param parentId 父级节点
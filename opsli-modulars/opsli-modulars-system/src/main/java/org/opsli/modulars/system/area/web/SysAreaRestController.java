@@ -20,7 +20,6 @@ import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.convert.Convert;
 import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.lang.Snowflake;
-import cn.hutool.core.lang.tree.Tree;
 import cn.hutool.core.lang.tree.TreeNodeConfig;
 import cn.hutool.core.util.IdUtil;
 import com.alibaba.fastjson.JSONArray;
@@ -36,12 +35,15 @@ import org.opsli.api.web.system.area.SysAreaRestApi;
 import org.opsli.api.wrapper.system.area.SysAreaModel;
 import org.opsli.common.annotation.ApiRestController;
 import org.opsli.common.constants.MyBatisConstants;
-import org.opsli.common.utils.FieldUtil;
+import org.opsli.common.constants.TreeConstants;
 import org.opsli.core.base.controller.BaseRestController;
 import org.opsli.core.log.annotation.OperateLogger;
 import org.opsli.core.log.enums.ModuleEnum;
 import org.opsli.core.log.enums.OperationTypeEnum;
 import org.opsli.core.utils.TreeBuildUtil;
+import org.opsli.core.utils.TreeSnapshotUtil;
+import org.opsli.core.utils.tree.TreeSnapshot;
+import org.opsli.core.utils.tree.TreeSnapshotSource;
 import org.opsli.modulars.system.area.entity.SysArea;
 import org.opsli.modulars.system.area.service.ISysAreaService;
 import org.springframework.core.io.ClassPathResource;
@@ -49,6 +51,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -67,6 +70,34 @@ public class SysAreaRestController extends BaseRestController<SysArea, SysAreaMo
     /** 排序字段 */
     private static final String SORT_FIELD = "sortNo";
 
+    /** 树快照 数据源 */
+    private final TreeSnapshotSource treeSnapshotSource = new TreeSnapshotSource() {
+        @Override
+        public String getTreeName() {
+            return TreeConstants.SNAPSHOT_AREA;
+        }
+
+        @Override
+        public TreeNodeConfig getTreeNodeConfig() {
+            TreeNodeConfig treeNodeConfig = new TreeNodeConfig();
+            // 自定义属性名 都要默认值的
+            treeNodeConfig.setWeightKey(SORT_FIELD);
+            return treeNodeConfig;
+        }
+
+        @Override
+        public List<Map<String, Object>> loadTreeNodes() {
+            return getBeanMapList(IService.findList(new QueryWrapper<>()));
+        }
+
+        @Override
+        public List<Map<String, Object>> loadTreeNodes(Collection<String> ids) {
+            QueryWrapper<SysArea> wrapper = new QueryWrapper<>();
+            wrapper.in(MyBatisConstants.FIELD_ID, ids);
+            return getBeanMapList(IService.findList(wrapper));
+        }
+    };
+
     /**
     * 地域 查一条
     * @param model 模型
@@ -88,29 +119,11 @@ public class SysAreaRestController extends BaseRestController<SysArea, SysAreaMo
     @PreAuthorize("hasAuthority('system_area_select')")
     @Override
     public ResultWrapper<?> findTree(String parentId) {
-
-        QueryWrapper<SysArea> wrapper = new QueryWrapper<>();
-        wrapper.eq(FieldUtil.humpToUnderline(MyBatisConstants.FIELD_PARENT_ID), parentId);
-        List<SysArea> dataList =  IService.findList(wrapper);
-
-        // 获得BeanMapList
-        List<Map<String, Object>> beanMapList = this.getBeanMapList(dataList);
-
-        //配置
-        TreeNodeConfig treeNodeConfig = new TreeNodeConfig();
-        // 自定义属性名 都要默认值的
-        treeNodeConfig.setWeightKey(SORT_FIELD);
-        // 最大递归深度 最多支持1层
-        treeNodeConfig.setDeep(1);
-
-        //转换器
-        List<Tree<Object>> treeNodes = TreeBuildUtil.INSTANCE.build(beanMapList, parentId, treeNodeConfig);
-
-        // 处理是否包含子集
-        super.handleTreeHasChildren(treeNodes,
-                (parentIds)-> IService.hasChildren(parentIds));
-
-        return ResultWrapper.getSuccessResultWrapper(treeNodes);
+        // 从树快照获取 单层子节点
+        TreeSnapshot snapshot = TreeSnapshotUtil.get(treeSnapshotSource);
+        TreeSnapshotUtil.write(
+                snapshot.renderChildren(parentId, null, null));
+        return null;
     }
 
     /**
@@ -125,27 +138,11 @@ public class SysAreaRestController extends BaseRestController<SysArea, SysAreaMo
     @PreAuthorize("hasAuthority('system_area_select')")
     @Override
     public ResultWrapper<?> findTreeAll(Integer deep) {
-
-        List<SysArea> dataList =  IService.findList(new QueryWrapper<>());
-
-        // 获得BeanMapList
-        List<Map<String, Object>> beanMapList = this.getBeanMapList(dataList);
-
-        //配置
-        TreeNodeConfig treeNodeConfig = new TreeNodeConfig();
-        // 自定义属性名 都要默认值的
-        treeNodeConfig.setWeightKey(SORT_FIELD);
-        // 最大递归深度 最多支持1层
-        treeNodeConfig.setDeep(deep);
-
-        //转换器
-        List<Tree<Object>> treeNodes = TreeBuildUtil.INSTANCE.build(beanMapList, treeNodeConfig);
-
-        // 处理是否包含子集
-        super.handleTreeHasChildren(treeNodes,
-                (parentIds)-> IService.hasChildren(parentIds));
-
-        return ResultWrapper.getSuccessResultWrapper(treeNodes);
+        // 从树快照获取 全量树
+        TreeSnapshot snapshot = TreeSnapshotUtil.get(treeSnapshotSource);
+        TreeSnapshotUtil.write(
+                snapshot.renderTree(TreeBuildUtil.DEF_PARENT_ID, deep, null, null));
+        return null;
     }
 
     /**
@@ -185,7 +185,7 @@ public class DictDetailServiceImpl extends CrudServiceImpl<DictDetailMapper, Sys
                     typeCodes.add(sysDictDetail.getTypeCode());
                 }
 
-                List<String> typeCodeList = Lists.newArrayListWithCapacity(typeCodes.size());
+                List<String> typeCodeList = Lists.newArrayList(typeCodes);
 
                 // 删除缓存
                 this.clearCache(typeCodeList);
@@ -225,7 +225,7 @@ public class DictDetailServiceImpl extends CrudServiceImpl<DictDetailMapper, Sys
                     typeCodes.add(sysDictDetail.getTypeCode());
                 }
 
-                List<String> typeCodeList = Lists.newArrayListWithCapacity(typeCodes.size());
+                List<String> typeCodeList = Lists.newArrayList(typeCodes);
 
                 // 删除缓存
                 this.clearCache(typeCodeList);
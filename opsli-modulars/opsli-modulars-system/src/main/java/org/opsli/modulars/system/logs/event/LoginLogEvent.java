@@ -16,46 +16,111 @@
 package org.opsli.modulars.system.logs.event;
 
 import com.google.common.eventbus.Subscribe;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.opsli.api.wrapper.system.logs.LoginLogsModel;
 import org.opsli.api.wrapper.system.user.UserModel;
+import org.opsli.core.log.writer.BatchLogWriter;
 import org.opsli.core.utils.UserUtil;
 import org.opsli.modulars.system.logs.service.ILoginLogsService;
 import org.opsli.modulars.system.user.service.IUserService;
 import org.opsli.plugins.security.eventbus.ISecurityEventConsumer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * 记录登陆日志信息
  *
+ * 登录日志写入批量写入器 由后台线程合并入库
+ * 同一批次内 同一用户多次登录 只更新一次最后登录IP
+ *
  * @author Parker
  * @date 2022-07-20 10:37:58
  */
 @Slf4j
-@AllArgsConstructor
 @Component
-public class LoginLogEvent implements ISecurityEventConsumer<LoginLogsModel> {
+public class LoginLogEvent implements ISecurityEventConsumer<LoginLogsModel>, DisposableBean {
+
+	/** 队列容量 */
+	private static final int CAPACITY = 4096;
+	/** 批量条数 */
+	private static final int BATCH_SIZE = 200;
+	/** 批量间隔 (毫秒) */
+	private static final long FLUSH_INTERVAL = 1000L;
 
 	private final IUserService iUserService;
 	private final ILoginLogsService iLoginLogsService;
+	private final BatchLogWriter<LoginLogsModel> writer;
+
+	/**
+	 * 构造函数
+	 * @param iUserService 用户服务
+	 * @param iLoginLogsService 登录日志服务
+	 * @param spillPath 入库失败时的溢出目录 (每个实例独立)
+	 */
+	public LoginLogEvent(IUserService iUserService, ILoginLogsService iLoginLogsService,
+						 @Value("${opsli.log.spill-path:}") String spillPath) {
+		this.iUserService = iUserService;
+		this.iLoginLogsService = iLoginLogsService;
+		this.writer = new BatchLogWriter<>("login-log", LoginLogsModel.class, spillPath,
+				CAPACITY, BATCH_SIZE, FLUSH_INTERVAL, this::save);
+		this.writer.start();
+	}
 
 	@Override
 	@Subscribe
 	public void consumer(LoginLogsModel userLoginModel) {
 		//log.info("登陆用户信息 => {}", userLoginModel);
-		UserModel userModel = UserUtil.getUserByUserName(userLoginModel.getUsername());
-		if(null == userModel){
-			return;
+		writer.write(userLoginModel);
+	}
+
+	/**
+	 * 批量保存
+	 * @param list 登录日志
+	 */
+	private void save(List<LoginLogsModel> list) {
+		// 同一用户 只保留最后一次登录IP
+		Map<String, String> lastIpMap = new LinkedHashMap<>();
+		for (LoginLogsModel model : list) {
+			lastIpMap.put(model.getUsername(), model.getRemoteAddr());
 		}
 
-		// 保存用户最后登录IP
-		userModel.setLoginIp(userLoginModel.getRemoteAddr());
-		iUserService.updateLoginIp(userModel);
+		Set<String> usernames = new HashSet<>(lastIpMap.size());
+		for (Map.Entry<String, String> entry : lastIpMap.entrySet()) {
+			UserModel userModel = UserUtil.getUserByUserName(entry.getKey());
+			if(null == userModel){
+				continue;
+			}
+			usernames.add(entry.getKey());
+
+			// 保存用户最后登录IP
+			userModel.setLoginIp(entry.getValue());
+			iUserService.updateLoginIp(userModel);
+		}
 
 		// 记录用户登录日志 如果系统较大 可考虑 Elastic 的 filebeat
 		// 小系统 直接存在 mysql就好
-		iLoginLogsService.insert(userLoginModel);
+		List<LoginLogsModel> logs = new ArrayList<>(list.size());
+		for (LoginLogsModel model : list) {
+			if(usernames.contains(model.getUsername())){
+				logs.add(model);
+			}
+		}
+		if(!logs.isEmpty()){
+			iLoginLogsService.insertBatch(logs);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		writer.stop();
 	}
 
 }
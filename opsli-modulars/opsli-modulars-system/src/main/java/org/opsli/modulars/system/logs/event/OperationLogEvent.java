@@ -16,27 +16,49 @@
 package org.opsli.modulars.system.logs.event;
 
 import com.google.common.eventbus.Subscribe;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.opsli.api.wrapper.system.logs.OperationLogModel;
 import org.opsli.common.utils.WrapperUtil;
 import org.opsli.core.eventbus.IEventConsumer;
 import org.opsli.core.log.bean.OperationLog;
+import org.opsli.core.log.writer.BatchLogWriter;
 import org.opsli.modulars.system.logs.service.IOperationLogService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
  * 操作日志 事件
  *
+ * 日志写入批量写入器 由后台线程合并入库，事件线程不等待数据库
+ *
  * @author Parker
  * @date 2021年7月15日20:28:24
  */
 @Slf4j
-@AllArgsConstructor
 @Component
-public class OperationLogEvent implements IEventConsumer<OperationLog> {
+public class OperationLogEvent implements IEventConsumer<OperationLog>, DisposableBean {
+
+	/** 队列容量 */
+	private static final int CAPACITY = 8192;
+	/** 批量条数 */
+	private static final int BATCH_SIZE = 200;
+	/** 批量间隔 (毫秒) */
+	private static final long FLUSH_INTERVAL = 1000L;
 
-	private final IOperationLogService operationLogService;
+	private final BatchLogWriter<OperationLogModel> writer;
+
+	/**
+	 * 构造函数
+	 * @param operationLogService 操作日志服务
+	 * @param spillPath 入库失败时的溢出目录 (每个实例独立)
+	 */
+	public OperationLogEvent(IOperationLogService operationLogService,
+							 @Value("${opsli.log.spill-path:}") String spillPath) {
+		this.writer = new BatchLogWriter<>("operation-log", OperationLogModel.class, spillPath,
+				CAPACITY, BATCH_SIZE, FLUSH_INTERVAL, operationLogService::insertBatch);
+		this.writer.start();
+	}
 
 	@Subscribe
 	@Override
@@ -45,7 +67,12 @@ public class OperationLogEvent implements IEventConsumer<OperationLog> {
 		OperationLogModel operationLogModel =
 				WrapperUtil.transformInstance(event, OperationLogModel.class);
 		operationLogModel.setId(null);
-		operationLogService.save(operationLogModel);
+		writer.write(operationLogModel);
+	}
+
+	@Override
+	public void destroy() {
+		writer.stop();
 	}
 
 }
@@ -27,8 +27,8 @@ import org.opsli.api.wrapper.system.logs.LogsModel;
 import org.opsli.common.annotation.ApiRestController;
 
 import org.opsli.core.base.controller.BaseRestController;
+import org.opsli.core.persistence.Keyset;
 import org.opsli.core.persistence.Page;
-import org.opsli.core.persistence.querybuilder.QueryBuilder;
 import org.opsli.core.persistence.querybuilder.WebQueryBuilder;
 import org.opsli.modulars.system.logs.entity.SysLoginLogs;
 import org.opsli.modulars.system.logs.entity.SysLogs;
@@ -62,10 +62,19 @@ public class LoginLogsRestController extends BaseRestController<SysLoginLogs, Lo
     @Override
     public ResultWrapper<?> findPage(Integer pageNo, Integer pageSize, HttpServletRequest request) {
 
-        QueryBuilder<SysLoginLogs> queryBuilder = new WebQueryBuilder<>(IService.getEntityClass(), request.getParameterMap());
+        WebQueryBuilder<SysLoginLogs> queryBuilder = new WebQueryBuilder<>(IService.getEntityClass(), request.getParameterMap());
         Page<SysLoginLogs, LoginLogsModel> page = new Page<>(pageNo, pageSize);
         page.setQueryWrapper(queryBuilder.build());
-        page = IService.findPage(page);
+
+        // 传入游标参数时 使用游标分页 (日志数据量大 深度翻页不再变慢)
+        String cursor = request.getParameter(Keyset.CURSOR);
+        if(null != cursor){
+            page.setCursor(cursor);
+            page.setKeysetOrders(queryBuilder.getOrders());
+            page = IService.findPageByKeyset(page);
+        }else {
+            page = IService.findPage(page);
+        }
 
         return ResultWrapper.getSuccessResultWrapper(page.getPageData());
     }
@@ -26,8 +26,8 @@ import org.opsli.core.base.controller.BaseRestController;
 import org.opsli.core.log.annotation.OperateLogger;
 import org.opsli.core.log.enums.ModuleEnum;
 import org.opsli.core.log.enums.OperationTypeEnum;
+import org.opsli.core.persistence.Keyset;
 import org.opsli.core.persistence.Page;
-import org.opsli.core.persistence.querybuilder.QueryBuilder;
 import org.opsli.core.persistence.querybuilder.WebQueryBuilder;
 import org.opsli.modulars.system.logs.entity.OperationLog;
 import org.opsli.modulars.system.logs.service.IOperationLogService;
@@ -78,10 +78,19 @@ public class OperationLogRestController extends BaseRestController<OperationLog,
     @Override
     public ResultWrapper<?> findPage(Integer pageNo, Integer pageSize, HttpServletRequest request) {
 
-        QueryBuilder<OperationLog> queryBuilder = new WebQueryBuilder<>(IService.getEntityClass(), request.getParameterMap());
+        WebQueryBuilder<OperationLog> queryBuilder = new WebQueryBuilder<>(IService.getEntityClass(), request.getParameterMap());
         Page<OperationLog, OperationLogModel> page = new Page<>(pageNo, pageSize);
         page.setQueryWrapper(queryBuilder.build());
-        page = IService.findPage(page);
+
+        // 传入游标参数时 使用游标分页 (日志数据量大 深度翻页不再变慢)
+        String cursor = request.getParameter(Keyset.CURSOR);
+        if(null != cursor){
+            page.setCursor(cursor);
+            page.setKeysetOrders(queryBuilder.getOrders());
+            page = IService.findPageByKeyset(page);
+        }else {
+            page = IService.findPage(page);
+        }
 
         return ResultWrapper.getSuccessResultWrapper(page.getPageData());
     }
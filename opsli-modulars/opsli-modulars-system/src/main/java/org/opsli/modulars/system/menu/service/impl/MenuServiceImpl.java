@@ -20,11 +20,9 @@ import cn.hutool.core.convert.Convert;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
-import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
 import org.opsli.api.wrapper.system.menu.MenuFullModel;
 import org.opsli.api.wrapper.system.menu.MenuModel;
-import org.opsli.api.wrapper.system.user.UserModel;
 import org.opsli.common.constants.MenuConstants;
 import org.opsli.common.constants.MyBatisConstants;
 import org.opsli.common.constants.TreeConstants;
@@ -33,19 +31,19 @@ import org.opsli.common.exception.ServiceException;
 import org.opsli.common.utils.FieldUtil;
 import org.opsli.core.base.entity.HasChildren;
 import org.opsli.core.base.service.impl.CrudServiceImpl;
+import org.opsli.core.cache.CacheGeneration;
 import org.opsli.core.msg.CoreMsg;
 import org.opsli.core.persistence.querybuilder.GenQueryBuilder;
 import org.opsli.core.persistence.querybuilder.QueryBuilder;
 import org.opsli.core.utils.MenuUtil;
 import org.opsli.core.utils.TreeBuildUtil;
-import org.opsli.core.utils.UserUtil;
+import org.opsli.core.utils.TreeSnapshotUtil;
 import org.opsli.modulars.system.SystemMsg;
 import org.opsli.modulars.system.menu.entity.SysMenu;
 import org.opsli.modulars.system.menu.factory.MenuFactory;
 import org.opsli.modulars.system.menu.mapper.MenuMapper;
 import org.opsli.modulars.system.menu.service.IMenuService;
 import org.opsli.modulars.system.role.service.IRoleMenuRefService;
-import org.opsli.modulars.system.user.service.IUserRoleRefService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -70,8 +68,6 @@ public class MenuServiceImpl extends CrudServiceImpl<MenuMapper, SysMenu, MenuMo
     @Autowired(required = false)
     private MenuMapper mapper;
     @Autowired
-    private IUserRoleRefService iUserRoleRefService;
-    @Autowired
     private IRoleMenuRefService iRoleMenuRefService;
 
     @Override
@@ -123,7 +119,12 @@ public class MenuServiceImpl extends CrudServiceImpl<MenuMapper, SysMenu, MenuMo
                         newParentModel.getParentIds(), menuModel.getId()), ',');
         menuModel.setParentIds(newParentIds);
         menuModel.setVersion(null);
-        return super.update(menuModel);
+        MenuModel ret = super.update(menuModel);
+        if(ret != null){
+            // 刷新树快照
+            TreeSnapshotUtil.refresh(TreeConstants.SNAPSHOT_MENU, Collections.singletonList(ret.getId()));
+        }
+        return ret;
     }
 
     @Transactional(rollbackFor = Exception.class)
@@ -219,6 +220,14 @@ public class MenuServiceImpl extends CrudServiceImpl<MenuMapper, SysMenu, MenuMo
         if(menuModel != null){
             // 刷新缓存
             this.clearCache(Collections.singletonList(model));
+
+            // 刷新树快照 上级或标签变更时 子集一并变更 直接整树重建
+            if(!sourceModel.getParentId().equals(model.getParentId()) ||
+                    !sourceModel.getLabel().equals(model.getLabel())){
+                TreeSnapshotUtil.invalidate(TreeConstants.SNAPSHOT_MENU);
+            }else {
+                TreeSnapshotUtil.refresh(TreeConstants.SNAPSHOT_MENU, Collections.singletonList(menuModel.getId()));
+            }
         }
 
         return menuModel;
@@ -312,6 +321,9 @@ public class MenuServiceImpl extends CrudServiceImpl<MenuMapper, SysMenu, MenuMo
         // 移除权限数据
         iRoleMenuRefService.delPermsByMenuIds(Convert.toList(String.class, id));
 
+        // 移除树快照 (含子集)
+        TreeSnapshotUtil.remove(TreeConstants.SNAPSHOT_MENU, Collections.singletonList(id));
+
         return super.delete(id);
     }
 
@@ -343,6 +355,9 @@ public class MenuServiceImpl extends CrudServiceImpl<MenuMapper, SysMenu, MenuMo
         // 移除权限数据
         iRoleMenuRefService.delPermsByMenuIds(Convert.toList(String.class, ids));
 
+        // 移除树快照 (含子集)
+        TreeSnapshotUtil.remove(TreeConstants.SNAPSHOT_MENU, Convert.toList(String.class, ids));
+
         return super.deleteAll(ids);
     }
 
@@ -452,10 +467,7 @@ public class MenuServiceImpl extends CrudServiceImpl<MenuMapper, SysMenu, MenuMo
         // 计数器
         int cacheCount = menuModelList.size();
 
-        // 菜单ID
-        List<String> menuIdList = Lists.newArrayListWithCapacity(menuModelList.size());
         for (MenuModel menuModel : menuModelList) {
-            menuIdList.add(menuModel.getId());
             // 先清除缓存
             // 清空编号缓存
             cacheRet = MenuUtil.refreshMenu(menuModel);
@@ -464,41 +476,8 @@ public class MenuServiceImpl extends CrudServiceImpl<MenuMapper, SysMenu, MenuMo
             }
         }
 
-        // 菜单有变动 直接刷新超级管理员 菜单缓存
-        UserModel adminUser = UserUtil.getUserByUserName(UserUtil.SUPER_ADMIN);
-        if(adminUser != null){
-            cacheCount += 2;
-            cacheRet = UserUtil.refreshUserAllPerms(adminUser.getId());
-            if(cacheRet){
-                cacheCount--;
-            }
-            cacheRet = UserUtil.refreshUserMenus(adminUser.getId());
-            if(cacheRet){
-                cacheCount--;
-            }
-        }
-
-        // 刷新用户缓存
-        // 清空该菜单下 用户缓存
-        List<String> userIdList = iUserRoleRefService.getUserIdListByMenuIdList(menuIdList);
-        if(CollUtil.isNotEmpty(userIdList)){
-            for (String userId : userIdList) {
-                cacheCount += 3;
-                // 清空当期用户缓存角色、权限、菜单
-                cacheRet = UserUtil.refreshUserRoles(userId);
-                if(cacheRet){
-                    cacheCount--;
-                }
-                cacheRet = UserUtil.refreshUserAllPerms(userId);
-                if(cacheRet){
-                    cacheCount--;
-                }
-                cacheRet = UserUtil.refreshUserMenus(userId);
-                if(cacheRet){
-                    cacheCount--;
-                }
-            }
-        }
+        // 菜单有变动 递增菜单世代号 所有用户的权限、菜单缓存随之失效
+        CacheGeneration.increment(CacheGeneration.Scope.MENU);
 
         // 判断删除状态
         if(cacheCount != 0){
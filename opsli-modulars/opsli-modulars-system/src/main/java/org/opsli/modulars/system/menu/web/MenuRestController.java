@@ -36,6 +36,7 @@ import org.opsli.api.wrapper.system.user.UserModel;
 import org.opsli.common.annotation.ApiRestController;
 import org.opsli.common.constants.MenuConstants;
 import org.opsli.common.constants.MyBatisConstants;
+import org.opsli.common.constants.TreeConstants;
 import org.opsli.common.enums.DictType;
 import org.opsli.common.utils.FieldUtil;
 import org.opsli.common.utils.WrapperUtil;
@@ -49,7 +50,10 @@ import org.opsli.core.persistence.querybuilder.GenQueryBuilder;
 import org.opsli.core.persistence.querybuilder.QueryBuilder;
 import org.opsli.core.persistence.querybuilder.WebQueryBuilder;
 import org.opsli.core.utils.TreeBuildUtil;
+import org.opsli.core.utils.TreeSnapshotUtil;
 import org.opsli.core.utils.UserUtil;
+import org.opsli.core.utils.tree.TreeSnapshot;
+import org.opsli.core.utils.tree.TreeSnapshotSource;
 import org.opsli.modulars.system.menu.entity.SysMenu;
 import org.opsli.modulars.system.menu.service.IMenuService;
 import org.opsli.modulars.system.user.service.IUserRoleRefService;
@@ -57,8 +61,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 
 /**
@@ -82,6 +88,52 @@ public class MenuRestController extends BaseRestController<SysMenu, MenuModel, I
     /** 虚拟总节点 ID */
     private static final String VIRTUAL_TOTAL_NODE = "-1";
 
+    /** 树快照 渲染变体 */
+    private static final String VARIANT_PAGE = "page";
+    private static final String VARIANT_PAGE_ROOT = "pageRoot";
+    private static final String VARIANT_CHOOSE = "choose";
+    private static final String VARIANT_CHOOSE_ROOT = "chooseRoot";
+
+    /** 树快照 只保留菜单类型 */
+    private static final Predicate<Map<String, Object>> MENU_FILTER =
+            (extra) -> MenuConstants.MENU.equals(extra.get("type"));
+
+    /** 树快照 数据源 */
+    private final TreeSnapshotSource treeSnapshotSource = new TreeSnapshotSource() {
+        @Override
+        public String getTreeName() {
+            return TreeConstants.SNAPSHOT_MENU;
+        }
+
+        @Override
+        public TreeNodeConfig getTreeNodeConfig() {
+            TreeNodeConfig treeNodeConfig = new TreeNodeConfig();
+            // 自定义属性名 都要默认值的
+            treeNodeConfig.setWeightKey(SORT_FIELD);
+            return treeNodeConfig;
+        }
+
+        @Override
+        public List<Map<String, Object>> loadTreeNodes() {
+            QueryBuilder<SysMenu> queryBuilder = new GenQueryBuilder<>();
+            return loadTreeNodes(queryBuilder.build());
+        }
+
+        @Override
+        public List<Map<String, Object>> loadTreeNodes(Collection<String> ids) {
+            QueryBuilder<SysMenu> queryBuilder = new GenQueryBuilder<>();
+            QueryWrapper<SysMenu> queryWrapper = queryBuilder.build();
+            queryWrapper.in(FieldUtil.humpToUnderline(MyBatisConstants.FIELD_ID), ids);
+            return loadTreeNodes(queryWrapper);
+        }
+
+        private List<Map<String, Object>> loadTreeNodes(QueryWrapper<SysMenu> queryWrapper) {
+            List<SysMenu> menuList = IService.findList(queryWrapper);
+            return getBeanMapList(
+                    WrapperUtil.transformInstance(menuList, MenuModel.class), null);
+        }
+    };
+
     /** 菜单排除字段 */
     private static final String[] EXCLUSION_FIELDS = {
             "createBy", "createTime", "updateBy", "updateTime",
@@ -157,41 +209,24 @@ public class MenuRestController extends BaseRestController<SysMenu, MenuModel, I
     @PreAuthorize("hasAuthority('system_menu_select')")
     @Override
     public ResultWrapper<?> findMenuTreeByLazy(String parentId, String id) {
-        List<MenuModel> menuModelList;
+        TreeSnapshot snapshot = TreeSnapshotUtil.get(treeSnapshotSource);
         if(StringUtils.isEmpty(parentId)){
-            menuModelList = Lists.newArrayList();
             // 生成根节点菜单
-            MenuModel model = getGenMenuModel();
-            parentId = model.getParentId();
-            menuModelList.add(model);
-        }else{
-            // 只查菜单
-            QueryBuilder<SysMenu> queryBuilder = new GenQueryBuilder<>();
-            QueryWrapper<SysMenu> queryWrapper = queryBuilder.build();
-            queryWrapper.eq(
-                    FieldUtil.humpToUnderline(MyBatisConstants.FIELD_PARENT_ID), parentId);
-            queryWrapper.eq("type", MenuConstants.MENU);
+            TreeSnapshotUtil.write(
+                    snapshot.render(VARIANT_CHOOSE_ROOT, () -> getGenMenuTrees(snapshot, MENU_FILTER)));
+            return null;
+        }
 
+        // 只查菜单
+        if(StringUtils.isEmpty(id)){
+            TreeSnapshotUtil.write(
+                    snapshot.renderChildren(parentId, VARIANT_CHOOSE, MENU_FILTER));
+        }else {
             // 如果传入ID 则不包含自身
-            if(StringUtils.isNotEmpty(id)){
-                queryWrapper.notIn(
-                        FieldUtil.humpToUnderline(MyBatisConstants.FIELD_ID), id);
-
-            }
-
-            // 获得菜单
-            List<SysMenu> menuList = IService.findList(queryWrapper);
-            menuModelList = WrapperUtil.transformInstance(menuList, MenuModel.class);
+            TreeSnapshotUtil.write(
+                    snapshot.renderOnce(snapshot.getTrees(parentId, 1, MENU_FILTER, id)));
         }
-
-        // 获得菜单树
-        List<Tree<Object>> treeNodes = getMenuTrees(menuModelList, parentId,1);
-
-        // 处理是否包含子集
-        super.handleTreeHasChildren(treeNodes,
-                (parentIds)-> IService.hasChildrenByChoose(parentIds));
-
-        return ResultWrapper.getSuccessResultWrapper(treeNodes);
+        return null;
     }
 
     /**
@@ -204,30 +239,17 @@ public class MenuRestController extends BaseRestController<SysMenu, MenuModel, I
     @PreAuthorize("hasAuthority('system_menu_select')")
     @Override
     public ResultWrapper<?> findMenuTreePageByLazy(String parentId) {
-        List<MenuModel> menuModelList;
+        TreeSnapshot snapshot = TreeSnapshotUtil.get(treeSnapshotSource);
         if(StringUtils.isEmpty(parentId)){
-            menuModelList = Lists.newArrayList();
             // 生成根节点菜单
-            MenuModel model = getGenMenuModel();
-            parentId = model.getParentId();
-            menuModelList.add(model);
-        }else{
-            QueryBuilder<SysMenu> queryBuilder = new GenQueryBuilder<>();
-            QueryWrapper<SysMenu> queryWrapper = queryBuilder.build();
-            queryWrapper.eq(FieldUtil.humpToUnderline(MyBatisConstants.FIELD_PARENT_ID), parentId);
-
-            // 获得菜单
-            List<SysMenu> menuList = IService.findList(queryWrapper);
-            menuModelList = WrapperUtil.transformInstance(menuList, MenuModel.class);
+            TreeSnapshotUtil.write(
+                    snapshot.render(VARIANT_PAGE_ROOT, () -> getGenMenuTrees(snapshot, null)));
+            return null;
         }
-        // 获得菜单树
-        List<Tree<Object>> treeNodes = getMenuTrees(menuModelList, parentId,1);
 
-        // 处理是否包含子集
-        super.handleTreeHasChildren(treeNodes,
-                (parentIds)-> IService.hasChildren(parentIds));
-
-        return ResultWrapper.getSuccessResultWrapper(treeNodes);
+        TreeSnapshotUtil.write(
+                snapshot.renderChildren(parentId, VARIANT_PAGE, null));
+        return null;
     }
 
     /**
@@ -529,6 +551,26 @@ public class MenuRestController extends BaseRestController<SysMenu, MenuModel, I
         return TreeBuildUtil.INSTANCE.build(beanMapList, treeNodeConfig);
     }
 
+    /**
+     * 获得根节点菜单树 (懒加载首层)
+     * @param snapshot 树快照
+     * @param filter 子节点过滤 (可为空)
+     * @return List
+     */
+    private List<Tree<Object>> getGenMenuTrees(TreeSnapshot snapshot, Predicate<Map<String, Object>> filter) {
+        MenuModel model = getGenMenuModel();
+        List<Tree<Object>> treeNodes = getMenuTrees(
+                Lists.newArrayList(model), model.getParentId(), 1);
+
+        // 处理是否包含子集
+        boolean hasChildren = snapshot.hasChildren(model.getId(), filter);
+        for (Tree<Object> treeNode : treeNodes) {
+            treeNode.putExtra(TreeConstants.IS_LEAF, !hasChildren);
+            treeNode.putExtra(TreeConstants.HAS_CHILDREN, hasChildren);
+        }
+        return treeNodes;
+    }
+
     /**
      * 生成根节点
      * @return MenuModel
@@ -15,21 +15,42 @@
  */
 package org.opsli.modulars.system.monitor.web;
 
+import com.alibaba.fastjson.JSONObject;
 import com.google.common.collect.Maps;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
+import org.opsli.core.utils.MetricsSamplerUtil;
+import org.opsli.core.utils.MetricsSamplerUtil.MetricsSample;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.opsli.api.base.result.ResultWrapper;
 import org.opsli.common.annotation.ApiRestController;
-import org.opsli.core.utils.SystemInfoUtil;
+import org.opsli.common.thread.ThreadPoolFactory;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * 系统监控
  *
+ * 监控数据 由 MetricsSamplerUtil 后台定时采集，接口直接返回最新采集结果
+ * 实时推送 采用 SSE，每次采集 只序列化一次 再推送给全部连接
+ * 推送在独立线程池中执行 不占用采集线程；每个连接只保留最新一条待推送数据，
+ * 连续 MAX_BACKLOG 次采集仍未推送完成的慢连接 直接关闭，由浏览器自动重连
+ *
  * @author 薛佳琪
  * @date 2020-09-16 17:33
  */
@@ -38,6 +59,35 @@ import java.util.Map;
 @ApiRestController("/{ver}/system/monitor")
 public class MonitorController {
 
+    /** SSE 连接超时时间 (毫秒) 超时后由浏览器自动重连 */
+    private static final long SSE_TIMEOUT = 30 * 60 * 1000L;
+
+    /** SSE 事件名称 */
+    private static final String SSE_EVENT = "metrics";
+
+    /** 慢连接 连续积压的采集次数上限 */
+    private static final int MAX_BACKLOG = 3;
+
+    /** 推送线程数 */
+    private static final int SEND_THREADS = 4;
+
+    /** 推送队列大小 队列满时 视为慢连接 */
+    private static final int SEND_QUEUE_SIZE = 256;
+
+    /** 推送线程池名称 */
+    private static final String THREAD_POOL_NAME = "Monitor-Sse-Sender";
+
+    /** SSE 连接 */
+    private final Map<SseEmitter, Subscriber> emitters = new ConcurrentHashMap<>();
+
+    /** 推送线程池 */
+    private final ExecutorService sender = ThreadPoolFactory.createInitThreadPool(
+            SEND_THREADS, SEND_THREADS, 0L, TimeUnit.SECONDS, SEND_QUEUE_SIZE,
+            THREAD_POOL_NAME, new ThreadPoolExecutor.AbortPolicy());
+
+    /** 采集结果 推送 */
+    private final Consumer<MetricsSample> broadcaster = this::broadcast;
+
     /**
      * 查询服务器信息
      * @return ResultWrapper
@@ -46,17 +96,22 @@ public class MonitorController {
     @GetMapping("/getSystemInfo")
     @ApiOperation(value = "当前服务器信息", notes = "当前服务器信息")
     public ResultWrapper<?> getSystemInfo() {
-        Map<String,Object> map = Maps.newHashMapWithExpectedSize(5);
-        //服务器信息
-        map.put("systemInfo", SystemInfoUtil.INSTANCE.getSysInfo());
-        //CPU信息
-        map.put("cpuInfo", SystemInfoUtil.INSTANCE.getCpuInfo());
-        //内存信息
-        map.put("memInfo", SystemInfoUtil.INSTANCE.getMemoryInfo());
-        //JVM信息
-        map.put("JVMInfo", SystemInfoUtil.INSTANCE.getJvmInfo());
-        //磁盘信息
-        map.put("sysFileInfo", SystemInfoUtil.INSTANCE.getDiskInfo());
+        MetricsSample sample = MetricsSamplerUtil.getLatest();
+        Map<String,Object> map = Maps.newHashMapWithExpectedSize(6);
+        if(sample != null){
+            //服务器信息
+            map.put("systemInfo", sample.getSystemInfo());
+            //CPU信息
+            map.put("cpuInfo", sample.getCpuInfo());
+            //内存信息
+            map.put("memInfo", sample.getMemInfo());
+            //JVM信息
+            map.put("JVMInfo", sample.getJvmInfo());
+            //磁盘信息
+            map.put("sysFileInfo", sample.getSysFileInfo());
+            //线程池信息
+            map.put("threadPoolInfo", sample.getThreadPoolInfo());
+        }
         return ResultWrapper.getSuccessResultWrapper(map);
     }
 
@@ -68,8 +123,9 @@ public class MonitorController {
     @GetMapping("/getCpuInfo")
     @ApiOperation(value = "当前CPU信息", notes = "当前CPU信息")
     public ResultWrapper<?> getCpuInfo() {
-        return ResultWrapper
-                .getSuccessResultWrapper(SystemInfoUtil.INSTANCE.getCpuInfo());
+        MetricsSample sample = MetricsSamplerUtil.getLatest();
+        return ResultWrapper.getSuccessResultWrapper(
+                sample == null ? null : sample.getCpuInfo());
     }
 
     /**
@@ -80,8 +136,9 @@ public class MonitorController {
     @GetMapping("/getMemInfo")
     @ApiOperation(value = "当前内存信息", notes = "当前内存信息")
     public ResultWrapper<?> getMemInfo() {
+        MetricsSample sample = MetricsSamplerUtil.getLatest();
         return ResultWrapper.getSuccessResultWrapper(
-                SystemInfoUtil.INSTANCE.getMemoryInfo());
+                sample == null ? null : sample.getMemInfo());
     }
 
     /**
@@ -92,8 +149,189 @@ public class MonitorController {
     @GetMapping("/getJVMInfo")
     @ApiOperation(value = "当前JVM信息", notes = "当前JVM信息")
     public ResultWrapper<?> getJvmInfo() {
+        MetricsSample sample = MetricsSamplerUtil.getLatest();
+        return ResultWrapper.getSuccessResultWrapper(
+                sample == null ? null : sample.getJvmInfo());
+    }
+
+    /**
+     * 查询历史监控信息
+     * @return ResultWrapper
+     */
+    @PreAuthorize("hasAuthority('devops_sysmonitor_select')")
+    @GetMapping("/getHistory")
+    @ApiOperation(value = "历史监控信息", notes = "历史监控信息")
+    public ResultWrapper<?> getHistory() {
         return ResultWrapper.getSuccessResultWrapper(
-                SystemInfoUtil.INSTANCE.getJvmInfo());
+                MetricsSamplerUtil.getHistory());
     }
 
+    /**
+     * 实时监控信息 (SSE)
+     * 连接后 立即推送最新采集结果，之后每次采集完成时推送
+     * @return SseEmitter
+     */
+    @PreAuthorize("hasAuthority('devops_sysmonitor_select')")
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation(value = "实时监控信息", notes = "实时监控信息")
+    public SseEmitter stream() {
+        return this.register(new SseEmitter(SSE_TIMEOUT));
+    }
+
+    /**
+     * 登记连接 并推送最新采集结果
+     * @param emitter 连接
+     * @return SseEmitter
+     */
+    SseEmitter register(SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.put(emitter, subscriber);
+
+        MetricsSample sample = MetricsSamplerUtil.getLatest();
+        if(sample != null){
+            subscriber.offer(JSONObject.toJSONString(sample));
+        }
+        return emitter;
+    }
+
+    /**
+     * 推送采集结果 (采集线程调用 只投递 不等待发送)
+     * @param sample 采集结果
+     */
+    void broadcast(MetricsSample sample) {
+        if(emitters.isEmpty()){
+            return;
+        }
+        // 只序列化一次
+        String json = JSONObject.toJSONString(sample);
+        for (Subscriber subscriber : emitters.values()) {
+            subscriber.offer(json);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        MetricsSamplerUtil.addListener(broadcaster);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        MetricsSamplerUtil.removeListener(broadcaster);
+        sender.shutdownNow();
+        for (SseEmitter emitter : emitters.keySet()) {
+            emitter.complete();
+        }
+        emitters.clear();
+    }
+
+    /**
+     * 连接推送方
+     * 只保留最新一条待推送数据，同一连接 同一时刻最多一个推送任务
+     */
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+
+        /** 待推送数据 */
+        private final AtomicReference<String> pending = new AtomicReference<>();
+
+        /** 是否有推送任务 */
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        /** 连续积压次数 */
+        private final AtomicInteger backlog = new AtomicInteger();
+
+        /** 是否已关闭 */
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        /** 是否已结束连接 */
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * 投递 覆盖未推送的旧数据，推送未完成时 计入积压
+         * @param json 数据
+         */
+        private void offer(String json) {
+            pending.set(json);
+            if(sending.get() && backlog.incrementAndGet() >= MAX_BACKLOG){
+                this.close("积压过多");
+                return;
+            }
+            this.schedule();
+        }
+
+        private void schedule() {
+            if(closed.get() || !sending.compareAndSet(false, true)){
+                return;
+            }
+            try {
+                sender.execute(this::drain);
+            }catch (RejectedExecutionException e){
+                sending.set(false);
+                this.close("推送队列已满");
+            }
+        }
+
+        private void drain() {
+            try {
+                String json;
+                while (!closed.get() && (json = pending.getAndSet(null)) != null){
+                    emitter.send(SseEmitter.event()
+                            .name(SSE_EVENT)
+                            .data(json, MediaType.APPLICATION_JSON));
+                    backlog.set(0);
+                }
+            }catch (Exception e){
+                emitters.remove(emitter);
+                log.debug("监控推送失败 连接已断开：{}", e.getMessage());
+                return;
+            }finally {
+                sending.set(false);
+            }
+            // 推送期间被关闭 由推送线程结束连接
+            if(closed.get()){
+                this.complete();
+                return;
+            }
+            // 释放推送标记后 新到达的数据
+            if(pending.get() != null){
+                this.schedule();
+            }
+        }
+
+        /**
+         * 关闭 推送进行中时 (发送与结束连接 持有同一把锁) 由推送线程在发送返回后结束连接，
+         * 调用方 (采集线程) 不等待
+         * @param reason 原因
+         */
+        private void close(String reason) {
+            if(!closed.compareAndSet(false, true)){
+                return;
+            }
+            pending.set(null);
+            emitters.remove(emitter);
+            log.debug("监控推送 慢连接已关闭：{}", reason);
+            if(!sending.get()){
+                this.complete();
+            }
+        }
+
+        private void complete() {
+            if(!completed.compareAndSet(false, true)){
+                return;
+            }
+            try {
+                emitter.complete();
+            }catch (Exception e){
+                log.debug("监控推送 结束连接失败：{}", e.getMessage());
+            }
+        }
+    }
 }
@@ -23,6 +23,7 @@ import org.apache.ibatis.annotations.Param;
 import org.opsli.core.base.entity.HasChildren;
 import org.opsli.modulars.system.org.entity.SysOrg;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -50,4 +51,35 @@ public interface SysOrgMapper extends BaseMapper<SysOrg> {
      */
     Integer hasUse(@Param(Constants.WRAPPER) Wrapper<?> wrapper);
 
+    /**
+     * 批量替换下级路径前缀 (parent_ids、org_ids)
+     * 所有下级 在一条语句中完成，语句数量与层级深度、下级数量无关
+     *
+     * 自定义语句 更新人、更新时间 由拦截器注入到 et 中
+     *
+     * @param oldOrgIds 原组织路径 xxx,xxx
+     * @param entity 新组织路径 (orgIds) xxx,xxx
+     * @return Integer 影响行数
+     */
+    Integer updateChildrenPath(@Param("oldOrgIds") String oldOrgIds,
+                               @Param(Constants.ENTITY) SysOrg entity);
+
+    /**
+     * 获得组织 (连同下级) 绑定的用户ID
+     * @param orgIdsList 组织路径集合
+     * @return List
+     */
+    List<String> findUserIdsByOrgIds(@Param("orgIdsList") List<String> orgIdsList);
+
+    /**
+     * 获得租户管理员ID (含超级管理员)
+     * 未绑定组织时 默认享有租户下全部顶级组织
+     *
+     * @param tenantIds 租户ID集合
+     * @param superAdmin 超级管理员用户名
+     * @return List
+     */
+    List<String> findTenantAdminIds(@Param("tenantIds") Collection<String> tenantIds,
+                                    @Param("superAdmin") String superAdmin);
+
 }
@@ -22,34 +22,32 @@ import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.opsli.api.wrapper.system.org.SysOrgModel;
-import org.opsli.api.wrapper.system.user.UserModel;
 import org.opsli.common.constants.MyBatisConstants;
 import org.opsli.common.enums.DictType;
 import org.opsli.common.exception.ServiceException;
 import org.opsli.common.utils.FieldUtil;
-import org.opsli.common.utils.ListDistinctUtil;
 import org.opsli.core.base.entity.HasChildren;
 import org.opsli.core.base.service.impl.CrudServiceImpl;
 import org.opsli.core.msg.CoreMsg;
-import org.opsli.core.persistence.querybuilder.GenQueryBuilder;
-import org.opsli.core.persistence.querybuilder.QueryBuilder;
 import org.opsli.core.persistence.querybuilder.chain.QueryTenantHandler;
-import org.opsli.core.utils.TenantUtil;
 import org.opsli.core.utils.UserUtil;
 import org.opsli.modulars.system.SystemMsg;
 import org.opsli.modulars.system.org.entity.SysOrg;
 import org.opsli.modulars.system.org.mapper.SysOrgMapper;
 import org.opsli.modulars.system.org.service.ISysOrgService;
-import org.opsli.modulars.system.user.service.IUserOrgRefService;
-import org.opsli.modulars.system.user.service.IUserRoleRefService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -60,6 +58,7 @@ import java.util.Set;
  * @author Parker
  * @date 2021-02-07 18:24:38
  */
+@Slf4j
 @Service
 public class SysOrgServiceImpl extends CrudServiceImpl<SysOrgMapper, SysOrg, SysOrgModel>
         implements ISysOrgService {
@@ -71,10 +70,6 @@ public class SysOrgServiceImpl extends CrudServiceImpl<SysOrgMapper, SysOrg, Sys
 
     @Autowired(required = false)
     private SysOrgMapper mapper;
-    @Autowired
-    private IUserRoleRefService iUserRoleRefService;
-    @Autowired
-    private IUserOrgRefService iUserOrgRefService;
 
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -114,16 +109,6 @@ public class SysOrgServiceImpl extends CrudServiceImpl<SysOrgMapper, SysOrg, Sys
                             sysOrgModel.getId());
         }
 
-        // 清理缓存 清除当前租户下 所有角色的数据范围为 全部数据的 用户缓存
-        // 如果是超级管理员体系 下的用户 还需要清空超级管理员的 缓存
-        if(TenantUtil.SUPER_ADMIN_TENANT_ID.equals(UserUtil.getTenantId())){
-            UserModel superAdmin = UserUtil.getUserByUserName(UserUtil.SUPER_ADMIN);
-            if(null != superAdmin){
-                // 清除缓存
-                this.clearCache(Collections.singletonList(superAdmin.getId()));
-            }
-        }
-
         // 更新 orgIds 字段
         SysOrgModel insertModel = super.insert(model);
         if(null != insertModel){
@@ -141,18 +126,11 @@ public class SysOrgServiceImpl extends CrudServiceImpl<SysOrgMapper, SysOrg, Sys
                 throw new RuntimeException("更新OrgIds失败");
             }
 
-            // 获得当前租户下 数据权限为全部数据的 用户ID 集合
-            List<String> userIdList = Lists.newArrayList();
-            List<String> userIdListByTenantId =
-                    iUserRoleRefService.getUserIdListByTenantIdAndAllData(UserUtil.getTenantId());
-            // 获得当前租户下 ordIds 分组后 所有用户ID 集合
-            List<String> userIdListByOrgIds = iUserOrgRefService.getUserIdListByOrgIds(orgIds);
-            // 组合ID
-            userIdList.addAll(userIdListByTenantId);
-            userIdList.addAll(userIdListByOrgIds);
-
-            // 清除缓存
-            this.clearCache(userIdList);
+            // 新增顶级组织 租户管理员默认组织随之变化，下级组织不影响任何用户缓存
+            if(TOP_PARENT_ID.equals(insertModel.getParentId())){
+                this.clearCache(Collections.emptyList(),
+                        Collections.singletonList(insertModel.getTenantId()));
+            }
         }
 
         return insertModel;
@@ -175,6 +153,18 @@ public class SysOrgServiceImpl extends CrudServiceImpl<SysOrgMapper, SysOrg, Sys
             throw new ServiceException(SystemMsg.EXCEPTION_ORG_UNIQUE);
         }
 
+        // 原数据
+        SysOrgModel sourceModel = super.get(model);
+
+        // 如果上级ID 为顶级ID
+        if(TOP_PARENT_ID.equals(model.getParentId())){
+            model.setParentIds(TOP_PARENT_ID);
+            model.setOrgIds(
+                    StrUtil.appendIfMissing(
+                            model.getParentIds(), DELIMITER) +
+                            model.getId());
+        }
+
         // 如果上级ID不为空 且 不等于顶级ID
         if(StringUtils.isNotEmpty(model.getParentId()) &&
                 !TOP_PARENT_ID.equals(model.getParentId())
@@ -182,6 +172,11 @@ public class SysOrgServiceImpl extends CrudServiceImpl<SysOrgMapper, SysOrg, Sys
 
             SysOrgModel sysOrgModel = super.get(model.getParentId());
 
+            // 上级不可为自身或自身下级 否则路径成环
+            if(sourceModel != null && isSelfOrChild(sysOrgModel, getOrgIds(sourceModel))){
+                throw new ServiceException(SystemMsg.EXCEPTION_ORG_PARENT_CHILD);
+            }
+
             // 下级沿用上级租户ID
             model.setTenantId(sysOrgModel.getTenantId());
             // 下级沿用上级ParentIds
@@ -196,39 +191,57 @@ public class SysOrgServiceImpl extends CrudServiceImpl<SysOrgMapper, SysOrg, Sys
                             model.getId());
         }
 
-        SysOrgModel sysOrgModel = super.get(model);
         SysOrgModel updateRet = super.update(model);
+        if(sourceModel == null){
+            return updateRet;
+        }
+
+        // 原组织路径 下级均以此为前缀
+        String oldOrgIds = getOrgIds(sourceModel);
+
+        boolean tenantChanged = StringUtils.isNotEmpty(model.getTenantId()) &&
+                !model.getTenantId().equals(sourceModel.getTenantId());
+        boolean pathChanged = StringUtils.isNotEmpty(model.getOrgIds()) &&
+                !model.getOrgIds().equals(oldOrgIds);
+
+        // 用户缓存中 只有组织路径、租户 取自组织，其余字段变化 不影响任何用户缓存
+        if(!tenantChanged && !pathChanged){
+            return updateRet;
+        }
+
+        // 受影响用户 按原路径查找 须在修改下级路径之前
+        List<String> userIds = mapper.findUserIdsByOrgIds(Collections.singletonList(oldOrgIds));
 
         // 如果 TenantId 发生变化 则需要更改 下级数据 租户ID
-        if(sysOrgModel != null && !sysOrgModel.getTenantId().equals(
-                model.getTenantId())){
+        if(tenantChanged){
             // 如果有组织还在被引用 则不允许操作该组织
-            this.validationUsedByDel(Collections.singletonList(sysOrgModel.getId()));
+            this.validationUsedByDel(Collections.singletonList(sourceModel.getId()));
 
-            // 如果没有被引用 则逐级修改
-            this.updateTenantByParentId(sysOrgModel.getId(), model.getTenantId());
+            // 如果没有被引用 则整体修改
+            this.updateChildrenTenant(oldOrgIds, model.getTenantId());
         }
 
-        // 如果 parentId 发生变化 则需要更改 下级数据 租户ID
-        if(sysOrgModel != null && !sysOrgModel.getParentId().equals(
-                model.getParentId())){
+        // 如果 parentId 发生变化 则需要更改 下级数据 parentIds、orgIds
+        if(pathChanged){
             // 如果有组织还在被引用 则不允许操作该组织
-            this.validationUsedByDel(Collections.singletonList(sysOrgModel.getId()));
+            this.validationUsedByDel(Collections.singletonList(sourceModel.getId()));
 
-            // 如果没有被引用 则逐级修改
-            this.updateChildrenParentIdsByParentId(sysOrgModel.getId());
+            // 如果没有被引用 则整体修改
+            SysOrg entity = new SysOrg();
+            entity.setOrgIds(model.getOrgIds());
+            mapper.updateChildrenPath(oldOrgIds, entity);
         }
 
-        // 获得当前租户下 数据权限为全部数据的 用户ID 集合
-        List<String> userIdList =
-                iUserRoleRefService.getUserIdListByTenantIdAndAllData(UserUtil.getTenantId());
-        // 获得当前租户下 ordIds 分组后 所有用户ID 集合
-        List<String> userIdListByOrgIds = iUserOrgRefService.getUserIdListByOrgIds(updateRet.getOrgIds());
-        // 组合ID
-        userIdList.addAll(userIdListByOrgIds);
+        // 移入或移出顶级 原租户、新租户的租户管理员 默认组织随之变化
+        Set<String> tenantIds = new LinkedHashSet<>();
+        if(TOP_PARENT_ID.equals(sourceModel.getParentId()) || TOP_PARENT_ID.equals(model.getParentId())){
+            tenantIds.add(sourceModel.getTenantId());
+            tenantIds.add(StringUtils.isNotEmpty(model.getTenantId())
+                    ? model.getTenantId() : sourceModel.getTenantId());
+        }
 
         // 清除缓存
-        this.clearCache(userIdList);
+        this.clearCache(userIds, tenantIds);
 
         // 修改
         return updateRet;
@@ -245,10 +258,24 @@ public class SysOrgServiceImpl extends CrudServiceImpl<SysOrgMapper, SysOrg, Sys
         // 如果有组织还在被引用 则不允许操作该组织
         this.validationUsedByDel(Collections.singletonList(id));
 
+        SysOrgModel sysOrgModel = super.get(id);
+        if(sysOrgModel == null){
+            return false;
+        }
+
+        // 受影响用户 须在删除之前查找
+        List<String> orgIdsList = Collections.singletonList(getOrgIds(sysOrgModel));
+        List<String> userIds = mapper.findUserIdsByOrgIds(orgIdsList);
+
         // 先删除子数据
-        this.deleteByParentId(id);
+        this.deleteChildren(orgIdsList);
+
+        boolean ret = super.delete(id);
+
+        // 清除缓存
+        this.clearCache(userIds, getTopTenantIds(Collections.singletonList(sysOrgModel)));
 
-        return super.delete(id);
+        return ret;
     }
 
     @Override
@@ -262,80 +289,95 @@ public class SysOrgServiceImpl extends CrudServiceImpl<SysOrgMapper, SysOrg, Sys
         this.validationUsedByDel(Convert.toList(String.class, ids));
 
         // 先删除子数据
-        for (String id : ids) {
-            this.deleteByParentId(id);
+        List<SysOrg> entityList = this.listByIds(Convert.toList(String.class, ids));
+        List<SysOrgModel> modelList = super.transformTs2Ms(entityList);
+        List<String> orgIdsList = Lists.newArrayListWithCapacity(modelList.size());
+        for (SysOrgModel sysOrgModel : modelList) {
+            orgIdsList.add(getOrgIds(sysOrgModel));
         }
+        // 受影响用户 须在删除之前查找
+        List<String> userIds = CollUtil.isEmpty(orgIdsList)
+                ? Collections.emptyList()
+                : mapper.findUserIdsByOrgIds(orgIdsList);
+        this.deleteChildren(orgIdsList);
+
+        boolean ret = super.deleteAll(ids);
 
-        return super.deleteAll(ids);
+        // 清除缓存
+        this.clearCache(userIds, getTopTenantIds(modelList));
+
+        return ret;
     }
 
     /**
-     * 逐级修改机构下租户
-     * @param parentId 父级ID
+     * 整体修改下级租户
+     * 按 org_ids 前缀匹配全部下级，一条语句完成
+     *
+     * @param orgIds 组织路径
+     * @param tenantId 租户ID
      */
-    @Transactional(rollbackFor = Exception.class)
-    public void updateTenantByParentId(String parentId, String tenantId) {
-        QueryBuilder<SysOrg> queryBuilder = new GenQueryBuilder<>();
-        QueryWrapper<SysOrg> queryWrapper = queryBuilder.build();
-        queryWrapper.eq(
-                FieldUtil.humpToUnderline(MyBatisConstants.FIELD_PARENT_ID), parentId);
-        List<SysOrg> entityList = super.findList(queryWrapper);
-        for (SysOrg sysOrg : entityList) {
-            sysOrg.setTenantId(tenantId);
-            super.updateById(sysOrg);
-            // 逐级删除子数据
-            this.updateTenantByParentId(sysOrg.getId(), tenantId);
-        }
+    private void updateChildrenTenant(String orgIds, String tenantId) {
+        // 经由实体更新 更新人、更新时间 由拦截器注入
+        SysOrg entity = new SysOrg();
+        entity.setTenantId(tenantId);
+        UpdateWrapper<SysOrg> updateWrapper = new UpdateWrapper<>();
+        updateWrapper.likeRight(
+                FieldUtil.humpToUnderline(MyBatisConstants.FIELD_ORG_GROUP),
+                StrUtil.appendIfMissing(orgIds, DELIMITER));
+        this.update(entity, updateWrapper);
     }
 
     /**
-     * 逐级修改机构下租户
-     * @param parentId 父级ID
+     * 整体删除下级
+     * 按 org_ids 前缀匹配全部下级，一条语句完成
+     *
+     * @param orgIdsList 组织路径集合
      */
-    @Transactional(rollbackFor = Exception.class)
-    public void updateChildrenParentIdsByParentId(String parentId) {
-        QueryBuilder<SysOrg> queryBuilder = new GenQueryBuilder<>();
-        QueryWrapper<SysOrg> queryWrapper = queryBuilder.build();
-        queryWrapper.eq(
-                FieldUtil.humpToUnderline(MyBatisConstants.FIELD_PARENT_ID), parentId);
-        List<SysOrg> entityList = super.findList(queryWrapper);
-        for (SysOrg sysOrg : entityList) {
-            SysOrgModel sysOrgModel = super.get(parentId);
-
-            // 下级沿用上级ParentIds
-            sysOrg.setParentIds(
-                    StrUtil.appendIfMissing(
-                            sysOrgModel.getParentIds(), DELIMITER) +
-                            sysOrgModel.getId());
+    private void deleteChildren(List<String> orgIdsList) {
+        if(CollUtil.isEmpty(orgIdsList)){
+            return;
+        }
 
-            // 下级沿用上级OrgIds
-            sysOrg.setOrgIds(
-                    StrUtil.appendIfMissing(
-                            sysOrg.getParentIds(), DELIMITER) +
-                            sysOrg.getId());
+        QueryWrapper<SysOrg> queryWrapper = new QueryWrapper<>();
+        queryWrapper.and(wra -> {
+            for (String orgIds : orgIdsList) {
+                wra.or().likeRight(
+                        FieldUtil.humpToUnderline(MyBatisConstants.FIELD_ORG_GROUP),
+                        StrUtil.appendIfMissing(orgIds, DELIMITER));
+            }
+        });
+        this.remove(queryWrapper);
+    }
 
-            super.updateById(sysOrg);
-            // 逐级删除子数据
-            this.updateChildrenParentIdsByParentId(sysOrg.getId());
+    /**
+     * 获得组织路径 (parentIds + 自身ID)
+     * 历史数据 orgIds 为空时 按 parentIds 拼接
+     *
+     * @param model 模型
+     * @return String
+     */
+    private String getOrgIds(SysOrgModel model) {
+        if(StringUtils.isNotEmpty(model.getOrgIds())){
+            return model.getOrgIds();
         }
+        return StrUtil.appendIfMissing(
+                model.getParentIds(), DELIMITER) +
+                model.getId();
     }
 
     /**
-     * 逐级删除子数据
-     * @param parentId 父级ID
+     * 是否为自身或自身下级
+     * @param model 模型
+     * @param orgIds 自身组织路径
+     * @return boolean
      */
-    @Transactional(rollbackFor = Exception.class)
-    public void deleteByParentId(String parentId) {
-        QueryBuilder<SysOrg> queryBuilder = new GenQueryBuilder<>();
-        QueryWrapper<SysOrg> queryWrapper = queryBuilder.build();
-        queryWrapper.eq(
-                FieldUtil.humpToUnderline(MyBatisConstants.FIELD_PARENT_ID), parentId);
-        List<SysOrg> entityList = super.findList(queryWrapper);
-        for (SysOrg sysOrg : entityList) {
-            super.delete(sysOrg.getId());
-            // 逐级删除子数据
-            this.deleteByParentId(sysOrg.getId());
+    private boolean isSelfOrChild(SysOrgModel model, String orgIds) {
+        if(model == null){
+            return false;
         }
+        String modelOrgIds = getOrgIds(model);
+        return modelOrgIds.equals(orgIds) ||
+                modelOrgIds.startsWith(StrUtil.appendIfMissing(orgIds, DELIMITER));
     }
 
     /**
@@ -408,34 +450,76 @@ public class SysOrgServiceImpl extends CrudServiceImpl<SysOrgMapper, SysOrg, Sys
         }
     }
 
+    /**
+     * 获得顶级组织的租户ID
+     * @param modelList 组织集合
+     * @return Set
+     */
+    private Set<String> getTopTenantIds(List<SysOrgModel> modelList) {
+        Set<String> tenantIds = new LinkedHashSet<>();
+        for (SysOrgModel sysOrgModel : modelList) {
+            if(TOP_PARENT_ID.equals(sysOrgModel.getParentId())){
+                tenantIds.add(sysOrgModel.getTenantId());
+            }
+        }
+        return tenantIds;
+    }
+
     /**
      * 清除缓存
-     * @param userIdList 用户ID 集合
+     * 只删除受影响用户的组织缓存 (连同授权快照)：
+     * 1. 绑定在该组织及其下级的用户
+     * 2. 顶级组织变化时 对应租户的租户管理员 (未绑定组织时 默认享有租户下全部顶级组织)
+     *
+     * 处于事务中时 提交后再删除一次，防止事务提交前 其余请求按旧数据重建缓存
+     *
+     * @param userIds 用户ID集合
+     * @param tenantIds 租户ID集合
      */
-    private void clearCache(List<String> userIdList){
-        if(CollUtil.isNotEmpty(userIdList)){
-            // 去重
-            List<String> distinctUserIdList = ListDistinctUtil.distinct(userIdList);
-
-            int cacheCount = 0;
-            for (String userId : distinctUserIdList) {
-                cacheCount += 2;
-                boolean tmp;
-                // 清空当期用户缓存 组织
-                tmp = UserUtil.refreshUserOrgs(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-                tmp = UserUtil.refreshUserDefOrg(userId);
-                if(tmp){
-                    cacheCount--;
+    private void clearCache(List<String> userIds, Collection<String> tenantIds){
+        Set<String> userIdSet = new LinkedHashSet<>(userIds);
+        Set<String> tenantIdSet = new LinkedHashSet<>(tenantIds);
+        tenantIdSet.removeIf(StringUtils::isEmpty);
+        if(CollUtil.isNotEmpty(tenantIdSet)){
+            userIdSet.addAll(mapper.findTenantAdminIds(tenantIdSet, UserUtil.SUPER_ADMIN));
+        }
+        if(userIdSet.isEmpty()){
+            return;
+        }
+
+        if(!this.doClearCache(userIdSet)){
+            // 删除缓存失败
+            throw new ServiceException(CoreMsg.CACHE_DEL_EXCEPTION);
+        }
+
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    if(!doClearCache(userIdSet)){
+                        log.error("组织变更 提交后清除用户缓存失败：{}", userIdSet);
+                    }
                 }
-            }
-            // 判断删除状态
-            if(cacheCount != 0){
-                // 删除缓存失败
-                throw new ServiceException(CoreMsg.CACHE_DEL_EXCEPTION);
+            });
+        }
+    }
+
+    /**
+     * 删除用户组织缓存
+     * @param userIds 用户ID集合
+     * @return boolean
+     */
+    private boolean doClearCache(Collection<String> userIds){
+        boolean ret = true;
+        for (String userId : userIds) {
+            try {
+                ret &= UserUtil.refreshUserOrgs(userId);
+                ret &= UserUtil.refreshUserDefOrg(userId);
+            }catch (Exception e){
+                log.error(e.getMessage(), e);
+                ret = false;
             }
         }
+        return ret;
     }
 }
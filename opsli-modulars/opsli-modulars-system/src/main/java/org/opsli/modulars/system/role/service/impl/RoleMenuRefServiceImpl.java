@@ -15,23 +15,19 @@
  */
 package org.opsli.modulars.system.role.service.impl;
 
-import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.convert.Convert;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
 import org.opsli.common.exception.ServiceException;
-import org.opsli.core.msg.CoreMsg;
-import org.opsli.core.utils.UserUtil;
+import org.opsli.core.cache.CacheGeneration;
 import org.opsli.modulars.system.SystemMsg;
 import org.opsli.modulars.system.menu.entity.SysMenu;
 import org.opsli.modulars.system.role.entity.SysRoleMenuRef;
 import org.opsli.modulars.system.role.mapper.RoleMenuRefMapper;
 import org.opsli.modulars.system.role.service.IRoleMenuRefService;
-import org.opsli.modulars.system.user.service.IUserRoleRefService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -50,10 +46,6 @@ public class RoleMenuRefServiceImpl extends ServiceImpl<RoleMenuRefMapper,SysRol
     @Autowired(required = false)
     private RoleMenuRefMapper mapper;
 
-    @Lazy
-    @Autowired
-    private IUserRoleRefService iUserRoleRefService;
-
     @Override
     public List<SysMenu> getPerms(String roleId) {
         return mapper.queryAllPerms(roleId);
@@ -80,7 +72,7 @@ public class RoleMenuRefServiceImpl extends ServiceImpl<RoleMenuRefMapper,SysRol
             boolean ret = super.saveBatch(list);
             if(ret){
                 // 清除缓存
-                this.clearCache(roleId);
+                this.clearCache();
             }
             return ret;
         }
@@ -108,48 +100,10 @@ public class RoleMenuRefServiceImpl extends ServiceImpl<RoleMenuRefMapper,SysRol
 
     /**
      * 清除缓存
-     * @param roleId 角色ID
+     * 递增角色世代号 所有用户的角色、权限、菜单缓存随之失效，不再逐个用户删除
      */
-    private void clearCache(String roleId){
-        // 清空该角色下 用户缓存
-        List<String> userIdList = iUserRoleRefService.getUserIdListByRoleId(roleId);
-        if(CollUtil.isNotEmpty(userIdList)){
-            int cacheCount = 0;
-            for (String userId : userIdList) {
-                cacheCount += 6;
-                boolean tmp;
-                // 清空当期用户缓存角色、权限、菜单
-                tmp = UserUtil.refreshUserRoles(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-                tmp = UserUtil.refreshUserAllPerms(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-                tmp = UserUtil.refreshUserMenus(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-                tmp = UserUtil.refreshUserOrgs(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-                tmp = UserUtil.refreshUserDefRole(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-                tmp = UserUtil.refreshUserDefOrg(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-            }
-            // 判断删除状态
-            if(cacheCount != 0){
-                // 删除缓存失败
-                throw new ServiceException(CoreMsg.CACHE_DEL_EXCEPTION);
-            }
-        }
+    private void clearCache(){
+        CacheGeneration.increment(CacheGeneration.Scope.ROLE);
     }
 }
 
@@ -25,6 +25,7 @@ import org.opsli.common.constants.MyBatisConstants;
 import org.opsli.common.exception.ServiceException;
 import org.opsli.common.utils.FieldUtil;
 import org.opsli.core.base.service.impl.CrudServiceImpl;
+import org.opsli.core.cache.CacheGeneration;
 import org.opsli.core.msg.CoreMsg;
 import org.opsli.core.utils.UserUtil;
 import org.opsli.modulars.system.SystemMsg;
@@ -109,7 +110,7 @@ public class RoleServiceImpl extends CrudServiceImpl<RoleMapper, SysRole, RoleMo
         model = super.update(model);
         // 清除缓存
         if(null != model){
-            clearCache(Convert.toStrArray(model.getId()));
+            clearCache();
         }
         return model;
     }
@@ -241,40 +242,10 @@ public class RoleServiceImpl extends CrudServiceImpl<RoleMapper, SysRole, RoleMo
 
     /**
      * 清除缓存
-     * @param roleIds 角色ID
+     * 递增角色世代号 所有用户的角色、权限、菜单缓存随之失效，不再逐个用户删除
      */
-    private void clearCache(String[] roleIds){
-        // 清空该角色下 用户缓存
-        List<String> userIdList = iUserRoleRefService.getUserIdListByRoleIds(roleIds);
-        if(CollUtil.isNotEmpty(userIdList)){
-            int cacheCount = 0;
-            for (String userId : userIdList) {
-                cacheCount += 4;
-                boolean tmp;
-                // 清空当期用户缓存角色、权限、菜单
-                tmp = UserUtil.refreshUserRoles(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-                tmp = UserUtil.refreshUserAllPerms(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-                tmp = UserUtil.refreshUserMenus(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-                tmp = UserUtil.refreshUserDefRole(userId);
-                if(tmp){
-                    cacheCount--;
-                }
-            }
-            // 判断删除状态
-            if(cacheCount != 0){
-                // 删除缓存失败
-                throw new ServiceException(CoreMsg.CACHE_DEL_EXCEPTION);
-            }
-        }
+    private void clearCache(){
+        CacheGeneration.increment(CacheGeneration.Scope.ROLE);
     }
 
 }
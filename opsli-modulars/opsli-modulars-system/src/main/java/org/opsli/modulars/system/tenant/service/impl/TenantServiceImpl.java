@@ -29,6 +29,7 @@ import org.opsli.common.enums.DictType;
 import org.opsli.common.exception.ServiceException;
 import org.opsli.common.utils.FieldUtil;
 import org.opsli.core.base.service.impl.CrudServiceImpl;
+import org.opsli.core.cache.CacheGeneration;
 import org.opsli.core.msg.CoreMsg;
 import org.opsli.core.utils.TenantUtil;
 import org.opsli.core.utils.UserUtil;
@@ -383,6 +384,9 @@ public class TenantServiceImpl extends CrudServiceImpl<TenantMapper, SysTenant,
                 // 删除缓存失败
                 throw new ServiceException(CoreMsg.CACHE_DEL_EXCEPTION);
             }
+
+            // 租户有变动 递增租户世代号 所有用户的授权快照随之失效
+            CacheGeneration.increment(CacheGeneration.Scope.TENANT);
         }
     }
 
@@ -65,7 +65,7 @@ public class VerificationCodeBean {
         String content = EnjoyUtil.render(EMAIL_FTL, kv);
 
         emailPlugin
-                .send(email, subject, content, true,
+                .sendAsync(email, subject, content, true,
                         EmailConfigFactory.INSTANCE.getConfig());
     }
 
@@ -94,7 +94,7 @@ public class VerificationCodeBean {
                 .templateParam(templateParam)
                 .tels(Collections.singletonList(mobile))
                 .build();
-        SmsFactory.sendSms(SmsType.ALIYUN, smsModel);
+        SmsFactory.sendSmsAsync(SmsType.ALIYUN, smsModel);
     }
 
 }
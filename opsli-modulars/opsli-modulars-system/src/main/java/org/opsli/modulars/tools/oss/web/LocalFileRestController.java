@@ -0,0 +1,100 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.modulars.tools.oss.web;
+
+import cn.hutool.core.util.StrUtil;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.common.utils.IPUtil;
+import org.opsli.core.holder.UserContextHolder;
+import org.opsli.core.utils.UserUtil;
+import org.opsli.plugins.oss.OssStorageFactory;
+import org.opsli.plugins.oss.enums.OssStorageType;
+import org.opsli.plugins.oss.local.LocalFileDownloader;
+import org.opsli.plugins.oss.service.OssStorageService;
+import org.opsli.plugins.oss.service.impl.LocalStorageServiceImpl;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * 本地文件下载 Controller
+ *
+ * 替代静态资源映射 提供 范围请求 (断点续传、视频拖动)、条件请求 (304)，
+ * 同一用户 (未登录时 同一客户端地址) 同时下载数量有上限，见 {@link LocalFileDownloader}
+ *
+ * 文件地址 与上传时返回的地址一致 不带接口前缀，故不使用 ApiRestController
+ *
+ * @author Parker
+ * @date 2021-12-30 11:20
+ */
+@Api(tags = "本地文件下载")
+@Slf4j
+@RestController
+@RequestMapping(LocalFileRestController.FIXED_PATH)
+public class LocalFileRestController {
+
+    /** 固定路径 与本地存储一致 */
+    static final String FIXED_PATH = "/static/files";
+
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+    /**
+     * 文件下载 (HEAD 请求 只返回响应头)
+     * @param request request
+     * @param response response
+     */
+    @ApiOperation(value = "文件下载", notes = "文件下载")
+    @GetMapping("/**")
+    public void download(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = StrUtil.removePrefix(
+                URL_PATH_HELPER.getPathWithinApplication(request), FIXED_PATH);
+
+        File file = null;
+        OssStorageService ossStorageService = OssStorageFactory.INSTANCE.getHandle(OssStorageType.LOCAL);
+        if(ossStorageService instanceof LocalStorageServiceImpl){
+            file = ((LocalStorageServiceImpl) ossStorageService).getFile(path);
+        }
+
+        LocalFileDownloader.INSTANCE.serve(file, getClientKey(request), request, response);
+    }
+
+    /**
+     * 获得下载限流标识
+     *
+     * 按用户限制同时下载数，未登录或 Token 失效时 按客户端地址
+     *
+     * @param request request
+     * @return String
+     */
+    private String getClientKey(HttpServletRequest request){
+        try {
+            if(UserContextHolder.getToken().filter(StrUtil::isNotEmpty).isPresent()){
+                return UserUtil.getUser().getId();
+            }
+        }catch (Exception ignored){}
+        return IPUtil.getClientAddressBySingle(request);
+    }
+
+}
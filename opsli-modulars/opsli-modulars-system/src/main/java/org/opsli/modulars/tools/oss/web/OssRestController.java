@@ -7,15 +7,21 @@ import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.opsli.api.base.result.ResultWrapper;
 import org.opsli.common.annotation.ApiRestController;
+import org.opsli.core.utils.UserUtil;
 import org.opsli.modulars.system.SystemMsg;
 import org.opsli.plugins.oss.OssStorageFactory;
+import org.opsli.plugins.oss.chunk.ChunkSession;
+import org.opsli.plugins.oss.chunk.ChunkUploadManager;
+import org.opsli.plugins.oss.msg.OssMsg;
 import org.opsli.plugins.oss.service.BaseOssStorageService;
 import org.opsli.plugins.oss.service.OssStorageService;
 import org.springframework.core.io.Resource;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
@@ -56,7 +62,7 @@ public class OssRestController {
             // 调用OSS 服务保存文件
             OssStorageService ossStorageService = OssStorageFactory.INSTANCE.getHandle();
             BaseOssStorageService.FileAttr fileAttr = ossStorageService.upload(
-                    multipartFile.getInputStream(), FileUtil.extName(filename));
+                    multipartFile.getInputStream(), FileUtil.extName(filename), UserUtil.getUser().getId());
 
             return ResultWrapper.getSuccessResultWrapper(fileAttr);
         }catch (IOException e){
@@ -65,5 +71,129 @@ public class OssRestController {
         return ResultWrapper.getErrorResultWrapper();
     }
 
+    /**
+     * 秒传 获取挑战
+     * 无论内容是否存在 都返回挑战，返回数据为空时 表示不支持秒传 需调用上传接口
+     *
+     * @param digest 内容摘要 (SHA-256)
+     * @param size 文件大小
+     * @return ResultWrapper
+     */
+    @ApiOperation(value = "秒传 获取挑战", notes = "秒传 获取挑战")
+    @PostMapping("/uploadByDigest/challenge")
+    public ResultWrapper<BaseOssStorageService.DigestChallenge> challengeDigest(String digest, long size) {
+        OssStorageService ossStorageService = OssStorageFactory.INSTANCE.getHandle();
+        return ResultWrapper.getSuccessResultWrapper(ossStorageService.challengeDigest(digest, size));
+    }
+
+    /**
+     * 秒传 回答挑战 引用已上传的文件
+     * 回答为 hex(SHA-256(挑战编号 + 文件中挑战范围的字节))
+     * 返回数据为空时 表示内容不存在或回答错误 需调用上传接口
+     *
+     * @param challengeId 挑战编号
+     * @param proof 回答
+     * @param suffix 后缀
+     * @return ResultWrapper
+     */
+    @ApiOperation(value = "秒传", notes = "秒传")
+    @PostMapping("/uploadByDigest")
+    public ResultWrapper<BaseOssStorageService.FileAttr> uploadByDigest(String challengeId, String proof,
+                                                                       String suffix) {
+        OssStorageService ossStorageService = OssStorageFactory.INSTANCE.getHandle();
+        BaseOssStorageService.FileAttr fileAttr = ossStorageService.uploadByDigest(
+                challengeId, proof, suffix, UserUtil.getUser().getId());
+        return ResultWrapper.getSuccessResultWrapper(fileAttr);
+    }
+
+    /**
+     * 文件删除 只能删除本人上传的文件
+     * @param fileStoragePath 文件存储路径
+     * @return ResultWrapper
+     */
+    @ApiOperation(value = "文件删除", notes = "文件删除")
+    @PostMapping("/delete")
+    public ResultWrapper<?> delete(String fileStoragePath) {
+        OssStorageService ossStorageService = OssStorageFactory.INSTANCE.getHandle();
+        if(!ossStorageService.delete(fileStoragePath, UserUtil.getUser().getId())){
+            // 文件不存在或无权删除
+            return ResultWrapper.getCustomResultWrapper(OssMsg.EXCEPTION_DELETE_NULL);
+        }
+        return ResultWrapper.getSuccessResultWrapperByMsg("删除文件成功");
+    }
+
+    // ============== 分片上传 ==============
+
+    /**
+     * 分片上传 初始化
+     * @param suffix 文件后缀
+     * @param size 文件大小
+     * @param chunkSize 分片大小
+     * @return ResultWrapper
+     */
+    @ApiOperation(value = "分片上传 初始化", notes = "分片上传 初始化")
+    @PostMapping("/chunk/init")
+    public ResultWrapper<ChunkSession> chunkInit(String suffix, long size, long chunkSize) {
+        ChunkSession session = ChunkUploadManager.INSTANCE.init(
+                UserUtil.getUser().getId(), suffix, size, chunkSize);
+        return ResultWrapper.getSuccessResultWrapper(session);
+    }
+
+    /**
+     * 分片上传 上传分片
+     * 请求体为分片内容 (application/octet-stream)，不经过 multipart 解析
+     *
+     * @param uploadId 上传编号
+     * @param index 分片序号 从0开始
+     * @param checksum 分片 MD5 (可空)
+     * @param request 请求
+     * @return ResultWrapper
+     */
+    @ApiOperation(value = "分片上传 上传分片", notes = "分片上传 上传分片")
+    @PostMapping("/chunk/upload")
+    public ResultWrapper<?> chunkUpload(String uploadId, int index, String checksum,
+                                        HttpServletRequest request) throws IOException {
+        ChunkUploadManager.INSTANCE.uploadChunk(
+                UserUtil.getUser().getId(), uploadId, index, checksum, request.getInputStream());
+        return ResultWrapper.getSuccessResultWrapper();
+    }
+
+    /**
+     * 分片上传 已上传分片
+     * @param uploadId 上传编号
+     * @return ResultWrapper
+     */
+    @ApiOperation(value = "分片上传 已上传分片", notes = "分片上传 已上传分片")
+    @GetMapping("/chunk/status")
+    public ResultWrapper<List<Integer>> chunkStatus(String uploadId) {
+        List<Integer> indexList = ChunkUploadManager.INSTANCE.getUploadedChunks(
+                UserUtil.getUser().getId(), uploadId);
+        return ResultWrapper.getSuccessResultWrapper(indexList);
+    }
+
+    /**
+     * 分片上传 完成
+     * @param uploadId 上传编号
+     * @return ResultWrapper
+     */
+    @ApiOperation(value = "分片上传 完成", notes = "分片上传 完成")
+    @PostMapping("/chunk/complete")
+    public ResultWrapper<BaseOssStorageService.FileAttr> chunkComplete(String uploadId) {
+        BaseOssStorageService.FileAttr fileAttr = ChunkUploadManager.INSTANCE.complete(
+                UserUtil.getUser().getId(), uploadId);
+        return ResultWrapper.getSuccessResultWrapper(fileAttr);
+    }
+
+    /**
+     * 分片上传 取消
+     * @param uploadId 上传编号
+     * @return ResultWrapper
+     */
+    @ApiOperation(value = "分片上传 取消", notes = "分片上传 取消")
+    @PostMapping("/chunk/abort")
+    public ResultWrapper<?> chunkAbort(String uploadId) {
+        ChunkUploadManager.INSTANCE.abort(UserUtil.getUser().getId(), uploadId);
+        return ResultWrapper.getSuccessResultWrapper();
+    }
 
 }
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.modulars.system.monitor.web;
+
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.core.utils.MetricsSamplerUtil;
+import org.opsli.core.utils.MetricsSamplerUtil.MetricsSample;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 系统监控 实时推送 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 18:10
+ */
+public class MonitorControllerTest {
+
+    private MonitorController controller;
+
+    @BeforeEach
+    public void init(){
+        // 不启动采集 最新采集结果为空
+        ReflectionTestUtils.setField(MetricsSamplerUtil.class, "IS_INIT", true);
+        controller = new MonitorController();
+    }
+
+    @AfterEach
+    public void destroy(){
+        controller.destroy();
+    }
+
+    /**
+     * 慢连接 不阻塞采集线程，也不影响其他连接
+     */
+    @Test
+    public void slowEmitterDoesNotBlockBroadcast() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        TestEmitter slow = new TestEmitter(gate);
+        TestEmitter fast = new TestEmitter(null);
+        controller.register(slow);
+        controller.register(fast);
+
+        long start = System.currentTimeMillis();
+        controller.broadcast(sample(1));
+        controller.broadcast(sample(2));
+        assertTrue(System.currentTimeMillis() - start < 500);
+
+        // 快连接 至少收到最新数据
+        fast.await(2);
+        assertTrue(fast.received(2));
+        gate.countDown();
+    }
+
+    /**
+     * 积压过多的慢连接 被关闭，关闭不阻塞采集线程，发送返回后 才结束连接
+     */
+    @Test
+    public void slowEmitterClosed() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        TestEmitter slow = new TestEmitter(gate);
+        TestEmitter fast = new TestEmitter(null);
+        controller.register(slow);
+        controller.register(fast);
+
+        // 按采集周期逐次推送 快连接每次均推送完成
+        broadcast(fast, 1);
+        // 首条推送开始后 慢连接阻塞
+        assertTrue(slow.sending.await(2, TimeUnit.SECONDS));
+        broadcast(fast, 2);
+        broadcast(fast, 3);
+        long start = System.currentTimeMillis();
+        broadcast(fast, 4);
+        assertTrue(System.currentTimeMillis() - start < 500);
+        assertFalse(slow.completed);
+
+        gate.countDown();
+        slow.awaitCompleted();
+        assertTrue(slow.completed);
+        assertFalse(fast.completed);
+
+        // 已关闭的连接 不再推送
+        broadcast(fast, 5);
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertEquals(1, slow.timestamps.size());
+        assertTrue(slow.received(1));
+    }
+
+    /**
+     * 推送恢复后 只补推最新数据 中间数据直接丢弃
+     */
+    @Test
+    public void latestOnly() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        TestEmitter emitter = new TestEmitter(gate);
+        controller.register(emitter);
+
+        controller.broadcast(sample(1));
+        assertTrue(emitter.sending.await(2, TimeUnit.SECONDS));
+        controller.broadcast(sample(2));
+        controller.broadcast(sample(3));
+        gate.countDown();
+
+        emitter.await(3);
+        assertTrue(emitter.received(1));
+        assertFalse(emitter.received(2));
+        assertTrue(emitter.received(3));
+        assertFalse(emitter.completed);
+    }
+
+    // ========================
+
+    private void broadcast(TestEmitter fast, long timestamp) throws InterruptedException {
+        controller.broadcast(sample(timestamp));
+        fast.await(timestamp);
+        assertTrue(fast.received(timestamp));
+    }
+
+    private static MetricsSample sample(long timestamp){
+        MetricsSample sample = new MetricsSample();
+        sample.setTimestamp(timestamp);
+        return sample;
+    }
+
+    /**
+     * 记录推送数据 可阻塞发送的连接
+     */
+    private static final class TestEmitter extends SseEmitter {
+
+        private final CountDownLatch gate;
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final List<Long> timestamps = new CopyOnWriteArrayList<>();
+        private volatile boolean completed;
+
+        private TestEmitter(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        /**
+         * 与 SseEmitter 一致 发送与结束连接 持有同一把锁
+         */
+        @Override
+        public synchronized void send(SseEventBuilder builder) throws IOException {
+            sending.countDown();
+            if(gate != null){
+                try {
+                    gate.await();
+                }catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            for (DataWithMediaType data : builder.build()) {
+                if(MediaType.APPLICATION_JSON.equals(data.getMediaType())){
+                    timestamps.add(JSONObject.parseObject((String) data.getData())
+                            .getLong("timestamp"));
+                }
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+        }
+
+        private boolean received(long timestamp){
+            return timestamps.contains(timestamp);
+        }
+
+        private void awaitCompleted() throws InterruptedException {
+            long end = System.currentTimeMillis() + 2000;
+            while (!completed && System.currentTimeMillis() < end){
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+        }
+
+        private void await(long timestamp) throws InterruptedException {
+            long end = System.currentTimeMillis() + 2000;
+            while (!received(timestamp) && System.currentTimeMillis() < end){
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+        }
+    }
+}
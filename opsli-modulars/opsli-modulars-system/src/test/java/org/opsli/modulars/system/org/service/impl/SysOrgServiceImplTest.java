@@ -0,0 +1,630 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.modulars.system.org.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.config.GlobalConfig;
+import com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils;
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.opsli.api.base.result.ResultWrapper;
+import org.opsli.api.web.system.user.UserApi;
+import org.opsli.api.web.system.user.UserOrgRefApi;
+import org.opsli.api.web.system.user.UserRoleRefApi;
+import org.opsli.api.wrapper.system.org.SysOrgModel;
+import org.opsli.api.wrapper.system.user.UserModel;
+import org.opsli.common.exception.ServiceException;
+import org.opsli.core.autoconfigure.properties.CacheProperties;
+import org.opsli.core.base.dto.LoginUserDto;
+import org.opsli.core.autoconfigure.properties.GlobalProperties;
+import org.opsli.core.cache.CacheGeneration;
+import org.opsli.core.cache.CacheUtil;
+import org.opsli.core.filters.interceptor.MybatisAutoFillInterceptor;
+import org.opsli.core.holder.UserContextHolder;
+import org.opsli.core.utils.UserUtil;
+import org.opsli.modulars.system.org.mapper.SysOrgMapper;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 组织机构 下级整体维护 测试
+ * 在深层级组织树上校验 移动、租户变更、删除 结果正确，且执行语句数与层级深度无关
+ * 组织变更 只清除受影响用户的组织缓存
+ *
+ * @author Parker
+ * @date 2021-12-31 16:10
+ */
+public class SysOrgServiceImplTest {
+
+    /** 浅层级 */
+    private static final int SHALLOW = 5;
+    /** 深层级 */
+    private static final int DEEP = 300;
+    /** 每层叶子数 */
+    private static final int LEAVES = 2;
+
+    /** 顶级 A (深层链) */
+    private static final String ORG_A = "1";
+    /** 顶级 B (移动目标) */
+    private static final String ORG_B = "2";
+    /** 顶级 C (不相关) */
+    private static final String ORG_C = "3";
+
+    /** 当前登录用户 */
+    private static final String CURR_USER = "u9";
+    private static final String TOKEN = "token";
+
+    private static final AtomicInteger DB_SEQ = new AtomicInteger();
+
+    /** 已清除组织缓存的用户 */
+    private final Set<String> evicted = new HashSet<>();
+    private String superAdmin;
+
+    private JdbcDataSource dataSource;
+    private Connection keepAlive;
+    private StatementCounter counter;
+    private SysOrgServiceImpl service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init(){
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, Object> valueOperations = mock(ValueOperations.class);
+        AtomicLong generation = new AtomicLong();
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.increment(anyString())).thenAnswer((invocation) -> generation.incrementAndGet());
+        // 记录被删除的用户组织缓存
+        doAnswer((invocation) -> {
+            Collection<String> keys = invocation.getArgument(0);
+            String prefix = CacheUtil.formatKey("kv#{}:user_id:orgs:");
+            for (String key : keys) {
+                if(key.startsWith(prefix)){
+                    evicted.add(key.substring(prefix.length(), key.indexOf('@')));
+                }
+            }
+            return (long) keys.size();
+        }).when(redisTemplate).delete(any(Collection.class));
+
+        UserModel user = new UserModel();
+        user.setId(CURR_USER);
+        UserApi userApi = mock(UserApi.class);
+        when(userApi.getById(anyString())).thenReturn(ResultWrapper.getSuccessResultWrapper(user));
+        UserOrgRefApi userOrgRefApi = mock(UserOrgRefApi.class);
+        when(userOrgRefApi.getDefOrgByUserId(anyString())).thenReturn(ResultWrapper.getSuccessResultWrapper(null));
+
+        new CacheUtil().init(new CacheProperties());
+        new CacheGeneration().init(redisTemplate);
+        new UserUtil().init(new GlobalProperties(), userApi, mock(UserRoleRefApi.class),
+                userOrgRefApi, redisTemplate);
+        superAdmin = UserUtil.SUPER_ADMIN;
+        UserUtil.SUPER_ADMIN = "system";
+
+        LoginUserDto loginUser = new LoginUserDto();
+        loginUser.setUid(CURR_USER);
+        UserContextHolder.setToken(TOKEN);
+        UserContextHolder.setLoginUser(TOKEN, loginUser);
+    }
+
+    @AfterEach
+    public void destroy() throws SQLException {
+        if(null != keepAlive){
+            keepAlive.close();
+        }
+    }
+
+    @AfterEach
+    public void clearUser() {
+        UserContextHolder.clear();
+        UserUtil.SUPER_ADMIN = superAdmin;
+    }
+
+    /**
+     * 移动至其他上级 全部下级路径与租户随之更新，语句数与深度无关
+     */
+    @Test
+    public void moveSubtree() throws Exception {
+        int[] statements = new int[2];
+        int[] depths = {SHALLOW, DEEP};
+        for (int i = 0; i < depths.length; i++) {
+            setUp(depths[i]);
+            String node = chainId(1);
+
+            SysOrgModel model = get(node);
+            model.setParentId(ORG_B);
+            counter.reset();
+            service.update(model);
+            statements[i] = counter.get();
+
+            assertTreeConsistent();
+            Map<String, Org> orgs = load();
+            for (Org org : orgs.values()) {
+                boolean moved = isSelfOrChild(org, orgs.get(node));
+                if(moved){
+                    assertTrue(org.orgIds.startsWith("0," + ORG_B + "," + node), org.id);
+                    assertEquals("t2", org.tenantId, org.id);
+                }else if(isSelfOrChild(org, orgs.get(ORG_A))){
+                    assertEquals("t1", org.tenantId, org.id);
+                }
+            }
+            // 整条链 及各层叶子 全部移动
+            assertEquals(depths[i] * (LEAVES + 1), countUnder(orgs, "0," + ORG_B + ","));
+        }
+        assertTrue(statements[0] > 0);
+        assertEquals(statements[0], statements[1]);
+    }
+
+    /**
+     * 顶级组织变更租户 全部下级租户随之更新，语句数与深度无关
+     */
+    @Test
+    public void changeTenant() throws Exception {
+        int[] statements = new int[2];
+        int[] depths = {SHALLOW, DEEP};
+        for (int i = 0; i < depths.length; i++) {
+            setUp(depths[i]);
+
+            SysOrgModel model = get(ORG_A);
+            model.setTenantId("t9");
+            counter.reset();
+            service.update(model);
+            statements[i] = counter.get();
+
+            assertTreeConsistent();
+            Map<String, Org> orgs = load();
+            for (Org org : orgs.values()) {
+                String expected = isSelfOrChild(org, orgs.get(ORG_A))? "t9"
+                        : ORG_B.equals(org.id)? "t2" : "t3";
+                assertEquals(expected, org.tenantId, org.id);
+            }
+        }
+        assertTrue(statements[0] > 0);
+        assertEquals(statements[0], statements[1]);
+    }
+
+    /**
+     * 删除 全部下级一并删除，兄弟节点不受影响，语句数与深度无关
+     */
+    @Test
+    public void deleteSubtree() throws Exception {
+        int[] statements = new int[2];
+        int[] depths = {SHALLOW, DEEP};
+        for (int i = 0; i < depths.length; i++) {
+            setUp(depths[i]);
+            String node = chainId(2);
+            Map<String, Org> before = load();
+
+            counter.reset();
+            assertTrue(service.delete(node));
+            statements[i] = counter.get();
+
+            Map<String, Org> after = load();
+            for (Org org : before.values()) {
+                boolean removed = isSelfOrChild(org, before.get(node));
+                assertEquals(removed, !after.containsKey(org.id), org.id);
+            }
+            // 第一层链节点 及其叶子 保留
+            assertEquals(1 + LEAVES, countUnder(after, "0," + ORG_A + ","));
+        }
+        assertTrue(statements[0] > 0);
+        assertEquals(statements[0], statements[1]);
+    }
+
+    /**
+     * 批量删除多棵子树 语句数与深度无关
+     */
+    @Test
+    public void deleteAllSubtrees() throws Exception {
+        int[] statements = new int[2];
+        int[] depths = {SHALLOW, DEEP};
+        for (int i = 0; i < depths.length; i++) {
+            setUp(depths[i]);
+
+            counter.reset();
+            assertTrue(service.deleteAll(new String[]{chainId(1), ORG_C}));
+            statements[i] = counter.get();
+
+            Map<String, Org> after = load();
+            assertEquals(2, after.size());
+            assertTrue(after.containsKey(ORG_A));
+            assertTrue(after.containsKey(ORG_B));
+        }
+        assertTrue(statements[0] > 0);
+        assertEquals(statements[0], statements[1]);
+    }
+
+    /**
+     * 上级为自身下级时 拒绝修改 数据不变
+     */
+    @Test
+    public void moveUnderOwnChild() throws Exception {
+        setUp(SHALLOW);
+        Map<String, Org> before = load();
+
+        SysOrgModel model = get(chainId(1));
+        model.setParentId(chainId(3));
+        assertThrows(ServiceException.class, () -> service.update(model));
+
+        assertEquals(before, load());
+    }
+
+    /**
+     * 移动非顶级组织 只清除绑定在该组织及其下级的用户，下级更新人、更新时间随之更新
+     */
+    @Test
+    public void moveEvictsOnlyUsersInSubtree() throws Exception {
+        setUp(SHALLOW);
+
+        SysOrgModel model = get(chainId(1));
+        model.setParentId(ORG_B);
+        service.update(model);
+
+        assertEquals(Collections.singleton("uA3"), evicted);
+        // 自定义语句 同样注入更新人、更新时间
+        assertEquals(CURR_USER, updateBy(chainId(2)));
+        assertNotNull(updateTime(chainId(2)));
+        assertEquals(CURR_USER, updateBy(chainId(SHALLOW) + "00"));
+        assertNull(updateBy("31"));
+    }
+
+    /**
+     * 顶级组织移动 同时清除原租户、新租户的租户管理员 (含超级管理员)
+     */
+    @Test
+    public void moveTopLevelEvictsTenantAdmins() throws Exception {
+        setUp(SHALLOW);
+
+        SysOrgModel model = get(ORG_C);
+        model.setParentId(ORG_B);
+        service.update(model);
+
+        assertEquals(new HashSet<>(Arrays.asList("uC", "admin3", "admin2", "system")), evicted);
+        assertEquals(CURR_USER, updateBy("31"));
+    }
+
+    /**
+     * 路径、租户不变 不清除任何用户缓存
+     */
+    @Test
+    public void renameEvictsNobody() throws Exception {
+        setUp(SHALLOW);
+
+        SysOrgModel model = get(ORG_A);
+        model.setOrgName("renamed");
+        service.update(model);
+
+        assertTrue(evicted.isEmpty());
+        assertNull(updateBy(chainId(1)));
+    }
+
+    /**
+     * 删除 清除下级绑定用户 及顶级组织所属租户的管理员
+     */
+    @Test
+    public void deleteEvictsUsersInSubtree() throws Exception {
+        setUp(SHALLOW);
+
+        assertTrue(service.delete(ORG_C));
+        assertEquals(new HashSet<>(Arrays.asList("uC", "admin3")), evicted);
+
+        evicted.clear();
+        assertTrue(service.deleteAll(new String[]{chainId(1)}));
+        assertEquals(Collections.singleton("uA3"), evicted);
+    }
+
+    /**
+     * 新增顶级组织 只清除所属租户的管理员，新增下级组织 不清除
+     */
+    @Test
+    public void insertTopLevelEvictsTenantAdmins() throws Exception {
+        setUp(SHALLOW);
+
+        SysOrgModel top = new SysOrgModel();
+        top.setParentId("0");
+        top.setOrgCode("code_new");
+        top.setOrgName("org_new");
+        top.setTenantId("t1");
+        SysOrgModel inserted = service.insert(top);
+        assertEquals(Collections.singleton("admin1"), evicted);
+
+        evicted.clear();
+        SysOrgModel child = new SysOrgModel();
+        child.setParentId(inserted.getId());
+        child.setOrgCode("code_new_child");
+        child.setOrgName("org_new_child");
+        service.insert(child);
+        assertTrue(evicted.isEmpty());
+    }
+
+    // ========================
+
+    /**
+     * 初始化组织树
+     * A 下为 depth 层单链，每层另挂 LEAVES 个叶子；B 为空顶级；C 为带一个下级的顶级
+     *
+     * @param depth 层级深度
+     */
+    private void setUp(int depth) throws Exception {
+        destroy();
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:sys_org_" + DB_SEQ.incrementAndGet() + ";MODE=MySQL");
+        keepAlive = dataSource.getConnection();
+        try (Statement statement = keepAlive.createStatement()){
+            statement.execute("CREATE TABLE sys_org (id VARCHAR(32) PRIMARY KEY, parent_id VARCHAR(32), "
+                    + "parent_ids VARCHAR(10000), org_ids VARCHAR(10000), org_code VARCHAR(120), "
+                    + "org_name VARCHAR(120), sort_no INT, remark VARCHAR(255), tenant_id VARCHAR(32), "
+                    + "deleted CHAR(1) DEFAULT '0', version INT, create_by VARCHAR(32), create_time TIMESTAMP, "
+                    + "update_by VARCHAR(32), update_time TIMESTAMP)");
+            statement.execute("CREATE TABLE sys_user (id VARCHAR(32) PRIMARY KEY, username VARCHAR(32), "
+                    + "tenant_id VARCHAR(32), iz_tenant_admin CHAR(1), deleted CHAR(1))");
+            statement.execute("CREATE TABLE sys_user_org_ref (id VARCHAR(32) PRIMARY KEY, "
+                    + "user_id VARCHAR(32), org_id VARCHAR(32))");
+        }
+
+        // 用户 uA3 绑定A链第3层，uC 绑定C的下级，各租户管理员 及 超级管理员 均未绑定组织
+        user("uA3", "t1", "0", chainId(3));
+        user("uC", "t3", "0", "31");
+        user("admin1", "t1", "1", null);
+        user("admin2", "t2", "1", null);
+        user("admin3", "t3", "1", null);
+        user("system", "t2", "0", null);
+
+        insert(ORG_A, "0", "0", "t1");
+        insert(ORG_B, "0", "0", "t2");
+        insert(ORG_C, "0", "0", "t3");
+        insert("31", ORG_C, "0," + ORG_C, "t3");
+        String parentIds = "0," + ORG_A;
+        for (int level = 1; level <= depth; level++) {
+            String id = chainId(level);
+            insert(id, lastId(parentIds), parentIds, "t1");
+            String orgIds = parentIds + "," + id;
+            for (int leaf = 0; leaf < LEAVES; leaf++) {
+                insert(id + "0" + leaf, id, orgIds, "t1");
+            }
+            parentIds = orgIds;
+        }
+
+        counter = new StatementCounter();
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        GlobalConfig globalConfig = GlobalConfigUtils.defaults();
+        globalConfig.getDbConfig()
+                .setLogicDeleteField("deleted")
+                .setLogicDeleteValue("1")
+                .setLogicNotDeleteValue("0");
+        MybatisSqlSessionFactoryBean factoryBean = new MybatisSqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setConfiguration(configuration);
+        factoryBean.setGlobalConfig(globalConfig);
+        factoryBean.setTypeAliasesPackage("org.opsli.modulars.system.org.entity");
+        factoryBean.setMapperLocations(
+                new ClassPathResource("org/opsli/modulars/system/org/mapper/xml/SysOrgMapper.xml"));
+        factoryBean.setPlugins(counter, new MybatisAutoFillInterceptor());
+        SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(factoryBean.getObject());
+        SysOrgMapper mapper = sqlSessionTemplate.getMapper(SysOrgMapper.class);
+
+        service = new SysOrgServiceImpl(){
+            @Override
+            public boolean uniqueVerificationByCode(SysOrgModel model) {
+                return true;
+            }
+        };
+        ReflectionTestUtils.setField(service, "baseMapper", mapper);
+        ReflectionTestUtils.setField(service, "mapper", mapper);
+        evicted.clear();
+    }
+
+    private void user(String id, String tenantId, String izTenantAdmin, String orgId) throws SQLException {
+        try (PreparedStatement ps = keepAlive.prepareStatement(
+                "INSERT INTO sys_user (id, username, tenant_id, iz_tenant_admin, deleted) VALUES (?, ?, ?, ?, '0')")){
+            ps.setString(1, id);
+            ps.setString(2, id);
+            ps.setString(3, tenantId);
+            ps.setString(4, izTenantAdmin);
+            ps.executeUpdate();
+        }
+        if(null == orgId){
+            return;
+        }
+        try (PreparedStatement ps = keepAlive.prepareStatement(
+                "INSERT INTO sys_user_org_ref (id, user_id, org_id) VALUES (?, ?, ?)")){
+            ps.setString(1, "ref_" + id);
+            ps.setString(2, id);
+            ps.setString(3, orgId);
+            ps.executeUpdate();
+        }
+    }
+
+    private void insert(String id, String parentId, String parentIds, String tenantId) throws SQLException {
+        try (PreparedStatement ps = keepAlive.prepareStatement(
+                "INSERT INTO sys_org (id, parent_id, parent_ids, org_ids, org_code, org_name, sort_no, "
+                        + "tenant_id, deleted, version) VALUES (?, ?, ?, ?, ?, ?, 0, ?, '0', 0)")){
+            ps.setString(1, id);
+            ps.setString(2, parentId);
+            ps.setString(3, parentIds);
+            ps.setString(4, parentIds + "," + id);
+            ps.setString(5, "code_" + id);
+            ps.setString(6, "org_" + id);
+            ps.setString(7, tenantId);
+            ps.executeUpdate();
+        }
+    }
+
+    private String updateBy(String id) throws SQLException {
+        return (String) column(id, "update_by");
+    }
+
+    private Object updateTime(String id) throws SQLException {
+        return column(id, "update_time");
+    }
+
+    private Object column(String id, String column) throws SQLException {
+        try (PreparedStatement ps = keepAlive.prepareStatement(
+                "SELECT " + column + " FROM sys_org WHERE id = ?")){
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()){
+                assertTrue(rs.next(), id);
+                return rs.getObject(1);
+            }
+        }
+    }
+
+    private SysOrgModel get(String id){
+        SysOrgModel model = service.get(id);
+        model.setVersion(null);
+        return model;
+    }
+
+    /**
+     * 校验每个未删除组织 路径与上级一致
+     */
+    private void assertTreeConsistent() throws SQLException {
+        Map<String, Org> orgs = load();
+        for (Org org : orgs.values()) {
+            assertEquals(org.parentIds + "," + org.id, org.orgIds, org.id);
+            if("0".equals(org.parentId)){
+                assertEquals("0", org.parentIds, org.id);
+            }else {
+                Org parent = orgs.get(org.parentId);
+                assertEquals(parent.orgIds, org.parentIds, org.id);
+                assertEquals(parent.tenantId, org.tenantId, org.id);
+            }
+        }
+    }
+
+    private Map<String, Org> load() throws SQLException {
+        Map<String, Org> orgs = new HashMap<>();
+        try (Statement statement = keepAlive.createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "SELECT id, parent_id, parent_ids, org_ids, tenant_id FROM sys_org WHERE deleted = '0'")){
+            while (rs.next()){
+                Org org = new Org(rs.getString(1), rs.getString(2), rs.getString(3),
+                        rs.getString(4), rs.getString(5));
+                orgs.put(org.id, org);
+            }
+        }
+        return orgs;
+    }
+
+    private static long countUnder(Map<String, Org> orgs, String prefix){
+        return orgs.values().stream().filter((org) -> org.orgIds.startsWith(prefix)).count();
+    }
+
+    private static boolean isSelfOrChild(Org org, Org node){
+        return org.orgIds.equals(node.orgIds) || org.orgIds.startsWith(node.orgIds + ",");
+    }
+
+    private static String chainId(int level){
+        return String.valueOf(1000 + level);
+    }
+
+    private static String lastId(String ids){
+        return ids.substring(ids.lastIndexOf(',') + 1);
+    }
+
+    /**
+     * 组织行
+     */
+    private static final class Org {
+        private final String id;
+        private final String parentId;
+        private final String parentIds;
+        private final String orgIds;
+        private final String tenantId;
+
+        private Org(String id, String parentId, String parentIds, String orgIds, String tenantId) {
+            this.id = id;
+            this.parentId = parentId;
+            this.parentIds = parentIds;
+            this.orgIds = orgIds;
+            this.tenantId = tenantId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Org)){
+                return false;
+            }
+            Org org = (Org) o;
+            return id.equals(org.id) && parentId.equals(org.parentId) && parentIds.equals(org.parentIds)
+                    && orgIds.equals(org.orgIds) && tenantId.equals(org.tenantId);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+
+    /**
+     * 语句计数 每条预编译语句计一次
+     */
+    @Intercepts(@Signature(type = StatementHandler.class, method = "prepare",
+            args = {Connection.class, Integer.class}))
+    private static final class StatementCounter implements Interceptor {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Object intercept(Invocation invocation) throws Throwable {
+            count.incrementAndGet();
+            return invocation.proceed();
+        }
+
+        private void reset(){
+            count.set(0);
+        }
+
+        private int get(){
+            return count.get();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.modulars.tools.oss.web;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opsli.core.autoconfigure.conf.SpringWebMvcConfig;
+import org.opsli.core.autoconfigure.properties.ApiPathProperties;
+import org.opsli.core.autoconfigure.properties.GlobalProperties;
+import org.opsli.core.utils.GlobalPropertiesUtil;
+import org.opsli.core.utils.UserTokenUtil;
+import org.opsli.core.utils.UserUtil;
+import org.opsli.plugins.oss.local.LocalBlobStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 本地文件下载 集成测试
+ *
+ * 使用系统的 MVC 配置 (接口前缀 /api)，校验文件地址 与上传时返回的地址一致
+ *
+ * @author Parker
+ * @date 2021-12-30 15:40
+ */
+@SpringJUnitWebConfig(LocalFileRestControllerTest.WebConfig.class)
+public class LocalFileRestControllerTest {
+
+    @TempDir
+    static Path uploadPath;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    private MockMvc mockMvc;
+
+    private byte[] content;
+
+    private String name;
+
+    private LocalBlobStore.BlobRef blobRef;
+
+    @BeforeEach
+    public void init() throws IOException {
+        GlobalProperties.Web web = new GlobalProperties.Web();
+        web.setUploadPath(uploadPath.toString());
+        GlobalProperties globalProperties = new GlobalProperties();
+        globalProperties.setWeb(web);
+        new GlobalPropertiesUtil().init(globalProperties);
+        ReflectionTestUtils.setField(UserTokenUtil.class, "IS_INIT", true);
+        ReflectionTestUtils.setField(UserUtil.class, "IS_INIT", true);
+
+        content = new byte[100 * 1024];
+        new Random(1).nextBytes(content);
+        name = System.nanoTime() + ".bin";
+        // 与本地存储一致 逻辑文件名位于 /static/files 下
+        blobRef = LocalBlobStore.of(uploadPath.resolve("static/files").toString())
+                .put(new ByteArrayInputStream(content), name, "bin", "user-1");
+
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    public void downloadByLogicalName() throws Exception {
+        MvcResult result = mockMvc.perform(get("/static/files/" + name))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue("Content-Length", content.length))
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andReturn();
+        assertArrayEquals(content, result.getResponse().getContentAsByteArray());
+    }
+
+    @Test
+    public void staleTokenFallsBackToClientAddress() throws Exception {
+        // Token 失效 (无法解析出用户) 时 按客户端地址限流 仍可下载
+        MvcResult result = mockMvc.perform(get("/static/files/" + name)
+                        .header(UserTokenUtil.TOKEN_NAME, "stale-token"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertArrayEquals(content, result.getResponse().getContentAsByteArray());
+    }
+
+    @Test
+    public void noApiPrefix() throws Exception {
+        mockMvc.perform(get("/api/static/files/" + name))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void rangeAndHead() throws Exception {
+        MvcResult result = mockMvc.perform(get("/static/files/" + name).header("Range", "bytes=10-19"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 10-19/" + content.length))
+                .andReturn();
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 20), result.getResponse().getContentAsByteArray());
+
+        mockMvc.perform(head("/static/files/" + name))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue("Content-Length", content.length));
+    }
+
+    @Test
+    public void storeInternalsNotServed() throws Exception {
+        // 内容文件 只能经逻辑文件名访问，地址不能由摘要推算
+        mockMvc.perform(get("/static/files/" + blobRef.getPath()))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/static/files/" + LocalBlobStore.STORE_DIR + "/names/x/" + name))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/static/files/missing.bin"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Configuration
+    @EnableWebMvc
+    @Import({SpringWebMvcConfig.class, LocalFileRestController.class})
+    static class WebConfig {
+
+        @Bean
+        public ApiPathProperties apiPathProperties(){
+            ApiPathProperties apiPathProperties = new ApiPathProperties();
+            apiPathProperties.setGlobalPrefix("/api");
+            return apiPathProperties;
+        }
+
+    }
+
+}
@@ -38,7 +38,9 @@ import opsli.plugins.crypto.msg.CryptoMsg;
 import opsli.plugins.crypto.strategy.CryptoSymmetricService;
 import org.apache.commons.lang3.StringUtils;
 
+import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -58,6 +60,14 @@ public class CryptoSymmetricServiceImpl implements CryptoSymmetricService {
     private static final int DEFAULT_CACHE_TIME = 20;
     /** 加解密执行器缓存 防止多次创建 */
     private static final Map<CryptoSymmetricType, Cache<String, SymmetricCrypto>> LFU_CACHE_MAP;
+    /** 线程内 已初始化的 Cipher 上限 超出后清空 */
+    private static final int MAX_LOCAL_CIPHER = 64;
+    /**
+     * 线程内 已初始化的 Cipher
+     * SymmetricCrypto 每次加解密都会加锁并重新 init (重新扩展秘钥)
+     * ECB 模式下 Cipher 在 doFinal 后回到初始化状态，每个线程持有一份即可直接复用
+     */
+    private static final ThreadLocal<Map<String, Cipher>> CIPHER_LOCAL = ThreadLocal.withInitial(HashMap::new);
 
     static{
         // 初始化缓存类对象
@@ -117,16 +127,10 @@ public class CryptoSymmetricServiceImpl implements CryptoSymmetricService {
         try {
             encryptedStr = JSONUtil.toJsonStr(data);
 
-            // 创建执行器
-            SymmetricCrypto cryptoHandler =
-                    this.createCryptoHandler(model);
-            if(cryptoHandler == null){
-                // 无法获得加解密执行器
-                throw new CryptoException(CryptoMsg.CRYPTO_EXCEPTION_HANDLER_NULL);
-            }
-
             // 执行加密操作
-            encryptedStr = cryptoHandler.encryptBase64(StrUtil.bytes(encryptedStr, CharsetUtil.CHARSET_UTF_8));
+            byte[] encrypted = this.doFinal(model, Cipher.ENCRYPT_MODE,
+                    StrUtil.bytes(encryptedStr, CharsetUtil.CHARSET_UTF_8));
+            encryptedStr = Base64.encode(encrypted);
 
         }catch (JSONException jse){
             // 加密数据转换Json失败
@@ -182,18 +186,11 @@ public class CryptoSymmetricServiceImpl implements CryptoSymmetricService {
 
         String decryptStr;
         try {
-            // 创建执行器
-            SymmetricCrypto cryptoHandler =
-                    this.createCryptoHandler(model);
-            if(cryptoHandler == null){
-                // 无法获得加解密执行器
-                throw new CryptoException(CryptoMsg.CRYPTO_EXCEPTION_HANDLER_NULL);
-            }
-
             // 处理数据
-            String currData = data.replaceAll(" ", "+");
+            String currData = data.replace(" ", "+");
             // 解密数据 - 返回Json 格式String
-            decryptStr = cryptoHandler.decryptStr(currData, CharsetUtil.CHARSET_UTF_8);
+            byte[] decrypted = this.doFinal(model, Cipher.DECRYPT_MODE, SecureUtil.decode(currData));
+            decryptStr = StrUtil.str(decrypted, CharsetUtil.CHARSET_UTF_8);
         }catch (CryptoException ce){
             // 如果检测到已有异常 则直接抛出
             throw ce;
@@ -221,6 +218,65 @@ public class CryptoSymmetricServiceImpl implements CryptoSymmetricService {
         }
     }
 
+    /**
+     * 使用线程内复用的 Cipher 执行加解密
+     * 算法、模式、填充 与 SymmetricCrypto 一致 结果逐字节相同
+     *
+     * @param model 加解密模型
+     * @param mode 加密 / 解密
+     * @param data 数据
+     * @return byte[]
+     */
+    private byte[] doFinal(final CryptoSymmetric model, final int mode, final byte[] data) throws Exception {
+        String cacheKey = model.getCryptoType().name() + ":" + mode + ":" + model.getPrivateKey();
+        Map<String, Cipher> cipherMap = CIPHER_LOCAL.get();
+        Cipher cipher = cipherMap.get(cacheKey);
+        if(cipher == null){
+            // 创建执行器
+            SymmetricCrypto cryptoHandler =
+                    this.createCryptoHandler(model);
+            if(cryptoHandler == null){
+                // 无法获得加解密执行器
+                throw new CryptoException(CryptoMsg.CRYPTO_EXCEPTION_HANDLER_NULL);
+            }
+
+            cipher = SecureUtil.createCipher(getTransformation(model.getCryptoType()));
+            cipher.init(mode, cryptoHandler.getSecretKey());
+            if(cipherMap.size() >= MAX_LOCAL_CIPHER){
+                cipherMap.clear();
+            }
+            cipherMap.put(cacheKey, cipher);
+        }
+
+        try {
+            return cipher.doFinal(data);
+        }catch (Exception e){
+            // 异常后 Cipher 状态不确定 丢弃
+            cipherMap.remove(cacheKey);
+            throw e;
+        }
+    }
+
+    /**
+     * 获得 加解密算法 (与 createCryptoHandler 中创建方式一致)
+     * @param cryptoSymmetricType 枚举
+     * @return String
+     */
+    private static String getTransformation(final CryptoSymmetricType cryptoSymmetricType){
+        switch (cryptoSymmetricType) {
+            case AES:
+                return "AES/ECB/PKCS5Padding";
+            case DES:
+                return "DES/ECB/PKCS5Padding";
+            case DE_SEDE:
+                return "DESede";
+            case SM4:
+                return "SM4/ECB/PKCS5Padding";
+            default:
+                throw new CryptoException(CryptoMsg.CRYPTO_EXCEPTION_HANDLER_NULL);
+        }
+    }
+
     /**
      * 创建 加解密执行器
      * 这里使用了缓存池 来防止对象被疯狂创建 减少服务压力
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package opsli.plugins.crypto.strategy.impl;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.CharsetUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.Mode;
+import cn.hutool.crypto.Padding;
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.crypto.SmUtil;
+import cn.hutool.crypto.symmetric.AES;
+import cn.hutool.crypto.symmetric.DES;
+import cn.hutool.crypto.symmetric.SymmetricCrypto;
+import cn.hutool.json.JSONUtil;
+import opsli.plugins.crypto.enums.CryptoSymmetricType;
+import opsli.plugins.crypto.exception.CryptoException;
+import opsli.plugins.crypto.model.CryptoSymmetric;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 对称加密 测试
+ *
+ * 线程内复用 Cipher 的结果 必须与 hutool SymmetricCrypto (原实现) 逐字节相同
+ *
+ * @author Parker
+ * @date 2021年5月18日10:53:27
+ */
+public class CryptoSymmetricServiceImplTest {
+
+    private final CryptoSymmetricServiceImpl service = new CryptoSymmetricServiceImpl();
+
+    /**
+     * 加密结果 与 SymmetricCrypto 相同
+     */
+    @ParameterizedTest
+    @EnumSource(CryptoSymmetricType.class)
+    public void encryptMatchesSymmetricCrypto(CryptoSymmetricType type){
+        CryptoSymmetric model = service.createKeyModel(type);
+        SymmetricCrypto legacy = legacyHandler(model);
+
+        for (Object data : samples()) {
+            String expected = legacy.encryptBase64(
+                    StrUtil.bytes(JSONUtil.toJsonStr(data), CharsetUtil.CHARSET_UTF_8));
+            // 多次执行 复用同一 Cipher
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected, service.encrypt(model, data));
+            }
+        }
+    }
+
+    /**
+     * 解密结果 与 SymmetricCrypto 相同，且可还原加密内容
+     */
+    @ParameterizedTest
+    @EnumSource(CryptoSymmetricType.class)
+    public void decryptMatchesSymmetricCrypto(CryptoSymmetricType type){
+        CryptoSymmetric model = service.createKeyModel(type);
+        SymmetricCrypto legacy = legacyHandler(model);
+
+        for (Object data : samples()) {
+            String json = JSONUtil.toJsonStr(data);
+            String encrypted = legacy.encryptBase64(StrUtil.bytes(json, CharsetUtil.CHARSET_UTF_8));
+            for (int i = 0; i < 3; i++) {
+                String decrypted = service.decrypt(model, encrypted);
+                assertEquals(legacy.decryptStr(encrypted, CharsetUtil.CHARSET_UTF_8), decrypted);
+                assertEquals(json, decrypted);
+            }
+            // 往返
+            assertEquals(json, service.decrypt(model, service.encrypt(model, data)));
+        }
+    }
+
+    /**
+     * 同一线程 交替使用多个秘钥 互不影响；解密失败后 不影响后续解密
+     */
+    @Test
+    public void keysDoNotInterfere(){
+        CryptoSymmetric a = service.createKeyModel(CryptoSymmetricType.AES);
+        CryptoSymmetric b = service.createKeyModel(CryptoSymmetricType.AES);
+
+        for (int i = 0; i < 10; i++) {
+            String value = "value-" + i;
+            String encA = service.encrypt(a, value);
+            String encB = service.encrypt(b, value);
+            assertEquals(legacyHandler(a).encryptBase64(StrUtil.bytes(JSONUtil.toJsonStr(value),
+                    CharsetUtil.CHARSET_UTF_8)), encA);
+            assertEquals(JSONUtil.toJsonStr(value), service.decrypt(a, encA));
+            assertEquals(JSONUtil.toJsonStr(value), service.decrypt(b, encB));
+
+            // 秘钥不匹配 解密失败 (填充偶尔校验通过时 得到的也不是原文)
+            try {
+                assertNotEquals(JSONUtil.toJsonStr(value), service.decrypt(b, encA));
+            }catch (CryptoException ignored){}
+            // 失败后 Cipher 仍可用
+            assertEquals(JSONUtil.toJsonStr(value), service.decrypt(b, encB));
+        }
+    }
+
+    /**
+     * 多线程并发 结果与 SymmetricCrypto 相同
+     */
+    @ParameterizedTest
+    @EnumSource(CryptoSymmetricType.class)
+    public void concurrentMatchesSymmetricCrypto(CryptoSymmetricType type) throws Exception {
+        CryptoSymmetric model = service.createKeyModel(type);
+        SymmetricCrypto legacy = legacyHandler(model);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        String value = "并发-" + thread + "-" + i;
+                        String expected = legacy.encryptBase64(
+                                StrUtil.bytes(JSONUtil.toJsonStr(value), CharsetUtil.CHARSET_UTF_8));
+                        String encrypted = service.encrypt(model, value);
+                        assertEquals(expected, encrypted);
+                        assertEquals(JSONUtil.toJsonStr(value), service.decrypt(model, encrypted));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        }finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // ========================
+
+    private static List<Object> samples(){
+        List<Object> samples = new ArrayList<>();
+        samples.add("");
+        samples.add("hello");
+        samples.add("中文内容 + 特殊字符 /=?&");
+        samples.add(StrUtil.repeat("0123456789abcdef", 64));
+        samples.add(12345L);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("username", "admin");
+        map.put("password", "Aa123456.");
+        samples.add(map);
+        return samples;
+    }
+
+    /**
+     * 原实现 (每次加解密 使用 SymmetricCrypto)
+     */
+    private static SymmetricCrypto legacyHandler(CryptoSymmetric model){
+        byte[] keyBytes = Base64.decode(model.getPrivateKey());
+        switch (model.getCryptoType()) {
+            case AES:
+                return new AES(Mode.ECB, Padding.PKCS5Padding, keyBytes);
+            case DES:
+                return new DES(Mode.ECB, Padding.PKCS5Padding, keyBytes);
+            case DE_SEDE:
+                return SecureUtil.desede(keyBytes);
+            case SM4:
+                return SmUtil.sm4(keyBytes);
+            default:
+                throw new IllegalArgumentException(model.getCryptoType().name());
+        }
+    }
+
+}
@@ -72,5 +72,27 @@ public interface EmailPlugin {
      */
     String send(Collection<String> tos, String subject, String content, boolean isHtml, EmailConfig emailConfig);
 
+    /**
+     * 异步发送邮件 入队后立即返回，发送失败时 自动重试
+     * @param to 收件人
+     * @param subject 主题
+     * @param content 内容
+     * @param isHtml 是否 Html内容
+     * @param emailConfig 配置
+     * @return String 消息编号
+     */
+    String sendAsync(String to, String subject, String content, boolean isHtml, EmailConfig emailConfig);
+
+    /**
+     * 异步发送邮件 入队后立即返回，发送失败时 自动重试
+     * @param tos 收件人
+     * @param subject 主题
+     * @param content 内容
+     * @param isHtml 是否 Html内容
+     * @param emailConfig 配置
+     * @return String 消息编号
+     */
+    String sendAsync(Collection<String> tos, String subject, String content, boolean isHtml, EmailConfig emailConfig);
+
 
 }
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.email.conf;
+
+/**
+ * 邮件配置 提供者
+ *
+ * 异步发送的邮件 重启后从暂存文件载入时 不含配置，由此获取当前配置
+ *
+ * @author Parker
+ * @date 2021-12-27 10:20
+ */
+@FunctionalInterface
+public interface EmailConfigProvider {
+
+    /**
+     * 获得当前邮件配置
+     * @return EmailConfig
+     */
+    EmailConfig getConfig();
+
+}
@@ -34,6 +34,7 @@ public enum EmailMsg implements BaseMsg {
     EXCEPTION_MODEL_TO_NULL(90401, "收件人不可为空"),
     EXCEPTION_MODEL_SUBJECT_NULL(90402, "主题不可为空"),
     EXCEPTION_MODEL_CONTENT_NULL(90403, "内容不可为空"),
+    EXCEPTION_SEND(90404, "邮件发送失败 - {}"),
 
 
     ;
@@ -1,27 +1,71 @@
 package org.opsli.plugins.email.service;
 
+import cn.hutool.core.exceptions.ExceptionUtil;
+import cn.hutool.core.util.CharsetUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.extra.mail.MailAccount;
-import cn.hutool.extra.mail.MailUtil;
-import org.opsli.common.enums.DictType;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.common.outbox.OutboxDispatcher;
 import org.opsli.plugins.email.EmailPlugin;
 import org.opsli.plugins.email.conf.EmailConfig;
+import org.opsli.plugins.email.conf.EmailConfigProvider;
 import org.opsli.plugins.email.exception.EmailPluginException;
 import org.opsli.plugins.email.msg.EmailMsg;
+import org.opsli.plugins.email.wrapper.EmailMessage;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 邮件 接口实现类
  *
+ * SMTP 连接 由连接池复用；异步发送 由外发消息调度器 批量发送，同一配置的一批邮件 共用一个连接
+ *
  * @author Parker
  * @date 2020-09-19 20:03
  */
+@Slf4j
 @Service
 public class EmailPluginImpl implements EmailPlugin {
 
+    /** 发送线程数 */
+    private static final int OUTBOX_WORKERS = 2;
+    /** 每批数量 */
+    private static final int OUTBOX_BATCH_SIZE = 20;
+    /** 同一收件人 最小发送间隔 (毫秒) */
+    private static final long OUTBOX_THROTTLE_MILLIS = 1000L;
+
+    private final EmailTransportPool transportPool = new EmailTransportPool();
+    private final OutboxDispatcher<EmailMessage> outbox;
+    private final ObjectProvider<EmailConfigProvider> configProvider;
+
+    /**
+     * 构造函数
+     * @param configProvider 配置提供者
+     * @param spoolPath 外发消息暂存目录 (每个实例独立)
+     */
+    public EmailPluginImpl(ObjectProvider<EmailConfigProvider> configProvider,
+                           @Value("${opsli.outbox.spool-path:}") String spoolPath) {
+        this.configProvider = configProvider;
+        this.outbox = new OutboxDispatcher<>("email", EmailMessage.class, spoolPath,
+                OUTBOX_WORKERS, OUTBOX_BATCH_SIZE, OUTBOX_THROTTLE_MILLIS, this::sendBatch);
+    }
+
     @Override
     public String send(String to, String subject, String content, EmailConfig emailConfig) {
         // 发送邮件
@@ -49,12 +93,136 @@ public class EmailPluginImpl implements EmailPlugin {
 
         // 校验发送邮件数据是否正确
         this.verify(tos, subject, content);
+        this.verifyConfig(emailConfig);
 
-        // 获得配置信息
-        MailAccount mailAccount = this.getMailAccount(emailConfig);
+        try {
+            MimeMessage message = this.createMessage(emailConfig, tos, subject, content, isHtml);
+            // 复用的连接 可能已被服务端关闭 失败时换新连接重试一次
+            try {
+                this.sendMessage(emailConfig, message);
+            }catch (MessagingException e){
+                log.warn("邮件发送失败 重试一次：{}", e.getMessage());
+                this.sendMessage(emailConfig, message);
+            }
+            return message.getMessageID();
+        }catch (Exception e){
+            throw new EmailPluginException(EmailMsg.EXCEPTION_SEND.getCode(),
+                    StrUtil.format(EmailMsg.EXCEPTION_SEND.getMessage(), ExceptionUtil.getRootCauseMessage(e)));
+        }
+    }
 
-        // 发送邮件
-        return MailUtil.send(mailAccount, tos , subject ,content, isHtml);
+    @Override
+    public String sendAsync(String to, String subject, String content,
+                            boolean isHtml, EmailConfig emailConfig) {
+        return this.sendAsync(Collections.singletonList(to), subject, content, isHtml, emailConfig);
+    }
+
+    @Override
+    public String sendAsync(Collection<String> tos, String subject, String content,
+                            boolean isHtml, EmailConfig emailConfig) {
+        // 校验发送邮件数据是否正确
+        this.verify(tos, subject, content);
+        this.verifyConfig(emailConfig);
+
+        EmailMessage message = new EmailMessage();
+        message.setTos(new ArrayList<>(tos));
+        message.setSubject(subject);
+        message.setContent(content);
+        message.setHtml(isHtml);
+        message.setEmailConfig(emailConfig);
+        return outbox.enqueue(message);
+    }
+
+    /**
+     * 批量发送 (外发消息调度器)
+     * 同一配置的邮件 共用一个连接，连接异常时 换新连接继续
+     *
+     * @param batch 批次
+     * @return List 需要重试的邮件
+     */
+    private List<EmailMessage> sendBatch(List<EmailMessage> batch) {
+        Map<EmailConfig, List<EmailMessage>> configMap = new LinkedHashMap<>();
+        for (EmailMessage message : batch) {
+            EmailConfig emailConfig = message.getEmailConfig();
+            if(emailConfig == null){
+                // 重启后载入的邮件 使用当前配置
+                EmailConfigProvider provider = configProvider.getIfAvailable();
+                emailConfig = provider == null ? null : provider.getConfig();
+            }
+            if(emailConfig == null){
+                log.error("邮件发送失败 未找到邮件配置 丢弃：{}", message.getId());
+                continue;
+            }
+            configMap.computeIfAbsent(emailConfig, key -> new ArrayList<>()).add(message);
+        }
+
+        List<EmailMessage> failed = Lists.newArrayList();
+        for (Map.Entry<EmailConfig, List<EmailMessage>> entry : configMap.entrySet()) {
+            EmailConfig emailConfig = entry.getKey();
+            Transport transport = null;
+            for (EmailMessage message : entry.getValue()) {
+                try {
+                    if(transport == null){
+                        transport = transportPool.borrow(emailConfig);
+                    }
+                    MimeMessage mimeMessage = this.createMessage(emailConfig, message.getTos(),
+                            message.getSubject(), message.getContent(), message.isHtml());
+                    transport.sendMessage(mimeMessage, mimeMessage.getAllRecipients());
+                }catch (Exception e){
+                    log.warn("邮件发送失败 稍后重试：{} - {}", message.getId(), ExceptionUtil.getRootCauseMessage(e));
+                    failed.add(message);
+                    if(transport != null){
+                        transportPool.invalidate(emailConfig, transport);
+                        transport = null;
+                    }
+                }
+            }
+            if(transport != null){
+                transportPool.release(emailConfig, transport);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 借出连接 发送邮件
+     * @param emailConfig 配置
+     * @param message 邮件
+     */
+    private void sendMessage(EmailConfig emailConfig, MimeMessage message) throws Exception {
+        Transport transport = transportPool.borrow(emailConfig);
+        try {
+            transport.sendMessage(message, message.getAllRecipients());
+        }catch (Exception e){
+            transportPool.invalidate(emailConfig, transport);
+            throw e;
+        }
+        transportPool.release(emailConfig, transport);
+    }
+
+    /**
+     * 创建邮件
+     * @param emailConfig 配置
+     * @param tos 收件人
+     * @param subject 主题
+     * @param content 内容
+     * @param isHtml 是否 Html内容
+     * @return MimeMessage
+     */
+    private MimeMessage createMessage(EmailConfig emailConfig, Collection<String> tos,
+                                      String subject, String content, boolean isHtml) throws MessagingException {
+        MimeMessage message = new MimeMessage(transportPool.getSession(emailConfig));
+        // 发件人为空时 使用邮箱账号
+        message.setFrom(new InternetAddress(
+                StrUtil.blankToDefault(emailConfig.getAddresser(), emailConfig.getAccount())));
+        message.setRecipients(Message.RecipientType.TO,
+                InternetAddress.parse(StrUtil.join(",", tos)));
+        message.setSubject(subject, CharsetUtil.UTF_8);
+        message.setContent(content,
+                (isHtml ? "text/html" : "text/plain") + ";charset=" + CharsetUtil.UTF_8);
+        message.setSentDate(new Date());
+        message.saveChanges();
+        return message;
     }
 
     /**
@@ -82,24 +250,24 @@ public class EmailPluginImpl implements EmailPlugin {
     }
 
     /**
-     * 获得 配置信息
-     * @return MailAccount
+     * 验证 配置信息
+     * @param emailConfig 配置
      */
-    private MailAccount getMailAccount(EmailConfig emailConfig){
+    private void verifyConfig(EmailConfig emailConfig){
         if(emailConfig == null){
             // 邮件服务初始化异常
             throw new EmailPluginException(EmailMsg.EXCEPTION_CONFIG_INIT_NULL);
         }
+    }
+
+    @PostConstruct
+    public void init() {
+        outbox.start();
+    }
 
-        MailAccount mailAccount = new MailAccount();
-        mailAccount.setAuth(true);
-        mailAccount.setHost(emailConfig.getSmtp());
-        mailAccount.setPort(emailConfig.getPort());
-        mailAccount.setSslEnable(
-                DictType.NO_YES_YES.getValue().equals(emailConfig.getSslEnable()));
-        mailAccount.setUser(emailConfig.getAccount());
-        mailAccount.setPass(emailConfig.getPassword());
-        mailAccount.setFrom(emailConfig.getAddresser());
-        return mailAccount;
+    @PreDestroy
+    public void destroy() {
+        outbox.stop();
+        transportPool.close();
     }
 }
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.email.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+import org.opsli.common.enums.DictType;
+import org.opsli.plugins.email.conf.EmailConfig;
+
+import javax.mail.Session;
+import javax.mail.Transport;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SMTP 连接池
+ *
+ * 按邮件配置 分别缓存 Session 及已认证的 Transport，避免每封邮件 重新连接、握手、认证
+ * 借出时校验连接 (SMTPTransport.isConnected 会发送 NOOP)，空闲连接 在服务端超时前回收
+ * 配置变更后 旧配置的连接 不再借出 由空闲回收关闭
+ *
+ * @author Parker
+ * @date 2021-12-27 10:20
+ */
+@Slf4j
+final class EmailTransportPool {
+
+    /** 单个配置 最大连接数 */
+    private static final int MAX_TOTAL_PER_KEY = 4;
+    /** 单个配置 最大空闲连接数 */
+    private static final int MAX_IDLE_PER_KEY = 2;
+    /** 借出 最长等待 (毫秒) */
+    private static final long MAX_WAIT_MILLIS = 10000L;
+    /** 空闲回收 检测间隔 (毫秒) */
+    private static final long EVICTION_INTERVAL_MILLIS = 30000L;
+    /** 空闲回收 空闲时间 (毫秒) 小于常见 SMTP 服务端超时 */
+    private static final long MIN_EVICTABLE_IDLE_MILLIS = 60000L;
+    /** 连接、读写 超时 (毫秒) */
+    private static final String TIMEOUT = "10000";
+
+    private final Map<EmailConfig, Session> sessionMap = new ConcurrentHashMap<>();
+    private final GenericKeyedObjectPool<EmailConfig, Transport> pool;
+
+    EmailTransportPool() {
+        GenericKeyedObjectPoolConfig<Transport> config = new GenericKeyedObjectPoolConfig<>();
+        config.setMaxTotalPerKey(MAX_TOTAL_PER_KEY);
+        config.setMaxIdlePerKey(MAX_IDLE_PER_KEY);
+        config.setMaxWaitMillis(MAX_WAIT_MILLIS);
+        config.setTestOnBorrow(true);
+        config.setTimeBetweenEvictionRunsMillis(EVICTION_INTERVAL_MILLIS);
+        config.setMinEvictableIdleTimeMillis(MIN_EVICTABLE_IDLE_MILLIS);
+        config.setJmxEnabled(false);
+        this.pool = new GenericKeyedObjectPool<>(new TransportFactory(), config);
+    }
+
+    /**
+     * 获得 Session
+     * @param emailConfig 配置
+     * @return Session
+     */
+    Session getSession(EmailConfig emailConfig) {
+        return sessionMap.computeIfAbsent(emailConfig, key -> {
+            Properties props = new Properties();
+            props.put("mail.transport.protocol", "smtp");
+            props.put("mail.smtp.host", key.getSmtp());
+            if(key.getPort() != null){
+                props.put("mail.smtp.port", String.valueOf(key.getPort()));
+            }
+            props.put("mail.smtp.auth", "true");
+            props.put("mail.smtp.connectiontimeout", TIMEOUT);
+            props.put("mail.smtp.timeout", TIMEOUT);
+            props.put("mail.smtp.writetimeout", TIMEOUT);
+            if(DictType.NO_YES_YES.getValue().equals(key.getSslEnable())){
+                props.put("mail.smtp.ssl.enable", "true");
+            }
+            return Session.getInstance(props);
+        });
+    }
+
+    /**
+     * 借出连接
+     * @param emailConfig 配置
+     * @return Transport
+     */
+    Transport borrow(EmailConfig emailConfig) throws Exception {
+        return pool.borrowObject(emailConfig);
+    }
+
+    /**
+     * 归还连接
+     * @param emailConfig 配置
+     * @param transport 连接
+     */
+    void release(EmailConfig emailConfig, Transport transport) {
+        try {
+            pool.returnObject(emailConfig, transport);
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 作废连接 (发送异常时)
+     * @param emailConfig 配置
+     * @param transport 连接
+     */
+    void invalidate(EmailConfig emailConfig, Transport transport) {
+        try {
+            pool.invalidateObject(emailConfig, transport);
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    void close() {
+        pool.close();
+    }
+
+    /**
+     * 连接工厂
+     */
+    private final class TransportFactory extends BaseKeyedPooledObjectFactory<EmailConfig, Transport> {
+
+        @Override
+        public Transport create(EmailConfig key) throws Exception {
+            Transport transport = getSession(key).getTransport();
+            // 端口为空时 使用默认端口
+            int port = key.getPort() == null ? -1 : key.getPort();
+            transport.connect(key.getSmtp(), port, key.getAccount(), key.getPassword());
+            return transport;
+        }
+
+        @Override
+        public PooledObject<Transport> wrap(Transport transport) {
+            return new DefaultPooledObject<>(transport);
+        }
+
+        @Override
+        public boolean validateObject(EmailConfig key, PooledObject<Transport> p) {
+            return p.getObject().isConnected();
+        }
+
+        @Override
+        public void destroyObject(EmailConfig key, PooledObject<Transport> p) throws Exception {
+            p.getObject().close();
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.email.wrapper;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.opsli.common.outbox.OutboxMessage;
+import org.opsli.plugins.email.conf.EmailConfig;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 邮件 外发消息
+ *
+ * @author Parker
+ * @date 2021-12-27 10:20
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class EmailMessage extends OutboxMessage {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 收件人 */
+    private List<String> tos;
+
+    /** 主题 */
+    private String subject;
+
+    /** 内容 */
+    private String content;
+
+    /** 是否 Html内容 */
+    private boolean html;
+
+    /** 配置 含密码 不写入暂存文件，重启后载入的消息 由 EmailConfigProvider 提供 */
+    @JSONField(serialize = false, deserialize = false)
+    private transient EmailConfig emailConfig;
+
+    @Override
+    public Collection<String> recipients() {
+        return tos;
+    }
+
+}
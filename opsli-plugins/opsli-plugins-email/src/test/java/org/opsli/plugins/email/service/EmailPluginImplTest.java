@@ -0,0 +1,192 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.email.service;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opsli.plugins.email.conf.EmailConfig;
+import org.opsli.plugins.email.conf.EmailConfigProvider;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.mail.internet.MimeMessage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 邮件发送 测试 (内存 SMTP 服务)
+ *
+ * @author Parker
+ * @date 2021-12-31 19:30
+ */
+public class EmailPluginImplTest {
+
+    private static final String ACCOUNT = "sender";
+    private static final String PASSWORD = "secret";
+    private static final String ADDRESSER = "sender@opsli.com";
+
+    @TempDir
+    Path spoolPath;
+
+    private GreenMail greenMail;
+    private int port;
+    private final List<EmailPluginImpl> plugins = new ArrayList<>();
+
+    @BeforeEach
+    public void init(){
+        greenMail = new GreenMail(ServerSetupTest.SMTP.dynamicPort());
+        greenMail.setUser(ADDRESSER, ACCOUNT, PASSWORD);
+        greenMail.start();
+        port = greenMail.getSmtp().getPort();
+    }
+
+    @AfterEach
+    public void destroy(){
+        for (EmailPluginImpl plugin : plugins) {
+            plugin.destroy();
+        }
+        greenMail.stop();
+    }
+
+    /**
+     * 同步发送
+     */
+    @Test
+    public void send() throws Exception {
+        EmailPluginImpl plugin = create(null);
+        plugin.send("to@opsli.com", "验证码", "123456", config());
+
+        MimeMessage[] messages = greenMail.getReceivedMessages();
+        assertEquals(1, messages.length);
+        assertEquals("验证码", messages[0].getSubject());
+        assertEquals(ADDRESSER, messages[0].getFrom()[0].toString());
+    }
+
+    /**
+     * 异步批量发送 全部送达，暂存文件删除
+     */
+    @Test
+    public void sendAsyncBatch() throws Exception {
+        EmailPluginImpl plugin = create(null);
+        plugin.init();
+        int count = 10;
+        for (int i = 0; i < count; i++) {
+            plugin.sendAsync("to" + i + "@opsli.com", "验证码", "code " + i, false, config());
+        }
+
+        assertTrue(greenMail.waitForIncomingEmail(10000, count));
+        assertEquals(count, greenMail.getReceivedMessages().length);
+        assertEquals(0, awaitSpoolEmpty());
+    }
+
+    /**
+     * SMTP 不可用时 退避重试，恢复后送达
+     */
+    @Test
+    public void sendAsyncRetried() throws Exception {
+        greenMail.stop();
+        EmailPluginImpl plugin = create(null);
+        plugin.init();
+        plugin.sendAsync("to@opsli.com", "验证码", "123456", false, config());
+
+        // 首次发送失败 暂存文件保留
+        TimeUnit.MILLISECONDS.sleep(500);
+        assertEquals(1, spoolCount());
+
+        greenMail = new GreenMail(new ServerSetup(port, null, ServerSetup.PROTOCOL_SMTP));
+        greenMail.setUser(ADDRESSER, ACCOUNT, PASSWORD);
+        greenMail.start();
+
+        assertTrue(greenMail.waitForIncomingEmail(10000, 1));
+        assertEquals(0, awaitSpoolEmpty());
+    }
+
+    /**
+     * 重启后 载入暂存的邮件，使用当前配置发送 (暂存文件不含密码)
+     */
+    @Test
+    public void recoverAfterRestart() throws Exception {
+        // 未启动发送线程 模拟入队后宕机
+        EmailPluginImpl crashed = create(null);
+        crashed.sendAsync("to@opsli.com", "验证码", "123456", false, config());
+        assertEquals(1, spoolCount());
+        File[] files = spoolDir().listFiles();
+        assertTrue(files != null && files.length == 1);
+        String json = new String(Files.readAllBytes(files[0].toPath()), StandardCharsets.UTF_8);
+        assertFalse(json.contains(PASSWORD));
+
+        EmailPluginImpl restarted = create(config());
+        restarted.init();
+
+        assertTrue(greenMail.waitForIncomingEmail(10000, 1));
+        assertEquals("验证码", greenMail.getReceivedMessages()[0].getSubject());
+        assertEquals(0, awaitSpoolEmpty());
+    }
+
+    // ========================
+
+    @SuppressWarnings("unchecked")
+    private EmailPluginImpl create(EmailConfig current){
+        ObjectProvider<EmailConfigProvider> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(current == null ? null : () -> current);
+        EmailPluginImpl plugin = new EmailPluginImpl(provider, spoolPath.toString());
+        plugins.add(plugin);
+        return plugin;
+    }
+
+    private EmailConfig config(){
+        EmailConfig emailConfig = new EmailConfig();
+        emailConfig.setSmtp("127.0.0.1");
+        emailConfig.setPort(port);
+        emailConfig.setSslEnable("0");
+        emailConfig.setAccount(ACCOUNT);
+        emailConfig.setPassword(PASSWORD);
+        emailConfig.setAddresser(ADDRESSER);
+        return emailConfig;
+    }
+
+    private File spoolDir(){
+        return spoolPath.resolve("email").toFile();
+    }
+
+    private int spoolCount(){
+        File[] files = spoolDir().listFiles((dir, name) -> name.endsWith(".json"));
+        return files == null ? 0 : files.length;
+    }
+
+    private int awaitSpoolEmpty() throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (spoolCount() > 0 && System.currentTimeMillis() < end){
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        return spoolCount();
+    }
+}
@@ -19,6 +19,7 @@ import cn.hutool.core.date.DateUtil;
 import com.alibaba.excel.EasyExcel;
 import com.alibaba.excel.ExcelReader;
 import com.alibaba.excel.ExcelWriter;
+import com.alibaba.excel.event.AnalysisEventListener;
 import com.alibaba.excel.read.metadata.ReadSheet;
 import com.alibaba.excel.support.ExcelTypeEnum;
 import com.alibaba.excel.write.metadata.WriteSheet;
@@ -30,6 +31,8 @@ import org.opsli.plugins.excel.exception.ExcelPluginException;
 import org.opsli.plugins.excel.listener.BatchExcelListener;
 import org.opsli.plugins.excel.listener.ExcelListener;
 import org.opsli.plugins.excel.msg.ExcelMsg;
+import org.opsli.plugins.excel.pipeline.ExcelImportPipeline;
+import org.opsli.plugins.excel.pipeline.ExcelImportReport;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletResponse;
@@ -37,7 +40,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * ExcelUtil
@@ -159,7 +165,7 @@ public class ExcelPlugin {
      * @param batchExcelListener 监听器
      */
     public <T> void readExcelByListener(MultipartFile excel, Class<T>  rowModel, String sheetName,
-                                 int headLineNum, BatchExcelListener<T> batchExcelListener) throws ExcelPluginException {
+                                 int headLineNum, AnalysisEventListener<T> batchExcelListener) throws ExcelPluginException {
         if(null == batchExcelListener){
             return;
         }
@@ -191,6 +197,19 @@ public class ExcelPlugin {
         excelReader.finish();
     }
 
+    /**
+     * 流水线导入 Excel
+     * 解析、校验/翻译、入库 三阶段重叠执行
+     * @param excel    文件
+     * @param rowModel 实体类映射
+     * @param pipeline 导入流水线
+     * @return ExcelImportReport 导入报告
+     */
+    public <T> ExcelImportReport importExcel(MultipartFile excel, Class<T> rowModel,
+                                             ExcelImportPipeline<T> pipeline) throws ExcelPluginException {
+        return pipeline.execute(listener -> readExcelByListener(excel, rowModel, null, 1, listener));
+    }
+
     /**
      * 导出 Excel ：一个 sheet，带表头
      * 自定义WriterHandler 可以定制行列数据进行灵活化操作
@@ -226,6 +245,62 @@ public class ExcelPlugin {
     }
 
 
+    /**
+     * 分批导出 Excel ：一个 sheet，带表头
+     * 数据由 dataProvider 分批写入，写入后即可释放，内存占用与总条数无关
+     * xlsx 由 easyexcel 以 SXSSF 方式写出，超出窗口的行落盘到临时文件
+     *
+     * 响应流在全部数据写完 生成文件时才打开
+     * 中途查询或写入失败 丢弃已写数据 不向客户端返回残缺的文件，异常继续抛出
+     *
+     * @param response  HttpServletResponse
+     * @param fileName  导出的文件名
+     * @param sheetName 导入文件的 sheet 名
+     * @param classType 类型
+     * @param excelTypeEnum 文件类型
+     * @param dataProvider 数据提供者 参数为批次写入器
+     */
+    public <T> void writeExcel(HttpServletResponse response, String fileName, String sheetName,
+                               Class<T> classType, ExcelTypeEnum excelTypeEnum,
+                               Consumer<Consumer<List<T>>> dataProvider)
+            throws ExcelPluginException{
+
+        if(sheetName == null || "".equals(sheetName)){
+            sheetName = "sheet1";
+        }
+
+        String exportName = fileName+"-"+DateUtil.format(DateUtil.date(), "yyyyMMddHHmmss");
+        DeferredOutputStream outputStream = new DeferredOutputStream(
+                () -> getOutputStream(exportName, response, excelTypeEnum));
+        ExcelWriter excelWriter = EasyExcel.write(outputStream, classType).build();
+        WriteSheet writeSheet = EasyExcel.writerSheet(1, sheetName).build();
+        writeSheet.setRelativeHeadRowIndex(0);
+        boolean completed = false;
+        try {
+            // 先写表头 无数据时也能导出
+            excelWriter.write(Collections.emptyList(), writeSheet);
+            dataProvider.accept(list -> excelWriter.write(list, writeSheet));
+            completed = true;
+        }finally {
+            if(!completed){
+                // 导出失败 丢弃数据 只清理临时文件
+                outputStream.abort();
+            }
+            // 关闭流
+            try {
+                excelWriter.finish();
+                outputStream.flush();
+                outputStream.close();
+            }catch (Exception e){
+                log.error(e.getMessage(),e);
+            }
+            if(!completed && !response.isCommitted()){
+                response.reset();
+            }
+        }
+    }
+
+
     /**
      * 导出文件时为Writer生成OutputStream
      */
@@ -279,4 +354,59 @@ public class ExcelPlugin {
     public <T> List<T> getExtendsBeanList(List<?> list,Class<T> typeClazz){
         return WrapperUtil.transformInstance(list, typeClazz);
     }
+
+    /**
+     * 延迟打开的输出流
+     * 首次写出时才打开响应流，放弃后 写出内容全部丢弃
+     */
+    private static final class DeferredOutputStream extends OutputStream {
+
+        private final Supplier<OutputStream> opener;
+        private OutputStream target;
+        private boolean aborted;
+
+        private DeferredOutputStream(Supplier<OutputStream> opener) {
+            this.opener = opener;
+        }
+
+        private void abort() {
+            this.aborted = true;
+        }
+
+        private OutputStream target() {
+            if(target == null){
+                target = opener.get();
+            }
+            return target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(!aborted){
+                target().write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(!aborted){
+                target().write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if(!aborted && target != null){
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(!aborted && target != null){
+                target.close();
+            }
+        }
+    }
+
 }
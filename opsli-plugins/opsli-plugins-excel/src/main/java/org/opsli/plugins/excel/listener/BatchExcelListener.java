@@ -24,6 +24,8 @@ import org.apache.commons.lang3.StringUtils;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Excel 监听
@@ -41,6 +43,9 @@ public abstract class BatchExcelListener<T> extends AnalysisEventListener<T> {
      */
     private static final int BATCH_COUNT = 2000;
 
+    /** 带 ExcelProperty 注解的字段缓存 防止每行重复反射 */
+    private static final Map<Class<?>, Field[]> PROPERTY_FIELD_MAP = new ConcurrentHashMap<>();
+
     private final List<Object> dataList = new ArrayList<>();
 
     /**
@@ -75,19 +80,14 @@ public abstract class BatchExcelListener<T> extends AnalysisEventListener<T> {
     /**
      * 判断对象中属性值是否全为空
      */
-    private static boolean checkObjAllFieldsIsNull(Object object) {
+    public static boolean checkObjAllFieldsIsNull(Object object) {
         if (null == object) {
             return true;
         }
         try {
-            for (Field f : object.getClass().getDeclaredFields()) {
-                f.setAccessible(true);
-                //只校验带ExcelProperty注解的属性
-                ExcelProperty property = f.getAnnotation(ExcelProperty.class);
-                if(property == null || SERIAL_VERSION_UID.equals(f.getName())){
-                    continue;
-                }
-                if (f.get(object) != null && StringUtils.isNotBlank(f.get(object).toString())) {
+            for (Field f : getPropertyFields(object.getClass())) {
+                Object value = f.get(object);
+                if (value != null && StringUtils.isNotBlank(value.toString())) {
                     return false;
                 }
             }
@@ -98,4 +98,23 @@ public abstract class BatchExcelListener<T> extends AnalysisEventListener<T> {
         return true;
     }
 
+    /**
+     * 获得带 ExcelProperty 注解的字段
+     */
+    private static Field[] getPropertyFields(Class<?> clazz) {
+        return PROPERTY_FIELD_MAP.computeIfAbsent(clazz, key -> {
+            List<Field> fields = new ArrayList<>();
+            for (Field f : key.getDeclaredFields()) {
+                //只校验带ExcelProperty注解的属性
+                ExcelProperty property = f.getAnnotation(ExcelProperty.class);
+                if(property == null || SERIAL_VERSION_UID.equals(f.getName())){
+                    continue;
+                }
+                f.setAccessible(true);
+                fields.add(f);
+            }
+            return fields.toArray(new Field[0]);
+        });
+    }
+
 }
@@ -28,6 +28,9 @@ public enum ExcelMsg implements BaseMsg {
     /** Excel 异常 */
     EXCEPTION_FILE_FORMAT(90000,"文件格式错误！"),
     EXCEPTION_CREATE_ERROR(90000,"创建文件失败！"),
+    EXCEPTION_IMPORT_INTERRUPTED(90001,"导入已中断！"),
+    EXCEPTION_IMPORT_WORKER(90002,"导入处理失败！{}"),
+    EXCEPTION_IMPORT_BUSY(90003,"导入任务繁忙，请稍后再试！"),
     ;
 
 
@@ -0,0 +1,445 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.excel.pipeline;
+
+import cn.hutool.core.exceptions.ExceptionUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.excel.context.AnalysisContext;
+import com.alibaba.excel.event.AnalysisEventListener;
+import com.alibaba.excel.exception.ExcelDataConvertException;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.opsli.common.thread.ThreadPoolFactory;
+import org.opsli.plugins.excel.exception.ExcelPluginException;
+import org.opsli.plugins.excel.listener.BatchExcelListener;
+import org.opsli.plugins.excel.msg.ExcelMsg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Excel 流水线导入
+ *
+ * 解析 -> 校验/翻译 -> 入库 三个阶段之间通过有界队列衔接，各阶段互相重叠：
+ * 1. 解析：调用线程 按批次读取 Excel，下游处理不过来时 阻塞在队列上 (背压)，内存中最多驻留 队列容量 * 2 + 并行数 批数据
+ * 2. 校验/翻译：单线程 剔除空行、执行行处理 (字典翻译、赋值等)，行处理异常 只记录该行失败
+ * 3. 入库：多线程 整批写入 (开启 rewriteBatchedStatements 后为多值 INSERT)，
+ *    整批失败时 逐行重试定位失败行，批量写入需处于事务中 否则重试会产生重复数据
+ *
+ * 所有导入共用一个有界线程池，每次导入按 1 + 并行数 占用线程名额，名额不足时 等待其他导入结束
+ *
+ * 导入结果以 {@link ExcelImportReport} 返回，不再整体成功或整体失败
+ *
+ * @author Parker
+ * @date 2021-12-20 10:12
+ */
+@Slf4j
+@Builder
+public class ExcelImportPipeline<T> {
+
+    /** 线程池名称格式 */
+    private static final String THREAD_POOL_NAME = "ExcelImportPool-%d";
+
+    /** 导入线程总数 所有导入共用 */
+    static final int MAX_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /** 等待线程名额时间 (秒) */
+    private static final long ACQUIRE_TIMEOUT = 60L;
+
+    /** 入队等待时间 (毫秒) 超时后检查是否已失败 */
+    private static final long OFFER_TIMEOUT = 500L;
+
+    /** 线程名额 公平模式 防止占用多的导入一直等待 */
+    private static final Semaphore PERMITS = new Semaphore(MAX_THREADS, true);
+
+    /** 导入线程池 任务数受线程名额限制 不会超过线程数 */
+    private static final ExecutorService EXECUTOR = ThreadPoolFactory.createInitThreadPool(MAX_THREADS, MAX_THREADS,
+            0L, TimeUnit.SECONDS, MAX_THREADS, THREAD_POOL_NAME, new ThreadPoolExecutor.AbortPolicy());
+
+    /** 结束标记 */
+    private static final Chunk<?> END = new Chunk<>(0);
+
+    /** 每批行数 */
+    @Builder.Default
+    private final int batchSize = 2000;
+
+    /** 入库并行数 最多 导入线程总数 - 1 */
+    @Builder.Default
+    private final int parallelism = 2;
+
+    /** 阶段间队列容量 (批) */
+    @Builder.Default
+    private final int queueCapacity = 4;
+
+    /** 失败明细 最大记录数 */
+    @Builder.Default
+    private final int maxErrors = 500;
+
+    /** 行处理 (校验、字典翻译、赋值) 抛出异常则该行失败 */
+    private final Consumer<T> rowHandler;
+
+    /** 批量入库 */
+    private final Consumer<List<T>> batchInserter;
+
+    /** 单行入库 整批失败时逐行重试，为空时 整批记为失败 */
+    private final Consumer<T> rowInserter;
+
+
+    /**
+     * 执行导入
+     * @param reader 读取器 参数为解析监听器
+     * @return ExcelImportReport
+     */
+    public ExcelImportReport execute(Consumer<AnalysisEventListener<T>> reader) throws ExcelPluginException {
+        Execution execution = new Execution();
+        return execution.run(reader);
+    }
+
+    // ====================================
+
+    /**
+     * 单次导入
+     */
+    private final class Execution {
+
+        private final int workers = Math.max(1, Math.min(parallelism, MAX_THREADS - 1));
+        /** 处理线程结束 */
+        private final CountDownLatch finished = new CountDownLatch(workers + 1);
+        private final ExcelImportReport report = new ExcelImportReport(maxErrors);
+        private final BlockingQueue<Chunk<T>> parsedQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        private final BlockingQueue<Chunk<T>> preparedQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        /** 处理线程异常 */
+        private final AtomicReference<Throwable> fatal = new AtomicReference<>();
+
+        private ExcelImportReport run(Consumer<AnalysisEventListener<T>> reader) throws ExcelPluginException {
+            // 校验/翻译 1 个线程 + 入库 N 个线程，一次性占用 防止多个导入各占一部分 相互等待
+            int threads = workers + 1;
+            try {
+                if(!PERMITS.tryAcquire(threads, ACQUIRE_TIMEOUT, TimeUnit.SECONDS)){
+                    throw new ExcelPluginException(ExcelMsg.EXCEPTION_IMPORT_BUSY);
+                }
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new ExcelPluginException(ExcelMsg.EXCEPTION_IMPORT_INTERRUPTED);
+            }
+
+            try {
+                return pipeline(reader);
+            }finally {
+                PERMITS.release(threads);
+            }
+        }
+
+        private ExcelImportReport pipeline(Consumer<AnalysisEventListener<T>> reader) throws ExcelPluginException {
+            RuntimeException parseException = null;
+            try {
+                submit(this::prepare);
+                for (int i = 0; i < workers; i++) {
+                    submit(this::insert);
+                }
+
+                reader.accept(new PipelineListener());
+            }catch (RuntimeException e){
+                // 解析失败时 已解析的批次照常入库 与原分批导入一致
+                parseException = e;
+            }finally {
+                transfer(parsedQueue, end());
+            }
+
+            // 处理线程失败时 其余线程在 OFFER_TIMEOUT 内自行退出，须等全部退出后 才能归还线程名额
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                }catch (InterruptedException e){
+                    interrupted = true;
+                    fail(e);
+                }
+            }
+            if(interrupted){
+                Thread.currentThread().interrupt();
+                throw new ExcelPluginException(ExcelMsg.EXCEPTION_IMPORT_INTERRUPTED);
+            }
+
+            Throwable t = fatal.get();
+            if(null != t){
+                throw new ExcelPluginException(ExcelMsg.EXCEPTION_IMPORT_WORKER.getCode(),
+                        StrUtil.format(ExcelMsg.EXCEPTION_IMPORT_WORKER.getMessage(), ExceptionUtil.getRootCauseMessage(t)));
+            }
+            if(null != parseException){
+                if(parseException instanceof ExcelPluginException){
+                    throw parseException;
+                }
+                throw new ExcelPluginException(ExcelMsg.EXCEPTION_FILE_FORMAT.getCode(),
+                        ExceptionUtil.getRootCauseMessage(parseException));
+            }
+
+            report.sortErrors();
+            return report;
+        }
+
+        /**
+         * 提交处理线程
+         * @param task 任务
+         */
+        private void submit(Runnable task) {
+            try {
+                EXECUTOR.execute(() -> {
+                    try {
+                        task.run();
+                    }finally {
+                        finished.countDown();
+                    }
+                });
+            }catch (RejectedExecutionException e){
+                // 不抛出 保证每个处理线程都计数，解析阶段 会因失败而结束
+                finished.countDown();
+                fail(e);
+            }
+        }
+
+        /**
+         * 校验/翻译 阶段
+         */
+        private void prepare() {
+            try {
+                while (true) {
+                    Chunk<T> chunk = take(parsedQueue);
+                    if(chunk == END){
+                        break;
+                    }
+
+                    Chunk<T> prepared = new Chunk<>(chunk.size());
+                    for (int i = 0; i < chunk.size(); i++) {
+                        T data = chunk.datas.get(i);
+                        int row = chunk.rows[i];
+                        // 空行 直接跳过
+                        if(BatchExcelListener.checkObjAllFieldsIsNull(data)){
+                            continue;
+                        }
+                        report.addTotal(1);
+                        try {
+                            if(null != rowHandler){
+                                rowHandler.accept(data);
+                            }
+                            prepared.add(row, data);
+                        }catch (Exception e){
+                            report.addError(row, ExceptionUtil.getRootCauseMessage(e));
+                        }
+                    }
+
+                    if(prepared.size() > 0 && !transfer(preparedQueue, prepared)){
+                        break;
+                    }
+                }
+            }catch (Throwable e){
+                fail(e);
+            }finally {
+                for (int i = 0; i < workers; i++) {
+                    transfer(preparedQueue, end());
+                }
+            }
+        }
+
+        /**
+         * 入库 阶段
+         */
+        private void insert() {
+            try {
+                while (true) {
+                    Chunk<T> chunk = take(preparedQueue);
+                    if(chunk == END){
+                        break;
+                    }
+                    insertChunk(chunk);
+                }
+            }catch (Throwable e){
+                fail(e);
+            }
+        }
+
+        /**
+         * 批量入库 整批失败时逐行重试
+         * @param chunk 批次
+         */
+        private void insertChunk(Chunk<T> chunk) {
+            try {
+                batchInserter.accept(chunk.datas);
+                report.addSuccess(chunk.size());
+                return;
+            }catch (Exception e){
+                log.warn("Excel 导入 批量入库失败 逐行重试：{}", ExceptionUtil.getRootCauseMessage(e));
+                if(null == rowInserter){
+                    String message = ExceptionUtil.getRootCauseMessage(e);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        report.addError(chunk.rows[i], message);
+                    }
+                    return;
+                }
+            }
+
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    rowInserter.accept(chunk.datas.get(i));
+                    report.addSuccess(1);
+                }catch (Exception e){
+                    report.addError(chunk.rows[i], ExceptionUtil.getRootCauseMessage(e));
+                }
+            }
+        }
+
+        /**
+         * 放入队列 队列满时阻塞 (背压)
+         * 处理线程已失败时放弃，防止调用线程永久阻塞
+         *
+         * @param queue 队列
+         * @param chunk 批次
+         * @return boolean 是否放入
+         */
+        private boolean transfer(BlockingQueue<Chunk<T>> queue, Chunk<T> chunk) {
+            try {
+                while (!queue.offer(chunk, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    if(null != fatal.get()){
+                        return false;
+                    }
+                }
+                return true;
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                fail(e);
+                return false;
+            }
+        }
+
+        /**
+         * 取出批次 处理线程已失败时 视为结束，防止线程永久阻塞
+         *
+         * @param queue 队列
+         * @return Chunk
+         */
+        private Chunk<T> take(BlockingQueue<Chunk<T>> queue) throws InterruptedException {
+            while (true) {
+                Chunk<T> chunk = queue.poll(OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
+                if(null != chunk){
+                    return chunk;
+                }
+                if(null != fatal.get()){
+                    return end();
+                }
+            }
+        }
+
+        private void fail(Throwable e) {
+            log.error(e.getMessage(), e);
+            fatal.compareAndSet(null, e);
+        }
+
+        /**
+         * 解析 阶段 监听器
+         */
+        private final class PipelineListener extends AnalysisEventListener<T> {
+
+            private Chunk<T> chunk = new Chunk<>(batchSize);
+
+            @Override
+            public void invoke(T data, AnalysisContext context) {
+                // 行号 从1开始 与 Excel 中显示的行号一致
+                chunk.add(context.readRowHolder().getRowIndex() + 1, data);
+                if(chunk.size() >= batchSize){
+                    flush();
+                }
+            }
+
+            @Override
+            public void doAfterAllAnalysed(AnalysisContext context) {
+                flush();
+            }
+
+            /**
+             * 单元格转换失败 只记录该行失败 继续解析
+             */
+            @Override
+            public void onException(Exception exception, AnalysisContext context) throws Exception {
+                if(exception instanceof ExcelDataConvertException){
+                    ExcelDataConvertException e = (ExcelDataConvertException) exception;
+                    report.addTotal(1);
+                    report.addError(e.getRowIndex() + 1,
+                            StrUtil.format("第{}列 数据格式错误", e.getColumnIndex() + 1));
+                    return;
+                }
+                throw exception;
+            }
+
+            private void flush() {
+                if(chunk.size() == 0){
+                    return;
+                }
+                if(!transfer(parsedQueue, chunk)){
+                    throw new ExcelPluginException(ExcelMsg.EXCEPTION_IMPORT_WORKER.getCode(),
+                            StrUtil.format(ExcelMsg.EXCEPTION_IMPORT_WORKER.getMessage(),
+                                    ExceptionUtil.getRootCauseMessage(fatal.get())));
+                }
+                chunk = new Chunk<>(batchSize);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Chunk<T> end() {
+        return (Chunk<T>) END;
+    }
+
+    /**
+     * 批次 数据及其行号
+     */
+    private static final class Chunk<T> {
+
+        private final List<T> datas;
+        private int[] rows;
+
+        private Chunk(int capacity) {
+            this.datas = new ArrayList<>(capacity);
+            this.rows = new int[Math.max(capacity, 1)];
+        }
+
+        private void add(int row, T data) {
+            int size = datas.size();
+            if(size == rows.length){
+                int[] newRows = new int[size << 1];
+                System.arraycopy(rows, 0, newRows, 0, size);
+                rows = newRows;
+            }
+            rows[size] = row;
+            datas.add(data);
+        }
+
+        private int size() {
+            return datas.size();
+        }
+    }
+
+}
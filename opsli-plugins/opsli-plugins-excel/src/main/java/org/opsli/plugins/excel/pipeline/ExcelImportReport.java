@@ -0,0 +1,130 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.excel.pipeline;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Excel 导入报告
+ *
+ * 导入不再整体成功或整体失败，失败行逐行记录 其余行照常入库
+ *
+ * @author Parker
+ * @date 2021-12-20 10:12
+ */
+@Data
+public class ExcelImportReport {
+
+    /** 读取行数 (不含空行) */
+    private long total;
+
+    /** 成功行数 */
+    private long successCount;
+
+    /** 失败行数 */
+    private long failedCount;
+
+    /** 失败明细是否被截断 */
+    private boolean truncated;
+
+    /** 失败明细 */
+    private List<RowError> errors = new ArrayList<>();
+
+    /** 失败明细 最大记录数 */
+    @Getter(AccessLevel.NONE)
+    private final int maxErrors;
+
+    /** 失败明细 按行号倒序的大顶堆，超出最大记录数时 淘汰行号最大的，保留前 N 行 */
+    @Getter(AccessLevel.NONE)
+    private final PriorityQueue<RowError> errorHeap;
+
+    public ExcelImportReport(int maxErrors) {
+        this.maxErrors = maxErrors;
+        this.errorHeap = new PriorityQueue<>(Math.max(1, Math.min(maxErrors, 64)),
+                Comparator.comparingInt(RowError::getRow).reversed());
+    }
+
+    /**
+     * 是否存在失败行
+     * @return boolean
+     */
+    public boolean hasError() {
+        return failedCount > 0;
+    }
+
+    synchronized void addTotal(long count) {
+        total += count;
+    }
+
+    synchronized void addSuccess(long count) {
+        successCount += count;
+    }
+
+    /**
+     * 记录失败行
+     * @param row 行号 从1开始 与 Excel 中显示的行号一致
+     * @param message 失败信息
+     */
+    synchronized void addError(int row, String message) {
+        failedCount++;
+        if (errorHeap.size() < maxErrors) {
+            errorHeap.add(new RowError(row, message));
+            return;
+        }
+        truncated = true;
+        // 各阶段并行处理 失败行到达顺序不定，行号更小的 替换堆顶
+        RowError last = errorHeap.peek();
+        if (null != last && row < last.getRow()) {
+            errorHeap.poll();
+            errorHeap.add(new RowError(row, message));
+        }
+    }
+
+    /**
+     * 各阶段并行处理 失败明细按行号重新排序
+     */
+    synchronized void sortErrors() {
+        List<RowError> sorted = new ArrayList<>(errorHeap);
+        sorted.sort(Comparator.comparingInt(RowError::getRow));
+        errors = sorted;
+    }
+
+    /**
+     * 失败行
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+
+        /** 行号 */
+        private int row;
+
+        /** 失败信息 */
+        private String message;
+
+    }
+
+}
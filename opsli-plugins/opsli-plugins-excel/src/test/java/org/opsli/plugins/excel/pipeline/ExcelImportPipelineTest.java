@@ -0,0 +1,317 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.excel.pipeline;
+
+import com.alibaba.excel.annotation.ExcelProperty;
+import com.alibaba.excel.context.AnalysisContext;
+import com.alibaba.excel.event.AnalysisEventListener;
+import com.alibaba.excel.read.metadata.holder.ReadRowHolder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.opsli.plugins.excel.exception.ExcelPluginException;
+import org.opsli.plugins.excel.msg.ExcelMsg;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Excel 流水线导入 测试
+ *
+ * @author Parker
+ * @date 2021-12-20 10:12
+ */
+class ExcelImportPipelineTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    void rowHandlerFailureOnlyFailsThatRow() {
+        Set<String> inserted = ConcurrentHashMap.newKeySet();
+        ExcelImportPipeline<Row> pipeline = ExcelImportPipeline.<Row>builder()
+                .batchSize(7)
+                .parallelism(3)
+                .rowHandler(row -> {
+                    if(row.getName().endsWith("0")){
+                        throw new IllegalArgumentException("名称非法");
+                    }
+                })
+                .batchInserter(rows -> rows.forEach(row -> inserted.add(row.getName())))
+                .build();
+
+        ExcelImportReport report = assertTimeoutPreemptively(TIMEOUT,
+                () -> pipeline.execute(reader(100, i -> i % 10 == 5 ? new Row() : new Row("n" + i))));
+
+        // 空行不计数
+        assertEquals(90, report.getTotal());
+        assertEquals(80, report.getSuccessCount());
+        assertEquals(10, report.getFailedCount());
+        assertEquals(80, inserted.size());
+        // 行号 = 行索引 + 1
+        assertEquals(IntStream.range(0, 10).map(i -> i * 10 + 1).boxed().collect(Collectors.toList()),
+                report.getErrors().stream().map(ExcelImportReport.RowError::getRow).collect(Collectors.toList()));
+        assertTrue(report.getErrors().get(0).getMessage().contains("名称非法"));
+    }
+
+    @Test
+    void batchFailureRetriesRowByRow() {
+        List<String> inserted = new ArrayList<>();
+        AtomicInteger batchCalls = new AtomicInteger();
+        ExcelImportPipeline<Row> pipeline = ExcelImportPipeline.<Row>builder()
+                .batchSize(10)
+                .parallelism(2)
+                .batchInserter(rows -> {
+                    batchCalls.incrementAndGet();
+                    // 模拟事务 整批失败时 不落任何数据
+                    if(rows.stream().anyMatch(row -> row.getName().startsWith("dup"))){
+                        throw new IllegalStateException("Duplicate entry");
+                    }
+                    synchronized (inserted){
+                        rows.forEach(row -> inserted.add(row.getName()));
+                    }
+                })
+                .rowInserter(row -> {
+                    if(row.getName().startsWith("dup")){
+                        throw new IllegalStateException("Duplicate entry " + row.getName());
+                    }
+                    synchronized (inserted){
+                        inserted.add(row.getName());
+                    }
+                })
+                .build();
+
+        ExcelImportReport report = assertTimeoutPreemptively(TIMEOUT,
+                () -> pipeline.execute(reader(50, i -> new Row(i == 12 || i == 37 ? "dup" + i : "n" + i))));
+
+        assertEquals(50, report.getTotal());
+        assertEquals(48, report.getSuccessCount());
+        assertEquals(2, report.getFailedCount());
+        assertEquals(5, batchCalls.get());
+        // 逐行重试 不产生重复数据
+        assertEquals(48, inserted.size());
+        assertEquals(48, inserted.stream().distinct().count());
+        assertEquals(13, report.getErrors().get(0).getRow());
+        assertEquals(38, report.getErrors().get(1).getRow());
+        assertTrue(report.getErrors().get(1).getMessage().contains("dup37"));
+    }
+
+    @Test
+    void batchFailureWithoutRowInserterFailsWholeBatch() {
+        ExcelImportPipeline<Row> pipeline = ExcelImportPipeline.<Row>builder()
+                .batchSize(10)
+                .batchInserter(rows -> {
+                    if(rows.stream().anyMatch(row -> "n3".equals(row.getName()))){
+                        throw new IllegalStateException("Duplicate entry");
+                    }
+                })
+                .build();
+
+        ExcelImportReport report = assertTimeoutPreemptively(TIMEOUT,
+                () -> pipeline.execute(reader(25, i -> new Row("n" + i))));
+
+        assertEquals(15, report.getSuccessCount());
+        assertEquals(10, report.getFailedCount());
+        assertEquals(1, report.getErrors().get(0).getRow());
+    }
+
+    @Test
+    void workerFailureAbortsImportAndReleasesThreads() {
+        AtomicInteger parsed = new AtomicInteger();
+        ExcelImportPipeline<Row> failing = ExcelImportPipeline.<Row>builder()
+                .batchSize(10)
+                .parallelism(2)
+                .queueCapacity(1)
+                .batchInserter(rows -> {
+                    // 非 Exception 不做逐行重试 视为处理线程失败
+                    throw new AssertionError("worker down");
+                })
+                .build();
+
+        ExcelPluginException e = assertTimeoutPreemptively(TIMEOUT, () -> assertThrows(ExcelPluginException.class,
+                () -> failing.execute(counting(reader(100_000, i -> new Row("n" + i)), parsed))));
+        assertEquals(ExcelMsg.EXCEPTION_IMPORT_WORKER.getCode(), e.getCode());
+        assertTrue(e.getMessage().contains("worker down"));
+        // 处理线程失败后 解析及时停止
+        assertTrue(parsed.get() < 100_000);
+
+        // 线程名额已全部归还 占满名额的导入可以执行
+        ExcelImportPipeline<Row> full = ExcelImportPipeline.<Row>builder()
+                .parallelism(ExcelImportPipeline.MAX_THREADS)
+                .batchInserter(rows -> {})
+                .build();
+        ExcelImportReport report = assertTimeoutPreemptively(TIMEOUT,
+                () -> full.execute(reader(10, i -> new Row("n" + i))));
+        assertEquals(10, report.getSuccessCount());
+    }
+
+    @Test
+    void slowInsertBlocksParsing() throws Exception {
+        int batchSize = 10;
+        int queueCapacity = 2;
+        int parallelism = 2;
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger parsed = new AtomicInteger();
+        ExcelImportPipeline<Row> pipeline = ExcelImportPipeline.<Row>builder()
+                .batchSize(batchSize)
+                .parallelism(parallelism)
+                .queueCapacity(queueCapacity)
+                .batchInserter(rows -> {
+                    try {
+                        release.await();
+                    }catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                })
+                .build();
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<ExcelImportReport> future = caller.submit(
+                    () -> pipeline.execute(counting(reader(10_000, i -> new Row("n" + i)), parsed)));
+
+            // 等待解析停滞
+            int last;
+            do {
+                last = parsed.get();
+                TimeUnit.MILLISECONDS.sleep(300);
+            } while (last != parsed.get());
+
+            // 两个队列 + 校验线程 + 入库线程 + 解析中的批次
+            int maxChunks = queueCapacity * 2 + 1 + parallelism + 1;
+            assertTrue(parsed.get() <= maxChunks * batchSize, "parsed " + parsed.get());
+            assertFalse(future.isDone());
+
+            release.countDown();
+            ExcelImportReport report = future.get(TIMEOUT.getSeconds(), TimeUnit.SECONDS);
+            assertEquals(10_000, report.getSuccessCount());
+            assertEquals(10_000, parsed.get());
+        }finally {
+            release.countDown();
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentImportsShareBoundedThreads() throws Exception {
+        int imports = 3;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        // 每次导入占满全部线程名额，多个导入只能依次执行
+        ExcelImportPipeline<Row> pipeline = ExcelImportPipeline.<Row>builder()
+                .batchSize(5)
+                .parallelism(ExcelImportPipeline.MAX_THREADS - 1)
+                .batchInserter(rows -> {
+                    int current = running.incrementAndGet();
+                    maxRunning.accumulateAndGet(current, Math::max);
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(5);
+                    }catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }finally {
+                        running.decrementAndGet();
+                    }
+                })
+                .build();
+
+        ExecutorService callers = Executors.newFixedThreadPool(imports);
+        try {
+            List<Future<ExcelImportReport>> futures = new ArrayList<>();
+            for (int i = 0; i < imports; i++) {
+                futures.add(callers.submit(() -> pipeline.execute(reader(500, n -> new Row("n" + n)))));
+            }
+            for (Future<ExcelImportReport> future : futures) {
+                assertEquals(500, future.get(TIMEOUT.getSeconds(), TimeUnit.SECONDS).getSuccessCount());
+            }
+        }finally {
+            callers.shutdownNow();
+        }
+
+        assertTrue(maxRunning.get() <= ExcelImportPipeline.MAX_THREADS - 1, "max running " + maxRunning.get());
+    }
+
+    // ====================================
+
+    /**
+     * 模拟 Excel 解析 行索引从0开始
+     */
+    private static Consumer<AnalysisEventListener<Row>> reader(int rows, IntFunction<Row> factory) {
+        return listener -> {
+            AtomicInteger rowIndex = new AtomicInteger();
+            ReadRowHolder holder = mock(ReadRowHolder.class);
+            when(holder.getRowIndex()).thenAnswer(invocation -> rowIndex.get());
+            AnalysisContext context = mock(AnalysisContext.class);
+            when(context.readRowHolder()).thenReturn(holder);
+
+            for (int i = 0; i < rows; i++) {
+                rowIndex.set(i);
+                listener.invoke(factory.apply(i), context);
+            }
+            listener.doAfterAllAnalysed(context);
+        };
+    }
+
+    /**
+     * 统计已解析行数
+     */
+    private static Consumer<AnalysisEventListener<Row>> counting(Consumer<AnalysisEventListener<Row>> reader,
+                                                                 AtomicInteger parsed) {
+        return listener -> reader.accept(new AnalysisEventListener<Row>() {
+            @Override
+            public void invoke(Row data, AnalysisContext context) {
+                listener.invoke(data, context);
+                parsed.incrementAndGet();
+            }
+
+            @Override
+            public void doAfterAllAnalysed(AnalysisContext context) {
+                listener.doAfterAllAnalysed(context);
+            }
+        });
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Row {
+
+        @ExcelProperty("名称")
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.excel.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Excel 导入报告 测试
+ *
+ * @author Parker
+ * @date 2021-12-20 10:12
+ */
+class ExcelImportReportTest {
+
+    @Test
+    void keepsFirstRowsWhenTruncated() {
+        ExcelImportReport report = new ExcelImportReport(3);
+        // 并行处理 失败行乱序到达
+        int[] rows = {9, 2, 7, 5, 1, 8, 3, 6, 4};
+        for (int row : rows) {
+            report.addError(row, "row " + row);
+        }
+        report.sortErrors();
+
+        assertEquals(rows.length, report.getFailedCount());
+        assertTrue(report.isTruncated());
+        assertEquals(Arrays.asList(1, 2, 3), rows(report.getErrors()));
+        assertEquals("row 1", report.getErrors().get(0).getMessage());
+    }
+
+    @Test
+    void keepsAllRowsWithinLimit() {
+        ExcelImportReport report = new ExcelImportReport(5);
+        report.addError(4, "a");
+        report.addError(2, "b");
+        report.sortErrors();
+
+        assertFalse(report.isTruncated());
+        assertEquals(Arrays.asList(2, 4), rows(report.getErrors()));
+    }
+
+    @Test
+    void zeroLimitOnlyCounts() {
+        ExcelImportReport report = new ExcelImportReport(0);
+        report.addError(1, "a");
+        report.sortErrors();
+
+        assertEquals(1, report.getFailedCount());
+        assertTrue(report.isTruncated());
+        assertTrue(report.getErrors().isEmpty());
+    }
+
+    private static List<Integer> rows(List<ExcelImportReport.RowError> errors) {
+        return errors.stream().map(ExcelImportReport.RowError::getRow).collect(Collectors.toList());
+    }
+
+}
@@ -20,13 +20,17 @@ import com.alibaba.fastjson.support.spring.FastJsonRedisSerializer;
 import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.opsli.plugins.redis.jsonserializer.FastJson2JsonRedisSerializer;
+import org.opsli.plugins.redis.pushsub.receiver.BaseReceiver;
 import org.opsli.plugins.redis.scripts.RedisScriptCache;
 import org.opsli.plugins.redis.scripts.enums.RedisScriptsEnum;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 
 import javax.annotation.Resource;
@@ -76,6 +80,33 @@ public class RedisPluginConfig {
     }
 
 
+    /**
+     * Redis 消息订阅容器
+     *
+     * 自动注册全部 BaseReceiver 实现
+     * 消息由 RedisTemplate.convertAndSend 发出 这里采用同一序列化方式解析
+     *
+     * @param receivers 订阅者
+     * @return RedisMessageListenerContainer
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(
+            ObjectProvider<BaseReceiver> receivers) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        receivers.orderedStream().forEach(receiver ->
+            container.addMessageListener((message, pattern) -> {
+                try {
+                    Object msg = FAST_JSON_REDIS_SERIALIZER.deserialize(message.getBody());
+                    receiver.receiveMessage(null == msg ? null : String.valueOf(msg));
+                }catch (Exception e){
+                    log.error(e.getMessage(), e);
+                }
+            }, new ChannelTopic(receiver.getListenerChannel()))
+        );
+        return container;
+    }
+
     /**
      * 加载脚本到缓存内
      *
@@ -37,10 +37,16 @@ public class RedisLock {
     /** 锁有效时间 */
     private Long lockTimeOut;
 
-    /** 锁凭证 */
+    /** 锁凭证 同一凭证再次加锁 视为重入 */
     private String identifier;
 
-    /** 线程锁 */
+    /**
+     * 防护令牌 每次首次加锁 单调递增
+     * 下游存储可拒绝令牌小于已见令牌的写入 防止锁过期后 旧持有者继续写入
+     */
+    private volatile Long fencingToken;
+
+    /** 线程锁 (本地持有次数) */
     private final AtomicInteger atomicInteger;
 
     /**
@@ -48,7 +54,7 @@ public class RedisLock {
      */
     public RedisLock() {
         // 初始化锁
-        atomicInteger = new AtomicInteger(1);
+        atomicInteger = new AtomicInteger(0);
     }
 
     /**
@@ -60,7 +66,7 @@ public class RedisLock {
         this.lockTimeOut = lockTimeOut;
         this.identifier = identifier;
         // 初始化锁
-        atomicInteger = new AtomicInteger(1);
+        atomicInteger = new AtomicInteger(0);
     }
 
     /** 获得线程锁 */
@@ -68,11 +74,21 @@ public class RedisLock {
         return atomicInteger.get();
     }
 
+    /** 增加线程锁 */
+    public int threadLock(){
+        return atomicInteger.incrementAndGet();
+    }
+
     /** 解除线程锁 */
     public int threadUnLock(){
         return atomicInteger.decrementAndGet();
     }
 
+    /** 清空线程锁 */
+    public void threadClearLock(){
+        atomicInteger.set(0);
+    }
+
 
 
     // ==========================================================
@@ -114,5 +130,14 @@ public class RedisLock {
         return this;
     }
 
+    public Long getFencingToken() {
+        return fencingToken;
+    }
+
+    public RedisLock setFencingToken(Long fencingToken) {
+        this.fencingToken = fencingToken;
+        return this;
+    }
+
 
 }
@@ -15,17 +15,27 @@
  */
 package org.opsli.plugins.redis.lock;
 
-import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.opsli.plugins.redis.RedisLockPlugins;
 import org.opsli.plugins.redis.RedisPlugin;
+import org.opsli.plugins.redis.pushsub.receiver.BaseReceiver;
 import org.opsli.plugins.redis.scripts.enums.RedisScriptsEnum;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Redis 锁实现
@@ -38,10 +48,12 @@ import java.util.List;
  * redisPlugin.tryLock(redisLock) 加锁
  * redisPlugin.unLock(redisLock) 释放锁
  *
- * 分布式锁需要考虑的问题
- * 1、这把锁没有失效时间，一旦解锁操作失败，就会导致锁记录一直在tair中，其他线程无法再获得到锁。
- * 2、这把锁只能是非阻塞的，无论成功还是失败都直接返回。
- * 3、这把锁是非重入的，一个线程获得锁之后，在释放锁之前，无法再次获得该锁，因为使用到的key在tair中已经存在。无法再执行put操作。
+ * 1、等待：抢锁失败后 挂起等待释放通知 (解锁脚本 完全释放时发布)，
+ *    最长等待 锁剩余存活时间 与 MAX_PARK_TIME 中较小者，通知丢失、持有者宕机时 由超时兜底重试
+ * 2、续命：全部锁共用一个定时线程 按 锁有效时间 / RENEW_RATIO 周期续命，解锁或锁已失效时 取消续命
+ * 3、重入：同一凭证 (同一 RedisLock) 再次加锁 重入次数加一，解锁时逐次扣减 归零才真正释放
+ * 4、防护令牌：首次加锁时 发放单调递增的令牌，见 {@link RedisLock#getFencingToken()}
+ *    令牌以服务端时间(微秒)为基准，计数器与锁一同过期 不在 Redis 中常驻
  *
  * @author Parker
  * @date 2020-09-16 11:47
@@ -50,12 +62,42 @@ import java.util.List;
 @Service
 public class RedisLockImpl implements RedisLockPlugins {
 
-    /** 锁前缀 */
-    private static final String LOCK_NAME_PREFIX = "lock:";
+    /** 释放通知 信道 */
+    public static final String CHANNEL = "lock:release";
+
+    /** 防护令牌计数器 后缀 (与锁一同过期) */
+    private static final String FENCE_SUFFIX = ":fence";
+
+    /** 单次等待 最长时间 (毫秒) */
+    private static final long MAX_PARK_TIME = 500L;
+
+    /** 续命周期 = 锁有效时间 / RENEW_RATIO */
+    private static final long RENEW_RATIO = 3L;
+
+    /** 续命周期 最小值 (毫秒) */
+    private static final long MIN_RENEW_PERIOD = 100L;
+
+    /** 等待方 key: 锁名称 */
+    private final Map<String, Waiter> waiterMap = new ConcurrentHashMap<>();
+
+    /** 续命任务 key: 锁名称 + 凭证 */
+    private final Map<String, ScheduledFuture<?>> watchDogMap = new ConcurrentHashMap<>();
+
+    /** 看门狗 全部锁共用 */
+    private final ScheduledThreadPoolExecutor watchDog;
 
     @Autowired
     private RedisPlugin redisPlugin;
 
+    public RedisLockImpl() {
+        watchDog = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Redis-Lock-Watch-Dog-%d")
+                        .setDaemon(true).build());
+        // 解锁后 续命任务直接移出队列
+        watchDog.setRemoveOnCancelPolicy(true);
+    }
+
     /**
      * Redis 加分布式锁
      * @param redisLock 锁
@@ -63,14 +105,25 @@ public class RedisLockImpl implements RedisLockPlugins {
      */
     @Override
     public RedisLock tryLock(RedisLock redisLock) {
-        // 锁凭证
-        String identifier = IdUtil.simpleUUID();
-        redisLock = this.tryLock(redisLock,identifier);
-        if(redisLock != null){
-            log.info(this.getInfo("分布式锁 - 开启",redisLock));
-            // 启动看门狗
+        if(redisLock == null){
+            return null;
+        }
+        // 锁凭证 已有凭证时沿用 实现重入
+        if(StrUtil.isEmpty(redisLock.getIdentifier())){
+            redisLock.setIdentifier(IdUtil.simpleUUID());
+        }
+
+        Long fencingToken = this.acquire(redisLock);
+        if(fencingToken == null){
+            return null;
+        }
+        redisLock.setFencingToken(fencingToken);
+
+        // 首次持有 启动看门狗
+        if(redisLock.threadLock() == 1){
             this.lockDog(redisLock);
         }
+        log.info(this.getInfo("分布式锁 - 开启",redisLock));
         return redisLock;
     }
 
@@ -81,99 +134,178 @@ public class RedisLockImpl implements RedisLockPlugins {
      */
     @Override
     public boolean unLock(RedisLock redisLock) {
-        if(redisLock == null){
+        if(redisLock == null || StrUtil.isEmpty(redisLock.getIdentifier())){
             return false;
         }
         try {
-            List<String> keys = Collections.singletonList(LOCK_NAME_PREFIX + redisLock.getLockName());
+            List<String> keys = Arrays.asList(redisLock.getLockName(),
+                    BaseReceiver.BASE_CHANNEL + CHANNEL);
             Long ret = (Long) redisPlugin.callScript(RedisScriptsEnum.REDIS_UN_LOCK, keys,
                     redisLock.getIdentifier());
-            // 减去线程锁
-            redisLock.threadUnLock();
-            log.info(this.getInfo("分布式锁 - 解除",redisLock));
-            if(ret == null){
-                return false;
+
+            // 减去线程锁 未持有 (锁已失效) 时 直接清空
+            if(ret == null || ret == 0){
+                redisLock.threadClearLock();
+            }else {
+                redisLock.threadUnLock();
             }
-            return 1 == ret;
+            if(redisLock.threadGetLock() <= 0){
+                this.stopDog(redisLock);
+            }
+
+            log.info(this.getInfo("分布式锁 - 解除",redisLock));
+            return ret != null && ret > 0;
         }catch (Exception e){
             log.error(e.getMessage(),e);
         }
         return false;
     }
 
+    /**
+     * 唤醒等待方 (释放通知)
+     * 每次只唤醒一个等待方，未抢到锁的等待方 由等待超时兜底
+     * @param lockName 锁名称
+     */
+    public void wakeUp(String lockName) {
+        Waiter waiter = waiterMap.get(lockName);
+        if(waiter != null){
+            waiter.semaphore.release();
+        }
+    }
 
     /**
-     * Redis 加分布式锁
+     * 停止看门狗
+     */
+    @PreDestroy
+    public void destroy() {
+        watchDog.shutdownNow();
+    }
+
+
+    /**
+     * 抢锁 失败后挂起等待释放通知
      * @param redisLock 锁
-     * @return identifier 很重要，解锁全靠他 唯一凭证
+     * @return Long 防护令牌 为空时 加锁失败
      */
-    private RedisLock tryLock(RedisLock redisLock,String identifier) {
+    private Long acquire(RedisLock redisLock) {
+        String lockName = redisLock.getLockName();
+        List<String> keys = Arrays.asList(lockName, lockName + FENCE_SUFFIX);
+        long acquireTimeEnd = System.currentTimeMillis() + redisLock.getAcquireTimeOut();
+        Waiter waiter = null;
         try {
-            List<String> keys = Collections.singletonList(redisLock.getLockName());
-            long acquireTimeEnd = System.currentTimeMillis() + redisLock.getAcquireTimeOut();
-            boolean acquired = false;
-            // 尝试获得锁
-            while (!acquired && (System.currentTimeMillis() < acquireTimeEnd)) {
+            while (true) {
                 Long ret = (Long) redisPlugin.callScript(RedisScriptsEnum.REDIS_LOCK, keys,
-                        identifier,redisLock.getLockTimeOut());
+                        redisLock.getIdentifier(), redisLock.getLockTimeOut());
                 if(ret == null){
-                    break;
+                    return null;
+                }
+                if(ret > 0){
+                    return ret;
                 }
-                if (1 == ret){
-                    acquired = true;
-                } else {
-                    ThreadUtil.sleep(10);
+
+                long remaining = acquireTimeEnd - System.currentTimeMillis();
+                if(remaining <= 0){
+                    return null;
+                }
+                // 先登记等待 再重试一次，防止登记前 锁已释放 错过通知
+                if(waiter == null){
+                    waiter = this.attach(lockName);
+                    continue;
                 }
+                long parkTime = Math.min(remaining, Math.min(-ret, MAX_PARK_TIME));
+                waiter.semaphore.tryAcquire(parkTime, TimeUnit.MILLISECONDS);
             }
-            redisLock.setIdentifier(identifier);
-            return acquired ? redisLock : null;
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return null;
         }catch (Exception e){
             log.error(e.getMessage(),e);
             return null;
+        }finally {
+            if(waiter != null){
+                this.detach(lockName);
+            }
         }
     }
 
+    /**
+     * 登记等待方
+     * @param lockName 锁名称
+     * @return Waiter
+     */
+    private Waiter attach(String lockName) {
+        return waiterMap.compute(lockName, (k, waiter) -> {
+            if(waiter == null){
+                waiter = new Waiter();
+            }
+            waiter.count++;
+            return waiter;
+        });
+    }
+
+    /**
+     * 注销等待方 最后一个等待方注销时 移除
+     * @param lockName 锁名称
+     */
+    private void detach(String lockName) {
+        waiterMap.computeIfPresent(lockName, (k, waiter) ->
+                --waiter.count <= 0 ? null : waiter);
+    }
+
     /**
      * Redis 分布式锁 - 看门狗 自动续命使用
      * @param redisLock 锁
-     * @return boolean
      */
     private void lockDog(RedisLock redisLock) {
-        if(redisLock == null){
-            return;
+        long period = Math.max(redisLock.getLockTimeOut() / RENEW_RATIO, MIN_RENEW_PERIOD);
+        ScheduledFuture<?> future = watchDog.scheduleAtFixedRate(
+                () -> this.renew(redisLock), period, period, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> previous = watchDogMap.put(this.getDogKey(redisLock), future);
+        if(previous != null){
+            previous.cancel(false);
         }
-        Thread t = new Thread(()->{
-            try {
-                // 倒计时前续命
-                long countDownTime = 3000L;
-                // 锁释放时间
-                long lockTimeOutEnd = System.currentTimeMillis() + redisLock.getLockTimeOut();
-                // 看门狗检测 当前线程是否还存活
-                while (true) {
-                    int lock = redisLock.threadGetLock();
-                    if(lock <= 0){
-                        // 再一次确定 解锁 防止线程差 最后加锁
-                        this.unLock(redisLock);
-                        break;
-                    }
-
-                    ThreadUtil.sleep(10);
-
-                    // 如果 距离倒计时 前 2000 毫秒还没有动作 则执行续命
-                    if((System.currentTimeMillis()+countDownTime) >= lockTimeOutEnd){
-                        Object o = this.tryLock(redisLock,redisLock.getIdentifier());
-                        if(o != null){
-                            lockTimeOutEnd = System.currentTimeMillis() + redisLock.getLockTimeOut();
-                            log.info(this.getInfo("分布式锁 - 续命",redisLock));
-                        }
-                    }
-                }
-            }catch (Exception e){
-                log.error(e.getMessage(),e);
+    }
+
+    /**
+     * 续命
+     * 任务内异常不可抛出 否则定时任务终止
+     * @param redisLock 锁
+     */
+    private void renew(RedisLock redisLock) {
+        try {
+            Long ret = (Long) redisPlugin.callScript(RedisScriptsEnum.REDIS_LOCK_RENEW,
+                    Collections.singletonList(redisLock.getLockName()),
+                    redisLock.getIdentifier(), redisLock.getLockTimeOut());
+            if(ret != null && ret == 1){
+                log.debug(this.getInfo("分布式锁 - 续命",redisLock));
+                return;
             }
-        });
-        t.setName(this.getInfo("分布式锁看门狗",redisLock));
-        t.start();
+        }catch (Exception e){
+            // Redis 异常时 下一周期继续尝试
+            log.error(e.getMessage(),e);
+            return;
+        }
+
+        // 锁已失效 停止续命 (与解锁并发时 本地已不再持有 无需告警)
+        if(redisLock.threadGetLock() > 0){
+            log.warn(this.getInfo("分布式锁 - 已失效",redisLock));
+        }
+        this.stopDog(redisLock);
+    }
+
+    /**
+     * 停止续命
+     * @param redisLock 锁
+     */
+    private void stopDog(RedisLock redisLock) {
+        ScheduledFuture<?> future = watchDogMap.remove(this.getDogKey(redisLock));
+        if(future != null){
+            future.cancel(false);
+        }
+    }
+
+    private String getDogKey(RedisLock redisLock) {
+        return redisLock.getLockName() + StrUtil.COLON + redisLock.getIdentifier();
     }
 
     /**
@@ -183,15 +315,19 @@ public class RedisLockImpl implements RedisLockPlugins {
      * @return String
      */
     private String getInfo(String name,RedisLock redisLock){
-        return name + " 锁名称: "+redisLock.getLockName()+" 锁凭证: "+redisLock.getIdentifier();
+        return name + " 锁名称: "+redisLock.getLockName()+" 锁凭证: "+redisLock.getIdentifier()
+                +" 防护令牌: "+redisLock.getFencingToken();
     }
 
+    /**
+     * 等待方
+     */
+    private static final class Waiter {
 
-    public static void main(String[] args) {
-        int count = 0;
-        while (count <= 10) {
-            System.out.println(count);
-            count++;
-        }
+        private final Semaphore semaphore = new Semaphore(0);
+
+        /** 等待数量 仅在 compute 内读写 */
+        private int count;
     }
+
 }
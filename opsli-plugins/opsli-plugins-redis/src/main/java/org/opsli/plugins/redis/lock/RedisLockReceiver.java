@@ -0,0 +1,48 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.redis.lock;
+
+import cn.hutool.core.util.StrUtil;
+import org.opsli.plugins.redis.pushsub.receiver.BaseReceiver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redis 锁 释放通知订阅
+ *
+ * 消息由解锁脚本发布 内容为锁名称
+ *
+ * @author Parker
+ * @date 2021-12-21 10:25
+ */
+@Component
+public class RedisLockReceiver extends BaseReceiver {
+
+    @Autowired
+    private RedisLockImpl redisLock;
+
+    public RedisLockReceiver() {
+        super(RedisLockImpl.CHANNEL);
+    }
+
+    @Override
+    public void receiveMessage(String msg) {
+        if(StrUtil.isEmpty(msg)){
+            return;
+        }
+        redisLock.wakeUp(msg);
+    }
+}
@@ -27,7 +27,11 @@ public enum RedisScriptsEnum {
     /** Redis加锁脚本 */
     REDIS_LOCK("/lua/redis_lock.lua"),
     /** Redis解锁脚本 */
-    REDIS_UN_LOCK("/lua/redis_unlock.lua")
+    REDIS_UN_LOCK("/lua/redis_unlock.lua"),
+    /** Redis锁续命脚本 */
+    REDIS_LOCK_RENEW("/lua/redis_lock_renew.lua"),
+    /** Redis限流脚本 */
+    REDIS_RATE_LIMITER("/lua/rate_limiter.lua")
     ;
 
     /** 脚本路径 */
@@ -0,0 +1,23 @@
+-- GCRA 令牌桶限流脚本
+-- key1：限流Key argv1：令牌间隔(微秒) argv2：突发容量 argv3：本次消耗令牌数
+-- 返回 0 放行，大于 0 为需等待的毫秒数
+redis.replicate_commands()
+local interval = tonumber(ARGV[1])
+local burst = tonumber(ARGV[2])
+local cost = tonumber(ARGV[3])
+-- 以 Redis 时间为准 避免各节点时钟偏差
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local tat = tonumber(redis.call('get', KEYS[1]))
+if tat == nil or tat < now then
+   tat = now
+end
+local new_tat = tat + interval * cost
+local allow_at = new_tat - interval * burst
+if now < allow_at then
+   -- 超出限制 不消耗令牌
+   return math.max(1, math.ceil((allow_at - now) / 1000))
+end
+-- 记录理论到达时间 空闲后自动过期 (微秒超出默认数字精度 按整数格式化)
+redis.call('set', KEYS[1], string.format('%.0f', new_tat), 'px', math.ceil((new_tat - now) / 1000) + 1000)
+return 0
@@ -1,19 +1,34 @@
 -- 加锁脚本
--- key1：要加锁的名称 argv1:当前线程或主机的地址 argv2：锁存活的时间ms 
+-- key1：要加锁的名称 key2：防护令牌计数器 argv1:锁凭证 argv2：锁存活的时间ms
+-- 成功 返回防护令牌(>0)，重入时返回首次加锁的令牌；失败 返回锁剩余存活时间的负数(<0)
+-- 防护令牌 以服务端时间(微秒)为基准，计数器与锁一同过期 不会常驻，过期后发放的令牌 仍大于此前的令牌
+redis.replicate_commands()
 local expire_time = tonumber(ARGV[2])
 if redis.call('exists', KEYS[1]) == 0 then
    -- 锁不存在，创建一把锁，存入hash类型的值
+   local now = redis.call('time')
+   local token = tonumber(now[1]) * 1000000 + tonumber(now[2])
+   local last = tonumber(redis.call('get', KEYS[2]))
+   if last and last >= token then
+      token = last + 1
+   end
+   redis.call('set', KEYS[2], token, 'px', expire_time)
    redis.call('hset', KEYS[1], ARGV[1], 1)
+   redis.call('hset', KEYS[1], ':fence', token)
    -- 设置锁的存活时间，防止死锁
    redis.call('pexpire', KEYS[1], expire_time)
-   return 1
+   return token
 end
 if redis.call('hexists', KEYS[1], ARGV[1]) == 1 then
-   -- 表示是同一线程重入
+   -- 表示是同一凭证重入
    redis.call('hincrby', KEYS[1], ARGV[1], 1)
    -- 重新设置锁的过期时间
    redis.call('pexpire', KEYS[1], expire_time)
-   return 1
+   return tonumber(redis.call('hget', KEYS[1], ':fence'))
 end
--- 没抢到锁，返回失败
-return 0
\ No newline at end of file
+-- 没抢到锁，返回剩余存活时间 供等待方决定最长等待时间
+local ttl = redis.call('pttl', KEYS[1])
+if ttl > 0 then
+   return -ttl
+end
+return -1
@@ -0,0 +1,8 @@
+-- 续命脚本
+-- key1：锁名称 argv1:锁凭证 argv2：锁存活的时间ms
+-- 只延长存活时间 不增加重入次数
+if redis.call('hexists', KEYS[1], ARGV[1]) == 1 then
+   redis.call('pexpire', KEYS[1], tonumber(ARGV[2]))
+   return 1
+end
+return 0
@@ -1,15 +1,15 @@
 -- 解锁脚本
--- 判断是当前线程持有锁，避免解了其他线程加的锁
-if redis.call('hexists',KEYS[1],ARGV[1]) == 1 then
-   -- 重入次数大于1，扣减次数
-   --if tonumber(redis.call('hget',KEYS[1],ARGV[1])) > 1 then
-   --    return redis.call('hincrby', KEYS[1], ARGV[1], -1)
-   -- 重入次数等于1，删除该锁
-   --else
-       redis.call('del', KEYS[1]);
-       return 1
-   --end
--- 判断不是当前线程持有锁，返回解锁失败
-else
+-- key1：要解锁的名称 key2：释放通知信道 argv1:锁凭证
+-- 返回 0：未持有锁(已过期或他人持有) 1：已完全释放 2：重入次数扣减 仍持有
+-- 判断是当前凭证持有锁，避免解了其他线程加的锁
+if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then
    return 0
-end
\ No newline at end of file
+end
+-- 重入次数大于1，扣减次数
+if redis.call('hincrby', KEYS[1], ARGV[1], -1) > 0 then
+   return 2
+end
+-- 重入次数归零，删除该锁 并通知等待方
+redis.call('del', KEYS[1])
+redis.call('publish', KEYS[2], cjson.encode(KEYS[1]))
+return 1
@@ -0,0 +1,304 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.redis.lock;
+
+import cn.hutool.core.io.IoUtil;
+import com.alibaba.fastjson.JSON;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.OneArgFunction;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.ZeroArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.opsli.plugins.redis.RedisPlugin;
+import org.opsli.plugins.redis.scripts.enums.RedisScriptsEnum;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 内存 Redis 脚本执行器 (仅测试)
+ *
+ * 以 LuaJ 原样执行 resources/lua 下的脚本，脚本整体互斥 与 Redis 单线程执行一致；
+ * 仅实现脚本用到的命令，过期按可调时钟惰性判断，发布的消息在脚本执行完成后投递
+ *
+ * @author Parker
+ * @date 2021-12-31 17:05
+ */
+public class LuaRedisPlugin extends RedisPlugin {
+
+    private final Map<RedisScriptsEnum, LuaValue> scripts = new EnumMap<>(RedisScriptsEnum.class);
+    private final Map<String, Entry> keyspace = new HashMap<>();
+    private final List<String[]> published = new ArrayList<>();
+    private final Globals globals;
+
+    /** 时钟偏移 (毫秒) 用于模拟时间流逝 */
+    private volatile long clockOffset;
+
+    /** 消息订阅方 */
+    private volatile BiConsumer<String, String> subscriber = (channel, msg) -> {};
+
+    public LuaRedisPlugin() {
+        globals = JsePlatform.standardGlobals();
+        LuaTable redis = new LuaTable();
+        redis.set("call", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return command(args);
+            }
+        });
+        redis.set("replicate_commands", new ZeroArgFunction() {
+            @Override
+            public LuaValue call() {
+                return LuaValue.TRUE;
+            }
+        });
+        globals.set("redis", redis);
+        LuaTable cjson = new LuaTable();
+        cjson.set("encode", new OneArgFunction() {
+            @Override
+            public LuaValue call(LuaValue value) {
+                return LuaValue.valueOf(JSON.toJSONString(value.tojstring()));
+            }
+        });
+        globals.set("cjson", cjson);
+
+        for (RedisScriptsEnum scriptsEnum : RedisScriptsEnum.values()) {
+            InputStream in = LuaRedisPlugin.class.getResourceAsStream(scriptsEnum.getPath());
+            String script = IoUtil.read(in, StandardCharsets.UTF_8);
+            scripts.put(scriptsEnum, globals.load(script, scriptsEnum.name()));
+        }
+    }
+
+    @Override
+    public Object callScript(RedisScriptsEnum scriptsEnum, List<String> keys, Object... argv) {
+        Object ret;
+        List<String[]> messages;
+        synchronized (this){
+            LuaTable keyTable = new LuaTable();
+            for (int i = 0; i < keys.size(); i++) {
+                keyTable.set(i + 1, LuaValue.valueOf(keys.get(i)));
+            }
+            LuaTable argTable = new LuaTable();
+            for (int i = 0; i < argv.length; i++) {
+                argTable.set(i + 1, LuaValue.valueOf(String.valueOf(argv[i])));
+            }
+            globals.set("KEYS", keyTable);
+            globals.set("ARGV", argTable);
+            ret = toReply(scripts.get(scriptsEnum).call());
+            messages = new ArrayList<>(published);
+            published.clear();
+        }
+        for (String[] message : messages) {
+            subscriber.accept(message[0], message[1]);
+        }
+        return ret;
+    }
+
+    /**
+     * 设置订阅方
+     * @param subscriber 信道, 消息
+     */
+    public void subscribe(BiConsumer<String, String> subscriber) {
+        this.subscriber = subscriber;
+    }
+
+    /**
+     * 时间前进
+     * @param millis 毫秒
+     */
+    public void advance(long millis) {
+        clockOffset += millis;
+    }
+
+    /**
+     * 存活 Key 数量
+     * @return int
+     */
+    public synchronized int keyCount() {
+        Iterator<Entry> iterator = keyspace.values().iterator();
+        int count = 0;
+        while (iterator.hasNext()){
+            if(iterator.next().isExpired(now())){
+                iterator.remove();
+            }else {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 剩余存活时间 同 PTTL
+     * @param key 键
+     * @return long
+     */
+    public synchronized long pttl(String key) {
+        Entry entry = this.getEntry(key);
+        if(entry == null){
+            return -2;
+        }
+        return entry.expireAt < 0 ? -1 : entry.expireAt - now();
+    }
+
+    // ========================
+
+    private long now() {
+        return System.currentTimeMillis() + clockOffset;
+    }
+
+    private Entry getEntry(String key) {
+        Entry entry = keyspace.get(key);
+        if(entry != null && entry.isExpired(now())){
+            keyspace.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getHash(String key) {
+        Entry entry = this.getEntry(key);
+        if(entry == null){
+            entry = new Entry(new HashMap<String, String>());
+            keyspace.put(key, entry);
+        }
+        return (Map<String, String>) entry.value;
+    }
+
+    private Varargs command(Varargs args) {
+        String cmd = args.arg1().tojstring().toLowerCase();
+        String[] a = new String[args.narg() - 1];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = toArg(args.arg(i + 2));
+        }
+        Entry entry;
+        switch (cmd) {
+            case "exists":
+                return LuaValue.valueOf(this.getEntry(a[0]) == null ? 0 : 1);
+            case "get":
+                entry = this.getEntry(a[0]);
+                return entry == null ? LuaValue.FALSE : LuaValue.valueOf((String) entry.value);
+            case "set":
+                entry = new Entry(a[1]);
+                if(a.length > 3 && "px".equalsIgnoreCase(a[2])){
+                    entry.expireAt = now() + Long.parseLong(a[3]);
+                }
+                keyspace.put(a[0], entry);
+                return ok();
+            case "hset":
+                return LuaValue.valueOf(this.getHash(a[0]).put(a[1], a[2]) == null ? 1 : 0);
+            case "hget":
+                entry = this.getEntry(a[0]);
+                String field = entry == null ? null : this.getHash(a[0]).get(a[1]);
+                return field == null ? LuaValue.FALSE : LuaValue.valueOf(field);
+            case "hexists":
+                entry = this.getEntry(a[0]);
+                return LuaValue.valueOf(entry != null && this.getHash(a[0]).containsKey(a[1]) ? 1 : 0);
+            case "hincrby":
+                Map<String, String> hash = this.getHash(a[0]);
+                long value = Long.parseLong(hash.getOrDefault(a[1], "0")) + Long.parseLong(a[2]);
+                hash.put(a[1], String.valueOf(value));
+                return LuaValue.valueOf((double) value);
+            case "pexpire":
+                entry = this.getEntry(a[0]);
+                if(entry == null){
+                    return LuaValue.valueOf(0);
+                }
+                entry.expireAt = now() + Long.parseLong(a[1]);
+                return LuaValue.valueOf(1);
+            case "pttl":
+                return LuaValue.valueOf((double) this.pttl(a[0]));
+            case "del":
+                int count = 0;
+                for (String key : a) {
+                    if(this.getEntry(key) != null){
+                        keyspace.remove(key);
+                        count++;
+                    }
+                }
+                return LuaValue.valueOf(count);
+            case "publish":
+                published.add(new String[]{a[0], a[1]});
+                return LuaValue.valueOf(1);
+            case "time":
+                long micros = now() * 1000;
+                LuaTable time = new LuaTable();
+                time.set(1, LuaValue.valueOf(String.valueOf(micros / 1000000)));
+                time.set(2, LuaValue.valueOf(String.valueOf(micros % 1000000)));
+                return time;
+            default:
+                throw new UnsupportedOperationException(cmd);
+        }
+    }
+
+    private static LuaValue ok() {
+        LuaTable status = new LuaTable();
+        status.set("ok", "OK");
+        return status;
+    }
+
+    /**
+     * Lua 数值参数 与 Redis 一致按整数转换
+     */
+    private static String toArg(LuaValue value) {
+        if(value.type() == LuaValue.TNUMBER){
+            double d = value.todouble();
+            if(d == Math.floor(d)){
+                return String.valueOf((long) d);
+            }
+        }
+        return value.tojstring();
+    }
+
+    /**
+     * 返回值 与 Redis 一致：数值截断为整数，false/nil 为空
+     */
+    private static Object toReply(LuaValue value) {
+        if(value.isnil() || (value.isboolean() && !value.toboolean())){
+            return null;
+        }
+        if(value.isboolean()){
+            return 1L;
+        }
+        if(value.type() == LuaValue.TNUMBER){
+            return (long) value.todouble();
+        }
+        return value.tojstring();
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private long expireAt = -1;
+
+        private Entry(Object value) {
+            this.value = value;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt >= 0 && expireAt <= now;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.redis.lock;
+
+import com.alibaba.fastjson.JSON;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.plugins.redis.pushsub.receiver.BaseReceiver;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Redis 锁 测试
+ * 锁脚本在内存中原样执行，校验 争抢互斥、防护令牌递增、释放通知、重入 以及锁相关 Key 不常驻
+ *
+ * @author Parker
+ * @date 2021-12-31 17:30
+ */
+public class RedisLockImplTest {
+
+    /** 线程数 */
+    private static final int THREADS = 16;
+    /** 每线程加锁次数 */
+    private static final int ROUNDS = 25;
+
+    private LuaRedisPlugin redisPlugin;
+    private RedisLockImpl lockPlugin;
+
+    @BeforeEach
+    public void init(){
+        redisPlugin = new LuaRedisPlugin();
+        lockPlugin = new RedisLockImpl();
+        ReflectionTestUtils.setField(lockPlugin, "redisPlugin", redisPlugin);
+        redisPlugin.subscribe((channel, msg) -> {
+            if((BaseReceiver.BASE_CHANNEL + RedisLockImpl.CHANNEL).equals(channel)){
+                lockPlugin.wakeUp(JSON.parseObject(msg, String.class));
+            }
+        });
+    }
+
+    @AfterEach
+    public void destroy(){
+        lockPlugin.destroy();
+    }
+
+    /**
+     * 多线程争抢同一把锁 同一时刻只有一个持有者，全部加锁成功，令牌按持有顺序严格递增
+     */
+    @Test
+    public void contention() throws Exception {
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        List<Long> tokens = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                int acquired = 0;
+                for (int n = 0; n < ROUNDS; n++) {
+                    RedisLock lock = lockPlugin.tryLock(newLock(10000L));
+                    if(lock == null){
+                        continue;
+                    }
+                    acquired++;
+                    if(holders.incrementAndGet() != 1){
+                        overlaps.incrementAndGet();
+                    }
+                    tokens.add(lock.getFencingToken());
+                    holders.decrementAndGet();
+                    assertTrue(lockPlugin.unLock(lock));
+                }
+                return acquired;
+            }));
+        }
+        start.countDown();
+        int acquired = 0;
+        for (Future<Integer> future : futures) {
+            acquired += future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(0, overlaps.get());
+        assertEquals(THREADS * ROUNDS, acquired);
+        for (int i = 1; i < tokens.size(); i++) {
+            assertTrue(tokens.get(i) > tokens.get(i - 1), "token " + i);
+        }
+        // 锁已释放 计数器在锁有效时间后过期
+        assertEquals(-2, redisPlugin.pttl(newLock(0L).getLockName()));
+        redisPlugin.advance(newLock(0L).getLockTimeOut() + 1);
+        assertEquals(0, redisPlugin.keyCount());
+    }
+
+    /**
+     * 释放时 通知等待方，等待方无需等到单次等待超时
+     */
+    @Test
+    public void waiterWokenOnRelease() throws Exception {
+        RedisLock holder = lockPlugin.tryLock(newLock(0L));
+        assertNotNull(holder);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<RedisLock> waiter = executor.submit(() -> lockPlugin.tryLock(newLock(5000L)));
+        // 等待方已进入等待
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertFalse(waiter.isDone());
+
+        long releaseTime = System.currentTimeMillis();
+        assertTrue(lockPlugin.unLock(holder));
+        RedisLock acquired = waiter.get(5, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - releaseTime;
+        executor.shutdown();
+
+        assertNotNull(acquired);
+        assertTrue(acquired.getFencingToken() > holder.getFencingToken());
+        // 远小于单次最长等待 500ms
+        assertTrue(elapsed < 250, "elapsed " + elapsed);
+        assertTrue(lockPlugin.unLock(acquired));
+    }
+
+    /**
+     * 防护令牌计数器 随锁一同过期，过期后 新令牌仍大于此前的令牌
+     */
+    @Test
+    public void fenceExpiresWithLock() {
+        RedisLock first = lockPlugin.tryLock(newLock(0L));
+        assertNotNull(first);
+        String lockName = first.getLockName();
+        long fenceTtl = redisPlugin.pttl(lockName + ":fence");
+        assertTrue(fenceTtl > 0 && fenceTtl <= first.getLockTimeOut(), "ttl " + fenceTtl);
+        assertTrue(lockPlugin.unLock(first));
+
+        // 计数器未过期 立即再次加锁
+        RedisLock second = lockPlugin.tryLock(newLock(0L));
+        assertNotNull(second);
+        assertTrue(second.getFencingToken() > first.getFencingToken());
+        assertTrue(lockPlugin.unLock(second));
+
+        // 计数器过期后 不再常驻
+        redisPlugin.advance(second.getLockTimeOut() + 1);
+        assertEquals(0, redisPlugin.keyCount());
+
+        RedisLock third = lockPlugin.tryLock(newLock(0L));
+        assertNotNull(third);
+        assertTrue(third.getFencingToken() > second.getFencingToken());
+        assertTrue(lockPlugin.unLock(third));
+        assertEquals(1, redisPlugin.keyCount());
+    }
+
+    /**
+     * 重入 沿用首次令牌，全部解锁后 才真正释放
+     */
+    @Test
+    public void reentrant() {
+        RedisLock lock = lockPlugin.tryLock(newLock(0L));
+        assertNotNull(lock);
+        Long token = lock.getFencingToken();
+        assertNotNull(lockPlugin.tryLock(lock));
+        assertEquals(token, lock.getFencingToken());
+
+        assertTrue(lockPlugin.unLock(lock));
+        assertNull(lockPlugin.tryLock(newLock(0L)));
+
+        assertTrue(lockPlugin.unLock(lock));
+        RedisLock other = lockPlugin.tryLock(newLock(0L));
+        assertNotNull(other);
+        assertTrue(lockPlugin.unLock(other));
+    }
+
+    /**
+     * 锁过期后 由他人持有，原持有者解锁 不影响新持有者
+     */
+    @Test
+    public void expiredLockTakenOver() {
+        RedisLock stale = lockPlugin.tryLock(newLock(0L));
+        assertNotNull(stale);
+        redisPlugin.advance(stale.getLockTimeOut() + 1);
+
+        RedisLock current = lockPlugin.tryLock(newLock(0L));
+        assertNotNull(current);
+        assertTrue(current.getFencingToken() > stale.getFencingToken());
+
+        assertFalse(lockPlugin.unLock(stale));
+        assertNull(lockPlugin.tryLock(newLock(0L)));
+        assertTrue(lockPlugin.unLock(current));
+    }
+
+    // ========================
+
+    private static RedisLock newLock(long acquireTimeOut){
+        return new RedisLock("test", acquireTimeOut, 30000L, null);
+    }
+}
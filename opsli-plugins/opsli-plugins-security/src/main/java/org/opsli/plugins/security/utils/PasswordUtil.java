@@ -74,7 +74,7 @@ public final class PasswordUtil {
      *
      * @param credentials 原始密码
      * @param expiredDayCount 过期天数
-     * @return String
+     * @return boolean
      */
     public static boolean isCredentialsNonExpired(String credentials, int expiredDayCount){
         // 如果小于0 默认为不处理
@@ -82,25 +82,50 @@ public final class PasswordUtil {
             return true;
         }
 
-        // 获得原始密码
-        String timeMillisStr = Base64.decodeStr(
-                StrUtil.subBetween(credentials, PREFIX, SUFFIX));
+        return isCredentialsNonExpired(getCredentialsCreateTime(credentials), expiredDayCount);
+    }
+
+    /**
+     * 判断凭证是否过期
+     *
+     * @param createTimeMillis 凭证创建时间
+     * @param expiredDayCount 过期天数
+     * @return boolean
+     */
+    public static boolean isCredentialsNonExpired(long createTimeMillis, int expiredDayCount){
+        // 如果小于0 默认为不处理
+        if(expiredDayCount < 0){
+            return true;
+        }
 
         // 当前时间
         DateTime currDate = DateUtil.date();
 
         // 创建时间
-        DateTime createDate = DateUtil.date(Long.parseLong(timeMillisStr));
+        DateTime createDate = DateUtil.date(createTimeMillis);
 
         // 过期时间
         DateTime expiredDate = DateUtil.offsetDay(
-                DateUtil.date(Long.parseLong(timeMillisStr)), expiredDayCount);
+                DateUtil.date(createTimeMillis), expiredDayCount);
 
         // 如果 创建时间 大于 当前时间 || 过期时间 大于 当前时间 都判定凭证失效
         return DateUtil.compare(createDate, currDate) <= 0 &&
                 DateUtil.compare(expiredDate, currDate) >= 0;
     }
 
+    /**
+     * 获得凭证创建时间
+     *
+     * @param credentials 加密密码
+     * @return long
+     */
+    public static long getCredentialsCreateTime(String credentials){
+        // 获得原始密码
+        String timeMillisStr = Base64.decodeStr(
+                StrUtil.subBetween(credentials, PREFIX, SUFFIX));
+        return Long.parseLong(timeMillisStr);
+    }
+
     //private
 
     public static void main(String[] args) {
@@ -17,10 +17,15 @@ package org.opsli.plugins.sms;
 
 import cn.hutool.extra.spring.SpringUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.opsli.plugins.sms.service.SmsAccessProvider;
 import org.opsli.plugins.sms.service.SmsService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.annotation.PreDestroy;
 import java.util.Map;
 
 /**
@@ -43,5 +48,21 @@ public class SmsConfig {
         }
     }
 
+    /**
+     * 启动 短信外发消息调度器
+     * @param accessProvider 凭证提供者
+     * @param spoolPath 外发消息暂存目录 (每个实例独立)
+     */
+    @Autowired
+    public void initOutbox(ObjectProvider<SmsAccessProvider> accessProvider,
+                           @Value("${opsli.outbox.spool-path:}") String spoolPath){
+        SmsFactory.startOutbox(accessProvider, spoolPath);
+    }
+
+    @PreDestroy
+    public void destroy(){
+        SmsFactory.stopOutbox();
+    }
+
 }
 
@@ -15,13 +15,23 @@
  */
 package org.opsli.plugins.sms;
 
+import cn.hutool.core.exceptions.ExceptionUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
+import org.opsli.common.outbox.OutboxDispatcher;
+import org.opsli.plugins.sms.model.SmsMessage;
+import org.opsli.plugins.sms.service.SmsAccessProvider;
 import org.opsli.plugins.sms.service.SmsService;
 import org.opsli.plugins.sms.enums.SmsType;
 import org.opsli.plugins.sms.exceptions.SmsException;
 import org.opsli.plugins.sms.model.SmsModel;
 import org.opsli.plugins.sms.msg.SmsMsgCodeEnum;
+import org.springframework.beans.factory.ObjectProvider;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -29,15 +39,32 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * 短信工厂
  *
+ * 异步发送的短信 由外发消息调度器 批量发送，签名、模板、参数相同的短信 合并为一次请求
+ *
  * @author 周鹏程
  * @date 2021/8/27 14:09
  */
 @Slf4j
 public final class SmsFactory {
 
+	/** 发送线程数 */
+	private static final int OUTBOX_WORKERS = 2;
+	/** 每批数量 */
+	private static final int OUTBOX_BATCH_SIZE = 100;
+	/** 同一手机号 最小发送间隔 (毫秒) */
+	private static final long OUTBOX_THROTTLE_MILLIS = 1000L;
+	/** 单次请求 最大手机号数量 */
+	private static final int MAX_TELS = 1000;
+
 	/** 执行器集合 */
 	private final static Map<SmsType, SmsService> HANDLE_MAP = new ConcurrentHashMap<>();
 
+	/** 外发消息调度器 */
+	private static volatile OutboxDispatcher<SmsMessage> outbox;
+
+	/** 凭证提供者 */
+	private static ObjectProvider<SmsAccessProvider> accessProvider;
+
 	static void put(SmsService smsService){
 		if(null == smsService){
 			return;
@@ -46,17 +73,144 @@ public final class SmsFactory {
 		HANDLE_MAP.put(smsService.getType(), smsService);
 	}
 
+	/**
+	 * 启动 外发消息调度器
+	 * @param provider 凭证提供者
+	 * @param spoolPath 暂存目录 (每个实例独立)
+	 */
+	static synchronized void startOutbox(ObjectProvider<SmsAccessProvider> provider, String spoolPath){
+		if(null != outbox){
+			return;
+		}
+		accessProvider = provider;
+		OutboxDispatcher<SmsMessage> dispatcher = new OutboxDispatcher<>("sms", SmsMessage.class, spoolPath,
+				OUTBOX_WORKERS, OUTBOX_BATCH_SIZE, OUTBOX_THROTTLE_MILLIS, SmsFactory::sendBatch);
+		dispatcher.start();
+		outbox = dispatcher;
+	}
+
+	/**
+	 * 停止 外发消息调度器
+	 */
+	static synchronized void stopOutbox(){
+		if(null == outbox){
+			return;
+		}
+		outbox.stop();
+		outbox = null;
+	}
+
 	/**
 	 * 发送消息
 	 * 注：需要做好异常处理
 	 * @param smsModel 短信model
 	 */
 	public static void sendSms(SmsType type, SmsModel smsModel){
+		SmsService smsService = getHandler(type);
+		smsService.sendSms(smsModel);
+	}
+
+	/**
+	 * 异步发送消息 校验后入队 立即返回，发送失败时 自动重试
+	 * @param type 短信类型
+	 * @param smsModel 短信model
+	 * @return String 消息编号
+	 */
+	public static String sendSmsAsync(SmsType type, SmsModel smsModel){
+		SmsService smsService = getHandler(type);
+		smsService.verify(smsModel);
+
+		OutboxDispatcher<SmsMessage> dispatcher = outbox;
+		if(null == dispatcher){
+			throw new SmsException(SmsMsgCodeEnum.CODE_ERROR_SMS_INIT);
+		}
+		return dispatcher.enqueue(SmsMessage.of(type, smsModel));
+	}
+
+	/**
+	 * 批量发送 (外发消息调度器)
+	 * 参数错误的短信 重试无意义 记录后丢弃
+	 *
+	 * @param batch 批次
+	 * @return List 需要重试的短信
+	 */
+	private static List<SmsMessage> sendBatch(List<SmsMessage> batch){
+		// 合并 类型、凭证、签名、模板、参数 相同的短信
+		Map<String, List<SmsMessage>> groupMap = new LinkedHashMap<>();
+		for (SmsMessage message : batch) {
+			if(!fillAccess(message)){
+				log.error("短信发送失败 未找到短信凭证 丢弃：{}", message.getId());
+				continue;
+			}
+			String key = StrUtil.join("|", message.getType(), message.getAccessKey(),
+					message.getSignName(), message.getTemplateCode(), JSON.toJSONString(message.getTemplateParam()));
+			groupMap.computeIfAbsent(key, k -> new ArrayList<>()).add(message);
+		}
+
+		List<SmsMessage> failed = new ArrayList<>();
+		for (List<SmsMessage> group : groupMap.values()) {
+			int from = 0;
+			while (from < group.size()){
+				// 单次请求 手机号数量上限
+				List<SmsMessage> merged = new ArrayList<>();
+				List<String> tels = new ArrayList<>();
+				while (from < group.size()){
+					SmsMessage message = group.get(from);
+					if(!merged.isEmpty() && tels.size() + message.getTels().size() > MAX_TELS){
+						break;
+					}
+					merged.add(message);
+					tels.addAll(message.getTels());
+					from++;
+				}
+
+				// 启动阶段 执行器可能尚未注册
+				SmsService smsService = HANDLE_MAP.get(merged.get(0).getType());
+				if(null == smsService){
+					failed.addAll(merged);
+					continue;
+				}
+
+				SmsModel smsModel = merged.get(0).toModel();
+				smsModel.setTels(tels);
+				try {
+					smsService.sendSms(smsModel);
+				}catch (SmsException e){
+					log.error("短信发送失败 丢弃：{} - {}", tels, e.getMessage());
+				}catch (Exception e){
+					log.warn("短信发送失败 稍后重试：{} - {}", tels, ExceptionUtil.getRootCauseMessage(e));
+					failed.addAll(merged);
+				}
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * 补全凭证 重启后载入的短信 不含凭证
+	 * @param message 短信
+	 * @return boolean 是否有凭证
+	 */
+	private static boolean fillAccess(SmsMessage message){
+		if(StrUtil.isNotEmpty(message.getAccessKey())){
+			return true;
+		}
+		SmsAccessProvider provider = null == accessProvider ? null : accessProvider.getIfAvailable();
+		SmsModel access = null == provider ? null : provider.getAccess(message.getType());
+		if(null == access){
+			return false;
+		}
+		message.setAccessKey(access.getAccessKey());
+		message.setAccessKeySecret(access.getAccessKeySecret());
+		return StrUtil.isNotEmpty(message.getAccessKey());
+	}
+
+	private static SmsService getHandler(SmsType type){
 		SmsService smsService = HANDLE_MAP.get(type);
 		if(smsService == null){
 			throw new SmsException(SmsMsgCodeEnum.CODE_ERROR_SMS_HANDLER);
 		}
-		smsService.sendSms(smsModel);
+		return smsService;
 	}
 
 }
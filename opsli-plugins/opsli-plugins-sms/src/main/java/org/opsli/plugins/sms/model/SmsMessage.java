@@ -0,0 +1,102 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.sms.model;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.opsli.common.outbox.OutboxMessage;
+import org.opsli.plugins.sms.enums.SmsType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 短信 外发消息
+ *
+ * @author Parker
+ * @date 2021-12-27 10:20
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class SmsMessage extends OutboxMessage {
+
+	private static final long serialVersionUID = 1L;
+
+	/** 短信类型 */
+	private SmsType type;
+
+	/** 手机号集合 */
+	private List<String> tels;
+
+	/** 模板编号 */
+	private String templateCode;
+
+	/** 模板参数 */
+	private Map<String, String> templateParam;
+
+	/** 签名 */
+	private String signName;
+
+	/** access_key 不写入暂存文件，重启后载入的消息 由 SmsAccessProvider 提供 */
+	@JSONField(serialize = false, deserialize = false)
+	private transient String accessKey;
+
+	/** access_key_secret 不写入暂存文件 */
+	@JSONField(serialize = false, deserialize = false)
+	private transient String accessKeySecret;
+
+	@Override
+	public Collection<String> recipients() {
+		return tels;
+	}
+
+	/**
+	 * 由短信model 创建
+	 * @param type 短信类型
+	 * @param smsModel 短信model
+	 * @return SmsMessage
+	 */
+	public static SmsMessage of(SmsType type, SmsModel smsModel){
+		SmsMessage message = new SmsMessage();
+		message.setType(type);
+		message.setTels(new ArrayList<>(smsModel.getTels()));
+		message.setTemplateCode(smsModel.getTemplateCode());
+		message.setTemplateParam(smsModel.getTemplateParam());
+		message.setSignName(smsModel.getSignName());
+		message.setAccessKey(smsModel.getAccessKey());
+		message.setAccessKeySecret(smsModel.getAccessKeySecret());
+		return message;
+	}
+
+	/**
+	 * 转换为短信model
+	 * @return SmsModel
+	 */
+	public SmsModel toModel(){
+		return SmsModel.builder()
+				.accessKey(accessKey)
+				.accessKeySecret(accessKeySecret)
+				.tels(tels)
+				.templateCode(templateCode)
+				.templateParam(templateParam)
+				.signName(signName)
+				.build();
+	}
+
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.sms.service;
+
+import org.opsli.plugins.sms.enums.SmsType;
+import org.opsli.plugins.sms.model.SmsModel;
+
+/**
+ * 短信凭证 提供者
+ * 暂存文件中不含凭证，重启后载入的短信 由此获取当前凭证
+ *
+ * @author Parker
+ * @date 2021-12-27 10:20
+ */
+public interface SmsAccessProvider {
+
+    /**
+     * 获得凭证
+     * @param type 短信类型
+     * @return SmsModel 含 accessKey、accessKeySecret，未配置时返回 null
+     */
+    SmsModel getAccess(SmsType type);
+
+}
@@ -40,4 +40,10 @@ public interface SmsService {
      */
      void sendSms(SmsModel smsModel);
 
+    /**
+     * 验证消息 异步发送前 提前校验参数
+     * @param smsModel 短信model
+     */
+    default void verify(SmsModel smsModel){}
+
 }
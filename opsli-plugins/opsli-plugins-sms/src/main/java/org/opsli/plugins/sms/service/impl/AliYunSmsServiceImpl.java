@@ -30,6 +30,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 阿里云 sms发送
@@ -41,6 +42,8 @@ import java.util.Map;
 @Service
 public class AliYunSmsServiceImpl implements SmsService {
 
+    /** 客户端缓存 按凭证复用，客户端内部持有 HTTP 连接 */
+    private final Map<String, SmsClient> clientMap = new ConcurrentHashMap<>();
 
     @Override
     public SmsType getType() {
@@ -54,6 +57,12 @@ public class AliYunSmsServiceImpl implements SmsService {
                 smsModel.getTels());
     }
 
+    @Override
+    public void verify(SmsModel smsModel) {
+        verify(smsModel.getAccessKey(), smsModel.getAccessKeySecret(), smsModel.getSignName(), smsModel.getTemplateCode(), smsModel.getTemplateParam(),
+                smsModel.getTels());
+    }
+
     /**
      * 发送信息
      * @param accessKey accessKey
@@ -66,7 +75,8 @@ public class AliYunSmsServiceImpl implements SmsService {
         // 验证参数
         verify(accessKey, accessKeySecret, signName, templateCode, templateParam, phoneNumbers);
 
-        SmsClient smsClient = new SmsClient(accessKey, accessKeySecret);
+        SmsClient smsClient = clientMap.computeIfAbsent(accessKey + ":" + accessKeySecret,
+                key -> new SmsClient(accessKey, accessKeySecret));
 
         // 发送信息
         SmsTemplate smsTemplate = SmsTemplate.builder()
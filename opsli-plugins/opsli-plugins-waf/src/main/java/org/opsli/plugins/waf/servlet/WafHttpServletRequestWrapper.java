@@ -18,18 +18,15 @@ package org.opsli.plugins.waf.servlet;
 import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.opsli.common.constants.TokenConstants;
-import org.opsli.plugins.waf.util.SQLFilterKit;
-import org.opsli.plugins.waf.util.XSSFilterKit;
-import org.springframework.util.StreamUtils;
+import org.opsli.plugins.waf.util.WafFilterKit;
 import org.springframework.util.StringUtils;
 
-import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -64,6 +61,13 @@ public class WafHttpServletRequestWrapper extends HttpServletRequestWrapper {
 	/** SQL 攻击防护 */
 	private final boolean enableSqlFilter;
 
+	/** 过滤结果缓存 */
+	private final Map<String, String> filterCache = new HashMap<>();
+	/** 参数数组缓存 */
+	private final Map<String, String[]> parameterValuesCache = new HashMap<>();
+	/** 参数缓存 */
+	private Map<String, String[]> parameterMap;
+
 	public WafHttpServletRequestWrapper(HttpServletRequest request, boolean enableXssFilter, boolean enableSqlFilter) {
 		super(request);
 		orgRequest = request;
@@ -72,7 +76,7 @@ public class WafHttpServletRequestWrapper extends HttpServletRequestWrapper {
 	}
 
 	/**
-	 * 过滤json数据
+	 * 过滤json数据 边读边过滤 只处理字符串
 	 * @return
 	 * @throws IOException
 	 */
@@ -84,36 +88,8 @@ public class WafHttpServletRequestWrapper extends HttpServletRequestWrapper {
 			return super.getInputStream();
 		}
 
-		// 为空，直接返回
-		String json = StreamUtils.copyToString(super.getInputStream(), StandardCharsets.UTF_8);
-		if (StringUtils.isEmpty(json)) {
-			return super.getInputStream();
-		}
-
 		// 防火墙过滤
-		json = filterParamString(json);
-		ByteArrayInputStream bis = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
-
-		return new ServletInputStream() {
-			@Override
-			public boolean isFinished() {
-				return true;
-			}
-
-			@Override
-			public boolean isReady() {
-				return true;
-			}
-
-			@Override
-			public void setReadListener(ReadListener readListener) {
-			}
-
-			@Override
-			public int read() {
-				return bis.read();
-			}
-		};
+		return new WafJsonInputStream(super.getInputStream(), this::doFilterParamString);
 	}
 
 
@@ -129,39 +105,38 @@ public class WafHttpServletRequestWrapper extends HttpServletRequestWrapper {
 
 	@Override
 	public String[] getParameterValues(String name) {
-		String[] parameters = super.getParameterValues(name);
-		if (parameters == null || parameters.length == 0) {
-			return null;
+		if(parameterValuesCache.containsKey(name)){
+			return parameterValuesCache.get(name);
 		}
 
-		for (int i = 0; i < parameters.length; i++) {
-			if (!TokenConstants.ACCESS_TOKEN.equals(name)) {
-				if(parameters[i] != null){
-					// 防火墙过滤
-					parameters[i] = filterParamString(parameters[i]);
-				}
-			}
+		String[] parameters = super.getParameterValues(name);
+		if (parameters == null || parameters.length == 0) {
+			parameters = null;
+		} else if (!TokenConstants.ACCESS_TOKEN.equals(name)) {
+			parameters = filterParamValues(parameters);
 		}
+		parameterValuesCache.put(name, parameters);
 		return parameters;
 	}
 
 	@Override
 	public Map<String, String[]> getParameterMap() {
+		if(null != parameterMap){
+			return parameterMap;
+		}
+
 		Map<String, String[]> map = new LinkedHashMap<>();
 		Map<String, String[]> parameters = super.getParameterMap();
-		for (String key : parameters.keySet()) {
-			String[] values = parameters.get(key);
+		for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+			String key = entry.getKey();
+			String[] values = entry.getValue();
 			if (!TokenConstants.ACCESS_TOKEN.equals(key)) {
-				for (int i = 0; i < values.length; i++) {
-					if(values[i] != null){
-						// 防火墙过滤
-						values[i] = filterParamString(values[i]);
-					}
-				}
+				values = filterParamValues(values);
 			}
 			map.put(key, values);
 		}
-		return map;
+		parameterMap = Collections.unmodifiableMap(map);
+		return parameterMap;
 	}
 
 	@Override
@@ -193,7 +168,23 @@ public class WafHttpServletRequestWrapper extends HttpServletRequestWrapper {
 	}
 
 	/**
-	 * @Description 过滤字符串内容
+	 * 过滤参数数组
+	 * @param values 参数
+	 * @return String[]
+	 */
+	private String[] filterParamValues(String[] values) {
+		String[] filtered = new String[values.length];
+		for (int i = 0; i < values.length; i++) {
+			if(values[i] != null){
+				// 防火墙过滤
+				filtered[i] = filterParamString(values[i]);
+			}
+		}
+		return filtered;
+	}
+
+	/**
+	 * @Description 过滤字符串内容 同一请求内 相同内容只过滤一次
 	 * @param rawValue
 	 * @return
 	 */
@@ -201,14 +192,20 @@ public class WafHttpServletRequestWrapper extends HttpServletRequestWrapper {
 		if (StringUtils.isEmpty(rawValue)) {
 			return rawValue;
 		}
-		String tmpStr = rawValue;
-		if (this.enableXssFilter) {
-			tmpStr = XSSFilterKit.stripXSS(rawValue);
+		if(filterCache.containsKey(rawValue)){
+			return filterCache.get(rawValue);
 		}
-		if (this.enableSqlFilter) {
-			tmpStr = XSSFilterKit.stripXSS(
-					SQLFilterKit.stripSQL(tmpStr));
-		}
-		return tmpStr;
+		String value = doFilterParamString(rawValue);
+		filterCache.put(rawValue, value);
+		return value;
+	}
+
+	/**
+	 * 过滤字符串内容 单趟扫描
+	 * @param rawValue
+	 * @return
+	 */
+	private String doFilterParamString(String rawValue) {
+		return WafFilterKit.filter(rawValue, this.enableXssFilter, this.enableSqlFilter);
 	}
 }
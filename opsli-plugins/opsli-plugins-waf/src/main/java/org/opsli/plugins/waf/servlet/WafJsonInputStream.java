@@ -0,0 +1,227 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.waf.servlet;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
+
+/**
+ * 防火墙 JSON 流式过滤
+ *
+ * 边读边过滤，不整体缓存请求体
+ * 只对字符串 Token 解码后过滤再重新转义，结构字符、数字等原样输出
+ *
+ * @author Parker
+ * @date 2020-10-09
+ */
+public class WafJsonInputStream extends ServletInputStream {
+
+	/** 读取缓冲 */
+	private static final int BUFFER_SIZE = 4096;
+	private static final byte[] EMPTY = new byte[0];
+
+	/** 原始流 */
+	private final Reader reader;
+	/** 字符串过滤 */
+	private final UnaryOperator<String> filter;
+	private final char[] buffer = new char[BUFFER_SIZE];
+
+	/** 待输出 */
+	private byte[] pending = EMPTY;
+	private int pendingPos;
+	private boolean eof;
+
+	/** 当前字符串 Token */
+	private final StringBuilder token = new StringBuilder();
+	/** 输出字符 */
+	private final StringBuilder out = new StringBuilder(BUFFER_SIZE);
+	private boolean inString;
+	private boolean escape;
+	/** \\uXXXX 剩余位数 与 已读值 */
+	private int unicodeDigits;
+	private int unicodeValue;
+
+	public WafJsonInputStream(InputStream source, UnaryOperator<String> filter) {
+		this.reader = new BufferedReader(new InputStreamReader(source, StandardCharsets.UTF_8));
+		this.filter = filter;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(!fill()){
+			return -1;
+		}
+		return pending[pendingPos++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0){
+			return 0;
+		}
+		if(!fill()){
+			return -1;
+		}
+		int n = Math.min(len, pending.length - pendingPos);
+		System.arraycopy(pending, pendingPos, b, off, n);
+		pendingPos += n;
+		return n;
+	}
+
+	@Override
+	public boolean isFinished() {
+		return eof && pendingPos >= pending.length;
+	}
+
+	@Override
+	public boolean isReady() {
+		return true;
+	}
+
+	@Override
+	public void setReadListener(ReadListener readListener) {
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * 填充待输出
+	 * @return boolean 是否还有数据
+	 */
+	private boolean fill() throws IOException {
+		while (pendingPos >= pending.length){
+			if(eof){
+				return false;
+			}
+			int n = reader.read(buffer);
+			if(n < 0){
+				eof = true;
+				// 未闭合的字符串 原样过滤输出
+				if(inString){
+					writeToken(false);
+				}
+			}else {
+				for (int i = 0; i < n; i++) {
+					process(buffer[i]);
+				}
+			}
+
+			// 高位代理 留到下一轮 避免拆开编码
+			int length = out.length();
+			if(!eof && length > 0 && Character.isHighSurrogate(out.charAt(length - 1))){
+				length--;
+			}
+			pending = out.substring(0, length).getBytes(StandardCharsets.UTF_8);
+			pendingPos = 0;
+			out.delete(0, length);
+		}
+		return true;
+	}
+
+	/**
+	 * 处理字符
+	 * @param c 字符
+	 */
+	private void process(char c) {
+		if(!inString){
+			if(c == '"'){
+				inString = true;
+				token.setLength(0);
+			}else {
+				out.append(c);
+			}
+			return;
+		}
+
+		if(unicodeDigits > 0){
+			int digit = Character.digit(c, 16);
+			unicodeValue = (unicodeValue << 4) | Math.max(digit, 0);
+			if(--unicodeDigits == 0){
+				token.append((char) unicodeValue);
+			}
+			return;
+		}
+
+		if(escape){
+			escape = false;
+			switch (c){
+				case 'n': token.append('\n'); break;
+				case 'r': token.append('\r'); break;
+				case 't': token.append('\t'); break;
+				case 'b': token.append('\b'); break;
+				case 'f': token.append('\f'); break;
+				case 'u':
+					unicodeDigits = 4;
+					unicodeValue = 0;
+					break;
+				default: token.append(c);
+			}
+			return;
+		}
+
+		if(c == '\\'){
+			escape = true;
+		}else if(c == '"'){
+			inString = false;
+			writeToken(true);
+		}else {
+			token.append(c);
+		}
+	}
+
+	/**
+	 * 过滤并输出字符串 Token
+	 * @param closed 是否闭合
+	 */
+	private void writeToken(boolean closed) {
+		String value = filter.apply(token.toString());
+		out.append('"');
+		if(null != value){
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch (c){
+					case '"': out.append("\\\""); break;
+					case '\\': out.append("\\\\"); break;
+					case '\n': out.append("\\n"); break;
+					case '\r': out.append("\\r"); break;
+					case '\t': out.append("\\t"); break;
+					case '\b': out.append("\\b"); break;
+					case '\f': out.append("\\f"); break;
+					default:
+						if(c < 0x20){
+							out.append(String.format("\\u%04x", (int) c));
+						}else {
+							out.append(c);
+						}
+				}
+			}
+		}
+		if(closed){
+			out.append('"');
+		}
+		token.setLength(0);
+	}
+}
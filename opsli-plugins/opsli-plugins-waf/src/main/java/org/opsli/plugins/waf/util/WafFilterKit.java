@@ -0,0 +1,393 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.waf.util;
+
+import org.opsli.common.exception.WafException;
+import org.opsli.plugins.waf.msg.WafMsg;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * 防火墙 单趟过滤
+ *
+ * 将 XSSFilterKit 与 SQLFilterKit 的全部规则编译为一个 Aho-Corasick 自动机 (已展开为 DFA)
+ * 一次线性扫描完成 XSS 清除与 SQL 关键字检测，耗时只与输入长度相关
+ *
+ * 命中规则后 从输出中删除命中内容，并以删除后的结尾重新推导自动机状态
+ * 删除后拼接出的新关键字 (如 javajavascript:script:) 同样会被清除
+ *
+ * SQL 关键字 同时在原始输入与删除后的输出上检测，不会因 XSS 内容被删除而漏检
+ *
+ * @author Parker
+ * @date 2020-10-09
+ */
+public final class WafFilterKit {
+
+	/** 状态转移表 仅 ASCII */
+	private static final int ALPHABET = 128;
+
+	/** 规则 */
+	private static final Rule[] RULES = {
+			// <script>...</script> 与 <script ...>
+			new Rule("<script", Action.SCRIPT),
+			// 单独的 </script>
+			new Rule("</script>", Action.REMOVE),
+			// eval(...)
+			new Rule("eval(", Action.UNTIL_PAREN),
+			// expression(...)
+			new Rule("expression(", Action.UNTIL_PAREN),
+			// javascript:
+			new Rule("javascript:", Action.REMOVE),
+			// vbscript:
+			new Rule("vbscript:", Action.REMOVE),
+			// onload...=
+			new Rule("onload", Action.UNTIL_EQ),
+
+			// SQL 非法字符
+			new Rule("master", Action.SQL),
+			new Rule("truncate", Action.SQL),
+			new Rule("insert", Action.SQL),
+			new Rule("select", Action.SQL),
+			new Rule("delete", Action.SQL),
+			new Rule("update", Action.SQL),
+			new Rule("declare", Action.SQL),
+			new Rule("alter", Action.SQL),
+			new Rule("drop", Action.SQL),
+	};
+
+	/** 单独的 </script> */
+	private static final String SCRIPT_END = "</script>";
+
+	/** 状态转移 */
+	private static final int[][] GOTO;
+	/** 状态命中规则 */
+	private static final Rule[] OUTPUT;
+	/** 最长规则长度 */
+	private static final int MAX_LENGTH;
+
+	static {
+		int maxLength = 0;
+		int stateCount = 1;
+		for (Rule rule : RULES) {
+			stateCount += rule.keyword.length();
+			maxLength = Math.max(maxLength, rule.keyword.length());
+		}
+		MAX_LENGTH = maxLength;
+
+		int[][] go = new int[stateCount][];
+		Rule[] output = new Rule[stateCount];
+		go[0] = new int[ALPHABET];
+		Arrays.fill(go[0], -1);
+
+		// 构建字典树
+		int count = 1;
+		for (Rule rule : RULES) {
+			int state = 0;
+			for (char c : rule.keyword.toCharArray()) {
+				if(go[state][c] < 0){
+					go[count] = new int[ALPHABET];
+					Arrays.fill(go[count], -1);
+					go[state][c] = count++;
+				}
+				state = go[state][c];
+			}
+			output[state] = rule;
+		}
+
+		// 广度优先 补全失配跳转 展开为 DFA
+		int[] fail = new int[count];
+		Queue<Integer> queue = new ArrayDeque<>();
+		for (int c = 0; c < ALPHABET; c++) {
+			if(go[0][c] < 0){
+				go[0][c] = 0;
+			}else {
+				fail[go[0][c]] = 0;
+				queue.add(go[0][c]);
+			}
+		}
+		while (!queue.isEmpty()){
+			int state = queue.poll();
+			if(null == output[state]){
+				output[state] = output[fail[state]];
+			}
+			for (int c = 0; c < ALPHABET; c++) {
+				int next = go[state][c];
+				if(next < 0){
+					go[state][c] = go[fail[state]][c];
+				}else {
+					fail[next] = go[fail[state]][c];
+					queue.add(next);
+				}
+			}
+		}
+
+		GOTO = Arrays.copyOf(go, count);
+		OUTPUT = Arrays.copyOf(output, count);
+	}
+
+	/**
+	 * 过滤字符串
+	 *
+	 * 开启 SQL 过滤时 同 SQLFilterKit.stripSQL 去掉 ' ; \ 字符并转为小写，命中 SQL 关键字抛出异常
+	 * 且无论是否开启 XSS 过滤 都会清除 XSS 内容 (与原 过滤顺序 一致)
+	 *
+	 * @param value 字符串
+	 * @param enableXss XSS 过滤
+	 * @param enableSql SQL 过滤
+	 * @return String
+	 */
+	public static String filter(final String value, final boolean enableXss, final boolean enableSql) {
+		if (null == value || value.isEmpty() || (!enableXss && !enableSql)) {
+			return value;
+		}
+
+		final int length = value.length();
+		final StringBuilder out = new StringBuilder(length);
+		// 终止符查找缓存 保证整体线性 [查找起点, 结果, 查找终点]
+		final int[] parenCache = {Integer.MAX_VALUE, -1, -1};
+		final int[] eqCache = {Integer.MAX_VALUE, -1, -1};
+		final int[] gtCache = {Integer.MAX_VALUE, -1, -1};
+		final int[] endCache = {Integer.MAX_VALUE, -1, -1};
+
+		boolean changed = false;
+		int state = 0;
+		// 原始输入 SQL 检测状态
+		int sqlState = 0;
+		int i = 0;
+		while (i < length){
+			char c = value.charAt(i++);
+			// 去掉空字符
+			if(c == '\0'){
+				changed = true;
+				continue;
+			}
+			if(enableSql){
+				// 去掉'|;|\字符
+				if(c == '\'' || c == ';' || c == '\\'){
+					changed = true;
+					continue;
+				}
+				// 转换成小写
+				char lower = Character.toLowerCase(c);
+				changed |= lower != c;
+				c = lower;
+				sqlState = nextSql(sqlState, c);
+			}
+
+			out.append(c);
+			state = next(state, c);
+			Rule rule = OUTPUT[state];
+			if(null == rule){
+				continue;
+			}
+
+			int end;
+			switch (rule.action){
+				case SQL:
+					if(enableSql){
+						throw new WafException(WafMsg.WAF_EXCEPTION_SQL);
+					}
+					continue;
+				case REMOVE:
+					end = i;
+					break;
+				case UNTIL_PAREN:
+					end = indexOf(value, ')', i, parenCache);
+					break;
+				case UNTIL_EQ:
+					end = indexOf(value, '=', i, eqCache);
+					break;
+				case SCRIPT:
+					end = indexOf(value, '>', i, gtCache);
+					// <script>...</script> 只匹配同一行内
+					if(end == i + 1){
+						int close = indexOfScriptEnd(value, end, endCache);
+						if(close >= 0){
+							end = close;
+						}
+					}
+					break;
+				default:
+					continue;
+			}
+			// 未找到终止符 保留原文
+			if(end < 0){
+				continue;
+			}
+
+			if(enableSql){
+				sqlState = scanSql(value, i, end, sqlState);
+			}
+			out.setLength(out.length() - rule.keyword.length());
+			i = end;
+			changed = true;
+			state = rescan(out);
+		}
+
+		if(!changed){
+			return value;
+		}
+		// 与原 SQLFilterKit.stripSQL 一致 空串返回 null
+		if(enableSql && out.length() == 0){
+			return null;
+		}
+		return out.toString();
+	}
+
+	/**
+	 * 状态转移
+	 * @param state 当前状态
+	 * @param c 字符
+	 * @return int
+	 */
+	private static int next(final int state, final char c) {
+		char lower = c < ALPHABET ? c : Character.toLowerCase(c);
+		if(lower >= 'A' && lower <= 'Z'){
+			lower = (char) (lower + ('a' - 'A'));
+		}
+		return lower < ALPHABET ? GOTO[state][lower] : 0;
+	}
+
+	/**
+	 * SQL 检测 状态转移
+	 * @param state 当前状态
+	 * @param c 字符
+	 * @return int
+	 */
+	private static int nextSql(final int state, final char c) {
+		int next = next(state, c);
+		Rule rule = OUTPUT[next];
+		if(null != rule && rule.action == Action.SQL){
+			throw new WafException(WafMsg.WAF_EXCEPTION_SQL);
+		}
+		return next;
+	}
+
+	/**
+	 * 检测将被删除的原始输入 每个字符只检测一次
+	 * @param value 字符串
+	 * @param from 起点
+	 * @param to 终点
+	 * @param state 当前状态
+	 * @return int
+	 */
+	private static int scanSql(final String value, final int from, final int to, int state) {
+		for (int k = from; k < to; k++) {
+			char c = value.charAt(k);
+			if(c == '\0' || c == '\'' || c == ';' || c == '\\'){
+				continue;
+			}
+			state = nextSql(state, Character.toLowerCase(c));
+		}
+		return state;
+	}
+
+	/**
+	 * 删除后 以输出结尾重新推导状态
+	 * @param out 输出
+	 * @return int
+	 */
+	private static int rescan(final StringBuilder out) {
+		int state = 0;
+		for (int k = Math.max(0, out.length() - MAX_LENGTH + 1); k < out.length(); k++) {
+			state = next(state, out.charAt(k));
+		}
+		return state;
+	}
+
+	/**
+	 * 查找终止符 返回终止符之后的位置
+	 * @param value 字符串
+	 * @param ch 终止符
+	 * @param from 起点
+	 * @param cache 缓存
+	 * @return int 未找到返回 -1
+	 */
+	private static int indexOf(final String value, final char ch, final int from, final int[] cache) {
+		if(cache[0] <= from && (cache[1] < 0 || cache[1] >= from)){
+			return cache[1] < 0 ? -1 : cache[1] + 1;
+		}
+		cache[0] = from;
+		cache[1] = value.indexOf(ch, from);
+		return cache[1] < 0 ? -1 : cache[1] + 1;
+	}
+
+	/**
+	 * 查找同一行内的 </script> 返回其后的位置
+	 * @param value 字符串
+	 * @param from 起点
+	 * @param cache 缓存
+	 * @return int 未找到返回 -1
+	 */
+	private static int indexOfScriptEnd(final String value, final int from, final int[] cache) {
+		if(cache[0] <= from &&
+				(cache[1] >= from || (cache[1] < 0 && from <= cache[2]))){
+			return cache[1] < 0 ? -1 : cache[1] + SCRIPT_END.length();
+		}
+
+		cache[0] = from;
+		cache[1] = -1;
+		int k = from;
+		for (; k < value.length(); k++) {
+			char c = value.charAt(k);
+			if(c == '\n' || c == '\r'){
+				break;
+			}
+			if(c == '<' && value.regionMatches(true, k, SCRIPT_END, 0, SCRIPT_END.length())){
+				cache[1] = k;
+				break;
+			}
+		}
+		cache[2] = k;
+		return cache[1] < 0 ? -1 : cache[1] + SCRIPT_END.length();
+	}
+
+	/**
+	 * 规则
+	 */
+	private static final class Rule {
+
+		private final String keyword;
+		private final Action action;
+
+		private Rule(String keyword, Action action) {
+			this.keyword = keyword;
+			this.action = action;
+		}
+	}
+
+	/**
+	 * 命中动作
+	 */
+	private enum Action {
+
+		/** 删除关键字 */
+		REMOVE,
+		/** 删除至 ) */
+		UNTIL_PAREN,
+		/** 删除至 = */
+		UNTIL_EQ,
+		/** 删除 script 标签 */
+		SCRIPT,
+		/** SQL 关键字 */
+		SQL,
+	}
+
+	// ====================
+	private WafFilterKit(){}
+}
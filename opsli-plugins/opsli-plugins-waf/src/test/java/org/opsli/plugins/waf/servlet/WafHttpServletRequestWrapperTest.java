@@ -0,0 +1,125 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.waf.servlet;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.common.constants.TokenConstants;
+import org.opsli.common.exception.WafException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 防火墙过滤处理器 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 16:40
+ */
+public class WafHttpServletRequestWrapperTest {
+
+	/**
+	 * 参数过滤 同一请求内 相同内容只过滤一次
+	 */
+	@Test
+	public void parametersFilteredOnce(){
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addParameter("name", "<script>alert(1)</script>Tom");
+		request.addParameter("tags", "a", "javascript:b");
+		request.addParameter(TokenConstants.ACCESS_TOKEN, "javascript:token");
+		WafHttpServletRequestWrapper wrapper = new WafHttpServletRequestWrapper(request, true, false);
+
+		String name = wrapper.getParameter("name");
+		assertEquals("Tom", name);
+		assertSame(name, wrapper.getParameter("name"));
+
+		String[] tags = wrapper.getParameterValues("tags");
+		assertArrayEquals(new String[]{"a", "b"}, tags);
+		assertSame(tags, wrapper.getParameterValues("tags"));
+
+		Map<String, String[]> map = wrapper.getParameterMap();
+		assertSame(map, wrapper.getParameterMap());
+		assertArrayEquals(new String[]{"Tom"}, map.get("name"));
+		assertSame(name, map.get("name")[0]);
+
+		// Token 不过滤
+		assertEquals("javascript:token", wrapper.getParameter(TokenConstants.ACCESS_TOKEN));
+		assertArrayEquals(new String[]{"javascript:token"}, map.get(TokenConstants.ACCESS_TOKEN));
+	}
+
+	/**
+	 * 头消息过滤
+	 */
+	@Test
+	public void headersFiltered(){
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Referer", "vbscript:x");
+		request.addHeader(TokenConstants.ACCESS_TOKEN, "vbscript:token");
+		WafHttpServletRequestWrapper wrapper = new WafHttpServletRequestWrapper(request, true, false);
+
+		assertEquals("x", wrapper.getHeader("Referer"));
+		assertEquals("vbscript:token", wrapper.getHeader(TokenConstants.ACCESS_TOKEN));
+	}
+
+	/**
+	 * SQL 过滤 拒绝请求
+	 */
+	@Test
+	public void sqlParameterRejected(){
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addParameter("q", "1; DROP TABLE sys_user");
+		WafHttpServletRequestWrapper wrapper = new WafHttpServletRequestWrapper(request, false, true);
+
+		assertThrows(WafException.class, () -> wrapper.getParameter("q"));
+	}
+
+	/**
+	 * JSON 请求体 只过滤字符串
+	 */
+	@Test
+	public void jsonBodyFiltered() throws IOException {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setContentType("application/json");
+		request.addHeader("Content-Type", "application/json");
+		request.setContent("{\"name\":\"<script>x</script>Tom\",\"age\":18}".getBytes(StandardCharsets.UTF_8));
+		WafHttpServletRequestWrapper wrapper = new WafHttpServletRequestWrapper(request, true, false);
+
+		String body = StreamUtils.copyToString(wrapper.getInputStream(), StandardCharsets.UTF_8);
+		assertEquals("{\"name\":\"Tom\",\"age\":18}", body);
+	}
+
+	/**
+	 * 非 JSON 请求体 原样返回
+	 */
+	@Test
+	public void nonJsonBodyUntouched() throws IOException {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Content-Type", "text/plain");
+		request.setContent("<script>x</script>".getBytes(StandardCharsets.UTF_8));
+		WafHttpServletRequestWrapper wrapper = new WafHttpServletRequestWrapper(request, true, false);
+
+		String body = StreamUtils.copyToString(wrapper.getInputStream(), StandardCharsets.UTF_8);
+		assertEquals("<script>x</script>", body);
+	}
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.waf.servlet;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.opsli.common.exception.WafException;
+import org.opsli.plugins.waf.util.WafFilterKit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 防火墙 JSON 流式过滤 测试
+ *
+ * @author Parker
+ * @date 2021-12-31 16:55
+ */
+public class WafJsonInputStreamTest {
+
+	private static final UnaryOperator<String> XSS = (value) -> WafFilterKit.filter(value, true, false);
+
+	/**
+	 * 结构字符、数字等原样输出 只过滤字符串
+	 */
+	@Test
+	public void onlyStringsFiltered() throws IOException {
+		String json = "{\"a\" : [1, 2.5e3, true, null], \"javascript:b\":\"x<script>y</script>\"}";
+		assertEquals("{\"a\" : [1, 2.5e3, true, null], \"b\":\"x\"}", read(json, XSS, 8192));
+	}
+
+	/**
+	 * 转义字符 解码后过滤 再重新转义
+	 */
+	@Test
+	public void escapesRoundTrip() throws IOException {
+		String json = "{\"s\":\"q\\\"b\\\\n\\n\\t\\u00e9\\u0001 java\\u0073cript:x\"}";
+		String filtered = read(json, XSS, 8192);
+		JSONObject object = JSON.parseObject(filtered);
+		// s 解码后 命中 javascript:
+		assertEquals("q\"b\\n\n\té\u0001 x", object.getString("s"));
+	}
+
+	/**
+	 * 未命中规则 输出与输入等价
+	 */
+	@Test
+	public void cleanBodyEquivalent() throws IOException {
+		String json = "{\"name\":\"张三 😀\",\"list\":[\"a\",\"b\"],\"n\":-1}";
+		assertEquals(json, read(json, XSS, 8192));
+		// 逐字节读取
+		assertEquals(json, read(json, XSS, 1));
+	}
+
+	/**
+	 * 超出缓冲区的请求体 边读边过滤，代理字符对 不会被拆开
+	 */
+	@Test
+	public void largeBodyStreamed() throws IOException {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			value.append("😀");
+		}
+		String json = "{\"v\":\"" + value + "\",\"w\":\"" + value + "eval(1)\"}";
+
+		AtomicInteger tokens = new AtomicInteger();
+		String filtered = read(json, (s) -> {
+			tokens.incrementAndGet();
+			return XSS.apply(s);
+		}, 777);
+		JSONObject object = JSON.parseObject(filtered);
+		assertEquals(value.toString(), object.getString("v"));
+		assertEquals(value.toString(), object.getString("w"));
+		// 键 与 值 各过滤一次
+		assertEquals(4, tokens.get());
+	}
+
+	/**
+	 * 未闭合的字符串 过滤后输出
+	 */
+	@Test
+	public void unclosedString() throws IOException {
+		String filtered = read("{\"a\":\"vbscript:x", XSS, 8192);
+		assertEquals("{\"a\":\"x", filtered);
+	}
+
+	/**
+	 * SQL 关键字 读取时抛出异常
+	 */
+	@Test
+	public void sqlRejected() {
+		assertThrows(WafException.class, () ->
+				read("{\"q\":\"select 1\"}", (s) -> WafFilterKit.filter(s, true, true), 8192));
+	}
+
+	/**
+	 * 读取完成状态
+	 */
+	@Test
+	public void finished() throws IOException {
+		WafJsonInputStream in = new WafJsonInputStream(
+				new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)), XSS);
+		while (in.read() >= 0){
+			// 读完
+		}
+		assertTrue(in.isFinished());
+	}
+
+	// ========================
+
+	private static String read(String json, UnaryOperator<String> filter, int chunk) throws IOException {
+		InputStream in = new WafJsonInputStream(
+				new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), filter);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[chunk];
+		int n;
+		while ((n = in.read(buffer, 0, buffer.length)) >= 0){
+			out.write(buffer, 0, n);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
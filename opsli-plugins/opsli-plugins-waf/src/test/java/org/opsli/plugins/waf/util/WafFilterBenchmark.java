@@ -0,0 +1,93 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.waf.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 防火墙过滤 基准测试
+ *
+ * 对比 原 XSSFilterKit + SQLFilterKit 多次正则扫描 与 WafFilterKit 单趟扫描
+ * 不随单元测试执行，手动运行 main 方法
+ *
+ * @author Parker
+ * @date 2021-12-31 17:20
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WafFilterBenchmark {
+
+	/** 输入长度 */
+	@Param({"16", "256", "4096"})
+	private int length;
+
+	/** 是否含有 XSS 内容 */
+	@Param({"false", "true"})
+	private boolean dirty;
+
+	private String value;
+
+	@Setup
+	public void setup(){
+		String unit = dirty
+				? "name <script>alert(1)</script> javascript:x onload=y "
+				: "name=张三&org=研发部&phone=13800000000 ";
+		StringBuilder sb = new StringBuilder(length);
+		while (sb.length() < length){
+			sb.append(unit);
+		}
+		value = sb.substring(0, length);
+	}
+
+	@Benchmark
+	public String legacy(){
+		String tmpStr = XSSFilterKit.stripXSS(value);
+		return XSSFilterKit.stripXSS(SQLFilterKit.stripSQL(tmpStr));
+	}
+
+	@Benchmark
+	public String automaton(){
+		return WafFilterKit.filter(value, true, true);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(WafFilterBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+}
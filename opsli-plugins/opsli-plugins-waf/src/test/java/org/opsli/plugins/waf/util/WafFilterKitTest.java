@@ -0,0 +1,251 @@
+/**
+ * Copyright 2020 OPSLI 快速开发平台 https://www.opsli.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opsli.plugins.waf.util;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.common.exception.WafException;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 防火墙 单趟过滤 测试
+ *
+ * 以 XSSFilterKit、SQLFilterKit 原过滤顺序 作为对照
+ *
+ * @author Parker
+ * @date 2021-12-31 16:10
+ */
+public class WafFilterKitTest {
+
+	/** 对照样本 */
+	private static final String[] SAMPLES = {
+			"hello world",
+			"张三 李四",
+			"a=1&b=2",
+			"O'Reilly; C:\\path",
+			"MiXeD CaSe",
+			"<script>alert(1)</script>",
+			"a<SCRIPT>alert(1)</SCRIPT>b",
+			"x<script src=//evil.js>y",
+			"tail</script>",
+			"eval(alert(1))",
+			"x expression(alert(1)) y",
+			"<a href=\"javascript:alert(1)\">",
+			"<a href=\"VBScript:msgbox\">",
+			"<body onload=alert(1)>",
+			"<body onload>",
+			"eval(unclosed",
+			"<script unclosed",
+	};
+
+	/** SQL 关键字样本 */
+	private static final String[] SQL_SAMPLES = {
+			"1 or 1=1; drop table sys_user",
+			"SELECT * FROM sys_user",
+			"x'; DELETE FROM t",
+			"update",
+			"MaStEr",
+			"truncate",
+			"insert",
+			"declare",
+			"alter",
+	};
+
+	/**
+	 * 仅 XSS 过滤 与原过滤结果一致
+	 */
+	@Test
+	public void xssMatchesLegacy(){
+		for (String sample : SAMPLES) {
+			assertEquals(legacy(sample, true, false), WafFilterKit.filter(sample, true, false), sample);
+		}
+	}
+
+	/**
+	 * XSS + SQL 过滤 与原过滤结果一致
+	 */
+	@Test
+	public void xssAndSqlMatchesLegacy(){
+		for (String sample : SAMPLES) {
+			assertEquals(legacy(sample, true, true), WafFilterKit.filter(sample, true, true), sample);
+		}
+	}
+
+	/**
+	 * SQL 关键字 与原过滤一样抛出异常
+	 */
+	@Test
+	public void sqlKeywordRejected(){
+		for (String sample : SQL_SAMPLES) {
+			assertThrows(WafException.class, () -> legacy(sample, false, true), sample);
+			assertThrows(WafException.class, () -> WafFilterKit.filter(sample, false, true), sample);
+			// 未开启 SQL 过滤时 放行
+			assertEquals(legacy(sample, true, false), WafFilterKit.filter(sample, true, false), sample);
+		}
+	}
+
+	/**
+	 * 删除后重新拼接出的关键字 同样被清除
+	 */
+	@Test
+	public void recombinedFragmentsStripped(){
+		assertEquals("", WafFilterKit.filter("javajavascript:script:", true, false));
+		assertEquals("x", WafFilterKit.filter("x<scr<script>ipt>", true, false));
+		assertEquals("ab", WafFilterKit.filter("avbvbscript:script:b", true, false));
+	}
+
+	/**
+	 * 空字符 直接去掉 (原 XSSFilterKit 中的 replaceAll 并未生效)
+	 */
+	@Test
+	public void nullCharStripped(){
+		assertEquals("ab", WafFilterKit.filter("a\0b", true, false));
+		assertThrows(WafException.class, () -> WafFilterKit.filter("dr\0op", false, true));
+	}
+
+	/**
+	 * 被 XSS 规则删除的内容中 含有 SQL 关键字 同样拒绝
+	 */
+	@Test
+	public void sqlInsideRemovedXssRejected(){
+		assertThrows(WafException.class, () -> WafFilterKit.filter("<body onload drop=1>", false, true));
+		assertThrows(WafException.class, () -> WafFilterKit.filter("eval(select 1)", true, true));
+		assertThrows(WafException.class, () -> WafFilterKit.filter("<script>x='drop'</script>", true, true));
+		// 删除后拼接出的 SQL 关键字
+		assertThrows(WafException.class, () -> WafFilterKit.filter("dr</script>op", true, true));
+	}
+
+	/**
+	 * 未命中 不产生新对象
+	 */
+	@Test
+	public void cleanValueReturnedAsIs(){
+		String value = "plain value 123";
+		assertSame(value, WafFilterKit.filter(value, true, false));
+		assertSame(value, WafFilterKit.filter(value, true, true));
+		assertSame(value, WafFilterKit.filter(value, false, false));
+		assertNull(WafFilterKit.filter(null, true, true));
+		// 与 SQLFilterKit.stripSQL 一致 全部被去掉时 返回 null
+		assertNull(WafFilterKit.filter("';\\", true, true));
+	}
+
+	/**
+	 * 随机拼接 规则片段
+	 * 1. 原始输入 (去掉 ' ; \ 后) 含有 SQL 关键字的 与原过滤一样拒绝
+	 * 2. 放行的输出中 不含 SQL 关键字
+	 * 3. 输出中 不再含有 可执行的脚本片段
+	 */
+	@Test
+	public void randomFragments(){
+		String[] fragments = {"<script>", "</script>", "<script", ">", "java", "script:", "javascript:",
+				"vbscript:", "eval(", "expression(", ")", "onload", "=", "sel", "ect", "dr", "op",
+				"'", ";", "\\", "a", "B", " ", "\n", "中"};
+		Random random = new Random(20211231L);
+		for (int n = 0; n < 20000; n++) {
+			StringBuilder sb = new StringBuilder();
+			int count = 1 + random.nextInt(12);
+			for (int k = 0; k < count; k++) {
+				sb.append(fragments[random.nextInt(fragments.length)]);
+			}
+			String sample = sb.toString();
+
+			boolean legacyRejected = false;
+			try {
+				SQLFilterKit.stripSQL(sample);
+			}catch (WafException e){
+				legacyRejected = true;
+			}
+
+			for (boolean enableXss : new boolean[]{true, false}) {
+				String value;
+				try {
+					value = WafFilterKit.filter(sample, enableXss, true);
+				}catch (WafException e){
+					continue;
+				}
+				assertFalse(legacyRejected, sample);
+				assertNoSql(sample, value);
+				assertSafe(sample, value);
+			}
+			assertSafe(sample, WafFilterKit.filter(sample, true, false));
+		}
+	}
+
+	/**
+	 * 耗时与输入长度线性相关 (未闭合的规则 不会导致反复查找终止符)
+	 */
+	@Test
+	public void linearOnPathologicalInput(){
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			sb.append("eval(<script onload");
+		}
+		String value = sb.toString();
+		long start = System.nanoTime();
+		String filtered = WafFilterKit.filter(value, true, false);
+		long elapsed = System.nanoTime() - start;
+		assertEquals(value, filtered);
+		// 40 万字符 二次方复杂度 需要数十秒
+		assertTrue(elapsed < 2_000_000_000L, "elapsed " + elapsed);
+	}
+
+	// ========================
+
+	private static void assertNoSql(String sample, String value){
+		if(null == value){
+			return;
+		}
+		for (String keyword : new String[]{"master", "truncate", "insert", "select",
+				"delete", "update", "declare", "alter", "drop"}) {
+			assertFalse(value.contains(keyword), sample);
+		}
+	}
+
+	private static void assertSafe(String sample, String value){
+		if(null == value){
+			return;
+		}
+		String lower = value.toLowerCase(Locale.ROOT);
+		assertFalse(lower.contains("javascript:"), sample);
+		assertFalse(lower.contains("vbscript:"), sample);
+		assertFalse(lower.contains("</script>"), sample);
+		assertFalse(lower.contains("<script>"), sample);
+	}
+
+	/**
+	 * 原过滤顺序
+	 */
+	private static String legacy(String value, boolean enableXss, boolean enableSql){
+		String tmpStr = value;
+		if (enableXss) {
+			tmpStr = XSSFilterKit.stripXSS(value);
+		}
+		if (enableSql) {
+			tmpStr = XSSFilterKit.stripXSS(
+					SQLFilterKit.stripSQL(tmpStr));
+		}
+		return tmpStr;
+	}
+
+}